@@ -0,0 +1,109 @@
+package com.bi.assistant.benchmark;
+
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.chat.prompt.PromptTemplate;
+
+import java.time.LocalDate;
+
+/**
+ * The per-request {@link PromptTemplate} rendering that {@code SqlPromptBuilder} replaced,
+ * kept verbatim as the baseline for {@link PromptRenderBenchmark} and
+ * {@link TimeToFirstTokenBenchmark}. The question and dates sit in the middle of the
+ * prompt, so consecutive prompts share only the text before the question.
+ */
+class LegacyPromptRenderer {
+
+    public Prompt render(String naturalQuery) {
+        String enhancedSchemaDescription = """
+                Database Schema:
+                
+                Tables:
+                1. products: 
+                   - id (INTEGER, Primary Key)
+                   - product_name (VARCHAR) - Name of the product
+                   - category (VARCHAR) - Product category (Electronics, Appliances, Accessories, Furniture)
+                   - price (DECIMAL) - Product price
+                   - description (TEXT) - Product description
+                   - manufacturer (VARCHAR) - Product manufacturer
+                
+                2. sales: 
+                   - id (INTEGER, Primary Key)
+                   - product_id (INTEGER, Foreign Key to products.id)
+                   - sale_date (DATE) - Date of sale
+                   - revenue (DECIMAL) - Revenue from the sale
+                   - quantity (INTEGER) - Quantity sold
+                   - customer_id (INTEGER, Foreign Key to customers.id)
+                   - region (VARCHAR) - Sales region
+                   - sales_person (VARCHAR) - Name of sales person
+                
+                3. customers:
+                   - id (INTEGER, Primary Key)
+                   - customer_name (VARCHAR) - Customer name
+                   - email (VARCHAR) - Customer email
+                   - phone (VARCHAR) - Customer phone
+                   - address (TEXT) - Customer address
+                   - city (VARCHAR) - Customer city
+                   - country (VARCHAR) - Customer country
+                   - customer_segment (VARCHAR) - Customer segment (Premium, Standard, Basic)
+                
+                Important Notes:
+                - Use 'product_name' column for products table
+                - Always join tables properly using foreign keys
+                - Use appropriate date filtering for time-based queries
+                """;
+
+        LocalDate today = LocalDate.now();
+        LocalDate quarterStart = today.minusMonths(3).withDayOfMonth(1);
+        LocalDate quarterEnd = today.withDayOfMonth(1);
+        LocalDate yearStart = today.withDayOfYear(1);
+
+        PromptTemplate promptTemplate = new PromptTemplate("""
+                    You are a PostgreSQL expert. Translate the following natural language query to SQL.
+                
+                    Schema: {schema}
+                
+                    Natural Language Query: {query}
+                
+                    Date Context:
+                    - Today: {today}
+                    - Last quarter: {quarter_start} to {quarter_end}
+                    - This year: {year_start} to {today}
+                
+                    CRITICAL RULES:
+                    1. Return ONLY ONE executable SQL statement
+                    2. NO explanations, NO comments, NO alternative queries
+                    3. NO "OR" statements, NO multiple options
+                    4. ALWAYS use JOINs when accessing data from multiple tables
+                    5. For "list all customers" queries, use: SELECT * FROM customers;
+                    6. Use table aliases: p for products, s for sales, c for customers
+                    7. For nested aggregation, use subqueries or CTEs
+                
+                    CORRECT Examples:
+                    - "top 5 products by revenue":
+                      SELECT p.product_name, SUM(s.revenue) AS total_revenue FROM products p JOIN sales s ON p.id = s.product_id GROUP BY p.product_name ORDER BY total_revenue DESC LIMIT 5;
+                
+                    - "list all customers":
+                      SELECT * FROM customers;
+                
+                    - "revenue by category":
+                      SELECT p.category, SUM(s.revenue) AS total_revenue FROM products p JOIN sales s ON p.id = s.product_id GROUP BY p.category ORDER BY total_revenue DESC;
+                
+                    - "average order value by customer segment":
+                      SELECT c.customer_segment, AVG(order_total) AS avg_order_value FROM customers c JOIN (SELECT customer_id, SUM(p.price * s.quantity) AS order_total FROM sales s JOIN products p ON s.product_id = p.id GROUP BY customer_id) AS orders ON c.id = orders.customer_id GROUP BY c.customer_segment;
+                
+                    - "monthly sales trends":
+                      SELECT EXTRACT(YEAR FROM sale_date) AS year, EXTRACT(MONTH FROM sale_date) AS month, SUM(revenue) AS monthly_revenue FROM sales GROUP BY EXTRACT(YEAR FROM sale_date), EXTRACT(MONTH FROM sale_date) ORDER BY year, month;
+                
+                    Return only the SQL query without any explanations:
+                """);
+
+        promptTemplate.add("schema", enhancedSchemaDescription);
+        promptTemplate.add("query", naturalQuery);
+        promptTemplate.add("today", today.toString());
+        promptTemplate.add("quarter_start", quarterStart.toString());
+        promptTemplate.add("quarter_end", quarterEnd.toString());
+        promptTemplate.add("year_start", yearStart.toString());
+
+        return promptTemplate.create();
+    }
+}
@@ -0,0 +1,153 @@
+package com.bi.assistant.benchmark;
+
+import com.bi.assistant.exception.QueryExecutionException;
+import com.bi.assistant.exception.QueryGenerationException;
+
+import java.util.regex.Pattern;
+
+/**
+ * The line-splitting, regex-based post-processing that {@code SqlPostProcessor} replaced,
+ * kept verbatim (minus logging) as the baseline for {@link SqlPostProcessingBenchmark}.
+ */
+class LegacySqlPostProcessor {
+
+    private static final Pattern DANGEROUS_PATTERNS = Pattern.compile(
+            "\\b(INSERT|UPDATE|DELETE|DROP|CREATE|ALTER|TRUNCATE|EXEC|EXECUTE)\\b",
+            Pattern.CASE_INSENSITIVE
+    );
+
+    /**
+     * Strips markdown fences, explanations and alternatives from an LLM response and
+     * returns the first SQL statement without its trailing semicolon.
+     */
+    public String extractSql(String response) {
+        // Clean up the SQL by removing markdown code blocks if present
+        String sql = response.replaceAll("```sql\\s*", "")
+                .replaceAll("```\\s*", "")
+                .trim();
+
+        // Extract only the first valid SQL statement
+        sql = extractFirstSqlStatement(sql);
+
+        // Remove any trailing semicolon and normalize whitespace
+        sql = sql.replaceAll(";\\s*$", "").trim();
+
+        if (sql.isEmpty()) {
+            throw new QueryGenerationException("Generated SQL query is empty");
+        }
+
+        return sql;
+    }
+
+    public String extractFirstSqlStatement(String response) {
+        if (response == null || response.trim().isEmpty()) {
+            throw new QueryGenerationException("Empty response from AI model");
+        }
+
+        // Split the response into lines
+        String[] lines = response.split("\n");
+        StringBuilder sqlBuilder = new StringBuilder();
+        boolean foundSql = false;
+
+        for (String line : lines) {
+            line = line.trim();
+
+            // Skip empty lines and obvious explanatory text
+            if (line.isEmpty()) continue;
+
+            // Skip explanatory text patterns
+            if (line.toLowerCase().startsWith("to ") ||
+                    line.toLowerCase().startsWith("if you") ||
+                    line.toLowerCase().startsWith("note:") ||
+                    line.toLowerCase().startsWith("explanation:") ||
+                    line.toLowerCase().contains("you can add") ||
+                    line.toLowerCase().contains("filter results") ||
+                    line.toLowerCase().startsWith("for ")) {
+                continue;
+            }
+
+            // Stop at "OR" which indicates alternative queries
+            if (line.toUpperCase().equals("OR")) {
+                break;
+            }
+
+            // Check if this looks like start of SQL
+            if (line.toUpperCase().startsWith("SELECT") ||
+                    line.toUpperCase().startsWith("WITH") ||
+                    line.toUpperCase().startsWith("INSERT") ||
+                    line.toUpperCase().startsWith("UPDATE") ||
+                    line.toUpperCase().startsWith("DELETE")) {
+                foundSql = true;
+            }
+
+            // If we found SQL, keep adding lines until we hit a semicolon
+            if (foundSql) {
+                sqlBuilder.append(line).append(" ");
+
+                // Stop at semicolon (end of SQL statement)
+                if (line.endsWith(";")) {
+                    break;
+                }
+            }
+        }
+
+        String finalSql = sqlBuilder.toString().trim();
+
+        // If no SQL found, try to find it in the original response
+        if (!foundSql || finalSql.isEmpty()) {
+            // Look for SQL patterns in the entire response
+            if (response.toUpperCase().contains("SELECT")) {
+                int selectIndex = response.toUpperCase().indexOf("SELECT");
+                String fromSelect = response.substring(selectIndex);
+
+                // Find the end of the statement (semicolon or end of line)
+                int semicolonIndex = fromSelect.indexOf(";");
+                int newlineIndex = fromSelect.indexOf("\n");
+
+                if (semicolonIndex > 0) {
+                    finalSql = fromSelect.substring(0, semicolonIndex + 1).trim();
+                } else if (newlineIndex > 0) {
+                    finalSql = fromSelect.substring(0, newlineIndex).trim();
+                } else {
+                    finalSql = fromSelect.trim();
+                }
+            }
+        }
+
+        // Clean up extra whitespace
+        finalSql = finalSql.replaceAll("\\s+", " ").trim();
+
+        if (finalSql.isEmpty()) {
+            throw new QueryGenerationException("Could not extract valid SQL from AI response: " + response);
+        }
+
+        return finalSql;
+    }
+
+    public void validate(String sql) {
+        String sqlUpper = sql.toUpperCase().trim();
+
+        // Check if it's a SELECT query
+        if (!sqlUpper.startsWith("SELECT") && !sqlUpper.startsWith("WITH")) {
+            throw new QueryExecutionException("Only SELECT queries are allowed");
+        }
+
+        // Check for dangerous patterns
+        if (DANGEROUS_PATTERNS.matcher(sqlUpper).find()) {
+            throw new QueryExecutionException("Query contains potentially dangerous SQL operations");
+        }
+    }
+
+    public String determineQueryType(String sql) {
+        String upperSql = sql.toUpperCase().trim();
+        if (upperSql.contains("GROUP BY")) {
+            return "AGGREGATION";
+        } else if (upperSql.contains("ORDER BY")) {
+            return "SORTED_LIST";
+        } else if (upperSql.contains("JOIN")) {
+            return "RELATIONSHIP";
+        } else {
+            return "SIMPLE_SELECT";
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.bi.assistant.benchmark;
+
+import com.bi.assistant.schema.SchemaCatalog;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Realistic llama3.2 responses to the translation prompt, in the shapes we see in the logs.
+ */
+final class LlmResponseCorpus {
+
+    static final Map<String, String> RESPONSES = new LinkedHashMap<>();
+
+    /**
+     * The tables created by data.sql, which every response above is valid against.
+     */
+    static final SchemaCatalog SCHEMA = SchemaCatalog.of("public", Map.of(
+            "customers", List.of("id", "customer_name", "email", "phone", "address", "city", "country",
+                    "customer_segment"),
+            "products", List.of("id", "product_name", "category", "price", "description", "manufacturer"),
+            "sales", List.of("id", "product_id", "customer_id", "sale_date", "revenue", "quantity", "region",
+                    "sales_person")));
+
+    static {
+        RESPONSES.put("plain",
+                "SELECT * FROM customers;");
+
+        RESPONSES.put("fenced", """
+                ```sql
+                SELECT p.product_name, SUM(s.revenue) AS total_revenue
+                FROM products p
+                JOIN sales s ON p.id = s.product_id
+                WHERE s.sale_date BETWEEN '2025-07-01' AND '2025-10-01'
+                GROUP BY p.product_name
+                ORDER BY total_revenue DESC
+                LIMIT 5;
+                ```""");
+
+        RESPONSES.put("multiStatement", """
+                SELECT p.category, SUM(s.revenue) AS total_revenue FROM products p JOIN sales s ON p.id = s.product_id GROUP BY p.category ORDER BY total_revenue DESC;
+                SELECT COUNT(*) FROM sales;""");
+
+        RESPONSES.put("withExplanation", """
+                To find the average order value by customer segment, we first total each customer's orders:
+
+                ```sql
+                SELECT c.customer_segment, AVG(order_total) AS avg_order_value
+                FROM customers c
+                JOIN (SELECT customer_id, SUM(p.price * s.quantity) AS order_total
+                      FROM sales s JOIN products p ON s.product_id = p.id
+                      GROUP BY customer_id) AS orders ON c.id = orders.customer_id
+                GROUP BY c.customer_segment;
+                ```
+
+                Note: This query uses a subquery to calculate order totals first.
+                If you want to filter results by date, you can add a WHERE clause.""");
+
+        RESPONSES.put("orAlternative", """
+                SELECT s.region, SUM(s.revenue) AS total_revenue
+                FROM sales s
+                GROUP BY s.region
+                ORDER BY total_revenue DESC;
+
+                OR
+
+                SELECT region, SUM(revenue) FROM sales GROUP BY region;""");
+
+        RESPONSES.put("cte", """
+                ```sql
+                WITH monthly AS (
+                    SELECT EXTRACT(YEAR FROM sale_date) AS year, EXTRACT(MONTH FROM sale_date) AS month,
+                           SUM(revenue) AS monthly_revenue
+                    FROM sales
+                    GROUP BY EXTRACT(YEAR FROM sale_date), EXTRACT(MONTH FROM sale_date)
+                )
+                SELECT year, month, monthly_revenue FROM monthly ORDER BY year, month;
+                ```""");
+    }
+
+    private LlmResponseCorpus() {
+    }
+}
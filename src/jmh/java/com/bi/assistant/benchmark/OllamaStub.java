@@ -0,0 +1,118 @@
+package com.bi.assistant.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A local server speaking just enough of Ollama's {@code /api/chat} for Spring AI's
+ * {@code OllamaChatModel}, with Ollama's prompt caching modelled: like a single Ollama
+ * slot, it remembers the previous prompt, and the delay before the first token is
+ * proportional to the characters after the longest prefix the new prompt shares with it.
+ * The answer is then streamed one word at a time.
+ */
+class OllamaStub implements AutoCloseable {
+
+    /** Prompt evaluation cost per character not covered by the cached prefix. */
+    static final long NANOS_PER_PROMPT_CHAR = TimeUnit.MICROSECONDS.toNanos(25);
+    static final long NANOS_PER_TOKEN = TimeUnit.MILLISECONDS.toNanos(2);
+
+    private static final String[] ANSWER = {"SELECT", " *", " FROM", " customers", ";"};
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpServer server;
+    private String previousPrompt = "";
+
+    OllamaStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/api/chat", this::chat);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.start();
+    }
+
+    String baseUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void chat(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            JsonNode request = objectMapper.readTree(exchange.getRequestBody());
+            StringBuilder prompt = new StringBuilder();
+            for (JsonNode message : request.path("messages")) {
+                prompt.append(message.path("role").asText()).append('\n')
+                        .append(message.path("content").asText()).append('\n');
+            }
+            int evaluated = prompt.length() - sharedPrefix(prompt.toString());
+            LockSupport.parkNanos(evaluated * NANOS_PER_PROMPT_CHAR);
+
+            boolean stream = request.path("stream").asBoolean(true);
+            String model = request.path("model").asText("llama3.2");
+            exchange.getResponseHeaders().set("Content-Type",
+                    stream ? "application/x-ndjson" : "application/json");
+            exchange.sendResponseHeaders(200, 0);
+
+            OutputStream out = exchange.getResponseBody();
+            if (stream) {
+                for (String token : ANSWER) {
+                    write(out, chunk(model, token, false, evaluated));
+                    LockSupport.parkNanos(NANOS_PER_TOKEN);
+                }
+                write(out, chunk(model, "", true, evaluated));
+            } else {
+                write(out, chunk(model, String.join("", ANSWER), true, evaluated));
+            }
+        } catch (IOException e) {
+            // The client cancelled after the first token; nothing left to do
+        }
+    }
+
+    /**
+     * Length of the prefix shared with the previous prompt, which then becomes the cached one.
+     */
+    private synchronized int sharedPrefix(String prompt) {
+        int shared = 0;
+        int max = Math.min(prompt.length(), previousPrompt.length());
+        while (shared < max && prompt.charAt(shared) == previousPrompt.charAt(shared)) {
+            shared++;
+        }
+        previousPrompt = prompt;
+        return shared;
+    }
+
+    private ObjectNode chunk(String model, String content, boolean done, int evaluatedChars) {
+        ObjectNode chunk = objectMapper.createObjectNode();
+        chunk.put("model", model);
+        chunk.put("created_at", Instant.now().toString());
+        chunk.putObject("message").put("role", "assistant").put("content", content);
+        chunk.put("done", done);
+        if (done) {
+            chunk.put("done_reason", "stop");
+            // Roughly four characters per token
+            chunk.put("prompt_eval_count", evaluatedChars / 4);
+            chunk.put("eval_count", ANSWER.length);
+        }
+        return chunk;
+    }
+
+    private void write(OutputStream out, ObjectNode chunk) throws IOException {
+        out.write(objectMapper.writeValueAsString(chunk).getBytes(StandardCharsets.UTF_8));
+        out.write('\n');
+        out.flush();
+    }
+}
@@ -0,0 +1,34 @@
+package com.bi.assistant.benchmark;
+
+import com.bi.assistant.config.AssistantProperties;
+import com.bi.assistant.service.SqlPromptBuilder;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of assembling the SQL generation prompt: a {@link LegacyPromptRenderer} template
+ * parsed and rendered per request against {@link SqlPromptBuilder}'s cached prefix and
+ * concatenated suffix. Run with {@code -prof gc} to compare allocation as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PromptRenderBenchmark {
+
+    private static final String QUESTION = "Show me the top 5 products by revenue last quarter";
+
+    private final LegacyPromptRenderer legacyPromptRenderer = new LegacyPromptRenderer();
+    private final SqlPromptBuilder promptBuilder = new SqlPromptBuilder(LlmResponseCorpus.SCHEMA, new AssistantProperties());
+
+    @Benchmark
+    public Prompt legacyTemplate() {
+        return legacyPromptRenderer.render(QUESTION);
+    }
+
+    @Benchmark
+    public Prompt cachedPrefix() {
+        return promptBuilder.build(QUESTION, null);
+    }
+}
@@ -0,0 +1,85 @@
+package com.bi.assistant.benchmark;
+
+import com.bi.assistant.dto.ColumnarResult;
+import com.bi.assistant.service.ColumnarResultBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Map-per-row vs columnar result format: serialization time here, heap footprint and
+ * JSON size printed once per trial (measured with JOL on the same data).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ResultFormatBenchmark {
+
+    private static final String[] CATEGORIES = {"Electronics", "Appliances", "Furniture", "Accessories"};
+    private static final String[] REGIONS = {"North", "South", "East", "West", "Central"};
+    private static final String[] SEGMENTS = {"Premium", "Standard", "Basic"};
+
+    @Param({"1000", "100000"})
+    private int rows;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private List<Map<String, Object>> rowResult;
+    private ColumnarResult columnarResult;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        rowResult = new ArrayList<>(rows);
+        LocalDate start = LocalDate.of(2025, 1, 1);
+        for (int i = 0; i < rows; i++) {
+            // Shape of "SELECT * FROM sales JOIN products JOIN customers", as returned by queryForList
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("id", i + 1);
+            row.put("product_name", "Product " + (i % 24));
+            row.put("category", CATEGORIES[i % CATEGORIES.length]);
+            row.put("customer_name", "Customer " + (i % 10));
+            row.put("customer_segment", SEGMENTS[i % SEGMENTS.length]);
+            row.put("region", REGIONS[i % REGIONS.length]);
+            row.put("quantity", 1 + i % 5);
+            row.put("revenue", BigDecimal.valueOf(1000 + i % 900, 2).multiply(BigDecimal.TEN));
+            row.put("sale_date", Date.valueOf(start.plusDays(i % 270)));
+            rowResult.add(row);
+        }
+        columnarResult = ColumnarResultBuilder.fromRows(rowResult);
+
+        System.out.printf("%n[rows=%d] heap: map-per-row %,d bytes, columnar %,d bytes%n", rows,
+                GraphLayout.parseInstance(rowResult).totalSize(),
+                GraphLayout.parseInstance(columnarResult).totalSize());
+        System.out.printf("[rows=%d] json: map-per-row %,d bytes, columnar %,d bytes%n", rows,
+                objectMapper.writeValueAsBytes(rowResult).length,
+                objectMapper.writeValueAsBytes(columnarResult).length);
+    }
+
+    @Benchmark
+    public byte[] serializeRows() throws Exception {
+        return objectMapper.writeValueAsBytes(rowResult);
+    }
+
+    @Benchmark
+    public byte[] serializeColumnar() throws Exception {
+        return objectMapper.writeValueAsBytes(columnarResult);
+    }
+
+    @Benchmark
+    public ColumnarResult encodeColumnar() {
+        return ColumnarResultBuilder.fromRows(rowResult);
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> materializeRows() {
+        return columnarResult.toRows();
+    }
+}
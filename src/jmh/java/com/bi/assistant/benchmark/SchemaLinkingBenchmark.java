@@ -0,0 +1,65 @@
+package com.bi.assistant.benchmark;
+
+import com.bi.assistant.config.AssistantProperties;
+import com.bi.assistant.schema.CompactSchemaRenderer;
+import com.bi.assistant.schema.SchemaCatalog;
+import com.bi.assistant.schema.SchemaLinker;
+import com.bi.assistant.schema.TableInfo;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schema linking on the 500-relation {@link SyntheticSchema}: how long linking a question
+ * takes, against rendering the whole schema, and how many prompt tokens it saves. The
+ * token counts (about four characters per token, as in {@link OllamaStub}) are printed
+ * once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SchemaLinkingBenchmark {
+
+    private SchemaCatalog catalog;
+    private SchemaLinker linker;
+    private int question;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        catalog = SyntheticSchema.catalog();
+        linker = new SchemaLinker(catalog, SyntheticSchema.sampler(), new AssistantProperties());
+
+        int fullTokens = CompactSchemaRenderer.render(catalog.tableInfos()).length() / 4;
+        int linkedTokens = 0;
+        for (String text : SyntheticSchema.QUESTIONS) {
+            List<TableInfo> linked = linker.link(text);
+            int tokens = CompactSchemaRenderer.render(linked).length() / 4;
+            linkedTokens += tokens;
+            System.out.printf("%n%-60s %3d relations, ~%,d tokens", text, linked.size(), tokens);
+        }
+        int averageTokens = linkedTokens / SyntheticSchema.QUESTIONS.size();
+        System.out.printf("%nFull schema: %d relations, ~%,d tokens; linked: ~%,d tokens on average (%.1f%% of full)%n",
+                catalog.tables().size(), fullTokens, averageTokens, 100.0 * averageTokens / fullTokens);
+    }
+
+    @Benchmark
+    public List<TableInfo> link() {
+        return linker.link(nextQuestion());
+    }
+
+    @Benchmark
+    public String linkAndRender() {
+        return CompactSchemaRenderer.render(linker.link(nextQuestion()));
+    }
+
+    @Benchmark
+    public String renderFullSchema() {
+        return CompactSchemaRenderer.render(catalog.tableInfos());
+    }
+
+    private String nextQuestion() {
+        question = (question + 1) % SyntheticSchema.QUESTIONS.size();
+        return SyntheticSchema.QUESTIONS.get(question);
+    }
+}
@@ -0,0 +1,106 @@
+package com.bi.assistant.benchmark;
+
+import com.bi.assistant.cache.VectorIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Semantic cache lookups at the default {@code bi.assistant.semantic-cache.max-entries}
+ * of 100k: {@link VectorIndex#nearest}, which ranks entries by SimHash distance and
+ * computes cosine similarity only for the closest {@code candidates}, against an exact
+ * cosine scan over every entry. Queries are stored vectors with a little noise added, as
+ * a paraphrase's embedding would be; 768 dimensions is nomic-embed-text.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SemanticCacheLookupBenchmark {
+
+    private static final int QUERIES = 1024;
+
+    @Param({"100000"})
+    private int entries;
+
+    @Param({"256", "768"})
+    private int dimensions;
+
+    @Param({"64"})
+    private int candidates;
+
+    private VectorIndex<Integer> index;
+    private float[] flat;
+    private float[][] queries;
+    private int query;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(7);
+        index = new VectorIndex<>(dimensions, entries, candidates);
+        flat = new float[entries * dimensions];
+        for (int i = 0; i < entries; i++) {
+            float[] vector = randomUnit(random, 0f, null);
+            index.add(vector, i);
+            System.arraycopy(vector, 0, flat, i * dimensions, dimensions);
+        }
+        queries = new float[QUERIES][];
+        int found = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            int target = random.nextInt(entries);
+            float[] stored = new float[dimensions];
+            System.arraycopy(flat, target * dimensions, stored, 0, dimensions);
+            queries[i] = randomUnit(random, 0.1f, stored);
+            if (index.nearest(queries[i]).payload() == target) {
+                found++;
+            }
+        }
+        System.out.printf("%nSimHash lookup found the paraphrased entry for %d of %d queries%n", found, QUERIES);
+    }
+
+    @Benchmark
+    public VectorIndex.Match<Integer> nearest() {
+        return index.nearest(nextQuery());
+    }
+
+    @Benchmark
+    public int exactScan() {
+        float[] vector = nextQuery();
+        int best = -1;
+        float bestSimilarity = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < entries; i++) {
+            float similarity = 0f;
+            int offset = i * dimensions;
+            for (int d = 0; d < dimensions; d++) {
+                similarity += vector[d] * flat[offset + d];
+            }
+            if (similarity > bestSimilarity) {
+                bestSimilarity = similarity;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private float[] nextQuery() {
+        query = (query + 1) % QUERIES;
+        return queries[query];
+    }
+
+    /**
+     * A random unit vector, or {@code base} moved by {@code noise} in a random direction.
+     */
+    private float[] randomUnit(SplittableRandom random, float noise, float[] base) {
+        float[] vector = new float[dimensions];
+        double norm = 0;
+        for (int d = 0; d < dimensions; d++) {
+            float gaussian = (float) random.nextGaussian();
+            vector[d] = base == null ? gaussian : base[d] + noise * gaussian / (float) Math.sqrt(dimensions);
+            norm += vector[d] * vector[d];
+        }
+        for (int d = 0; d < dimensions; d++) {
+            vector[d] /= (float) Math.sqrt(norm);
+        }
+        return vector;
+    }
+}
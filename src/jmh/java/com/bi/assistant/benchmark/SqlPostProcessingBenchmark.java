@@ -0,0 +1,61 @@
+package com.bi.assistant.benchmark;
+
+import com.bi.assistant.service.SqlPostProcessor;
+import com.bi.assistant.service.SqlValidator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-request SQL post-processing path: extraction from the raw LLM response,
+ * validation and query-type classification, against the {@link LegacySqlPostProcessor}
+ * baseline. Run with {@code -prof gc} to see allocation per operation; tail latency of
+ * validation alone is in {@link SqlValidationBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SqlPostProcessingBenchmark {
+
+    @Param({"plain", "fenced", "multiStatement", "withExplanation", "orAlternative", "cte"})
+    private String shape;
+
+    private final SqlPostProcessor sqlPostProcessor = new SqlPostProcessor();
+    private final SqlValidator sqlValidator = new SqlValidator(LlmResponseCorpus.SCHEMA);
+    private final LegacySqlPostProcessor legacySqlPostProcessor = new LegacySqlPostProcessor();
+    private String response;
+    private String sql;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        response = LlmResponseCorpus.RESPONSES.get(shape);
+        sql = sqlPostProcessor.extractSql(response);
+    }
+
+    @Benchmark
+    public String extractSql() {
+        return sqlPostProcessor.extractSql(response);
+    }
+
+    @Benchmark
+    public String validate() {
+        return sqlValidator.validate(sql).queryType();
+    }
+
+    @Benchmark
+    public String fullPipeline() {
+        return sqlValidator.validate(sqlPostProcessor.extractSql(response)).queryType();
+    }
+
+    @Benchmark
+    public String legacyExtractSql() {
+        return legacySqlPostProcessor.extractSql(response);
+    }
+
+    @Benchmark
+    public String legacyFullPipeline() {
+        String extracted = legacySqlPostProcessor.extractSql(response);
+        legacySqlPostProcessor.validate(extracted);
+        return legacySqlPostProcessor.determineQueryType(extracted);
+    }
+}
@@ -0,0 +1,34 @@
+package com.bi.assistant.benchmark;
+
+import com.bi.assistant.service.SqlPostProcessor;
+import com.bi.assistant.service.SqlValidator;
+import com.bi.assistant.service.ValidatedSql;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parse-tree validation of every corpus shape. Sampled rather than averaged, so the
+ * report carries p99 and p99.9 per shape; the budget is 100µs at p99.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SqlValidationBenchmark {
+
+    @Param({"plain", "fenced", "multiStatement", "withExplanation", "orAlternative", "cte"})
+    private String shape;
+
+    private final SqlValidator sqlValidator = new SqlValidator(LlmResponseCorpus.SCHEMA);
+    private String sql;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        sql = new SqlPostProcessor().extractSql(LlmResponseCorpus.RESPONSES.get(shape));
+    }
+
+    @Benchmark
+    public ValidatedSql validate() {
+        return sqlValidator.validate(sql);
+    }
+}
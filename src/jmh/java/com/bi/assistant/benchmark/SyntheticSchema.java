@@ -0,0 +1,114 @@
+package com.bi.assistant.benchmark;
+
+import com.bi.assistant.schema.ColumnValueSampler;
+import com.bi.assistant.schema.SchemaCatalog;
+import com.bi.assistant.schema.TableInfo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A warehouse-sized schema: 20 business domains of 25 relations each, every relation
+ * referencing its domain's base table and some referencing other domains, with 8 to 40
+ * columns drawn from a shared vocabulary. Generated from a fixed seed, so every run
+ * links against the same 500 relations.
+ */
+final class SyntheticSchema {
+
+    static final List<String> QUESTIONS = List.of(
+            "Total invoice amount by status last month",
+            "Which customers opened the most support tickets this year",
+            "Average shipment delay per warehouse",
+            "Top 10 suppliers by purchase order value",
+            "Refunds issued for Electronics in the North region",
+            "Monthly subscription churn by plan",
+            "Employees per department with their average salary",
+            "Campaign conversion rate by channel");
+
+    private static final String[] DOMAINS = {
+            "customer", "product", "order", "invoice", "payment", "shipment", "supplier", "warehouse", "employee",
+            "department", "campaign", "ticket", "contract", "subscription", "account", "store", "inventory",
+            "refund", "review", "purchase_order"};
+
+    private static final String[] SUFFIXES = {
+            "line", "history", "audit", "archive", "staging", "snapshot", "detail", "summary", "event", "note",
+            "attachment", "tag", "status_change", "assignment", "approval", "metric", "daily", "weekly", "monthly",
+            "forecast", "budget", "adjustment", "allocation", "exception"};
+
+    private static final String[][] COLUMNS = {
+            {"created_at", "timestamp"}, {"updated_at", "timestamp"}, {"status", "varchar"}, {"amount", "numeric"},
+            {"quantity", "int4"}, {"name", "varchar"}, {"code", "varchar"}, {"description", "text"},
+            {"notes", "text"}, {"score", "numeric"}, {"region", "varchar"}, {"channel", "varchar"},
+            {"currency", "varchar"}, {"delay_days", "int4"}, {"salary", "numeric"}, {"plan", "varchar"},
+            {"category", "varchar"}, {"priority", "varchar"}, {"due_date", "date"}, {"closed_at", "timestamp"},
+            {"owner", "varchar"}, {"source", "varchar"}, {"rate", "numeric"}, {"discount", "numeric"},
+            {"tax", "numeric"}, {"total", "numeric"}, {"valid_from", "date"}, {"valid_to", "date"},
+            {"is_active", "bool"}, {"external_ref", "varchar"}, {"country", "varchar"}, {"city", "varchar"},
+            {"email", "varchar"}, {"phone", "varchar"}, {"version", "int4"}, {"weight", "numeric"},
+            {"conversion_rate", "numeric"}, {"churned_at", "timestamp"}, {"opened_at", "timestamp"},
+            {"rating", "int4"}};
+
+    private static final Map<String, List<String>> VALUES = Map.of(
+            "status", List.of("open", "closed", "pending", "paid", "overdue", "cancelled"),
+            "region", List.of("North", "South", "East", "West"),
+            "channel", List.of("email", "social", "search", "referral"),
+            "plan", List.of("Basic", "Standard", "Premium"),
+            "category", List.of("Electronics", "Appliances", "Accessories", "Furniture"),
+            "priority", List.of("low", "medium", "high", "urgent"));
+
+    private SyntheticSchema() {
+    }
+
+    static SchemaCatalog catalog() {
+        Random random = new Random(42);
+        List<TableInfo> tables = new ArrayList<>();
+        for (String domain : DOMAINS) {
+            String base = domain + "s";
+            tables.add(table(random, base));
+            for (int i = 0; i < SUFFIXES.length; i++) {
+                String other = i % 5 == 0 ? DOMAINS[random.nextInt(DOMAINS.length)] + "s" : null;
+                tables.add(table(random, domain + "_" + SUFFIXES[i], base, other));
+            }
+        }
+        return SchemaCatalog.of("public", tables);
+    }
+
+    /**
+     * Samples the fixed value lists for the columns that have one.
+     */
+    static ColumnValueSampler sampler() {
+        return table -> {
+            Map<String, List<String>> values = new HashMap<>();
+            table.columnNames().forEach(column -> {
+                if (VALUES.containsKey(column)) {
+                    values.put(column, VALUES.get(column));
+                }
+            });
+            return values;
+        };
+    }
+
+    private static TableInfo table(Random random, String name, String... referenced) {
+        List<TableInfo.Column> columns = new ArrayList<>();
+        List<TableInfo.ForeignKey> foreignKeys = new ArrayList<>();
+        columns.add(new TableInfo.Column("id", "int8", false, null));
+        for (String table : referenced) {
+            if (table != null && !table.equals(name)) {
+                String column = table.substring(0, table.length() - 1) + "_id";
+                columns.add(new TableInfo.Column(column, "int8", false, null));
+                foreignKeys.add(new TableInfo.ForeignKey(column, table, "id"));
+            }
+        }
+        int count = 8 + random.nextInt(33);
+        for (int i = 0; columns.size() < count && i < COLUMNS.length; i++) {
+            String[] column = COLUMNS[(i * 7 + random.nextInt(COLUMNS.length)) % COLUMNS.length];
+            if (columns.stream().noneMatch(existing -> existing.name().equals(column[0]))) {
+                columns.add(new TableInfo.Column(column[0], column[1], true, null));
+            }
+        }
+        return new TableInfo(name, TableInfo.Kind.TABLE, columns, List.of("id"), foreignKeys, List.of(), null);
+    }
+}
@@ -0,0 +1,70 @@
+package com.bi.assistant.benchmark;
+
+import com.bi.assistant.config.AssistantProperties;
+import com.bi.assistant.service.SqlPromptBuilder;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.ollama.OllamaChatModel;
+import org.springframework.ai.ollama.api.OllamaApi;
+import org.springframework.ai.ollama.api.OllamaOptions;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to the first streamed token through Spring AI's Ollama client against
+ * {@link OllamaStub}, which charges prompt evaluation only for what follows the prefix
+ * shared with the previous prompt. Every invocation asks a different question, as in
+ * production. With the legacy layout everything from the question onwards (dates, rules
+ * and examples) is evaluated again; with {@link SqlPromptBuilder} only the short suffix is.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TimeToFirstTokenBenchmark {
+
+    private static final String[] QUESTIONS = {
+            "Show me the top 5 products by revenue last quarter",
+            "What is the total revenue by category this year?",
+            "Which customers bought the most products?",
+            "Show me sales trends by region",
+            "What are the best selling products in Electronics category?",
+            "Show me monthly revenue for this year",
+            "Which sales person has the highest revenue?",
+            "What is the average order value by customer segment?"
+    };
+
+    @Param({"legacy", "prefixed"})
+    private String layout;
+
+    private final LegacyPromptRenderer legacyPromptRenderer = new LegacyPromptRenderer();
+    private final SqlPromptBuilder promptBuilder = new SqlPromptBuilder(LlmResponseCorpus.SCHEMA, new AssistantProperties());
+    private OllamaStub ollama;
+    private ChatClient chatClient;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        ollama = new OllamaStub();
+        OllamaChatModel chatModel = OllamaChatModel.builder()
+                .ollamaApi(OllamaApi.builder().baseUrl(ollama.baseUrl()).build())
+                .defaultOptions(OllamaOptions.builder().model("llama3.2").build())
+                .build();
+        chatClient = ChatClient.create(chatModel);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ollama.close();
+    }
+
+    @Benchmark
+    public String firstToken() {
+        String question = QUESTIONS[next++ % QUESTIONS.length];
+        Prompt prompt = "legacy".equals(layout)
+                ? legacyPromptRenderer.render(question)
+                : promptBuilder.build(question, null);
+        return chatClient.prompt(prompt).stream().content().blockFirst();
+    }
+}
@@ -2,8 +2,10 @@ package com.bi.assistant;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 
 @SpringBootApplication
+@ConfigurationPropertiesScan
 public class NlqToSqlBusinessIntelligenceAssistantApplication {
 
 	public static void main(String[] args) {
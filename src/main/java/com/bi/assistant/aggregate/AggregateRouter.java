@@ -0,0 +1,603 @@
+package com.bi.assistant.aggregate;
+
+import com.bi.assistant.config.AssistantProperties;
+import com.bi.assistant.exception.QueryExecutionException;
+import com.bi.assistant.schema.SchemaCatalog;
+import com.bi.assistant.schema.TableInfo;
+import com.bi.assistant.service.SqlValidator;
+import com.bi.assistant.service.ValidatedSql;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import net.sf.jsqlparser.expression.AnalyticExpression;
+import net.sf.jsqlparser.expression.CastExpression;
+import net.sf.jsqlparser.expression.DateTimeLiteralExpression;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.ExtractExpression;
+import net.sf.jsqlparser.expression.Function;
+import net.sf.jsqlparser.expression.LongValue;
+import net.sf.jsqlparser.expression.StringValue;
+import net.sf.jsqlparser.expression.operators.relational.Between;
+import net.sf.jsqlparser.expression.operators.relational.EqualsTo;
+import net.sf.jsqlparser.expression.operators.relational.GreaterThan;
+import net.sf.jsqlparser.expression.operators.relational.GreaterThanEquals;
+import net.sf.jsqlparser.expression.operators.relational.MinorThan;
+import net.sf.jsqlparser.expression.operators.relational.MinorThanEquals;
+import net.sf.jsqlparser.schema.Column;
+import net.sf.jsqlparser.schema.Table;
+import net.sf.jsqlparser.statement.select.AllColumns;
+import net.sf.jsqlparser.statement.select.GroupByElement;
+import net.sf.jsqlparser.statement.select.Join;
+import net.sf.jsqlparser.statement.select.OrderByElement;
+import net.sf.jsqlparser.statement.select.ParenthesedSelect;
+import net.sf.jsqlparser.statement.select.PlainSelect;
+import net.sf.jsqlparser.statement.select.SelectItem;
+import net.sf.jsqlparser.util.deparser.ExpressionDeParser;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Answers aggregate queries over a fact table from a {@link PreAggregation} instead,
+ * when the rollup holds everything the query needs. The generated SQL is checked on its
+ * parse tree: one SELECT from the fact table, joined only as the rollup was, grouping
+ * and filtering only on rollup dimensions, aggregating only with {@code SUM},
+ * {@code COUNT(*)}, {@code AVG} of summed measures, or {@code MIN}/{@code MAX} of
+ * dimensions. Such a query is rewritten column for column against the view, e.g.
+ * <pre>
+ * SELECT p.category, SUM(s.revenue) FROM sales s JOIN products p ON p.id = s.product_id GROUP BY p.category
+ * SELECT category, SUM(revenue) AS sum FROM sales_monthly_rollup WHERE category IS NOT NULL GROUP BY category
+ * </pre>
+ * Anything else (subqueries, window functions, a column the rollup doesn't have, a date
+ * filter finer than the rollup's grain) runs as generated against the base tables.
+ * <p>
+ * A rollup is only used while its last refresh by {@link MaterializedViewRefresher} is
+ * within {@code bi.assistant.aggregates.max-staleness}. Rollups are tried in the order
+ * they are registered, so the coarsest should come first.
+ */
+@Component
+@Slf4j
+public class AggregateRouter {
+
+    private static final Set<String> MONTH_TRUNCATIONS = Set.of("month", "quarter", "year");
+    private static final Set<String> MONTH_EXTRACT_FIELDS = Set.of("year", "quarter", "month");
+    // to_char formats that don't look below the month: 'YYYY-MM', 'Mon YYYY', 'YYYY "Q"Q', ...
+    private static final Pattern MONTH_FORMAT = Pattern.compile("(YYYY|YY|Y|Q|MM|MONTH|MON|\"Q\"|[\\s\\-/.,:])*");
+    private static final Set<String> SCALAR_FUNCTIONS = Set.of(
+            "round", "trunc", "coalesce", "nullif", "abs", "ceil", "floor", "greatest", "least", "upper", "lower");
+
+    private final List<PreAggregation> preAggregations;
+    private final SqlValidator sqlValidator;
+    private final SchemaCatalog schemaCatalog;
+    private final boolean enabled;
+    private final Duration maxStaleness;
+    private final Map<String, Instant> refreshedAt = new ConcurrentHashMap<>();
+    private final Map<String, Counter> routed = new HashMap<>();
+    private final Counter notRouted;
+
+    @Autowired
+    public AggregateRouter(List<PreAggregation> preAggregations, SqlValidator sqlValidator,
+                           SchemaCatalog schemaCatalog, AssistantProperties properties, MeterRegistry meterRegistry) {
+        this.preAggregations = List.copyOf(preAggregations);
+        this.sqlValidator = sqlValidator;
+        this.schemaCatalog = schemaCatalog;
+        this.enabled = properties.getAggregates().isEnabled();
+        this.maxStaleness = properties.getAggregates().getMaxStaleness();
+        for (PreAggregation preAggregation : preAggregations) {
+            routed.put(preAggregation.view(), queries(meterRegistry, preAggregation.view()));
+        }
+        this.notRouted = queries(meterRegistry, "none");
+    }
+
+    public List<PreAggregation> preAggregations() {
+        return preAggregations;
+    }
+
+    /**
+     * The query rewritten against the first fresh rollup that can answer it, or the query
+     * itself. The validated tree is never modified; the rewrite is validated into a new one.
+     */
+    public ValidatedSql route(ValidatedSql validatedSql) {
+        if (!enabled || preAggregations.isEmpty() || !(validatedSql.statement() instanceof PlainSelect select)) {
+            return validatedSql;
+        }
+        for (PreAggregation preAggregation : preAggregations) {
+            if (!isFresh(preAggregation.view())) {
+                continue;
+            }
+            String sql;
+            try {
+                sql = new Rewriter(preAggregation, select).rewrite();
+            } catch (NotRoutable e) {
+                log.trace("Not answerable from {}: {}", preAggregation.view(), e.getMessage());
+                continue;
+            }
+            try {
+                // Validated like generated SQL: a rollup missing from the catalog, or missing a column, is not used
+                ValidatedSql rewritten = sqlValidator.validate(sql);
+                routed.get(preAggregation.view()).increment();
+                log.debug("Routed to {}: {}", preAggregation.view(), sql);
+                return rewritten;
+            } catch (QueryExecutionException e) {
+                log.warn("Rewrite against {} failed validation, running the original: {}", preAggregation.view(),
+                        e.getMessage());
+            }
+        }
+        notRouted.increment();
+        return validatedSql;
+    }
+
+    /**
+     * Records a successful refresh; called by {@link MaterializedViewRefresher}.
+     */
+    public void markRefreshed(String view) {
+        refreshedAt.put(view, Instant.now());
+    }
+
+    public boolean isFresh(String view) {
+        Instant refreshed = refreshedAt.get(view);
+        return refreshed != null && Duration.between(refreshed, Instant.now()).compareTo(maxStaleness) <= 0;
+    }
+
+    private static Counter queries(MeterRegistry meterRegistry, String view) {
+        return Counter.builder("bi.aggregates.queries")
+                .description("Queries by the rollup that answered them, none for those run against the base tables")
+                .tag("view", view)
+                .register(meterRegistry);
+    }
+
+    private static String normalize(String name) {
+        if (name == null) {
+            return null;
+        }
+        if (name.length() > 1 && name.startsWith("\"") && name.endsWith("\"")) {
+            name = name.substring(1, name.length() - 1);
+        }
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * The date of a date literal: {@code '2025-07-01'}, {@code DATE '2025-07-01'} or
+     * {@code '2025-07-01'::date}; null for anything else.
+     */
+    private static LocalDate dateLiteral(Expression expression) {
+        String text = null;
+        if (expression instanceof StringValue value) {
+            text = value.getValue();
+        } else if (expression instanceof DateTimeLiteralExpression literal) {
+            text = literal.getValue().replace("'", "");
+        } else if (expression instanceof CastExpression cast && cast.getLeftExpression() instanceof StringValue value) {
+            text = value.getValue();
+        }
+        if (text == null) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(text.strip());
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Deparses one query's expressions against one rollup, failing with
+     * {@link NotRoutable} at the first thing the rollup can't answer.
+     */
+    private final class Rewriter extends ExpressionDeParser {
+
+        private final PreAggregation preAggregation;
+        private final PlainSelect select;
+        private final Map<String, String> tablesByQualifier = new HashMap<>();
+        private final List<String> queryTables = new ArrayList<>();
+        private final Set<String> selectAliases = new HashSet<>();
+        private boolean monthContext;
+        private int aggregates;
+
+        Rewriter(PreAggregation preAggregation, PlainSelect select) {
+            this.preAggregation = preAggregation;
+            this.select = select;
+        }
+
+        String rewrite() {
+            if (select.getDistinct() != null || select.getFetch() != null || select.getTop() != null
+                    || (select.getWithItemsList() != null && !select.getWithItemsList().isEmpty())) {
+                throw new NotRoutable("DISTINCT, FETCH, TOP or WITH");
+            }
+            if (!(select.getFromItem() instanceof Table from)
+                    || !preAggregation.factTable().equals(normalize(from.getName()))
+                    || (from.getSchemaName() != null
+                        && !schemaCatalog.schema().equals(normalize(from.getSchemaName())))) {
+                throw new NotRoutable("not a query on " + preAggregation.factTable());
+            }
+            register(from);
+            List<String> conditions = new ArrayList<>(joins());
+
+            for (SelectItem<?> item : select.getSelectItems()) {
+                if (item.getAlias() != null) {
+                    selectAliases.add(normalize(item.getAlias().getName()));
+                }
+            }
+            List<String> selected = new ArrayList<>();
+            for (SelectItem<?> item : select.getSelectItems()) {
+                Expression expression = item.getExpression();
+                if (expression instanceof AllColumns) {
+                    throw new NotRoutable("SELECT *");
+                }
+                String alias = item.getAlias() != null
+                        ? item.getAlias().getName()
+                        // Keep the column name the original would have had; the rewrite may call another function
+                        : expression instanceof Function function ? normalize(function.getName()) : null;
+                selected.add(deparse(expression) + (alias == null ? "" : " AS " + alias));
+            }
+
+            if (select.getWhere() != null) {
+                conditions.add(0, "(" + deparse(select.getWhere()) + ")");
+            }
+            StringBuilder sql = new StringBuilder("SELECT ").append(String.join(", ", selected))
+                    .append(" FROM ").append(preAggregation.view());
+            if (!conditions.isEmpty()) {
+                sql.append(" WHERE ").append(String.join(" AND ", conditions));
+            }
+            GroupByElement groupBy = select.getGroupBy();
+            if (groupBy != null) {
+                if (groupBy.getGroupingSets() != null && !groupBy.getGroupingSets().isEmpty()) {
+                    throw new NotRoutable("GROUPING SETS");
+                }
+                List<String> groups = new ArrayList<>();
+                for (Object expression : groupBy.getGroupByExpressionList()) {
+                    groups.add(deparse((Expression) expression));
+                }
+                sql.append(" GROUP BY ").append(String.join(", ", groups));
+            } else if (aggregates == 0) {
+                throw new NotRoutable("not an aggregate query");
+            }
+            if (select.getHaving() != null) {
+                sql.append(" HAVING ").append(deparse(select.getHaving()));
+            }
+            if (select.getOrderByElements() != null && !select.getOrderByElements().isEmpty()) {
+                List<String> orders = new ArrayList<>();
+                for (OrderByElement element : select.getOrderByElements()) {
+                    String order = deparse(element.getExpression());
+                    if (element.isAscDescPresent()) {
+                        order += element.isAsc() ? " ASC" : " DESC";
+                    }
+                    if (element.getNullOrdering() != null) {
+                        order += element.getNullOrdering() == OrderByElement.NullOrdering.NULLS_FIRST
+                                ? " NULLS FIRST" : " NULLS LAST";
+                    }
+                    orders.add(order);
+                }
+                sql.append(" ORDER BY ").append(String.join(", ", orders));
+            }
+            if (select.getLimit() != null) {
+                sql.append(' ').append(select.getLimit().toString().strip());
+            }
+            if (select.getOffset() != null) {
+                sql.append(' ').append(select.getOffset().toString().strip());
+            }
+            return sql.toString();
+        }
+
+        /**
+         * Checks every join against the rollup's and returns the conditions that make
+         * the rollup's LEFT JOINs behave like the query's inner joins.
+         */
+        private List<String> joins() {
+            if (select.getJoins() == null) {
+                return List.of();
+            }
+            Map<Join, PreAggregation.Join> declared = new LinkedHashMap<>();
+            for (Join join : select.getJoins()) {
+                if (!(join.getRightItem() instanceof Table table) || join.isSimple() || join.isNatural()
+                        || join.isRight() || join.isFull() || join.isCross()
+                        || (join.getUsingColumns() != null && !join.getUsingColumns().isEmpty())) {
+                    throw new NotRoutable("unsupported join");
+                }
+                String name = normalize(table.getName());
+                PreAggregation.Join rollupJoin = preAggregation.joins().stream()
+                        .filter(candidate -> candidate.table().equals(name))
+                        .findFirst()
+                        .orElseThrow(() -> new NotRoutable("join to " + name));
+                register(table);
+                declared.put(join, rollupJoin);
+            }
+
+            List<String> conditions = new ArrayList<>();
+            declared.forEach((join, rollupJoin) -> {
+                if (join.getOnExpressions() == null || join.getOnExpressions().size() != 1
+                        || !(join.getOnExpressions().iterator().next() instanceof EqualsTo on)
+                        || !(on.getLeftExpression() instanceof Column left)
+                        || !(on.getRightExpression() instanceof Column right)) {
+                    throw new NotRoutable("join condition");
+                }
+                Set<String> sides = new HashSet<>();
+                sides.add(resolve(left));
+                sides.add(resolve(right));
+                if (!sides.equals(Set.of(preAggregation.factTable() + "." + rollupJoin.factColumn(),
+                        rollupJoin.table() + "." + rollupJoin.tableColumn()))) {
+                    throw new NotRoutable("join condition");
+                }
+                if (!join.isLeft()) {
+                    conditions.add(rollupJoin.presenceColumn() + " IS NOT NULL");
+                }
+            });
+            return conditions;
+        }
+
+        private void register(Table table) {
+            String name = normalize(table.getName());
+            queryTables.add(name);
+            tablesByQualifier.put(name, name);
+            if (table.getAlias() != null) {
+                tablesByQualifier.put(normalize(table.getAlias().getName()), name);
+            }
+        }
+
+        /**
+         * {@code table.column} for a column of a table in the query, null otherwise.
+         */
+        private String resolve(Column column) {
+            String name = normalize(column.getColumnName());
+            Table qualifier = column.getTable();
+            if (qualifier != null && qualifier.getName() != null) {
+                String table = tablesByQualifier.get(normalize(qualifier.getName()));
+                return table == null ? null : table + "." + name;
+            }
+            for (String table : queryTables) {
+                if (schemaCatalog.columns(table).contains(name)) {
+                    return table + "." + name;
+                }
+            }
+            return null;
+        }
+
+        private String deparse(Expression expression) {
+            StringBuilder buffer = getBuffer();
+            buffer.setLength(0);
+            expression.accept(this);
+            return buffer.toString();
+        }
+
+        private void visitInMonthContext(boolean month, Expression expression) {
+            boolean outer = monthContext;
+            monthContext = month;
+            try {
+                expression.accept(this);
+            } finally {
+                monthContext = outer;
+            }
+        }
+
+        private boolean isTimeColumn(Expression expression) {
+            return preAggregation.time() != null && expression instanceof Column column
+                    && preAggregation.time().column().equals(resolve(column));
+        }
+
+        @Override
+        public void visit(Column column) {
+            Table qualifier = column.getTable();
+            String name = normalize(column.getColumnName());
+            if ((qualifier == null || qualifier.getName() == null) && selectAliases.contains(name)) {
+                getBuffer().append(column.getColumnName());
+                return;
+            }
+            String key = resolve(column);
+            if (key == null) {
+                throw new NotRoutable("unknown column " + column);
+            }
+            if (preAggregation.time() != null && key.equals(preAggregation.time().column())) {
+                if (!monthContext) {
+                    throw new NotRoutable(key + " below month granularity");
+                }
+                getBuffer().append(preAggregation.time().monthColumn());
+                return;
+            }
+            String mapped = preAggregation.dimensions().get(key);
+            if (mapped == null) {
+                throw new NotRoutable(key + " is not a dimension");
+            }
+            getBuffer().append(mapped);
+        }
+
+        @Override
+        public void visit(Function function) {
+            String name = normalize(function.getName());
+            List<Expression> arguments = new ArrayList<>();
+            if (function.getParameters() != null) {
+                for (Object argument : function.getParameters()) {
+                    arguments.add((Expression) argument);
+                }
+            }
+            if (function.isDistinct()) {
+                throw new NotRoutable("DISTINCT aggregate");
+            }
+            StringBuilder buffer = getBuffer();
+            switch (name) {
+                case "sum", "avg" -> {
+                    String sum = arguments.size() == 1 && arguments.get(0) instanceof Column column
+                            ? preAggregation.sums().get(resolve(column))
+                            : null;
+                    if (sum == null) {
+                        throw new NotRoutable(name + " of something other than a measure");
+                    }
+                    aggregates++;
+                    if (name.equals("sum")) {
+                        buffer.append("SUM(").append(sum).append(')');
+                    } else {
+                        buffer.append("(SUM(").append(sum).append(")::numeric / NULLIF(SUM(")
+                                .append(preAggregation.countColumn()).append("), 0))");
+                    }
+                }
+                case "count" -> {
+                    if (!function.isAllColumns() && !(arguments.size() == 1 && countsRows(arguments.get(0)))) {
+                        throw new NotRoutable("COUNT of a column");
+                    }
+                    aggregates++;
+                    buffer.append("SUM(").append(preAggregation.countColumn()).append(')');
+                }
+                case "min", "max" -> {
+                    if (arguments.size() != 1) {
+                        throw new NotRoutable(name);
+                    }
+                    aggregates++;
+                    buffer.append(name.toUpperCase(Locale.ROOT)).append('(');
+                    arguments.get(0).accept(this);
+                    buffer.append(')');
+                }
+                case "date_trunc" -> {
+                    if (arguments.size() != 2 || !(arguments.get(0) instanceof StringValue unit)) {
+                        throw new NotRoutable("date_trunc");
+                    }
+                    buffer.append("date_trunc('").append(unit.getValue()).append("', ");
+                    visitInMonthContext(MONTH_TRUNCATIONS.contains(unit.getValue().toLowerCase(Locale.ROOT)),
+                            arguments.get(1));
+                    buffer.append(')');
+                }
+                case "to_char" -> {
+                    if (arguments.size() != 2 || !(arguments.get(1) instanceof StringValue format)) {
+                        throw new NotRoutable("to_char");
+                    }
+                    buffer.append("to_char(");
+                    visitInMonthContext(MONTH_FORMAT.matcher(format.getValue().toUpperCase(Locale.ROOT)).matches(),
+                            arguments.get(0));
+                    buffer.append(", ").append(format).append(')');
+                }
+                default -> {
+                    if (!SCALAR_FUNCTIONS.contains(name)) {
+                        throw new NotRoutable("function " + name);
+                    }
+                    buffer.append(function.getName()).append('(');
+                    for (int i = 0; i < arguments.size(); i++) {
+                        if (i > 0) {
+                            buffer.append(", ");
+                        }
+                        arguments.get(i).accept(this);
+                    }
+                    buffer.append(')');
+                }
+            }
+        }
+
+        private boolean countsRows(Expression argument) {
+            if (argument instanceof AllColumns || argument instanceof LongValue) {
+                return true;
+            }
+            if (!(argument instanceof Column column)) {
+                return false;
+            }
+            TableInfo fact = schemaCatalog.table(preAggregation.factTable());
+            String key = resolve(column);
+            return fact != null && fact.primaryKey().size() == 1
+                    && (preAggregation.factTable() + "." + fact.primaryKey().get(0)).equals(key);
+        }
+
+        @Override
+        public void visit(ExtractExpression extract) {
+            StringBuilder buffer = getBuffer();
+            buffer.append("EXTRACT(").append(extract.getName()).append(" FROM ");
+            visitInMonthContext(MONTH_EXTRACT_FIELDS.contains(extract.getName().toLowerCase(Locale.ROOT)),
+                    extract.getExpression());
+            buffer.append(')');
+        }
+
+        // Date filters on a monthly rollup: exact only at month boundaries
+
+        @Override
+        public void visit(GreaterThanEquals comparison) {
+            LocalDate date = isTimeColumn(comparison.getLeftExpression())
+                    ? dateLiteral(comparison.getRightExpression()) : null;
+            if (date != null && date.getDayOfMonth() == 1) {
+                appendMonthComparison(">=", date);
+            } else {
+                super.visit(comparison);
+            }
+        }
+
+        @Override
+        public void visit(MinorThan comparison) {
+            LocalDate date = isTimeColumn(comparison.getLeftExpression())
+                    ? dateLiteral(comparison.getRightExpression()) : null;
+            if (date != null && date.getDayOfMonth() == 1) {
+                appendMonthComparison("<", date);
+            } else {
+                super.visit(comparison);
+            }
+        }
+
+        @Override
+        public void visit(GreaterThan comparison) {
+            LocalDate date = isTimeColumn(comparison.getLeftExpression())
+                    ? dateLiteral(comparison.getRightExpression()) : null;
+            if (date != null && isLastDayOfMonth(date)) {
+                appendMonthComparison(">", date.withDayOfMonth(1));
+            } else {
+                super.visit(comparison);
+            }
+        }
+
+        @Override
+        public void visit(MinorThanEquals comparison) {
+            LocalDate date = isTimeColumn(comparison.getLeftExpression())
+                    ? dateLiteral(comparison.getRightExpression()) : null;
+            if (date != null && isLastDayOfMonth(date)) {
+                appendMonthComparison("<=", date.withDayOfMonth(1));
+            } else {
+                super.visit(comparison);
+            }
+        }
+
+        @Override
+        public void visit(Between between) {
+            LocalDate start = isTimeColumn(between.getLeftExpression())
+                    ? dateLiteral(between.getBetweenExpressionStart()) : null;
+            LocalDate end = start != null ? dateLiteral(between.getBetweenExpressionEnd()) : null;
+            if (start != null && end != null && start.getDayOfMonth() == 1 && isLastDayOfMonth(end)) {
+                getBuffer().append(preAggregation.time().monthColumn())
+                        .append(between.isNot() ? " NOT BETWEEN '" : " BETWEEN '").append(start)
+                        .append("' AND '").append(end.withDayOfMonth(1)).append('\'');
+            } else {
+                super.visit(between);
+            }
+        }
+
+        private void appendMonthComparison(String operator, LocalDate month) {
+            getBuffer().append(preAggregation.time().monthColumn())
+                    .append(' ').append(operator).append(" '").append(month).append('\'');
+        }
+
+        private static boolean isLastDayOfMonth(LocalDate date) {
+            return date.getDayOfMonth() == date.lengthOfMonth();
+        }
+
+        @Override
+        public void visit(AnalyticExpression analytic) {
+            throw new NotRoutable("window function");
+        }
+
+        @Override
+        public void visit(ParenthesedSelect subquery) {
+            throw new NotRoutable("subquery");
+        }
+    }
+
+    private static final class NotRoutable extends RuntimeException {
+
+        NotRoutable(String reason) {
+            super(reason, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package com.bi.assistant.aggregate;
+
+import com.bi.assistant.service.ValidatedSql;
+import net.sf.jsqlparser.JSQLParserException;
+import net.sf.jsqlparser.expression.Alias;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.Function;
+import net.sf.jsqlparser.expression.LongValue;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import net.sf.jsqlparser.schema.Column;
+import net.sf.jsqlparser.schema.Table;
+import net.sf.jsqlparser.statement.select.AllColumns;
+import net.sf.jsqlparser.statement.select.GroupByElement;
+import net.sf.jsqlparser.statement.select.Join;
+import net.sf.jsqlparser.statement.select.Limit;
+import net.sf.jsqlparser.statement.select.OrderByElement;
+import net.sf.jsqlparser.statement.select.PlainSelect;
+import net.sf.jsqlparser.statement.select.SelectItem;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * An aggregate query over an append-only table, taken apart so that it can be answered
+ * from a running state rather than a full scan: the rows of {@code sales} with ids in
+ * {@code (a, b]} aggregate independently of those up to {@code a}, as long as every
+ * output row comes from exactly one {@code sales} row and every aggregate decomposes.
+ * <p>
+ * The state query is the query itself with {@code AVG(x)} split into {@code SUM(x)} and
+ * {@code COUNT(x)}, no ORDER BY or LIMIT, and a range on the table's key; ORDER BY and
+ * LIMIT are applied to the merged state. Anything that doesn't partition by rows
+ * (DISTINCT, HAVING, window functions, subqueries, outer joins that could keep a row
+ * without a {@code sales} row, a GROUP BY column that isn't selected, any other aggregate)
+ * makes the query ineligible, and it runs as generated. So does anything relative to the
+ * current time or otherwise volatile, such as {@code sale_date >= CURRENT_DATE - 30}: rows
+ * leave such a window as the days pass, but never leave a merged state.
+ */
+final class IncrementalAggregate {
+
+    enum Kind { GROUP, SUM, COUNT, MIN, MAX, AVG }
+
+    record Order(int column, boolean descending, boolean nullsFirst) {
+    }
+
+    private static final Set<String> DECOMPOSABLE = Set.of("sum", "count", "min", "max", "avg");
+    private static final Pattern AGGREGATE_CALL = Pattern.compile(
+            "\\b(sum|count|min|max|avg|string_agg|array_agg|jsonb?_agg|jsonb?_object_agg|bool_and|bool_or|every"
+                    + "|bit_and|bit_or|stddev|stddev_pop|stddev_samp|variance|var_pop|var_samp|mode|percentile_cont"
+                    + "|percentile_disc|corr|covar_pop|covar_samp|regr_\\w+)\\s*\\(",
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern SUBQUERY_OR_WINDOW = Pattern.compile("\\b(SELECT|OVER|FILTER)\\b",
+            Pattern.CASE_INSENSITIVE);
+    // Rolling windows: rows leave them as time passes, and a merged state never lets go of a row
+    private static final Pattern TIME_RELATIVE = Pattern.compile(
+            "\\b(current_date|current_time|current_timestamp|localtime|localtimestamp)\\b"
+                    + "|\\b(now|age|clock_timestamp|statement_timestamp|transaction_timestamp|timeofday|random)\\s*\\("
+                    + "|'(now|today|yesterday|tomorrow)'",
+            Pattern.CASE_INSENSITIVE);
+    private static final String AFTER = ":incremental_after";
+    private static final String UP_TO = ":incremental_up_to";
+
+    private final String table;
+    private final String key;
+    private final Set<String> otherTables;
+    private final List<Kind> outputKinds;
+    private final int[] stateColumns;
+    private final int[] countColumns;
+    private final List<Kind> stateKinds;
+    private final List<Order> orders;
+    private final Long limit;
+    private final String fullTemplate;
+    private final String deltaTemplate;
+
+    private IncrementalAggregate(String table, String key, Set<String> otherTables, List<Kind> outputKinds,
+                                 int[] stateColumns, int[] countColumns, List<Kind> stateKinds, List<Order> orders,
+                                 Long limit, String fullTemplate, String deltaTemplate) {
+        this.table = table;
+        this.key = key;
+        this.otherTables = otherTables;
+        this.outputKinds = outputKinds;
+        this.stateColumns = stateColumns;
+        this.countColumns = countColumns;
+        this.stateKinds = stateKinds;
+        this.orders = orders;
+        this.limit = limit;
+        this.fullTemplate = fullTemplate;
+        this.deltaTemplate = deltaTemplate;
+    }
+
+    /**
+     * The query taken apart, or null if it doesn't read exactly one of
+     * {@code appendOnlyTables} (table to increasing key column) or can't be refreshed
+     * incrementally.
+     */
+    static IncrementalAggregate of(ValidatedSql validatedSql, Map<String, String> appendOnlyTables) {
+        if (!(validatedSql.statement() instanceof PlainSelect)) {
+            return null;
+        }
+        try {
+            // Never touch the cached tree; take a fresh copy apart
+            PlainSelect select = (PlainSelect) CCJSqlParserUtil.newParser(validatedSql.sql()).Statement();
+            return analyze(select, validatedSql.tables(), appendOnlyTables);
+        } catch (Exception e) {
+            // Not decomposable, or nothing JSqlParser will take apart and put back together
+            return null;
+        }
+    }
+
+    private static IncrementalAggregate analyze(PlainSelect select, Set<String> tables,
+                                                Map<String, String> appendOnlyTables) throws JSQLParserException {
+        if (select.getDistinct() != null || select.getHaving() != null || select.getOffset() != null
+                || select.getFetch() != null || select.getTop() != null
+                || (select.getWithItemsList() != null && !select.getWithItemsList().isEmpty())) {
+            throw new NotIncremental("DISTINCT, HAVING, OFFSET, FETCH or WITH");
+        }
+        Long limit = null;
+        if (select.getLimit() != null) {
+            Limit selectLimit = select.getLimit();
+            if (!(selectLimit.getRowCount() instanceof LongValue rowCount) || selectLimit.getOffset() != null) {
+                throw new NotIncremental("LIMIT");
+            }
+            limit = rowCount.getValue();
+        }
+
+        Table appendOnly = appendOnlyTable(select, appendOnlyTables);
+        String table = normalize(appendOnly.getName());
+        String qualifier = appendOnly.getAlias() != null
+                ? appendOnly.getAlias().getName()
+                : appendOnly.getFullyQualifiedName();
+        String key = qualifier + "." + appendOnlyTables.get(table);
+        if (select.getWhere() != null && SUBQUERY_OR_WINDOW.matcher(select.getWhere().toString()).find()) {
+            throw new NotIncremental("subquery in WHERE");
+        }
+        if (TIME_RELATIVE.matcher(select.toString()).find()) {
+            throw new NotIncremental("time-relative or volatile function");
+        }
+
+        List<Kind> outputKinds = new ArrayList<>();
+        List<Kind> stateKinds = new ArrayList<>();
+        List<SelectItem<?>> stateItems = new ArrayList<>();
+        List<SelectItem<?>> items = select.getSelectItems();
+        int[] stateColumns = new int[items.size()];
+        int[] countColumns = new int[items.size()];
+        for (int i = 0; i < items.size(); i++) {
+            SelectItem<?> item = items.get(i);
+            Expression expression = item.getExpression();
+            if (expression instanceof AllColumns || SUBQUERY_OR_WINDOW.matcher(expression.toString()).find()) {
+                throw new NotIncremental("*, subquery or window function in SELECT");
+            }
+            Kind kind = kind(expression);
+            outputKinds.add(kind);
+            stateColumns[i] = stateItems.size();
+            countColumns[i] = -1;
+            if (kind != Kind.AVG) {
+                stateKinds.add(kind);
+                stateItems.add(item);
+                continue;
+            }
+            // AVG(x) becomes SUM(x) under the name AVG(x) had, and COUNT(x) under one of ours
+            Function average = (Function) expression;
+            Function sum = new Function();
+            sum.setName("SUM");
+            sum.setParameters(average.getParameters());
+            Function count = new Function();
+            count.setName("COUNT");
+            count.setParameters(average.getParameters());
+            stateKinds.add(Kind.SUM);
+            stateItems.add(new SelectItem<>(sum).withAlias(
+                    item.getAlias() != null ? item.getAlias() : new Alias(normalize(average.getName()))));
+            countColumns[i] = stateItems.size();
+            stateKinds.add(Kind.COUNT);
+            stateItems.add(new SelectItem<>(count).withAlias(new Alias("incremental_count_" + i)));
+        }
+        if (outputKinds.stream().allMatch(kind -> kind == Kind.GROUP)) {
+            throw new NotIncremental("not an aggregate query");
+        }
+        checkGroupBy(select, items, outputKinds);
+        List<Order> orders = orders(select, items, outputKinds);
+
+        select.setSelectItems(stateItems);
+        select.setOrderByElements(null);
+        select.setLimit(null);
+        Expression where = select.getWhere();
+        String filter = where == null ? "" : "(" + where + ") AND ";
+        select.setWhere(CCJSqlParserUtil.parseCondExpression(filter + key + " <= " + UP_TO));
+        String fullTemplate = select.toString();
+        select.setWhere(CCJSqlParserUtil.parseCondExpression(
+                filter + key + " > " + AFTER + " AND " + key + " <= " + UP_TO));
+        String deltaTemplate = select.toString();
+
+        Set<String> otherTables = new HashSet<>(tables);
+        otherTables.remove(table);
+        return new IncrementalAggregate(table, key, Set.copyOf(otherTables), List.copyOf(outputKinds),
+                stateColumns, countColumns, List.copyOf(stateKinds), orders, limit, fullTemplate, deltaTemplate);
+    }
+
+    /**
+     * The one append-only table the query reads. Joined tables must be joined so that
+     * every output row still comes from exactly one of its rows.
+     */
+    private static Table appendOnlyTable(PlainSelect select, Map<String, String> appendOnlyTables) {
+        if (!(select.getFromItem() instanceof Table from)) {
+            throw new NotIncremental("FROM is not a table");
+        }
+        List<Table> found = new ArrayList<>();
+        if (appendOnlyTables.containsKey(normalize(from.getName()))) {
+            found.add(from);
+        }
+        boolean fromIsAppendOnly = !found.isEmpty();
+        if (select.getJoins() != null) {
+            for (Join join : select.getJoins()) {
+                if (!(join.getRightItem() instanceof Table table) || join.isNatural() || join.isRight()
+                        || join.isFull()
+                        || (join.isLeft() && !fromIsAppendOnly)
+                        || (join.isOuter() && !join.isLeft())) {
+                    throw new NotIncremental("unsupported join");
+                }
+                if (appendOnlyTables.containsKey(normalize(table.getName()))) {
+                    found.add(table);
+                }
+            }
+        }
+        if (found.size() != 1) {
+            throw new NotIncremental("reads " + found.size() + " append-only tables");
+        }
+        return found.get(0);
+    }
+
+    private static Kind kind(Expression expression) {
+        if (expression instanceof Function function && DECOMPOSABLE.contains(normalize(function.getName()))) {
+            if (function.isDistinct()
+                    || (function.isAllColumns() && !"count".equals(normalize(function.getName())))
+                    || (!function.isAllColumns() && (function.getParameters() == null
+                        || function.getParameters().size() != 1))
+                    || AGGREGATE_CALL.matcher(String.valueOf(function.getParameters())).find()) {
+                throw new NotIncremental("aggregate " + function);
+            }
+            return Kind.valueOf(function.getName().toUpperCase(Locale.ROOT));
+        }
+        if (AGGREGATE_CALL.matcher(expression.toString()).find()) {
+            throw new NotIncremental("aggregate inside " + expression);
+        }
+        return Kind.GROUP;
+    }
+
+    /**
+     * Groups must be exactly the non-aggregate columns, or merging by those columns would
+     * fold groups together.
+     */
+    private static void checkGroupBy(PlainSelect select, List<SelectItem<?>> items, List<Kind> outputKinds) {
+        GroupByElement groupBy = select.getGroupBy();
+        Set<Integer> grouped = new HashSet<>();
+        if (groupBy != null) {
+            if (groupBy.getGroupingSets() != null && !groupBy.getGroupingSets().isEmpty()) {
+                throw new NotIncremental("GROUPING SETS");
+            }
+            for (Object expression : groupBy.getGroupByExpressionList()) {
+                int column = outputColumn((Expression) expression, items);
+                if (column < 0 || outputKinds.get(column) != Kind.GROUP) {
+                    throw new NotIncremental("grouped by an unselected " + expression);
+                }
+                grouped.add(column);
+            }
+        }
+        for (int i = 0; i < outputKinds.size(); i++) {
+            if (outputKinds.get(i) == Kind.GROUP && !grouped.contains(i)) {
+                throw new NotIncremental("ungrouped " + items.get(i));
+            }
+        }
+    }
+
+    private static List<Order> orders(PlainSelect select, List<SelectItem<?>> items, List<Kind> outputKinds) {
+        if (select.getOrderByElements() == null) {
+            return List.of();
+        }
+        List<Order> orders = new ArrayList<>();
+        for (OrderByElement element : select.getOrderByElements()) {
+            int column = outputColumn(element.getExpression(), items);
+            if (column < 0) {
+                throw new NotIncremental("ordered by an unselected " + element);
+            }
+            boolean descending = element.isAscDescPresent() && !element.isAsc();
+            // PostgreSQL puts NULLs last ascending and first descending
+            boolean nullsFirst = element.getNullOrdering() == null
+                    ? descending
+                    : element.getNullOrdering() == OrderByElement.NullOrdering.NULLS_FIRST;
+            orders.add(new Order(column, descending, nullsFirst));
+        }
+        return List.copyOf(orders);
+    }
+
+    /**
+     * The select item an ORDER BY or GROUP BY expression refers to, by position, alias or
+     * the same expression; -1 if none.
+     */
+    private static int outputColumn(Expression expression, List<SelectItem<?>> items) {
+        if (expression instanceof LongValue position) {
+            long index = position.getValue() - 1;
+            return index >= 0 && index < items.size() ? (int) index : -1;
+        }
+        String text = expression.toString();
+        for (int i = 0; i < items.size(); i++) {
+            SelectItem<?> item = items.get(i);
+            if (expression instanceof Column column && column.getTable() == null && item.getAlias() != null
+                    && normalize(item.getAlias().getName()).equals(normalize(column.getColumnName()))) {
+                return i;
+            }
+        }
+        for (int i = 0; i < items.size(); i++) {
+            if (items.get(i).getExpression().toString().equalsIgnoreCase(text)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String normalize(String name) {
+        if (name.length() > 1 && name.startsWith("\"") && name.endsWith("\"")) {
+            name = name.substring(1, name.length() - 1);
+        }
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    String table() {
+        return table;
+    }
+
+    /** The table's key column as the query refers to it, e.g. {@code s.id}. */
+    String key() {
+        return key;
+    }
+
+    /** The other tables the query reads; a change to one of them invalidates the state. */
+    Set<String> otherTables() {
+        return otherTables;
+    }
+
+    /** The state query over keys up to {@code upTo}, which identifies the query's state. */
+    String fullSql(long upTo) {
+        return fullTemplate.replace(UP_TO, Long.toString(upTo));
+    }
+
+    String deltaSql(long after, long upTo) {
+        return deltaTemplate.replace(AFTER, Long.toString(after)).replace(UP_TO, Long.toString(upTo));
+    }
+
+    /** Identifies the state: the same full state query is the same state. */
+    String stateKey() {
+        return fullTemplate;
+    }
+
+    List<Kind> outputKinds() {
+        return outputKinds;
+    }
+
+    /** For each output column, the state column holding it (the sum, for an average). */
+    int stateColumn(int outputColumn) {
+        return stateColumns[outputColumn];
+    }
+
+    /** For an average output column, the state column holding its count. */
+    int countColumn(int outputColumn) {
+        return countColumns[outputColumn];
+    }
+
+    List<Kind> stateKinds() {
+        return stateKinds;
+    }
+
+    List<Order> orders() {
+        return orders;
+    }
+
+    Long limit() {
+        return limit;
+    }
+
+    private static final class NotIncremental extends RuntimeException {
+
+        NotIncremental(String reason) {
+            super(reason, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,453 @@
+package com.bi.assistant.aggregate;
+
+import com.bi.assistant.concurrency.SingleFlight;
+import com.bi.assistant.config.AssistantProperties;
+import com.bi.assistant.dto.ColumnarResult;
+import com.bi.assistant.dto.ColumnarResult.ColumnType;
+import com.bi.assistant.service.ColumnarResultBuilder;
+import com.bi.assistant.service.ColumnarResultExtractor;
+import com.bi.assistant.service.QueryExecutor;
+import com.bi.assistant.service.ValidatedSql;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Answers aggregate queries over append-only tables ({@code sales}, keyed by its serial
+ * {@code id}) from a running state with a high-water mark, the largest key it has seen.
+ * The first time a query comes in, its {@link IncrementalAggregate state query} runs over
+ * every row up to the current {@code max(id)}; after that only rows above the mark are
+ * aggregated, and merged group by group: sums and counts add up, minimums and maximums
+ * compare, and averages are kept as sum and count. A dashboard re-asking a question after
+ * a few inserts reads those few rows instead of the whole table.
+ * <p>
+ * The tables are assumed to only ever be appended to, with keys that grow in commit order.
+ * A row committed with a smaller key than one already seen (two inserting transactions
+ * overlapping), or an update or delete, is only picked up when the state is rebuilt,
+ * every {@code bi.assistant.incremental.full-refresh-interval}. A change reported by
+ * {@link com.bi.assistant.cache.ResultCacheInvalidator} to any other table the query reads,
+ * such as a product changing category, drops the state at once.
+ * <p>
+ * Refreshes are counted as {@code bi.aggregates.incremental}, tagged
+ * {@code refresh=full|delta|unchanged}, or {@code fallback} when the query ran as
+ * generated after all: too many groups to keep, or an ORDER BY on text.
+ */
+@Component
+@Slf4j
+public class IncrementalAggregateCache {
+
+    public static final String CACHE_NAME = "incrementalAggregates";
+
+    // PostgreSQL's NUMERIC_MIN_SIG_DIGITS and NUMERIC_MAX_DISPLAY_SCALE
+    private static final int MIN_SIGNIFICANT_DIGITS = 16;
+    private static final int MAX_DISPLAY_SCALE = 1000;
+
+    private final QueryExecutor queryExecutor;
+    private final boolean enabled;
+    private final Map<String, String> appendOnlyTables;
+    private final Duration fullRefreshInterval;
+    private final int maxGroups;
+    private final Cache<String, State> states;
+    private final SingleFlight<String, State> refreshes;
+    // Bumped when a table changes, so a refresh that overlapped a change to one of the other
+    // tables its query reads doesn't store its state; new rows in the append-only table don't count
+    private final Map<String, AtomicLong> tableGenerations = new ConcurrentHashMap<>();
+    private final AtomicLong allGeneration = new AtomicLong();
+    private final Counter fullRefreshes;
+    private final Counter deltaRefreshes;
+    private final Counter unchanged;
+    private final Counter fallbacks;
+
+    @Autowired
+    public IncrementalAggregateCache(QueryExecutor queryExecutor, AssistantProperties properties,
+                                     MeterRegistry meterRegistry) {
+        AssistantProperties.Incremental config = properties.getIncremental();
+        this.queryExecutor = queryExecutor;
+        this.enabled = config.isEnabled();
+        Map<String, String> tables = new HashMap<>();
+        config.getAppendOnlyTables().forEach((table, key) -> tables.put(table.toLowerCase(Locale.ROOT), key));
+        this.appendOnlyTables = Map.copyOf(tables);
+        this.fullRefreshInterval = config.getFullRefreshInterval();
+        this.maxGroups = config.getMaxGroups();
+        this.states = Caffeine.newBuilder()
+                .maximumSize(config.getMaxEntries())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, states, CACHE_NAME);
+        this.refreshes = new SingleFlight<>("incremental", meterRegistry);
+        this.fullRefreshes = refreshCounter(meterRegistry, "full");
+        this.deltaRefreshes = refreshCounter(meterRegistry, "delta");
+        this.unchanged = refreshCounter(meterRegistry, "unchanged");
+        this.fallbacks = refreshCounter(meterRegistry, "fallback");
+    }
+
+    /**
+     * The query's result, at most {@code maxRows} rows, from its refreshed state; null if
+     * the query can't be answered incrementally and should run as generated.
+     */
+    public ColumnarResult query(ValidatedSql validatedSql, int maxRows, Duration timeout) {
+        if (!enabled || appendOnlyTables.isEmpty()) {
+            return null;
+        }
+        IncrementalAggregate aggregate = IncrementalAggregate.of(validatedSql, appendOnlyTables);
+        if (aggregate == null) {
+            return null;
+        }
+        State state = refreshes.execute(aggregate.stateKey(), () -> refresh(aggregate, timeout));
+        if (state == null) {
+            return null;
+        }
+        ColumnarResult result = render(aggregate, state, maxRows);
+        if (result == null) {
+            fallbacks.increment();
+        }
+        return result;
+    }
+
+    /**
+     * Drops the states of queries that read one of {@code tables}, other than the
+     * append-only table they are refreshed from.
+     */
+    public void invalidateTables(Collection<String> tables) {
+        for (String table : tables) {
+            tableGenerations.computeIfAbsent(table, name -> new AtomicLong()).incrementAndGet();
+        }
+        states.asMap().values().removeIf(state -> state.otherTables().stream().anyMatch(tables::contains));
+    }
+
+    public void invalidateAll() {
+        allGeneration.incrementAndGet();
+        states.invalidateAll();
+    }
+
+    private State refresh(IncrementalAggregate aggregate, Duration timeout) {
+        long generation = generation(aggregate.otherTables());
+        long started = System.nanoTime();
+        long upTo = highWaterMark(aggregate, timeout);
+        State current = states.getIfPresent(aggregate.stateKey());
+
+        boolean fresh = current != null && started - current.builtAt() < fullRefreshInterval.toNanos();
+        State refreshed;
+        if (fresh && upTo == current.highWaterMark()) {
+            unchanged.increment();
+            return current;
+        } else if (fresh && upTo > current.highWaterMark()) {
+            String sql = aggregate.deltaSql(current.highWaterMark(), upTo);
+            Rows delta = queryExecutor.query(sql, timeout, new RowsExtractor(maxGroups));
+            refreshed = delta == null ? null : current.merge(aggregate, delta, upTo, maxGroups);
+            if (refreshed != null) {
+                deltaRefreshes.increment();
+                log.debug("Merged {} groups with new rows up to {} = {}", delta.rows().size(), aggregate.key(), upTo);
+            }
+        } else {
+            // First time, due for a rebuild, or keys went backwards (a truncated, reloaded table)
+            Rows full = queryExecutor.query(aggregate.fullSql(upTo), timeout, new RowsExtractor(maxGroups));
+            refreshed = full == null ? null : State.of(aggregate, full, upTo, started);
+            if (refreshed != null) {
+                fullRefreshes.increment();
+            }
+        }
+
+        if (refreshed == null) {
+            fallbacks.increment();
+            states.invalidate(aggregate.stateKey());
+            return null;
+        }
+        if (generation(aggregate.otherTables()) == generation) {
+            states.put(aggregate.stateKey(), refreshed);
+        }
+        return refreshed;
+    }
+
+    /**
+     * Changes whenever one of {@code tables} is invalidated, or everything is: a sum of
+     * counters that only go up.
+     */
+    private long generation(Set<String> tables) {
+        long generation = allGeneration.get();
+        for (String table : tables) {
+            AtomicLong tableGeneration = tableGenerations.get(table);
+            generation += tableGeneration == null ? 0 : tableGeneration.get();
+        }
+        return generation;
+    }
+
+    private long highWaterMark(IncrementalAggregate aggregate, Duration timeout) {
+        String sql = "SELECT coalesce(max(" + appendOnlyTables.get(aggregate.table()) + "), 0) FROM "
+                + aggregate.table();
+        Long upTo = queryExecutor.query(sql, timeout, resultSet -> resultSet.next() ? resultSet.getLong(1) : 0L);
+        return upTo == null ? 0 : upTo;
+    }
+
+    /**
+     * The state as the query would have returned it; null if it orders by text, which
+     * PostgreSQL sorts by its collation and this can't.
+     */
+    private static ColumnarResult render(IncrementalAggregate aggregate, State state, int maxRows) {
+        for (IncrementalAggregate.Order order : aggregate.orders()) {
+            ColumnType type = state.columnTypes()[aggregate.stateColumn(order.column())];
+            if (type == ColumnType.STRING || type == ColumnType.DICTIONARY) {
+                return null;
+            }
+        }
+        List<IncrementalAggregate.Kind> kinds = aggregate.outputKinds();
+        List<Object[]> rows = new ArrayList<>(state.groups().size());
+        for (Object[] group : state.groups().values()) {
+            Object[] row = new Object[kinds.size()];
+            for (int column = 0; column < kinds.size(); column++) {
+                Object value = group[aggregate.stateColumn(column)];
+                row[column] = kinds.get(column) == IncrementalAggregate.Kind.AVG
+                        ? average(value, group[aggregate.countColumn(column)])
+                        : value;
+            }
+            rows.add(row);
+        }
+        if (!aggregate.orders().isEmpty()) {
+            rows.sort(comparator(aggregate.orders()));
+        }
+
+        long limit = aggregate.limit() == null ? Long.MAX_VALUE : aggregate.limit();
+        int rowCount = (int) Math.min(rows.size(), Math.min(limit, maxRows));
+        String[] columnNames = new String[kinds.size()];
+        ColumnType[] columnTypes = new ColumnType[kinds.size()];
+        for (int column = 0; column < kinds.size(); column++) {
+            columnNames[column] = state.columnNames()[aggregate.stateColumn(column)];
+            ColumnType stateType = state.columnTypes()[aggregate.stateColumn(column)];
+            // PostgreSQL averages floating point as double precision and everything else as numeric
+            columnTypes[column] = kinds.get(column) != IncrementalAggregate.Kind.AVG ? stateType
+                    : stateType == ColumnType.DOUBLE ? ColumnType.DOUBLE
+                    : ColumnType.OBJECT;
+        }
+        ColumnarResultBuilder builder = new ColumnarResultBuilder(columnNames, columnTypes);
+        for (Object[] row : rows.subList(0, rowCount)) {
+            for (int column = 0; column < row.length; column++) {
+                builder.set(column, row[column]);
+            }
+            builder.endRow();
+        }
+        ColumnarResult result = builder.build();
+        result.setTruncated(rowCount == maxRows && Math.min(rows.size(), limit) > maxRows);
+        return result;
+    }
+
+    private static Object average(Object sum, Object count) {
+        if (sum == null || count == null || ((Number) count).longValue() == 0) {
+            return null;
+        }
+        long rows = ((Number) count).longValue();
+        if (sum instanceof Double || sum instanceof Float) {
+            return ((Number) sum).doubleValue() / rows;
+        }
+        return divide(decimal(sum), rows);
+    }
+
+    /**
+     * {@code sum / count} as PostgreSQL's numeric division computes it, which is what
+     * {@code avg} over integers and numerics returns: at least 16 significant digits and no
+     * fewer decimals than the sum has, rounded half away from zero ({@code select_div_scale}
+     * in numeric.c, which estimates the quotient's weight in base-10000 digits). A rebuilt
+     * average then reads digit for digit as the query run directly.
+     */
+    static BigDecimal divide(BigDecimal sum, long count) {
+        BigDecimal divisor = BigDecimal.valueOf(count);
+        int quotientWeight = baseWeight(sum) - baseWeight(divisor);
+        if (firstBaseDigit(sum) <= firstBaseDigit(divisor)) {
+            quotientWeight--;
+        }
+        int scale = Math.max(MIN_SIGNIFICANT_DIGITS - quotientWeight * 4, Math.max(sum.scale(), 0));
+        return sum.divide(divisor, Math.min(scale, MAX_DISPLAY_SCALE), RoundingMode.HALF_UP);
+    }
+
+    /** The power of 10000 of the value's leading base-10000 digit; 0 for zero. */
+    private static int baseWeight(BigDecimal value) {
+        return value.signum() == 0 ? 0 : Math.floorDiv(value.precision() - value.scale() - 1, 4);
+    }
+
+    private static int firstBaseDigit(BigDecimal value) {
+        return value.signum() == 0 ? 0
+                : value.abs().movePointLeft(4 * baseWeight(value)).setScale(0, RoundingMode.DOWN).intValue();
+    }
+
+    private static Comparator<Object[]> comparator(List<IncrementalAggregate.Order> orders) {
+        Comparator<Object[]> comparator = null;
+        for (IncrementalAggregate.Order order : orders) {
+            Comparator<Object> values = IncrementalAggregateCache::compare;
+            if (order.descending()) {
+                values = values.reversed();
+            }
+            values = order.nullsFirst() ? Comparator.nullsFirst(values) : Comparator.nullsLast(values);
+            Comparator<Object[]> byColumn = Comparator.comparing(row -> row[order.column()], values);
+            comparator = comparator == null ? byColumn : comparator.thenComparing(byColumn);
+        }
+        return comparator;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compare(Object left, Object right) {
+        if (left instanceof Double || left instanceof Float || right instanceof Double || right instanceof Float) {
+            return Double.compare(((Number) left).doubleValue(), ((Number) right).doubleValue());
+        }
+        if (left instanceof Number && right instanceof Number) {
+            return decimal(left).compareTo(decimal(right));
+        }
+        if (left instanceof Comparable comparable && left.getClass() == right.getClass()) {
+            return comparable.compareTo(right);
+        }
+        return left.toString().compareTo(right.toString());
+    }
+
+    /**
+     * Merges two values of one state column; NULL is what an aggregate over no rows gives,
+     * and leaves the other side as it is.
+     */
+    private static Object mergeValue(IncrementalAggregate.Kind kind, Object current, Object delta) {
+        if (current == null) {
+            return delta;
+        }
+        if (delta == null) {
+            return current;
+        }
+        return switch (kind) {
+            case SUM, COUNT -> add((Number) current, (Number) delta);
+            case MIN -> compare(delta, current) < 0 ? delta : current;
+            case MAX -> compare(delta, current) > 0 ? delta : current;
+            default -> current;
+        };
+    }
+
+    private static Number add(Number left, Number right) {
+        if (isIntegral(left) && isIntegral(right)) {
+            return Math.addExact(left.longValue(), right.longValue());
+        }
+        if (left instanceof Double || left instanceof Float || right instanceof Double || right instanceof Float) {
+            return left.doubleValue() + right.doubleValue();
+        }
+        // numeric, or bigint sums: exact, as PostgreSQL would have added them
+        return decimal(left).add(decimal(right));
+    }
+
+    private static boolean isIntegral(Number value) {
+        return value instanceof Long || value instanceof Integer || value instanceof Short;
+    }
+
+    private static BigDecimal decimal(Object value) {
+        return value instanceof BigDecimal decimal ? decimal : new BigDecimal(value.toString());
+    }
+
+    private static Counter refreshCounter(MeterRegistry meterRegistry, String refresh) {
+        return Counter.builder("bi.aggregates.incremental")
+                .description("Incremental aggregate refreshes, by how much had to be read")
+                .tag("refresh", refresh)
+                .register(meterRegistry);
+    }
+
+    /**
+     * A state query's rows as read, values kept as JDBC returned them so sums stay exact.
+     */
+    record Rows(String[] columnNames, ColumnType[] columnTypes, List<Object[]> rows) {
+    }
+
+    /**
+     * Reads at most {@code maxGroups} rows; null if there are more, which is too many to keep.
+     */
+    private record RowsExtractor(int maxGroups) implements ResultSetExtractor<Rows> {
+
+        @Override
+        public Rows extractData(ResultSet resultSet) throws SQLException {
+            ResultSetMetaData metaData = resultSet.getMetaData();
+            int columnCount = metaData.getColumnCount();
+            String[] columnNames = new String[columnCount];
+            ColumnType[] columnTypes = new ColumnType[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                columnNames[i] = JdbcUtils.lookupColumnName(metaData, i + 1);
+                columnTypes[i] = ColumnarResultExtractor.columnType(metaData.getColumnType(i + 1));
+            }
+            List<Object[]> rows = new ArrayList<>();
+            while (resultSet.next()) {
+                if (rows.size() == maxGroups) {
+                    return null;
+                }
+                Object[] row = new Object[columnCount];
+                for (int i = 0; i < columnCount; i++) {
+                    row[i] = JdbcUtils.getResultSetValue(resultSet, i + 1);
+                }
+                rows.add(row);
+            }
+            return new Rows(columnNames, columnTypes, rows);
+        }
+    }
+
+    /**
+     * One query's aggregated state: its groups by the values of their GROUP BY columns.
+     * Immutable; a merge makes a new one, so renders never see a half-merged state.
+     */
+    private record State(String[] columnNames, ColumnType[] columnTypes, Map<List<Object>, Object[]> groups,
+                         Set<String> otherTables, long highWaterMark, long builtAt) {
+
+        static State of(IncrementalAggregate aggregate, Rows rows, long highWaterMark, long builtAt) {
+            Map<List<Object>, Object[]> groups = new HashMap<>();
+            for (Object[] row : rows.rows()) {
+                groups.put(groupKey(aggregate, row), row);
+            }
+            return new State(rows.columnNames(), rows.columnTypes(), groups, aggregate.otherTables(),
+                    highWaterMark, builtAt);
+        }
+
+        /**
+         * This state with {@code delta} merged in, or null if that makes too many groups.
+         */
+        State merge(IncrementalAggregate aggregate, Rows delta, long highWaterMark, int maxGroups) {
+            List<IncrementalAggregate.Kind> kinds = aggregate.stateKinds();
+            Map<List<Object>, Object[]> merged = new HashMap<>(groups);
+            for (Object[] row : delta.rows()) {
+                merged.merge(groupKey(aggregate, row), row, (current, added) -> {
+                    Object[] values = current.clone();
+                    for (int column = 0; column < values.length; column++) {
+                        values[column] = mergeValue(kinds.get(column), current[column], added[column]);
+                    }
+                    return values;
+                });
+            }
+            if (merged.size() > maxGroups) {
+                return null;
+            }
+            return new State(columnNames, columnTypes, merged, otherTables, highWaterMark, builtAt);
+        }
+
+        private static List<Object> groupKey(IncrementalAggregate aggregate, Object[] row) {
+            List<IncrementalAggregate.Kind> kinds = aggregate.stateKinds();
+            // An ArrayList, unlike List.of, takes the NULL group
+            List<Object> key = new ArrayList<>();
+            for (int column = 0; column < row.length; column++) {
+                if (kinds.get(column) == IncrementalAggregate.Kind.GROUP) {
+                    key.add(row[column]);
+                }
+            }
+            return key;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.bi.assistant.aggregate;
+
+import com.bi.assistant.concurrency.ConcurrencyLimit;
+import com.bi.assistant.concurrency.ConcurrencyLimits;
+import com.bi.assistant.exception.ServiceBusyException;
+import com.bi.assistant.schema.SchemaCatalog;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Refreshes the {@link PreAggregation} views with {@code REFRESH MATERIALIZED VIEW
+ * CONCURRENTLY}, which rebuilds the view beside the old contents and swaps in the
+ * difference, so queries routed to it keep reading while it runs. A view that was
+ * created {@code WITH NO DATA} can't be refreshed concurrently and gets a plain refresh
+ * the first time. Each refresh holds a {@link ConcurrencyLimits#database()} permit.
+ * <p>
+ * Refreshes are timed as {@code bi.aggregates.refresh}, tagged by view and outcome.
+ * Only a successful one tells {@link AggregateRouter} the view is fresh.
+ */
+@Component
+@Slf4j
+public class MaterializedViewRefresher {
+
+    private static final String POPULATED_QUERY =
+            "SELECT ispopulated FROM pg_matviews WHERE schemaname = ? AND matviewname = ?";
+
+    private final List<PreAggregation> preAggregations;
+    private final AggregateRouter aggregateRouter;
+    private final SchemaCatalog schemaCatalog;
+    private final JdbcTemplate jdbcTemplate;
+    private final ConcurrencyLimit databaseLimit;
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public MaterializedViewRefresher(AggregateRouter aggregateRouter, SchemaCatalog schemaCatalog,
+                                     JdbcTemplate jdbcTemplate, ConcurrencyLimits concurrencyLimits,
+                                     MeterRegistry meterRegistry) {
+        this.preAggregations = aggregateRouter.preAggregations();
+        this.aggregateRouter = aggregateRouter;
+        this.schemaCatalog = schemaCatalog;
+        this.jdbcTemplate = jdbcTemplate;
+        this.databaseLimit = concurrencyLimits.database();
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Runs once at startup, then every {@code bi.assistant.aggregates.refresh-interval}.
+     */
+    @Scheduled(fixedDelayString = "${bi.assistant.aggregates.refresh-interval:PT15M}")
+    void scheduledRefresh() {
+        preAggregations.forEach(preAggregation -> refresh(preAggregation.view()));
+    }
+
+    /**
+     * Refreshes one view; returns whether it succeeded.
+     */
+    public boolean refresh(String view) {
+        if (!schemaCatalog.hasTable(view)) {
+            log.warn("Materialized view {} is not in schema {}, not refreshing it", view, schemaCatalog.schema());
+            return false;
+        }
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "failure";
+        try {
+            databaseLimit.call(() -> {
+                Boolean populated = jdbcTemplate.queryForObject(POPULATED_QUERY, Boolean.class,
+                        schemaCatalog.schema(), view);
+                String name = quote(schemaCatalog.schema()) + "." + quote(view);
+                jdbcTemplate.execute(Boolean.TRUE.equals(populated)
+                        ? "REFRESH MATERIALIZED VIEW CONCURRENTLY " + name
+                        : "REFRESH MATERIALIZED VIEW " + name);
+                return null;
+            });
+            aggregateRouter.markRefreshed(view);
+            outcome = "success";
+            log.debug("Refreshed materialized view {}", view);
+            return true;
+        } catch (ServiceBusyException e) {
+            outcome = "busy";
+            log.warn("Skipped refreshing {}: {}", view, e.getMessage());
+            return false;
+        } catch (DataAccessException e) {
+            log.warn("Refreshing {} failed, it stays in use until it is stale: {}", view, e.getMessage());
+            return false;
+        } finally {
+            sample.stop(Timer.builder("bi.aggregates.refresh")
+                    .description("Materialized view refreshes")
+                    .tag("view", view)
+                    .tag("outcome", outcome)
+                    .register(meterRegistry));
+        }
+    }
+
+    private static String quote(String identifier) {
+        return '"' + identifier.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,39 @@
+package com.bi.assistant.aggregate;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A materialized view that pre-aggregates a fact table, and how the fact table's columns
+ * map onto it, for {@link AggregateRouter} to answer matching queries from.
+ * <p>
+ * Columns are keyed {@code table.column}. {@code dimensions} can be used anywhere in a
+ * query; {@code sums} only inside {@code SUM} or {@code AVG}; {@code countColumn} holds
+ * the number of fact rows per group and answers {@code COUNT(*)}. A monthly rollup
+ * declares its date column as {@code time}: it can then be used only at month
+ * granularity or coarser, e.g. in {@code EXTRACT(YEAR ...)} or compared with the first
+ * of a month.
+ */
+public record PreAggregation(String view, String factTable, List<Join> joins, Map<String, String> dimensions,
+                             TimeDimension time, Map<String, String> sums, String countColumn) {
+
+    public PreAggregation {
+        joins = List.copyOf(joins);
+        dimensions = Map.copyOf(dimensions);
+        sums = Map.copyOf(sums);
+    }
+
+    /**
+     * A table the view LEFT JOINs to the fact table on {@code factColumn = tableColumn}.
+     * {@code presenceColumn} is a view column that is null exactly when the fact row had
+     * no match, so a query with an inner join can be answered by filtering it out.
+     */
+    public record Join(String table, String factColumn, String tableColumn, String presenceColumn) {
+    }
+
+    /**
+     * A fact date column, truncated to the first of its month in {@code monthColumn}.
+     */
+    public record TimeDimension(String column, String monthColumn) {
+    }
+}
@@ -0,0 +1,94 @@
+package com.bi.assistant.cache;
+
+import com.bi.assistant.dto.ColumnarResult;
+import com.bi.assistant.service.ValidatedSql;
+
+import java.lang.reflect.Array;
+
+/**
+ * Rough heap-size estimates used as Caffeine weights. They do not need to be exact,
+ * only proportional, so that the byte bound on each cache is meaningful.
+ */
+final class CacheWeights {
+
+    private static final int OBJECT_OVERHEAD = 16;
+    private static final int REFERENCE_SIZE = 8;
+    private static final int ARRAY_OVERHEAD = 16;
+    // A JSqlParser tree is a few dozen small objects per clause; per SQL char is close enough
+    private static final int PARSE_TREE_BYTES_PER_CHAR = 16;
+
+    private CacheWeights() {
+    }
+
+    static long ofString(String value) {
+        return value == null ? 0 : 40L + 2L * value.length();
+    }
+
+    static long ofValidatedSql(ValidatedSql validatedSql) {
+        long size = OBJECT_OVERHEAD + ofString(validatedSql.sql())
+                + (long) PARSE_TREE_BYTES_PER_CHAR * validatedSql.sql().length();
+        for (String table : validatedSql.tables()) {
+            size += REFERENCE_SIZE + ofString(table);
+        }
+        return size;
+    }
+
+    static long ofResult(ColumnarResult result) {
+        long size = OBJECT_OVERHEAD;
+        for (String columnName : result.getColumnNames()) {
+            size += ofString(columnName);
+        }
+        for (ColumnarResult.Column column : result.getColumns()) {
+            size += OBJECT_OVERHEAD + ofArray(column.getNullRows(), Integer.BYTES);
+            switch (column.getType()) {
+                case LONG -> size += ofArray(column.getLongs(), Long.BYTES);
+                case DOUBLE -> size += ofArray(column.getDoubles(), Double.BYTES);
+                case STRING -> size += ofStrings(column.getStrings());
+                case DICTIONARY -> size += ofStrings(column.getDictionary()) + ofArray(column.getCodes(), Integer.BYTES);
+                case OBJECT -> {
+                    size += ARRAY_OVERHEAD + (long) REFERENCE_SIZE * column.getValues().length;
+                    for (Object value : column.getValues()) {
+                        size += ofValue(value);
+                    }
+                }
+            }
+        }
+        return size;
+    }
+
+    private static long ofStrings(String[] values) {
+        long size = ARRAY_OVERHEAD + (long) REFERENCE_SIZE * values.length;
+        for (String value : values) {
+            size += ofString(value);
+        }
+        return size;
+    }
+
+    private static long ofArray(Object array, int elementSize) {
+        return array == null ? 0 : ARRAY_OVERHEAD + (long) elementSize * Array.getLength(array);
+    }
+
+    static long ofValue(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof String s) {
+            return ofString(s);
+        }
+        if (value instanceof Number || value instanceof Boolean) {
+            return 24;
+        }
+        return 48;
+    }
+
+    /**
+     * Caffeine can bound a cache by weight or by entry count, but not both. Giving every
+     * entry a floor weight of {@code maxBytes / maxEntries} enforces both limits with a
+     * single weight bound: the cache can never hold more than {@code maxEntries} entries,
+     * nor more than {@code maxBytes} of estimated payload.
+     */
+    static int bounded(long estimatedBytes, long maxEntries, long maxBytes) {
+        long floor = Math.max(1, maxBytes / Math.max(1, maxEntries));
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(floor, estimatedBytes));
+    }
+}
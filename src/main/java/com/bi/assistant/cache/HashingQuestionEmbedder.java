@@ -0,0 +1,76 @@
+package com.bi.assistant.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Deterministic stand-in for an embedding model: feature-hashes content words and word
+ * bigrams into a fixed-size vector. Request verbs and filler words ("list", "show",
+ * "display", "all", "me", ...) are dropped so that the phrasings users actually type
+ * for the same question land on the same vector. Intended for local runs and tests
+ * where no embedding model is available.
+ */
+public class HashingQuestionEmbedder implements QuestionEmbedder {
+
+    private static final Set<String> FILLER_WORDS = Set.of(
+            "a", "an", "the", "all", "any", "me", "us", "my", "our", "of", "please",
+            "list", "show", "display", "find", "get", "give", "fetch", "return", "retrieve",
+            "what", "which", "who", "is", "are", "was", "were", "do", "does", "can", "you",
+            "tell", "see", "view", "i", "want", "to", "would", "like", "need");
+
+    private final int dimensions;
+
+    public HashingQuestionEmbedder(int dimensions) {
+        this.dimensions = dimensions;
+    }
+
+    @Override
+    public float[] embed(String normalizedQuestion) {
+        float[] vector = new float[dimensions];
+        List<String> words = contentWords(normalizedQuestion);
+        for (int i = 0; i < words.size(); i++) {
+            add(vector, words.get(i), 1.0f);
+            if (i > 0) {
+                add(vector, words.get(i - 1) + ' ' + words.get(i), 0.5f);
+            }
+        }
+
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        if (norm > 0) {
+            float scale = (float) (1.0 / Math.sqrt(norm));
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] *= scale;
+            }
+        }
+        return vector;
+    }
+
+    private void add(float[] vector, String feature, float weight) {
+        int hash = feature.hashCode() * 0x9E3779B1;
+        int index = Math.floorMod(hash, dimensions);
+        // A second hash bit picks the sign so that collisions cancel out on average
+        vector[index] += (hash & 0x8000_0000) == 0 ? weight : -weight;
+    }
+
+    private static List<String> contentWords(String question) {
+        List<String> words = new ArrayList<>();
+        for (String token : question.split("[^\\p{Alnum}]+")) {
+            if (token.isEmpty() || FILLER_WORDS.contains(token)) {
+                continue;
+            }
+            words.add(stem(token));
+        }
+        return words;
+    }
+
+    private static String stem(String word) {
+        if (word.length() > 3 && word.endsWith("s") && !word.endsWith("ss")) {
+            return word.substring(0, word.length() - 1);
+        }
+        return word;
+    }
+}
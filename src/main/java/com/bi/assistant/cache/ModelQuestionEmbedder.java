@@ -0,0 +1,32 @@
+package com.bi.assistant.cache;
+
+import org.springframework.ai.embedding.EmbeddingModel;
+
+/**
+ * Embeds questions with the configured Spring AI embedding model (Ollama by default).
+ */
+public class ModelQuestionEmbedder implements QuestionEmbedder {
+
+    private final EmbeddingModel embeddingModel;
+
+    public ModelQuestionEmbedder(EmbeddingModel embeddingModel) {
+        this.embeddingModel = embeddingModel;
+    }
+
+    @Override
+    public float[] embed(String normalizedQuestion) {
+        float[] vector = embeddingModel.embed(normalizedQuestion);
+        // Not every model returns unit vectors; the index relies on dot product == cosine
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        if (norm > 0) {
+            float scale = (float) (1.0 / Math.sqrt(norm));
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] *= scale;
+            }
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,131 @@
+package com.bi.assistant.cache;
+
+import com.bi.assistant.concurrency.ConcurrencyLimit;
+import com.bi.assistant.concurrency.ConcurrencyLimits;
+import com.bi.assistant.schema.SchemaCatalog;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Detects changes from the per-table counters in {@code pg_stat_user_tables}: rows
+ * inserted, updated and deleted, plus the live row count, which is what moves on a
+ * {@code TRUNCATE}. Materialized views have counters of their own, bumped by every
+ * refresh. Plain views have none, so a change to a table is also reported for the views
+ * that read it, directly or through other views.
+ * <p>
+ * The statistics are published when a transaction ends, so a change shows up within a
+ * second or so of its commit, plus the polling interval. A rolled-back write moves the
+ * counters too; dropping a few entries more than needed is the safe side to err on.
+ */
+@Component
+public class PgStatTableChangeDetector implements TableChangeDetector {
+
+    private static final String COUNTERS_QUERY = """
+            SELECT relname, n_tup_ins + n_tup_upd + n_tup_del AS changes, n_live_tup
+              FROM pg_stat_user_tables
+             WHERE schemaname = ?
+            """;
+
+    /** Each view with the relations its definition reads. */
+    private static final String VIEW_DEPENDENCIES_QUERY = """
+            SELECT DISTINCT source.relname AS source, dependent.relname AS dependent
+              FROM pg_depend d
+              JOIN pg_rewrite r ON r.oid = d.objid
+              JOIN pg_class dependent ON dependent.oid = r.ev_class
+              JOIN pg_class source ON source.oid = d.refobjid
+              JOIN pg_namespace n ON n.oid = dependent.relnamespace
+             WHERE d.classid = 'pg_rewrite'::regclass AND d.refclassid = 'pg_class'::regclass
+               AND dependent.relkind = 'v' AND source.oid <> dependent.oid AND n.nspname = ?
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SchemaCatalog schemaCatalog;
+    private final ConcurrencyLimit databaseLimit;
+    // A lock rather than synchronized: polling does JDBC I/O
+    private final ReentrantLock pollLock = new ReentrantLock();
+    private Map<String, Counters> previous;
+
+    @Autowired
+    public PgStatTableChangeDetector(JdbcTemplate jdbcTemplate, SchemaCatalog schemaCatalog,
+                                     ConcurrencyLimits concurrencyLimits) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.schemaCatalog = schemaCatalog;
+        this.databaseLimit = concurrencyLimits.database();
+    }
+
+    @Override
+    public Set<String> changedTables() {
+        pollLock.lock();
+        try {
+            return poll();
+        } finally {
+            pollLock.unlock();
+        }
+    }
+
+    private Set<String> poll() {
+        String schema = schemaCatalog.schema();
+        Map<String, Counters> current = new HashMap<>();
+        databaseLimit.call(() -> {
+            jdbcTemplate.query(COUNTERS_QUERY, resultSet -> {
+                current.put(resultSet.getString("relname").toLowerCase(Locale.ROOT),
+                        new Counters(resultSet.getLong("changes"), resultSet.getLong("n_live_tup")));
+            }, schema);
+            return null;
+        });
+
+        Map<String, Counters> before = previous;
+        previous = current;
+        if (before == null) {
+            return Set.of();
+        }
+        Set<String> changed = new HashSet<>();
+        current.forEach((table, counters) -> {
+            if (!counters.equals(before.get(table))) {
+                changed.add(table);
+            }
+        });
+        // Dropped tables; a new one can't have cached results yet, but counts anyway
+        before.keySet().stream().filter(table -> !current.containsKey(table)).forEach(changed::add);
+        if (!changed.isEmpty()) {
+            changed.addAll(dependentViews(schema, changed));
+        }
+        return changed;
+    }
+
+    private Set<String> dependentViews(String schema, Set<String> tables) {
+        Map<String, Set<String>> dependents = new HashMap<>();
+        databaseLimit.call(() -> {
+            jdbcTemplate.query(VIEW_DEPENDENCIES_QUERY, resultSet -> {
+                dependents.computeIfAbsent(resultSet.getString("source").toLowerCase(Locale.ROOT),
+                                source -> new HashSet<>())
+                        .add(resultSet.getString("dependent").toLowerCase(Locale.ROOT));
+            }, schema);
+            return null;
+        });
+
+        Set<String> views = new HashSet<>();
+        Deque<String> pending = new ArrayDeque<>(tables);
+        while (!pending.isEmpty()) {
+            for (String view : dependents.getOrDefault(pending.pop(), Set.of())) {
+                if (views.add(view)) {
+                    pending.push(view);
+                }
+            }
+        }
+        return views;
+    }
+
+    private record Counters(long changes, long liveRows) {
+    }
+}
@@ -0,0 +1,182 @@
+package com.bi.assistant.cache;
+
+import com.bi.assistant.config.AssistantProperties;
+import com.bi.assistant.dto.ColumnarResult;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of results keyed by the executed SQL, held in the compact {@link ColumnarResult}
+ * form whichever format the client asked for, together with the tables each result was
+ * read from. An entry is served until {@link #invalidateTables} reports a change to one of
+ * its tables, so a question about {@code products} stays cached while {@code sales} is
+ * being appended to. {@code bi.assistant.result-cache.time-to-live} is only the backstop,
+ * and the whole bound when change tracking is off.
+ * <p>
+ * A result is not cached if one of its tables changed while it was being computed:
+ * callers take a {@link #stamp()} before running the query and hand it to {@link #put}.
+ * Entries dropped for a change are counted as {@code bi.cache.results.invalidated}.
+ */
+@Component
+public class QueryResultCache {
+
+    public static final String CACHE_NAME = "queryResults";
+
+    private final Cache<String, Entry> cache;
+    private final ConcurrentMap<String, Set<String>> keysByTable = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Long> changedAt = new ConcurrentHashMap<>();
+    private final AtomicLong clock = new AtomicLong();
+    private final Counter invalidated;
+
+    @Autowired
+    public QueryResultCache(AssistantProperties properties, MeterRegistry meterRegistry) {
+        AssistantProperties.ResultCache config = properties.getResultCache();
+        long maxEntries = config.getMaxEntries();
+        long maxBytes = config.getMaxSize().toBytes();
+
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String sql, Entry entry) -> CacheWeights.bounded(
+                        CacheWeights.ofString(sql) + CacheWeights.ofResult(entry.result()), maxEntries, maxBytes))
+                .expireAfterWrite(config.getTimeToLive())
+                // Explicit removals unindex themselves, under the same lock; this covers size and expiry
+                .evictionListener((String sql, Entry entry, RemovalCause cause) -> {
+                    if (sql != null && entry != null) {
+                        unindex(sql, entry.tables());
+                    }
+                })
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+        this.invalidated = Counter.builder("bi.cache.results.invalidated")
+                .description("Cached results dropped because a table they were read from changed")
+                .register(meterRegistry);
+    }
+
+    public ColumnarResult get(String sql) {
+        Entry entry = cache.getIfPresent(sql);
+        return entry == null ? null : entry.result();
+    }
+
+    /**
+     * A point in the cache's change history, to pass to {@link #put} for a result computed after it.
+     */
+    public long stamp() {
+        return clock.get();
+    }
+
+    /**
+     * Caches {@code result} as read from {@code tables}, unless one of them changed after {@code stamp}.
+     */
+    public ColumnarResult put(String sql, Set<String> tables, long stamp, ColumnarResult result) {
+        if (changedSince(tables, stamp)) {
+            return result;
+        }
+        Entry entry = new Entry(result, Set.copyOf(tables));
+        cache.asMap().compute(sql, (key, previous) -> {
+            if (previous != null) {
+                unindex(key, previous.tables());
+            }
+            index(key, entry.tables());
+            return entry;
+        });
+        // A change reported between the check above and indexing would have missed this entry
+        if (changedSince(tables, stamp)) {
+            remove(sql);
+        }
+        return result;
+    }
+
+    /**
+     * Drops every result read from one of {@code tables}; returns how many there were.
+     */
+    public int invalidateTables(Collection<String> tables) {
+        long now = clock.incrementAndGet();
+        Set<String> keys = new HashSet<>();
+        for (String table : tables) {
+            changedAt.put(table, now);
+            Set<String> tableKeys = keysByTable.remove(table);
+            if (tableKeys != null) {
+                keys.addAll(tableKeys);
+            }
+        }
+        int present = 0;
+        for (String key : keys) {
+            if (remove(key)) {
+                present++;
+            }
+        }
+        invalidated.increment(present);
+        return present;
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+        keysByTable.clear();
+    }
+
+    /**
+     * The number of (table, cached SQL) pairs indexed; for tests.
+     */
+    int indexSize() {
+        return keysByTable.values().stream().mapToInt(Set::size).sum();
+    }
+
+    /**
+     * Removes the entry for {@code sql} and its index entries; false if there was none.
+     */
+    private boolean remove(String sql) {
+        boolean[] removed = new boolean[1];
+        cache.asMap().computeIfPresent(sql, (key, entry) -> {
+            unindex(key, entry.tables());
+            removed[0] = true;
+            return null;
+        });
+        return removed[0];
+    }
+
+    private boolean changedSince(Set<String> tables, long stamp) {
+        for (String table : tables) {
+            if (changedAt.getOrDefault(table, Long.MIN_VALUE) > stamp) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void index(String sql, Set<String> tables) {
+        for (String table : tables) {
+            keysByTable.compute(table, (t, tableKeys) -> {
+                Set<String> keys = tableKeys != null ? tableKeys : ConcurrentHashMap.newKeySet();
+                keys.add(sql);
+                return keys;
+            });
+        }
+    }
+
+    private void unindex(String sql, Set<String> tables) {
+        for (String table : tables) {
+            keysByTable.computeIfPresent(table, (t, tableKeys) -> {
+                tableKeys.remove(sql);
+                return tableKeys.isEmpty() ? null : tableKeys;
+            });
+        }
+    }
+
+    private record Entry(ColumnarResult result, Set<String> tables) {
+    }
+}
@@ -0,0 +1,9 @@
+package com.bi.assistant.cache;
+
+/**
+ * Turns a normalized question into a unit-length vector for {@link SemanticTranslationCache}.
+ */
+public interface QuestionEmbedder {
+
+    float[] embed(String normalizedQuestion);
+}
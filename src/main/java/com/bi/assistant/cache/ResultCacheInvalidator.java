@@ -0,0 +1,60 @@
+package com.bi.assistant.cache;
+
+import com.bi.assistant.aggregate.IncrementalAggregateCache;
+import com.bi.assistant.config.AssistantProperties;
+import com.bi.assistant.exception.ServiceBusyException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+
+/**
+ * Drops cached results when the tables they were read from change, on the scheduler
+ * thread rather than on the request path: requests keep being served from the
+ * {@link QueryResultCache} until a poll of the {@link TableChangeDetector} says otherwise.
+ * Incremental aggregate states built on a changed table are dropped with them.
+ * A failed poll changes nothing; the detector compares against the last poll that
+ * worked, so the next one still reports what changed in between.
+ */
+@Component
+@Slf4j
+public class ResultCacheInvalidator {
+
+    private final TableChangeDetector changeDetector;
+    private final QueryResultCache resultCache;
+    private final IncrementalAggregateCache incrementalAggregates;
+    private final boolean enabled;
+
+    @Autowired
+    public ResultCacheInvalidator(TableChangeDetector changeDetector, QueryResultCache resultCache,
+                                  IncrementalAggregateCache incrementalAggregates, AssistantProperties properties) {
+        this.changeDetector = changeDetector;
+        this.resultCache = resultCache;
+        this.incrementalAggregates = incrementalAggregates;
+        this.enabled = properties.getResultCache().isTrackChanges();
+    }
+
+    /**
+     * Runs once at startup, which takes the baseline, then every
+     * {@code bi.assistant.result-cache.change-poll-interval}.
+     */
+    @Scheduled(fixedDelayString = "${bi.assistant.result-cache.change-poll-interval:PT5S}")
+    void poll() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            Set<String> changed = changeDetector.changedTables();
+            if (!changed.isEmpty()) {
+                int dropped = resultCache.invalidateTables(changed);
+                incrementalAggregates.invalidateTables(changed);
+                log.debug("Tables {} changed, dropped {} cached results", changed, dropped);
+            }
+        } catch (DataAccessException | ServiceBusyException e) {
+            log.warn("Could not check tables for changes, keeping cached results: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.bi.assistant.cache;
+
+import com.bi.assistant.config.AssistantProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Nearest-neighbour cache of previously validated translations, consulted after an exact
+ * {@link SqlTranslationCache} miss so that paraphrases ("List all customers",
+ * "Show all customers", "Display customers") reuse the SQL of the first phrasing
+ * instead of paying for another LLM round trip.
+ * <p>
+ * Questions that differ only in their numbers ("top 5" vs "top 10") embed almost
+ * identically, so a neighbour is only reused if it mentions exactly the same numbers.
+ */
+@Component
+@Slf4j
+public class SemanticTranslationCache {
+
+    private static final Pattern NUMBER = Pattern.compile("\\d+(?:\\.\\d+)?");
+
+    private final QuestionEmbedder embedder;
+    private final AssistantProperties.SemanticCache config;
+    private final Counter hits;
+    private final Counter misses;
+    private final Timer lookupTimer;
+
+    private volatile VectorIndex<Entry> index;
+
+    @Autowired
+    public SemanticTranslationCache(QuestionEmbedder embedder, AssistantProperties properties,
+                                    MeterRegistry meterRegistry) {
+        this.embedder = embedder;
+        this.config = properties.getSemanticCache();
+        this.hits = Counter.builder("bi.semantic.cache.lookups")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("bi.semantic.cache.lookups")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        this.lookupTimer = Timer.builder("bi.semantic.cache.lookup.time")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns the SQL of the closest known question above the similarity threshold, or {@code null}.
+     */
+    public String lookup(String naturalQuery) {
+        VectorIndex<Entry> current = index;
+        if (!config.isEnabled() || current == null) {
+            return null;
+        }
+
+        String normalized = SqlTranslationCache.normalize(naturalQuery);
+        float[] vector = embed(normalized);
+        if (vector == null) {
+            misses.increment();
+            return null;
+        }
+
+        long start = System.nanoTime();
+        VectorIndex.Match<Entry> match = current.nearest(vector);
+        lookupTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        if (match == null
+                || match.similarity() < config.getSimilarityThreshold()
+                || !match.payload().numbers().equals(numbers(normalized))) {
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+        log.debug("Semantic cache hit ({}) for query '{}' via '{}'",
+                match.similarity(), naturalQuery, match.payload().question());
+        return match.payload().sql();
+    }
+
+    public void put(String naturalQuery, String validatedSql) {
+        if (!config.isEnabled()) {
+            return;
+        }
+
+        String normalized = SqlTranslationCache.normalize(naturalQuery);
+        float[] vector = embed(normalized);
+        if (vector == null) {
+            return;
+        }
+        indexFor(vector.length).add(vector, new Entry(normalized, numbers(normalized), validatedSql));
+    }
+
+    public void invalidateAll() {
+        VectorIndex<Entry> current = index;
+        if (current != null) {
+            current.clear();
+        }
+    }
+
+    private float[] embed(String normalizedQuestion) {
+        try {
+            return embedder.embed(normalizedQuestion);
+        } catch (RuntimeException e) {
+            // The semantic cache is an optimization; never fail the query because of it
+            log.warn("Failed to embed question '{}': {}", normalizedQuestion, e.getMessage());
+            return null;
+        }
+    }
+
+    private VectorIndex<Entry> indexFor(int dimensions) {
+        VectorIndex<Entry> current = index;
+        if (current == null) {
+            synchronized (this) {
+                current = index;
+                if (current == null) {
+                    // Sized lazily: the model's dimensionality is only known after the first embedding
+                    current = new VectorIndex<>(dimensions, config.getMaxEntries(), config.getCandidates());
+                    index = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private static String numbers(String normalizedQuestion) {
+        StringBuilder numbers = new StringBuilder();
+        Matcher matcher = NUMBER.matcher(normalizedQuestion);
+        while (matcher.find()) {
+            numbers.append(matcher.group()).append(',');
+        }
+        return numbers.toString();
+    }
+
+    record Entry(String question, String numbers, String sql) {
+    }
+}
@@ -0,0 +1,195 @@
+package com.bi.assistant.cache;
+
+import com.bi.assistant.config.AssistantProperties;
+import com.bi.assistant.service.ParameterizedSql;
+import com.bi.assistant.service.SqlParameterizer;
+import com.bi.assistant.service.ValidatedSql;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Long-lived cache of natural language query to validated SQL, parse tree included. A hit
+ * skips the Ollama round trip and the parser; result rows are cached separately in
+ * {@link QueryResultCache}.
+ * <p>
+ * Every entry point (REST, legacy GET and the web UI) translates through
+ * {@link #getOrTranslate}, so caching no longer depends on Spring proxies seeing the call.
+ * <p>
+ * Translations are also kept by question shape, the question with its whole numbers
+ * blanked out, so that "top 10 products by revenue" reuses the SQL of "top 5 products
+ * by revenue" with its {@code LIMIT} changed, see {@link #lookupShape}.
+ */
+@Component
+@Slf4j
+public class SqlTranslationCache {
+
+    public static final String CACHE_NAME = "sqlTranslations";
+    public static final String SHAPES_CACHE_NAME = "sqlTranslationShapes";
+
+    private static final Pattern WHOLE_NUMBER = Pattern.compile("(?<!\\d\\.)\\b\\d+\\b(?!\\.\\d)");
+
+    private final Cache<String, ValidatedSql> cache;
+    private final Cache<String, Shape> shapes;
+
+    @Autowired
+    public SqlTranslationCache(AssistantProperties properties, MeterRegistry meterRegistry) {
+        AssistantProperties.TranslationCache config = properties.getTranslationCache();
+        long maxEntries = config.getMaxEntries();
+        long maxBytes = config.getMaxSize().toBytes();
+
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String key, ValidatedSql sql) -> CacheWeights.bounded(
+                        CacheWeights.ofString(key) + CacheWeights.ofValidatedSql(sql), maxEntries, maxBytes))
+                .expireAfterAccess(config.getExpireAfterAccess())
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+
+        this.shapes = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterAccess(config.getExpireAfterAccess())
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, shapes, SHAPES_CACHE_NAME);
+    }
+
+    /**
+     * Returns the cached translation for the question, or runs the translator and caches its result.
+     * The translator is expected to throw if the SQL doesn't validate, so failures are never cached.
+     */
+    public ValidatedSql getOrTranslate(String naturalQuery, Function<String, ValidatedSql> translator) {
+        String key = normalize(naturalQuery);
+        ValidatedSql cachedSql = cache.getIfPresent(key);
+        if (cachedSql != null) {
+            log.debug("Translation cache hit for query: {}", naturalQuery);
+            return cachedSql;
+        }
+
+        // Deliberately not cache.get(key, translator): an LLM call takes seconds and
+        // Caffeine would block other writers hashing to the same bin for that long
+        ValidatedSql sql = translator.apply(naturalQuery);
+        cache.put(key, sql);
+        return sql;
+    }
+
+    public ValidatedSql get(String naturalQuery) {
+        return cache.getIfPresent(normalize(naturalQuery));
+    }
+
+    public void put(String naturalQuery, ValidatedSql validatedSql) {
+        cache.put(normalize(naturalQuery), validatedSql);
+    }
+
+    /**
+     * SQL for a question that differs from an already translated one only in its whole
+     * numbers: that translation with the literal each number became replaced by this
+     * question's number, or null. The SQL is not validated here; callers validate it like
+     * generated SQL.
+     */
+    public String lookupShape(String naturalQuery) {
+        String normalized = normalize(naturalQuery);
+        Shape shape = shapes.getIfPresent(shapeKey(normalized));
+        if (shape == null) {
+            return null;
+        }
+        List<Long> numbers = numbers(normalized);
+        if (numbers.size() != shape.parameterIndexes().length) {
+            return null;
+        }
+        Map<Integer, Long> numbersByParameter = new HashMap<>();
+        for (int i = 0; i < numbers.size(); i++) {
+            numbersByParameter.put(shape.parameterIndexes()[i], numbers.get(i));
+        }
+        log.debug("Translation shape hit for query: {}", naturalQuery);
+        return SqlParameterizer.replaceNumbers(shape.sql(), numbersByParameter);
+    }
+
+    /**
+     * Remembers a validated translation by its question's shape. Only translations in
+     * which every number of the question became exactly one bindable literal are kept:
+     * a number that went into an interval, or two numbers with the same value, could not
+     * be told apart when the SQL is reused.
+     */
+    public void putShape(String naturalQuery, String validatedSql) {
+        String normalized = normalize(naturalQuery);
+        List<Long> numbers = numbers(normalized);
+        if (numbers.isEmpty()) {
+            // The exact cache already covers it
+            return;
+        }
+        List<Object> parameters = SqlParameterizer.parameterize(validatedSql).parameters();
+        int[] parameterIndexes = new int[numbers.size()];
+        for (int i = 0; i < numbers.size(); i++) {
+            int match = -1;
+            for (int p = 0; p < parameters.size(); p++) {
+                if ((parameters.get(p) instanceof Integer || parameters.get(p) instanceof Long)
+                        && ((Number) parameters.get(p)).longValue() == numbers.get(i)) {
+                    if (match >= 0) {
+                        return;
+                    }
+                    match = p;
+                }
+            }
+            if (match < 0 || numbers.indexOf(numbers.get(i)) != i) {
+                return;
+            }
+            parameterIndexes[i] = match;
+        }
+        shapes.put(shapeKey(normalized), new Shape(validatedSql, parameterIndexes));
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+        shapes.invalidateAll();
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    public static String normalize(String naturalQuery) {
+        return naturalQuery.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    private static String shapeKey(String normalizedQuery) {
+        return WHOLE_NUMBER.matcher(normalizedQuery).replaceAll("#");
+    }
+
+    private static List<Long> numbers(String normalizedQuery) {
+        List<Long> numbers = new ArrayList<>();
+        Matcher matcher = WHOLE_NUMBER.matcher(normalizedQuery);
+        while (matcher.find()) {
+            try {
+                numbers.add(Long.parseLong(matcher.group()));
+            } catch (NumberFormatException e) {
+                // Too long to be a LIMIT or a year; such a question has no shared shape
+                return List.of();
+            }
+        }
+        return numbers;
+    }
+
+    /**
+     * A translation and, for each number of its question in order, the index of the
+     * {@link ParameterizedSql} parameter that number became.
+     */
+    private record Shape(String sql, int[] parameterIndexes) {
+    }
+}
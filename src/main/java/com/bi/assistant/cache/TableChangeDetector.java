@@ -0,0 +1,18 @@
+package com.bi.assistant.cache;
+
+import java.util.Set;
+
+/**
+ * Tells the {@link ResultCacheInvalidator} which tables changed. The default,
+ * {@link PgStatTableChangeDetector}, polls PostgreSQL's statistics and needs nothing
+ * installed in the database; a {@code @Primary} bean replaces it, e.g. one fed by
+ * {@code LISTEN} on a channel that triggers {@code NOTIFY}.
+ */
+public interface TableChangeDetector {
+
+    /**
+     * Lowercased names of the tables and views whose contents changed since the previous
+     * call. The first call only establishes what "previous" is and reports nothing.
+     */
+    Set<String> changedTables();
+}
@@ -0,0 +1,192 @@
+package com.bi.assistant.cache;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Fixed-capacity nearest-neighbour index over unit-length float vectors, stored in flat
+ * primitive arrays so that a lookup never allocates per entry.
+ * <p>
+ * A full cosine scan over 100k entries of a few hundred dimensions costs tens of
+ * milliseconds, so each vector also gets a 64-bit SimHash (signs of 64 random
+ * projections). A lookup first ranks all entries by Hamming distance on the packed
+ * signatures, which is a single pass over a {@code long[]}, then computes exact cosine
+ * similarity only for the closest {@code candidates} entries.
+ * <p>
+ * Vectors are allocated {@value #CHUNK_ENTRIES} entries at a time as the index fills, so
+ * an index sized for 100k entries of 768 dimensions doesn't take 300 MB of heap on its
+ * first entry. When full, the oldest entry is overwritten.
+ */
+public class VectorIndex<T> {
+
+    private static final int SIGNATURE_BITS = Long.SIZE;
+    private static final int CHUNK_ENTRIES = 1024;
+
+    private final int dimensions;
+    private final int capacity;
+    private final int candidates;
+    private final float[] hyperplanes;
+    private final int chunkLength;
+    // CHUNK_ENTRIES vectors each, allocated when the first of them is written
+    private final float[][] vectors;
+    private final long[] signatures;
+    private final Object[] payloads;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private int size;
+    private int next;
+
+    public VectorIndex(int dimensions, int capacity, int candidates) {
+        this.dimensions = dimensions;
+        this.capacity = capacity;
+        this.candidates = candidates;
+        this.chunkLength = Math.multiplyExact(dimensions, Math.min(capacity, CHUNK_ENTRIES));
+        this.hyperplanes = randomHyperplanes(dimensions);
+        this.vectors = new float[(capacity + CHUNK_ENTRIES - 1) / CHUNK_ENTRIES][];
+        this.signatures = new long[capacity];
+        this.payloads = new Object[capacity];
+    }
+
+    public void add(float[] vector, T payload) {
+        checkDimensions(vector);
+        long signature = signature(vector);
+        lock.writeLock().lock();
+        try {
+            int slot = next;
+            float[] chunk = vectors[slot / CHUNK_ENTRIES];
+            if (chunk == null) {
+                chunk = new float[chunkLength];
+                vectors[slot / CHUNK_ENTRIES] = chunk;
+            }
+            System.arraycopy(vector, 0, chunk, slot % CHUNK_ENTRIES * dimensions, dimensions);
+            signatures[slot] = signature;
+            payloads[slot] = payload;
+            next = (slot + 1) % capacity;
+            size = Math.min(size + 1, capacity);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the most similar entry, or {@code null} if the index is empty.
+     */
+    public Match<T> nearest(float[] query) {
+        checkDimensions(query);
+        long signature = signature(query);
+        lock.readLock().lock();
+        try {
+            if (size == 0) {
+                return null;
+            }
+            int cutoff = hammingCutoff(signature);
+            int best = -1;
+            float bestSimilarity = Float.NEGATIVE_INFINITY;
+            int examined = 0;
+            for (int i = 0; i < size && examined < candidates * 2; i++) {
+                if (Long.bitCount(signatures[i] ^ signature) > cutoff) {
+                    continue;
+                }
+                examined++;
+                float similarity = dot(query, i);
+                if (similarity > bestSimilarity) {
+                    bestSimilarity = similarity;
+                    best = i;
+                }
+            }
+            @SuppressWarnings("unchecked")
+            T payload = (T) payloads[best];
+            return new Match<>(payload, bestSimilarity);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            Arrays.fill(payloads, null);
+            size = 0;
+            next = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int dimensions() {
+        return dimensions;
+    }
+
+    /**
+     * Smallest Hamming distance that admits at least {@code candidates} entries.
+     */
+    private int hammingCutoff(long signature) {
+        int[] histogram = new int[SIGNATURE_BITS + 1];
+        for (int i = 0; i < size; i++) {
+            histogram[Long.bitCount(signatures[i] ^ signature)]++;
+        }
+        int admitted = 0;
+        for (int distance = 0; distance <= SIGNATURE_BITS; distance++) {
+            admitted += histogram[distance];
+            if (admitted >= candidates) {
+                return distance;
+            }
+        }
+        return SIGNATURE_BITS;
+    }
+
+    private float dot(float[] query, int entry) {
+        float[] chunk = vectors[entry / CHUNK_ENTRIES];
+        int offset = entry % CHUNK_ENTRIES * dimensions;
+        float sum = 0f;
+        for (int d = 0; d < dimensions; d++) {
+            sum += query[d] * chunk[offset + d];
+        }
+        return sum;
+    }
+
+    private long signature(float[] vector) {
+        long bits = 0L;
+        for (int bit = 0; bit < SIGNATURE_BITS; bit++) {
+            int offset = bit * dimensions;
+            float projection = 0f;
+            for (int d = 0; d < dimensions; d++) {
+                projection += vector[d] * hyperplanes[offset + d];
+            }
+            if (projection >= 0f) {
+                bits |= 1L << bit;
+            }
+        }
+        return bits;
+    }
+
+    private void checkDimensions(float[] vector) {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException(
+                    "Expected a vector of " + dimensions + " dimensions but got " + vector.length);
+        }
+    }
+
+    private static float[] randomHyperplanes(int dimensions) {
+        // Fixed seed keeps signatures stable across restarts and between test runs
+        SplittableRandom random = new SplittableRandom(0x5EED);
+        float[] planes = new float[Math.multiplyExact(SIGNATURE_BITS, dimensions)];
+        for (int i = 0; i < planes.length; i++) {
+            planes[i] = (float) random.nextGaussian();
+        }
+        return planes;
+    }
+
+    public record Match<T>(T payload, float similarity) {
+    }
+}
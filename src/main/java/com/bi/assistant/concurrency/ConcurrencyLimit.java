@@ -0,0 +1,108 @@
+package com.bi.assistant.concurrency;
+
+import com.bi.assistant.exception.ServiceBusyException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * A fair semaphore in front of one downstream resource. With virtual threads a request
+ * no longer waits for a Tomcat worker, so this is what keeps a burst of requests from
+ * turning into a burst of Ollama calls or connection pool checkouts: callers beyond
+ * the permit count queue here, in arrival order, for at most {@code maxWait}, and are
+ * then rejected with {@link ServiceBusyException}.
+ * <p>
+ * Published per {@code resource} tag as {@code bi.concurrency.active},
+ * {@code bi.concurrency.queued}, {@code bi.concurrency.wait} and
+ * {@code bi.concurrency.rejected}.
+ */
+@Slf4j
+public class ConcurrencyLimit {
+
+    private final String resource;
+    private final int permits;
+    private final Duration maxWait;
+    private final Semaphore semaphore;
+    private final Timer waitTimer;
+    private final Counter rejected;
+
+    public ConcurrencyLimit(String resource, int permits, Duration maxWait, MeterRegistry meterRegistry) {
+        if (permits < 1) {
+            throw new IllegalArgumentException("Concurrency limit for " + resource + " needs at least one permit");
+        }
+        this.resource = resource;
+        this.permits = permits;
+        this.maxWait = maxWait;
+        this.semaphore = new Semaphore(permits, true);
+
+        Gauge.builder("bi.concurrency.active", semaphore, s -> permits - s.availablePermits())
+                .description("Calls currently holding a permit")
+                .tag("resource", resource)
+                .register(meterRegistry);
+        Gauge.builder("bi.concurrency.queued", semaphore, Semaphore::getQueueLength)
+                .description("Calls waiting for a permit")
+                .tag("resource", resource)
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("bi.concurrency.wait")
+                .description("Time spent waiting for a permit")
+                .tag("resource", resource)
+                .register(meterRegistry);
+        this.rejected = Counter.builder("bi.concurrency.rejected")
+                .description("Calls that gave up waiting for a permit")
+                .tag("resource", resource)
+                .register(meterRegistry);
+    }
+
+    public <T> T call(Supplier<T> task) {
+        return call(maxWait, task);
+    }
+
+    /**
+     * Runs {@code task} while holding a permit, waiting at most the smaller of
+     * {@code maxWait} and the configured wait for one.
+     */
+    public <T> T call(Duration maxWait, Supplier<T> task) {
+        acquire(maxWait);
+        try {
+            return task.get();
+        } finally {
+            semaphore.release();
+        }
+    }
+
+    public int permits() {
+        return permits;
+    }
+
+    public int active() {
+        return permits - semaphore.availablePermits();
+    }
+
+    private void acquire(Duration requestedWait) {
+        long waitNanos = Math.max(0, Math.min(requestedWait.toNanos(), maxWait.toNanos()));
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = semaphore.tryAcquire(waitNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceBusyException("Interrupted while waiting for " + resource, e);
+        } finally {
+            waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+
+        if (!acquired) {
+            rejected.increment();
+            log.warn("No {} permit within {} ms ({} queued)", resource,
+                    TimeUnit.NANOSECONDS.toMillis(waitNanos), semaphore.getQueueLength());
+            throw new ServiceBusyException("Too many concurrent requests for " + resource + ", try again later");
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.bi.assistant.concurrency;
+
+import com.bi.assistant.config.AssistantProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * The two resources a query request blocks on: the LLM for translation and the
+ * connection pool for execution. Each gets its own limit so that requests waiting
+ * for Ollama never hold a database permit, and the other way around. Queries the cost
+ * guard found expensive also need an {@link #expensive()} permit, taken before the
+ * database one, so they queue among themselves instead of filling the pool.
+ */
+@Component
+public class ConcurrencyLimits {
+
+    private final ConcurrencyLimit llm;
+    private final ConcurrencyLimit database;
+    private final ConcurrencyLimit expensive;
+
+    @Autowired
+    public ConcurrencyLimits(AssistantProperties properties, MeterRegistry meterRegistry) {
+        AssistantProperties.Concurrency config = properties.getConcurrency();
+        this.llm = new ConcurrencyLimit("llm", config.getLlmPermits(), config.getAcquireTimeout(), meterRegistry);
+        this.database = new ConcurrencyLimit("database", config.getDatabasePermits(), config.getAcquireTimeout(),
+                meterRegistry);
+        this.expensive = new ConcurrencyLimit("expensive", config.getExpensivePermits(), config.getAcquireTimeout(),
+                meterRegistry);
+    }
+
+    public ConcurrencyLimit llm() {
+        return llm;
+    }
+
+    public ConcurrencyLimit database() {
+        return database;
+    }
+
+    public ConcurrencyLimit expensive() {
+        return expensive;
+    }
+}
@@ -0,0 +1,87 @@
+package com.bi.assistant.concurrency;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Collapses concurrent calls for the same key into one. The first caller (the leader)
+ * runs the loader; anyone asking for that key while it runs waits for the leader's
+ * result, or its exception, instead of repeating the work. Nothing is remembered once
+ * the call completes; that is what the caches are for.
+ * <p>
+ * Published per {@code flight} tag as {@code bi.singleflight.calls} (tagged
+ * {@code role=leader|follower}) and {@code bi.singleflight.coalescing.ratio}, the share
+ * of calls that were served by another caller's work.
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final Counter leaders;
+    private final Counter followers;
+
+    public SingleFlight(String name, MeterRegistry meterRegistry) {
+        this.leaders = Counter.builder("bi.singleflight.calls")
+                .description("Calls that did the work themselves")
+                .tag("flight", name)
+                .tag("role", "leader")
+                .register(meterRegistry);
+        this.followers = Counter.builder("bi.singleflight.calls")
+                .description("Calls that waited for an identical call already in flight")
+                .tag("flight", name)
+                .tag("role", "follower")
+                .register(meterRegistry);
+        Gauge.builder("bi.singleflight.coalescing.ratio", this, SingleFlight::coalescingRatio)
+                .description("Share of calls served by an identical call already in flight")
+                .tag("flight", name)
+                .register(meterRegistry);
+    }
+
+    public V execute(K key, Supplier<V> loader) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            followers.increment();
+            return await(existing);
+        }
+
+        leaders.increment();
+        try {
+            V value = loader.get();
+            flight.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            // Completed first, so a caller that still finds the entry gets the result rather than waiting forever
+            inFlight.remove(key, flight);
+        }
+    }
+
+    public double coalescingRatio() {
+        double total = leaders.count() + followers.count();
+        return total == 0 ? 0 : followers.count() / total;
+    }
+
+    private static <V> V await(CompletableFuture<V> flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException e) {
+            // Followers see the leader's own exception, e.g. a QueryTimeoutException, not a wrapper
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.bi.assistant.config;
+
+import com.bi.assistant.aggregate.PreAggregation;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The rollups of {@code sales} created in {@code data.sql}. The monthly one is smaller
+ * and is tried first; the daily one answers what needs the day.
+ */
+@Configuration
+public class AggregateConfig {
+
+    private static final List<PreAggregation.Join> PRODUCT_JOIN =
+            List.of(new PreAggregation.Join("products", "product_id", "id", "category"));
+    private static final Map<String, String> SUMS = Map.of("sales.revenue", "revenue", "sales.quantity", "quantity");
+
+    @Bean
+    @Order(1)
+    public PreAggregation salesMonthlyRollup() {
+        return new PreAggregation("sales_monthly_rollup", "sales", PRODUCT_JOIN,
+                Map.of("products.category", "category", "sales.region", "region"),
+                new PreAggregation.TimeDimension("sales.sale_date", "sale_month"),
+                SUMS, "orders");
+    }
+
+    @Bean
+    @Order(2)
+    public PreAggregation salesDailyRollup() {
+        return new PreAggregation("sales_daily_rollup", "sales", PRODUCT_JOIN,
+                Map.of("products.category", "category", "sales.region", "region", "sales.sale_date", "sale_day"),
+                null, SUMS, "orders");
+    }
+}
@@ -1,26 +1,29 @@
 package com.bi.assistant.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.client.ChatClientCustomizer;
 import org.springframework.ai.ollama.OllamaChatModel;
-import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.cache.CacheManager;
-import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
 
 @Configuration
-@EnableCaching
 public class AiConfig {
-    
+
     @Bean
     public ChatClient chatClient(OllamaChatModel chatModel) {
         return ChatClient.builder(chatModel)
                 .defaultAdvisors()
                 .build();
     }
-    
+
+    /**
+     * Applied by Spring AI to every auto-configured {@link ChatClient.Builder}, which is
+     * what {@code QueryService} builds its client from.
+     */
     @Bean
-    public CacheManager cacheManager() {
-        return new ConcurrentMapCacheManager("queryCache");
+    public ChatClientCustomizer generationMetricsCustomizer(MeterRegistry meterRegistry) {
+        GenerationMetricsAdvisor advisor = new GenerationMetricsAdvisor(meterRegistry);
+        return builder -> builder.defaultAdvisors(advisor);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,244 @@
+package com.bi.assistant.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@ConfigurationProperties(prefix = "bi.assistant")
+public class AssistantProperties {
+
+    private final TranslationCache translationCache = new TranslationCache();
+    private final ResultCache resultCache = new ResultCache();
+    private final SemanticCache semanticCache = new SemanticCache();
+    private final Streaming streaming = new Streaming();
+    private final Results results = new Results();
+    private final Execution execution = new Execution();
+    private final Concurrency concurrency = new Concurrency();
+    private final Generation generation = new Generation();
+    private final Schema schema = new Schema();
+    private final Aggregates aggregates = new Aggregates();
+    private final FastPath fastPath = new FastPath();
+    private final Repair repair = new Repair();
+    private final CostGuard costGuard = new CostGuard();
+    private final Incremental incremental = new Incremental();
+    private final Batch batch = new Batch();
+
+    /**
+     * Natural query to validated SQL. Entries are cheap to keep and expensive to rebuild
+     * (one LLM round trip each), so this cache is long-lived and bounded by size only.
+     */
+    @Data
+    public static class TranslationCache {
+        private long maxEntries = 10_000;
+        private DataSize maxSize = DataSize.ofMegabytes(16);
+        private Duration expireAfterAccess = Duration.ofDays(7);
+    }
+
+    /**
+     * SQL to result rows. With {@code trackChanges}, the tables' modification counters are
+     * polled every {@code changePollInterval} and an entry is dropped once a table it read
+     * has changed; {@code timeToLive} is the backstop. Without it, lower {@code timeToLive}
+     * to how stale a result may be.
+     */
+    @Data
+    public static class ResultCache {
+        private long maxEntries = 1_000;
+        private DataSize maxSize = DataSize.ofMegabytes(64);
+        private Duration timeToLive = Duration.ofHours(1);
+        private boolean trackChanges = true;
+        private Duration changePollInterval = Duration.ofSeconds(5);
+    }
+
+    /**
+     * Nearest-neighbour lookup over validated translations, for paraphrased questions.
+     */
+    @Data
+    public static class SemanticCache {
+        private boolean enabled = true;
+        private Embedder embedder = Embedder.MODEL;
+        private double similarityThreshold = 0.92;
+        private int maxEntries = 100_000;
+        private int candidates = 64;
+        private int hashingDimensions = 256;
+
+        public enum Embedder {
+            /** The Spring AI embedding model (Ollama). */
+            MODEL,
+            /** Deterministic feature hashing, for local runs and tests. */
+            HASHING
+        }
+    }
+
+    /**
+     * Cursor-based result streaming for {@code /api/query/stream} and {@code /api/query/events}.
+     */
+    @Data
+    public static class Streaming {
+        private int fetchSize = 1_000;
+        /** Rows per {@code rows} event on {@code /api/query/events}. */
+        private int rowBatchSize = 100;
+    }
+
+    /**
+     * Row cap for {@code /api/query}. A request's {@code limit} can lower it but not raise it.
+     */
+    @Data
+    public static class Results {
+        private int maxRows = 10_000;
+        /** Ask EXPLAIN for the planner's row estimate when a result is truncated. */
+        private boolean estimateTotal = true;
+    }
+
+    /**
+     * Time limits for running generated SQL. The statement timeout bounds each statement;
+     * the request timeout bounds a whole {@code /api/query} request, LLM call included,
+     * and whatever is left of it when the SQL starts becomes that statement's timeout.
+     */
+    @Data
+    public static class Execution {
+        private Duration statementTimeout = Duration.ofSeconds(30);
+        private Duration requestTimeout = Duration.ofSeconds(60);
+    }
+
+    /**
+     * Bounds on concurrent calls to Ollama and to the database. Under virtual threads
+     * every request gets its own thread, so these, not the Tomcat pool, decide how much
+     * load reaches either. Keep {@code databasePermits} at or below the Hikari pool size.
+     */
+    @Data
+    public static class Concurrency {
+        private int llmPermits = 4;
+        private int databasePermits = 10;
+        /** Of those, how many may run plans over {@code cost-guard.expensive-cost} at once. */
+        private int expensivePermits = 2;
+        /** How long a request queues for a permit before it is rejected with 503. */
+        private Duration acquireTimeout = Duration.ofSeconds(30);
+    }
+
+    /**
+     * Ollama options for SQL generation, sent with every request. The model stops at the
+     * first {@code ;} instead of going on to explain the query or offer alternatives; a
+     * response cut short by a {@code ;} in the prose before the SQL is generated again
+     * without stop sequences. A fence is no stop sequence: after a line of prose, the
+     * opening fence starts with a newline just like the closing one. {@code maxTokens}
+     * caps whatever gets past the stop sequences. Streamed generation sends none and is
+     * stopped by {@link com.bi.assistant.service.SqlStatementScanner} instead.
+     */
+    @Data
+    public static class Generation {
+        private double temperature = 0.0;
+        private int maxTokens = 512;
+        private List<String> stopSequences = new ArrayList<>(List.of(";"));
+    }
+
+    /**
+     * The schema catalog and how much of it goes into the prompt. Up to
+     * {@code maxPromptTables} relations, the whole schema is part of the cached prompt
+     * prefix; beyond that, schema linking picks the {@code topTables} relations that best
+     * match each question, plus their foreign key neighbours.
+     */
+    @Data
+    public static class Schema {
+        /** How often the catalog checks the database for schema changes. */
+        private Duration refreshInterval = Duration.ofMinutes(10);
+        private int maxPromptTables = 30;
+        private int topTables = 8;
+        /** Columns rendered per linked table: keys and matched columns first, then catalog order. */
+        private int maxColumnsPerTable = 40;
+        /** Index distinct values of low-cardinality text columns, so "Electronics" finds {@code category}. */
+        private boolean sampleValues = true;
+        /** Rows read per column when sampling, and the most distinct values a column may have to be indexed. */
+        private int sampleRows = 10_000;
+        private int maxDistinctValues = 50;
+        /** Question word to the schema words it stands for, e.g. {@code client: customer}. */
+        private Map<String, List<String>> synonyms = new HashMap<>();
+    }
+
+    /**
+     * Materialized rollups of the fact tables. Aggregate queries a rollup can answer run
+     * against it instead of the base tables, as long as its last refresh is no older
+     * than {@code maxStaleness}.
+     */
+    @Data
+    public static class Aggregates {
+        private boolean enabled = true;
+        private Duration refreshInterval = Duration.ofMinutes(15);
+        private Duration maxStaleness = Duration.ofMinutes(30);
+    }
+
+    /**
+     * Rule-based translation of common question shapes, tried before the LLM. A question
+     * goes to the LLM unless at least {@code minConfidence} of its words were understood.
+     */
+    @Data
+    public static class FastPath {
+        private boolean enabled = true;
+        private double minConfidence = 0.8;
+    }
+
+    /**
+     * LLM repair of SQL the database rejected: the model is shown the failed SQL and
+     * PostgreSQL's error, up to {@code maxAttempts} times, and no attempt is started once
+     * {@code budget} has passed. Each candidate must pass EXPLAIN before it runs.
+     */
+    @Data
+    public static class Repair {
+        private boolean enabled = true;
+        private int maxAttempts = 2;
+        private Duration budget = Duration.ofSeconds(20);
+        /** Repairs remembered by the SQL they replace. */
+        private long maxEntries = 1_000;
+    }
+
+    /**
+     * EXPLAIN before execution. Plans are remembered per SQL for {@code planTtl}. A plan
+     * over {@code maxCost} or {@code maxRows} is rejected; one over {@code expensiveCost}
+     * runs under the {@code expensive} concurrency limit, so a few heavy queries can't take
+     * every database permit. Costs are in the planner's units ({@code seq_page_cost} = 1).
+     */
+    @Data
+    public static class CostGuard {
+        private boolean enabled = true;
+        private double maxCost = 1_000_000;
+        /** Rows the query returns, its LIMIT included. */
+        private long maxRows = 50_000_000;
+        private double expensiveCost = 100_000;
+        /** A sequential scan at least this costly is reported as a scan of a large table. */
+        private double largeScanCost = 10_000;
+        private Duration planTtl = Duration.ofMinutes(10);
+        private long maxEntries = 10_000;
+    }
+
+    /**
+     * Incremental refresh of aggregate results over append-only tables: only rows with a
+     * key above the last one aggregated are read, and merged into the kept state. The
+     * state is rebuilt from scratch every {@code fullRefreshInterval}, which picks up rows
+     * committed out of key order; queries with more than {@code maxGroups} groups run in full.
+     */
+    @Data
+    public static class Incremental {
+        private boolean enabled = true;
+        /** Append-only table to the key column that grows with every insert. */
+        private Map<String, String> appendOnlyTables = new HashMap<>(Map.of("sales", "id"));
+        private Duration fullRefreshInterval = Duration.ofHours(1);
+        private int maxGroups = 10_000;
+        /** Aggregate states kept, one per distinct query. */
+        private long maxEntries = 1_000;
+    }
+
+    /**
+     * {@code /api/query/batch}: how many of one batch's distinct questions are answered at
+     * a time. The LLM and database permits still apply on top of this.
+     */
+    @Data
+    public static class Batch {
+        private int parallelism = 8;
+    }
+}
@@ -0,0 +1,125 @@
+package com.bi.assistant.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisor;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisorChain;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.core.Ordered;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Records latency and token usage of every LLM generation, so the effect of the
+ * generation limits in {@link AssistantProperties.Generation} shows up in the metrics:
+ * <ul>
+ *     <li>{@code bi.llm.generation}: time until the response is complete, tagged with
+ *     {@code mode} (call or stream) and {@code finish}: the model's done reason ("stop"
+ *     for a stop sequence or natural end, "length" for the token cap), or "cancelled" for
+ *     a stream the caller stopped early.</li>
+ *     <li>{@code bi.llm.first.token}: time until the first streamed token.</li>
+ *     <li>{@code bi.llm.tokens}: prompt and completion tokens per request, tagged {@code type}.
+ *     A cancelled stream never receives Ollama's final chunk, so it has no counts.</li>
+ * </ul>
+ */
+@Slf4j
+public class GenerationMetricsAdvisor implements CallAdvisor, StreamAdvisor {
+
+    private final MeterRegistry meterRegistry;
+    private final Timer firstToken;
+
+    public GenerationMetricsAdvisor(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.firstToken = Timer.builder("bi.llm.first.token")
+                .description("Time from request to the first streamed token")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public String getName() {
+        return "generationMetrics";
+    }
+
+    @Override
+    public int getOrder() {
+        // Innermost, right before the model call, so other advisors' work isn't timed
+        return Ordered.LOWEST_PRECEDENCE - 1;
+    }
+
+    @Override
+    public ChatClientResponse adviseCall(ChatClientRequest request, CallAdvisorChain chain) {
+        long start = System.nanoTime();
+        ChatClientResponse response = chain.nextCall(request);
+        record("call", System.nanoTime() - start, response.chatResponse(), false);
+        return response;
+    }
+
+    @Override
+    public Flux<ChatClientResponse> adviseStream(ChatClientRequest request, StreamAdvisorChain chain) {
+        long start = System.nanoTime();
+        AtomicLong firstTokenAt = new AtomicLong();
+        AtomicReference<ChatResponse> lastResponse = new AtomicReference<>();
+        return chain.nextStream(request)
+                .doOnNext(response -> {
+                    if (firstTokenAt.compareAndSet(0, System.nanoTime())) {
+                        firstToken.record(firstTokenAt.get() - start, TimeUnit.NANOSECONDS);
+                    }
+                    if (response.chatResponse() != null) {
+                        lastResponse.set(response.chatResponse());
+                    }
+                })
+                .doFinally(signal -> record("stream", System.nanoTime() - start, lastResponse.get(),
+                        signal == SignalType.CANCEL));
+    }
+
+    private void record(String mode, long nanos, ChatResponse response, boolean cancelled) {
+        String finish = cancelled ? "cancelled" : finishReason(response);
+        Timer.builder("bi.llm.generation")
+                .description("Time until the LLM response is complete")
+                .tag("mode", mode)
+                .tag("finish", finish)
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+
+        Usage usage = response != null && !cancelled ? response.getMetadata().getUsage() : null;
+        Integer promptTokens = usage != null ? usage.getPromptTokens() : null;
+        Integer completionTokens = usage != null ? usage.getCompletionTokens() : null;
+        recordTokens("prompt", promptTokens);
+        recordTokens("completion", completionTokens);
+
+        log.debug("LLM {} finished ({}) in {} ms: {} prompt tokens, {} completion tokens",
+                mode, finish, TimeUnit.NANOSECONDS.toMillis(nanos), promptTokens, completionTokens);
+    }
+
+    private void recordTokens(String type, Integer tokens) {
+        if (tokens == null || tokens <= 0) {
+            return;
+        }
+        DistributionSummary.builder("bi.llm.tokens")
+                .description("Tokens per LLM request")
+                .baseUnit("tokens")
+                .tag("type", type)
+                .register(meterRegistry)
+                .record(tokens);
+    }
+
+    private static String finishReason(ChatResponse response) {
+        if (response == null || response.getResult() == null
+                || response.getResult().getMetadata().getFinishReason() == null) {
+            return "unknown";
+        }
+        return response.getResult().getMetadata().getFinishReason().toLowerCase(Locale.ROOT);
+    }
+}
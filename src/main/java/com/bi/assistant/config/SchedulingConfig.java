@@ -0,0 +1,12 @@
+package com.bi.assistant.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Background jobs, such as the schema catalog refresh.
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -0,0 +1,23 @@
+package com.bi.assistant.config;
+
+import com.bi.assistant.cache.HashingQuestionEmbedder;
+import com.bi.assistant.cache.ModelQuestionEmbedder;
+import com.bi.assistant.cache.QuestionEmbedder;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class SemanticCacheConfig {
+
+    @Bean
+    public QuestionEmbedder questionEmbedder(AssistantProperties properties,
+                                             ObjectProvider<EmbeddingModel> embeddingModel) {
+        AssistantProperties.SemanticCache config = properties.getSemanticCache();
+        if (config.getEmbedder() == AssistantProperties.SemanticCache.Embedder.HASHING) {
+            return new HashingQuestionEmbedder(config.getHashingDimensions());
+        }
+        return new ModelQuestionEmbedder(embeddingModel.getObject());
+    }
+}
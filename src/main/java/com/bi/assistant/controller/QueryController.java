@@ -1,29 +1,49 @@
 package com.bi.assistant.controller;
 
+import com.bi.assistant.dto.BatchQueryRequest;
 import com.bi.assistant.dto.QueryRequest;
 import com.bi.assistant.dto.QueryResponse;
+import com.bi.assistant.service.BatchQueryExecutor;
+import com.bi.assistant.service.QueryCancellation;
+import com.bi.assistant.service.QueryEventStreamer;
 import com.bi.assistant.service.QueryService;
+import com.bi.assistant.service.StreamingQueryExecutor;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 @Controller
 @Slf4j
 public class QueryController {
 
     private final QueryService queryService;
+    private final StreamingQueryExecutor streamingQueryExecutor;
+    private final QueryEventStreamer queryEventStreamer;
+    private final BatchQueryExecutor batchQueryExecutor;
 
     @Autowired
-    public QueryController(QueryService queryService) {
+    public QueryController(QueryService queryService, StreamingQueryExecutor streamingQueryExecutor,
+                           QueryEventStreamer queryEventStreamer, BatchQueryExecutor batchQueryExecutor) {
         this.queryService = queryService;
+        this.streamingQueryExecutor = streamingQueryExecutor;
+        this.queryEventStreamer = queryEventStreamer;
+        this.batchQueryExecutor = batchQueryExecutor;
     }
 
     // REST API endpoints
@@ -47,12 +67,82 @@ public class QueryController {
         }
     }
 
+    // Streaming REST API endpoint: NDJSON rows straight from a database cursor
+    @PostMapping(value = "/api/query/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @ResponseBody
+    public ResponseEntity<StreamingResponseBody> handleQueryStream(@Valid @RequestBody QueryRequest request,
+                                                                   HttpServletRequest servletRequest) {
+        log.info("Streaming API Query received: {}", request.getQuery());
+
+        // Translate up front so that generation and validation errors still get a regular error response
+        String sql = queryService.translateToSql(request);
+
+        QueryCancellation cancellation = cancelOnTimeoutOrError(servletRequest);
+        StreamingResponseBody body = outputStream -> streamingQueryExecutor.stream(sql, outputStream, cancellation);
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    // Server-Sent Events: SQL tokens as they are generated, then validation, then row batches
+    @PostMapping(value = "/api/query/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @ResponseBody
+    public ResponseEntity<StreamingResponseBody> handleQueryEvents(@Valid @RequestBody QueryRequest request,
+                                                                   HttpServletRequest servletRequest) {
+        log.info("Event stream API Query received: {}", request.getQuery());
+
+        // Everything, translation included, happens inside the stream; failures arrive as events
+        QueryCancellation cancellation = cancelOnTimeoutOrError(servletRequest);
+        StreamingResponseBody body = outputStream -> queryEventStreamer.stream(request, outputStream, cancellation);
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.TEXT_EVENT_STREAM)
+                .header(HttpHeaders.CACHE_CONTROL, "no-cache")
+                .body(body);
+    }
+
+    // Batch REST API endpoint: a dashboard's questions at once, one NDJSON line per answer as it completes
+    @PostMapping(value = "/api/query/batch", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @ResponseBody
+    public ResponseEntity<StreamingResponseBody> handleQueryBatch(@Valid @RequestBody BatchQueryRequest request) {
+        log.info("Batch API Query received: {} questions", request.getQueries().size());
+
+        StreamingResponseBody body = outputStream -> batchQueryExecutor.stream(request.getQueries(), outputStream);
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    /**
+     * Stops the running statement if the async request times out or the container reports the client gone.
+     */
+    private QueryCancellation cancelOnTimeoutOrError(HttpServletRequest servletRequest) {
+        QueryCancellation cancellation = new QueryCancellation();
+        WebAsyncUtils.getAsyncManager(servletRequest).registerCallableInterceptor(
+                QueryCancellation.class.getName(), new CallableProcessingInterceptor() {
+                    @Override
+                    public <T> Object handleTimeout(NativeWebRequest webRequest, Callable<T> task) {
+                        cancellation.cancel();
+                        return RESULT_NONE;
+                    }
+
+                    @Override
+                    public <T> Object handleError(NativeWebRequest webRequest, Callable<T> task, Throwable t) {
+                        cancellation.cancel();
+                        return RESULT_NONE;
+                    }
+                });
+        return cancellation;
+    }
+
     // Legacy REST API endpoint for backward compatibility
     @GetMapping("/query")
     @ResponseBody
     public List<Map<String, Object>> handleQueryLegacy(@RequestParam String q) {
         log.info("Legacy API Query received: {}", q);
-        return queryService.executeNaturalLanguageQuery_Legacy(q);
+        return queryService.executeNaturalLanguageQuery_Legacy(toRequest(q));
     }
 
     // Web UI endpoints
@@ -68,7 +158,7 @@ public class QueryController {
         log.info("Web UI Query received: {}", query);
         
         try {
-            QueryResponse response = queryService.executeNaturalLanguageQuery(query);
+            QueryResponse response = queryService.executeNaturalLanguageQuery(toRequest(query));
             
             if (response.isSuccess()) {
                 model.addAttribute("results", response.getData());
@@ -97,6 +187,12 @@ public class QueryController {
         return "queries";
     }
 
+    private QueryRequest toRequest(String query) {
+        QueryRequest request = new QueryRequest();
+        request.setQuery(query);
+        return request;
+    }
+
     private String[] getSampleQueries() {
         return new String[]{
             "Show me the top 5 products by revenue last quarter",
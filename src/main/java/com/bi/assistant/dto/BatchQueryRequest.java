@@ -0,0 +1,23 @@
+package com.bi.assistant.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * The questions of one dashboard, answered together by {@code /api/query/batch}.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchQueryRequest {
+
+    @NotEmpty(message = "Batch cannot be empty")
+    @Size(max = 50, message = "Batch can have at most 50 queries")
+    private List<@Valid QueryRequest> queries;
+}
@@ -0,0 +1,18 @@
+package com.bi.assistant.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One line of a {@code /api/query/batch} response: the answer to the question at
+ * {@code index} in the request, successful or not.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchQueryResult {
+    private int index;
+    private String query;
+    private QueryResponse response;
+}
@@ -0,0 +1,87 @@
+package com.bi.assistant.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Column-oriented alternative to {@code List<Map<String, Object>>}: column names appear
+ * once, numeric columns are primitive arrays and repetitive text columns (region,
+ * category, customer_segment, ...) are dictionary-encoded.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ColumnarResult {
+    private int rowCount;
+    private String[] columnNames;
+    private List<Column> columns;
+
+    /** More rows were available than were read; reported in the response metadata. */
+    @JsonIgnore
+    private boolean truncated;
+
+    public enum ColumnType {
+        LONG, DOUBLE, STRING, DICTIONARY, OBJECT
+    }
+
+    /**
+     * One column. Only the array matching {@link #type} is set; {@code nullRows} lists
+     * (ascending) the rows whose primitive slot holds a placeholder for SQL NULL, and
+     * dictionary code {@code -1} means NULL.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Column {
+        private ColumnType type;
+        private long[] longs;
+        private double[] doubles;
+        private String[] strings;
+        private String[] dictionary;
+        private int[] codes;
+        private Object[] values;
+        private int[] nullRows;
+
+        public Object value(int row) {
+            if (nullRows != null && Arrays.binarySearch(nullRows, row) >= 0) {
+                return null;
+            }
+            return switch (type) {
+                case LONG -> longs[row];
+                case DOUBLE -> doubles[row];
+                case STRING -> strings[row];
+                case DICTIONARY -> codes[row] < 0 ? null : dictionary[codes[row]];
+                case OBJECT -> values[row];
+            };
+        }
+    }
+
+    public Object value(int row, int column) {
+        return columns.get(column).value(row);
+    }
+
+    /**
+     * Materializes the classic map-per-row format, for clients that didn't opt in.
+     */
+    public List<Map<String, Object>> toRows() {
+        List<Map<String, Object>> rows = new ArrayList<>(rowCount);
+        for (int row = 0; row < rowCount; row++) {
+            Map<String, Object> values = new LinkedHashMap<>(columnNames.length * 2);
+            for (int column = 0; column < columnNames.length; column++) {
+                values.put(columnNames[column], value(row, column));
+            }
+            rows.add(values);
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,21 @@
+package com.bi.assistant.dto;
+
+import java.util.List;
+
+/**
+ * What the planner expects of a query, from {@code EXPLAIN (FORMAT JSON)}.
+ *
+ * @param estimatedCost       total cost of the plan, in the planner's units
+ * @param estimatedRows       rows the query returns, its outer LIMIT included
+ * @param estimatedTotalRows  rows it would return without its outer LIMIT
+ * @param largeSeqScans       tables read by a sequential scan of at least {@code cost-guard.large-scan-cost}
+ * @param indexesUsed         indexes any scan in the plan reads
+ */
+public record QueryPlan(double estimatedCost, long estimatedRows, long estimatedTotalRows,
+                        List<String> largeSeqScans, List<String> indexesUsed) {
+
+    public QueryPlan {
+        largeSeqScans = List.copyOf(largeSeqScans);
+        indexesUsed = List.copyOf(indexesUsed);
+    }
+}
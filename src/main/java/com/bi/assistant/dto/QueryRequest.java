@@ -5,6 +5,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Positive;
 import jakarta.validation.constraints.Size;
 
 @Data
@@ -17,6 +18,12 @@ public class QueryRequest {
     private String query;
     
     private String dateRange;
+
+    /** Maximum rows to return; capped by {@code bi.assistant.results.max-rows}. */
+    @Positive(message = "Limit must be positive")
     private Integer limit;
     private boolean includeMetadata = true;
+
+    /** Return {@link QueryResponse#getColumnarData()} instead of a map per row. */
+    private boolean columnar = false;
 }
@@ -1,5 +1,6 @@
 package com.bi.assistant.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -15,6 +16,8 @@ public class QueryResponse {
     private String message;
     private String generatedSql;
     private List<Map<String, Object>> data;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private ColumnarResult columnarData;
     private QueryMetadata metadata;
     
     @Data
@@ -25,5 +28,13 @@ public class QueryResponse {
         private long executionTimeMs;
         private String[] columnNames;
         private String queryType;
+        /** The row cap cut the result short; {@code rowCount} rows were returned. */
+        private boolean truncated;
+        /** Planner estimate of the full result size, only reported for truncated results. */
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        private Long estimatedTotalRows;
+        /** The plan the cost guard checked the query against, when it has one. */
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        private QueryPlan plan;
     }
 }
@@ -2,6 +2,7 @@ package com.bi.assistant.exception;
 
 import com.bi.assistant.dto.QueryResponse;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
@@ -33,6 +34,28 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
     }
 
+    @ExceptionHandler(QueryTimeoutException.class)
+    public ResponseEntity<QueryResponse> handleQueryTimeoutException(QueryTimeoutException ex) {
+        // Counted as bi.query.timeouts where it happens; no stack trace needed
+        log.warn("Query timeout: {}", ex.getMessage());
+        QueryResponse response = new QueryResponse();
+        response.setSuccess(false);
+        response.setMessage("Query timed out: " + ex.getMessage());
+        return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(response);
+    }
+
+    @ExceptionHandler(ServiceBusyException.class)
+    public ResponseEntity<QueryResponse> handleServiceBusyException(ServiceBusyException ex) {
+        // Counted as bi.concurrency.rejected where it happens
+        log.warn("Service busy: {}", ex.getMessage());
+        QueryResponse response = new QueryResponse();
+        response.setSuccess(false);
+        response.setMessage("Service busy: " + ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(response);
+    }
+
     @ExceptionHandler(MethodArgumentNotValidException.class)
     public ResponseEntity<QueryResponse> handleValidationException(MethodArgumentNotValidException ex) {
         BindingResult bindingResult = ex.getBindingResult();
@@ -0,0 +1,15 @@
+package com.bi.assistant.exception;
+
+/**
+ * A query ran into its statement timeout or its request's deadline. Kept apart from
+ * {@link QueryExecutionException} because it says nothing about the SQL being wrong.
+ */
+public class QueryTimeoutException extends RuntimeException {
+    public QueryTimeoutException(String message) {
+        super(message);
+    }
+
+    public QueryTimeoutException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,15 @@
+package com.bi.assistant.exception;
+
+/**
+ * A request waited too long for an LLM or database permit. Reported as 503 so that
+ * clients back off and retry instead of treating it as a bad query.
+ */
+public class ServiceBusyException extends RuntimeException {
+    public ServiceBusyException(String message) {
+        super(message);
+    }
+
+    public ServiceBusyException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,509 @@
+package com.bi.assistant.fastpath;
+
+import com.bi.assistant.config.AssistantProperties;
+import com.bi.assistant.exception.QueryExecutionException;
+import com.bi.assistant.schema.ColumnValueSampler;
+import com.bi.assistant.schema.SchemaCatalog;
+import com.bi.assistant.schema.TableInfo;
+import com.bi.assistant.service.SqlValidator;
+import com.bi.assistant.service.ValidatedSql;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Translates the questions the UI suggests, and the many ways of asking them, without
+ * the LLM. A question is matched against a small grammar of slots: a metric
+ * ("revenue", "best selling", "orders"), one dimension to group by ("by category",
+ * "which region"), a time window ("last quarter", "in 2025"), filters on sampled column
+ * values ("in Electronics", "Premium customers"), and an order and limit ("top 5",
+ * "highest"). The slots fill one of three SQL templates: a metric by dimension, a total,
+ * or a list of rows. Windows relative to today are left to the database, as bounds on
+ * {@code CURRENT_DATE}: the SQL is cached with the translation, and "revenue this month"
+ * asked again next month must not answer for the month it was first asked in.
+ * <p>
+ * Confidence is the share of the question's words the grammar accounted for, filler
+ * words aside. Below {@code bi.assistant.fast-path.min-confidence}, or for a question
+ * with two metrics, two dimensions or two time windows, the LLM translates it instead:
+ * "Compare revenue by region" fails on "compare", "Show cheapest products" on
+ * "cheapest". The SQL is validated like generated SQL, so a schema change that breaks a
+ * template sends its questions to the LLM rather than to the database.
+ * <p>
+ * Counted as {@code bi.fastpath.questions}, tagged {@code outcome=answered|fallback}.
+ */
+@Component
+@Slf4j
+public class FastPathTranslator {
+
+    private static final Set<String> FILLERS = Set.of(
+            "show", "me", "what", "whats", "which", "who", "is", "are", "was", "were", "the", "a", "an", "of", "by",
+            "per", "for", "each", "in", "on", "give", "get", "display", "find", "total", "sum", "overall", "with",
+            "has", "have", "had", "wise", "our", "did", "do", "does", "generate", "generates", "generated", "make",
+            "makes", "made", "trend", "trends", "breakdown", "report", "overview", "summary", "analysis", "please",
+            "i", "want", "to", "see", "tell", "how", "much", "amount", "from");
+    private static final Map<String, Integer> NUMBER_WORDS = Map.of(
+            "one", 1, "three", 3, "five", 5, "ten", 10, "twenty", 20);
+    // Sampled columns whose values can filter a question, e.g. "in Electronics" or "in the North region"
+    private static final List<String> FILTER_COLUMNS = List.of(
+            "products.category", "products.manufacturer", "customers.customer_segment", "customers.city",
+            "customers.country", "sales.region");
+    private static final String FILTER_SUFFIX =
+            "(?: (?:categor(?:y|ies)|segments?|regions?|cit(?:y|ies)|countr(?:y|ies)|manufacturers?|brands?))?";
+
+    private static final String NUMBER = "(\\d+|" + String.join("|", NUMBER_WORDS.keySet()) + ")";
+    private static final Pattern THIS_YEAR = words("(?:this|current) year|year to date|ytd");
+    private static final Pattern LAST_YEAR = words("(?:last|previous|past) year");
+    private static final Pattern THIS_QUARTER = words("(?:this|current) quarter");
+    private static final Pattern LAST_QUARTER = words("(?:last|previous|past) quarter");
+    private static final Pattern THIS_MONTH = words("(?:this|current) month");
+    private static final Pattern LAST_MONTH = words("(?:last|previous|past) month");
+    private static final Pattern LAST_DAYS = words("(?:last|past) (\\d+) days");
+    private static final Pattern IN_YEAR = words("(?:in |during |for )?(20\\d\\d)");
+    private static final Pattern TOP_COUNT = words("(top|first|bottom) " + NUMBER);
+    private static final Pattern COUNT_TOP =
+            words(NUMBER + " (best|top|highest|biggest|largest|most|lowest|worst|least)");
+    private static final Pattern DESCENDING =
+            words("highest|most|best|top|largest|biggest|greatest|leading|max|maximum");
+    private static final Pattern ASCENDING = words("lowest|least|worst|smallest|fewest|min|minimum");
+    private static final Pattern LIST = words("all|list|every|details?|info|information");
+
+    private static final Map<Pattern, Metric> METRICS = patterns(List.of(
+            Map.entry("average order value|avg order value|aov|average sale(?: value)?", Metric.AVERAGE_ORDER_VALUE),
+            Map.entry("(?:best|top)[ ]?selling|most sold|sells?(?: the)? most|units?(?: sold)?|quantity|quantities"
+                    + "|items sold|(?:bought|purchased)(?: the)? most(?: products| items)?", Metric.QUANTITY),
+            Map.entry("number of (?:orders|sales|transactions)|how many (?:orders|sales)|orders|order count"
+                    + "|transactions", Metric.ORDERS),
+            Map.entry("revenue|sales|income|turnover|earnings|spent|spend|spending|money", Metric.REVENUE)));
+    private static final Map<Pattern, Dimension> DIMENSIONS = patterns(List.of(
+            Map.entry("customer segments?|segments?", Dimension.SEGMENT),
+            Map.entry("product categor(?:y|ies)|categor(?:y|ies)", Dimension.CATEGORY),
+            Map.entry("manufacturers?|brands?|makers?", Dimension.MANUFACTURER),
+            Map.entry("products?|items?", Dimension.PRODUCT),
+            Map.entry("customers?|clients?|buyers?", Dimension.CUSTOMER),
+            Map.entry("cit(?:y|ies)", Dimension.CITY),
+            Map.entry("countr(?:y|ies)", Dimension.COUNTRY),
+            Map.entry("regions?", Dimension.REGION),
+            Map.entry("month(?:ly|s)?", Dimension.MONTH),
+            Map.entry("quarter(?:ly|s)?", Dimension.QUARTER),
+            Map.entry("year(?:ly|s)?|annual(?:ly)?", Dimension.YEAR)));
+    // Before the metrics, so "sales" in "sales person" isn't taken for revenue
+    private static final Pattern SALES_PERSON =
+            words("sales ?(?:person|persons|people|rep|reps|representatives?)|salespeople|sellers?");
+
+    private final SchemaCatalog schemaCatalog;
+    private final ColumnValueSampler columnValueSampler;
+    private final SqlValidator sqlValidator;
+    private final boolean enabled;
+    private final double minConfidence;
+    private final Counter answered;
+    private final Counter fallbacks;
+
+    private volatile Vocabulary vocabulary;
+
+    @Autowired
+    public FastPathTranslator(SchemaCatalog schemaCatalog, ColumnValueSampler columnValueSampler,
+                              SqlValidator sqlValidator, AssistantProperties properties, MeterRegistry meterRegistry) {
+        this.schemaCatalog = schemaCatalog;
+        this.columnValueSampler = columnValueSampler;
+        this.sqlValidator = sqlValidator;
+        this.enabled = properties.getFastPath().isEnabled();
+        this.minConfidence = properties.getFastPath().getMinConfidence();
+        this.answered = questions(meterRegistry, "answered");
+        this.fallbacks = questions(meterRegistry, "fallback");
+    }
+
+    /**
+     * Validated SQL for a question of a known shape, or null when the LLM should translate it.
+     */
+    public ValidatedSql translate(String question) {
+        if (!enabled) {
+            return null;
+        }
+        Match match = match(question);
+        if (match == null || match.confidence() < minConfidence) {
+            log.debug("Fast path declined ({}): {}", match == null ? "no match" : match.confidence(), question);
+            fallbacks.increment();
+            return null;
+        }
+        try {
+            ValidatedSql validatedSql = sqlValidator.validate(match.sql());
+            answered.increment();
+            log.info("Fast path {} (confidence {}): {}", match.intent(), match.confidence(), match.sql());
+            return validatedSql;
+        } catch (QueryExecutionException e) {
+            log.warn("Fast path SQL failed validation, falling back to the LLM: {}", e.getMessage());
+            fallbacks.increment();
+            return null;
+        }
+    }
+
+    /**
+     * The shape of the question, its SQL and the confidence in both, or null when the
+     * question has no shape this translator knows.
+     */
+    public Match match(String question) {
+        String text = normalize(question);
+        int meaningful = meaningfulWords(text);
+        if (meaningful == 0) {
+            return null;
+        }
+        Slots slots = new Slots(text);
+        slots.read(vocabulary());
+        if (slots.conflict) {
+            return null;
+        }
+        String sql = slots.sql();
+        if (sql == null) {
+            return null;
+        }
+        double confidence = (double) (meaningful - meaningfulWords(slots.text.toString())) / meaningful;
+        return new Match(slots.intent, sql, confidence);
+    }
+
+    public enum Intent {
+        /** A metric grouped by one dimension. */
+        AGGREGATE,
+        /** A metric over everything the filters leave. */
+        TOTAL,
+        /** The rows of one table. */
+        LIST
+    }
+
+    public record Match(Intent intent, String sql, double confidence) {
+    }
+
+    enum Metric {
+        REVENUE("SUM(s.revenue)", "total_revenue"),
+        QUANTITY("SUM(s.quantity)", "total_quantity"),
+        ORDERS("COUNT(*)", "total_orders"),
+        AVERAGE_ORDER_VALUE("AVG(s.revenue)", "avg_order_value");
+
+        private final String expression;
+        private final String alias;
+
+        Metric(String expression, String alias) {
+            this.expression = expression;
+            this.alias = alias;
+        }
+    }
+
+    enum Dimension {
+        PRODUCT("products", "p.product_name", "product_name"),
+        CATEGORY("products", "p.category", "category"),
+        MANUFACTURER("products", "p.manufacturer", "manufacturer"),
+        CUSTOMER("customers", "c.customer_name", "customer_name"),
+        SEGMENT("customers", "c.customer_segment", "customer_segment"),
+        CITY("customers", "c.city", "city"),
+        COUNTRY("customers", "c.country", "country"),
+        REGION("sales", "s.region", "region"),
+        SALES_PERSON("sales", "s.sales_person", "sales_person"),
+        MONTH("sales", "DATE_TRUNC('month', s.sale_date)::date", "month"),
+        QUARTER("sales", "DATE_TRUNC('quarter', s.sale_date)::date", "quarter"),
+        YEAR("sales", "EXTRACT(YEAR FROM s.sale_date)", "year");
+
+        private final String table;
+        private final String expression;
+        private final String alias;
+
+        Dimension(String table, String expression, String alias) {
+            this.table = table;
+            this.expression = expression;
+            this.alias = alias;
+        }
+
+        private boolean isTime() {
+            return this == MONTH || this == QUARTER || this == YEAR;
+        }
+    }
+
+    private record Filter(String table, String column, String value) {
+
+        String predicate() {
+            return alias(table) + "." + column + " = '" + value.replace("'", "''") + "'";
+        }
+    }
+
+    /**
+     * Sampled filter values of one schema version, longest first so "New York" wins over "York".
+     */
+    private record Vocabulary(long version, Map<Pattern, Filter> filters) {
+    }
+
+    private Vocabulary vocabulary() {
+        long version = schemaCatalog.version();
+        Vocabulary current = vocabulary;
+        if (current == null || current.version() != version) {
+            current = new Vocabulary(version, sampleFilters());
+            vocabulary = current;
+        }
+        return current;
+    }
+
+    private Map<Pattern, Filter> sampleFilters() {
+        List<Filter> filters = new ArrayList<>();
+        for (String key : FILTER_COLUMNS) {
+            String table = key.substring(0, key.indexOf('.'));
+            String column = key.substring(key.indexOf('.') + 1);
+            TableInfo info = schemaCatalog.table(table);
+            if (info == null) {
+                continue;
+            }
+            columnValueSampler.sample(info).getOrDefault(column, List.of())
+                    .forEach(value -> filters.add(new Filter(table, column, value)));
+        }
+        filters.sort(Comparator.comparingInt((Filter filter) -> filter.value().length()).reversed());
+        Map<Pattern, Filter> patterns = new LinkedHashMap<>();
+        for (Filter filter : filters) {
+            String value = normalize(filter.value());
+            if (!value.isEmpty() && !FILLERS.contains(value)) {
+                patterns.putIfAbsent(words("(?:in |from |for |of |within )?(?:the )?" + Pattern.quote(value)
+                        + FILTER_SUFFIX), filter);
+            }
+        }
+        return patterns;
+    }
+
+    /**
+     * What the grammar found in one question. Each match is blanked out of {@code text},
+     * so what is left at the end is what the grammar couldn't account for.
+     */
+    private static final class Slots {
+
+        private final StringBuilder text;
+        private final boolean question;
+        private Metric metric;
+        // The metric was named by a word for the rows themselves: "sales", "orders", "transactions"
+        private boolean metricIsRows;
+        private Dimension dimension;
+        private boolean singular;
+        // SQL date expressions: the window is from <= sale_date < until
+        private String from;
+        private String until;
+        private final List<Filter> filters = new ArrayList<>();
+        private Integer limit;
+        private Boolean descending;
+        private boolean list;
+        private boolean conflict;
+        private Intent intent;
+
+        Slots(String text) {
+            this.text = new StringBuilder(" " + text + " ");
+            this.question = text.startsWith("which ") || text.startsWith("what ");
+        }
+
+        void read(Vocabulary vocabulary) {
+            String month = "DATE_TRUNC('month', CURRENT_DATE)";
+            String year = "DATE_TRUNC('year', CURRENT_DATE)";
+            String quarter = "DATE_TRUNC('quarter', CURRENT_DATE)";
+            consume(THIS_YEAR, m -> window(year, year + " + INTERVAL '1 year'"));
+            consume(LAST_YEAR, m -> window(year + " - INTERVAL '1 year'", year));
+            consume(THIS_QUARTER, m -> window(quarter, quarter + " + INTERVAL '3 months'"));
+            // The three months before this one, as in the prompt's date context
+            consume(LAST_QUARTER, m -> window(month + " - INTERVAL '3 months'", month));
+            consume(THIS_MONTH, m -> window(month, month + " + INTERVAL '1 month'"));
+            consume(LAST_MONTH, m -> window(month + " - INTERVAL '1 month'", month));
+            consume(LAST_DAYS, m -> window("CURRENT_DATE - " + Long.parseLong(m.group(1)), "CURRENT_DATE + 1"));
+            consume(IN_YEAR, m -> {
+                int start = Integer.parseInt(m.group(1));
+                window("'" + start + "-01-01'", "'" + (start + 1) + "-01-01'");
+            });
+
+            consume(TOP_COUNT, m -> order(number(m.group(2)), !m.group(1).equals("bottom")));
+            consume(COUNT_TOP, m -> order(number(m.group(1)), !m.group(2).matches("lowest|worst|least")));
+
+            consume(SALES_PERSON, m -> dimension(Dimension.SALES_PERSON, m.group()));
+            METRICS.forEach((pattern, value) -> consume(pattern, m -> {
+                metricIsRows = m.group().matches("sales|orders|transactions") && (metric == null || metricIsRows);
+                metric(value);
+                if (value == Metric.QUANTITY && m.group().matches(".*(best|top|most).*")) {
+                    order(null, true);
+                }
+            }));
+            vocabulary.filters().forEach((pattern, filter) -> consume(pattern, m -> filters.add(filter)));
+            DIMENSIONS.forEach((pattern, value) -> consume(pattern, m -> dimension(value, m.group())));
+
+            consume(DESCENDING, m -> order(null, true));
+            consume(ASCENDING, m -> order(null, false));
+            consume(LIST, m -> list = true);
+        }
+
+        /**
+         * The SQL for the slots, or null when they don't fill any template.
+         */
+        String sql() {
+            if (metric == null || (list && metricIsRows && dimension == null)) {
+                return listSql();
+            }
+            if (list && dimension == null) {
+                // "All revenue" asks for something no total answers
+                return null;
+            }
+            Set<String> joins = new LinkedHashSet<>();
+            if (dimension != null) {
+                joins.add(dimension.table);
+            }
+            filters.forEach(filter -> joins.add(filter.table()));
+            StringBuilder sql = new StringBuilder("SELECT ");
+            if (dimension != null) {
+                sql.append(dimension.expression);
+                if (!dimension.expression.endsWith("." + dimension.alias)) {
+                    sql.append(" AS ").append(dimension.alias);
+                }
+                sql.append(", ");
+            }
+            sql.append(metric.expression).append(" AS ").append(metric.alias).append(" FROM sales s");
+            if (joins.contains("products")) {
+                sql.append(" JOIN products p ON s.product_id = p.id");
+            }
+            if (joins.contains("customers")) {
+                sql.append(" JOIN customers c ON s.customer_id = c.id");
+            }
+            where(sql);
+            if (dimension == null) {
+                intent = Intent.TOTAL;
+                return limit == null && descending == null ? sql.toString() : null;
+            }
+            intent = Intent.AGGREGATE;
+            sql.append(" GROUP BY ").append(dimension.expression);
+            if (dimension.isTime() && descending == null) {
+                sql.append(" ORDER BY ").append(dimension.alias);
+            } else {
+                sql.append(" ORDER BY ").append(metric.alias)
+                        .append(Boolean.FALSE.equals(descending) ? " ASC" : " DESC");
+            }
+            // "Which region has the highest revenue?" asks for one region
+            Integer rows = limit == null && question && singular && descending != null ? Integer.valueOf(1) : limit;
+            if (rows != null) {
+                sql.append(" LIMIT ").append(rows);
+            }
+            return sql.toString();
+        }
+
+        private String listSql() {
+            String table = metricIsRows ? "sales"
+                    : dimension == Dimension.PRODUCT ? "products"
+                    : dimension == Dimension.CUSTOMER ? "customers"
+                    : dimension == null && !filters.isEmpty() ? filters.get(0).table()
+                    : null;
+            if (table == null || descending != null
+                    || filters.stream().anyMatch(filter -> !filter.table().equals(table))
+                    || (from != null && !table.equals("sales"))) {
+                return null;
+            }
+            intent = Intent.LIST;
+            StringBuilder sql = new StringBuilder("SELECT * FROM ").append(table).append(' ').append(alias(table));
+            where(sql);
+            if (table.equals("sales")) {
+                sql.append(" ORDER BY s.sale_date DESC");
+            }
+            if (limit != null) {
+                sql.append(" LIMIT ").append(limit);
+            }
+            return sql.toString();
+        }
+
+        private void where(StringBuilder sql) {
+            List<String> conditions = new ArrayList<>();
+            filters.forEach(filter -> conditions.add(filter.predicate()));
+            if (from != null) {
+                conditions.add("s.sale_date >= " + from);
+                conditions.add("s.sale_date < " + until);
+            }
+            if (!conditions.isEmpty()) {
+                sql.append(" WHERE ").append(String.join(" AND ", conditions));
+            }
+        }
+
+        private void consume(Pattern pattern, Consumer<Matcher> slot) {
+            Matcher matcher = pattern.matcher(text);
+            while (matcher.find()) {
+                slot.accept(matcher);
+                for (int i = matcher.start(); i < matcher.end(); i++) {
+                    text.setCharAt(i, ' ');
+                }
+            }
+        }
+
+        private void window(String start, String end) {
+            conflict |= from != null && (!from.equals(start) || !until.equals(end));
+            from = start;
+            until = end;
+        }
+
+        private void order(Integer rows, boolean descend) {
+            conflict |= descending != null && descending != descend;
+            conflict |= limit != null && rows != null && !limit.equals(rows);
+            descending = descend;
+            if (rows != null) {
+                limit = rows;
+            }
+        }
+
+        private void metric(Metric value) {
+            conflict |= metric != null && metric != value;
+            metric = value;
+        }
+
+        private void dimension(Dimension value, String word) {
+            conflict |= dimension != null && dimension != value;
+            dimension = value;
+            singular = !word.endsWith("s") && !word.endsWith("people");
+        }
+
+        private static int number(String word) {
+            return NUMBER_WORDS.containsKey(word) ? NUMBER_WORDS.get(word) : Integer.parseInt(word);
+        }
+    }
+
+    private static String alias(String table) {
+        return table.substring(0, 1);
+    }
+
+    private static String normalize(String text) {
+        return text.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]+", " ").strip();
+    }
+
+    private static int meaningfulWords(String text) {
+        int count = 0;
+        for (String word : text.strip().split("\\s+")) {
+            if (!word.isEmpty() && !FILLERS.contains(word)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static Pattern words(String regex) {
+        return Pattern.compile("(?<= )(?:" + regex + ")(?= )");
+    }
+
+    /**
+     * Compiles in the given order: earlier alternatives take their words first.
+     */
+    private static <T> Map<Pattern, T> patterns(List<Map.Entry<String, T>> regexes) {
+        Map<Pattern, T> patterns = new LinkedHashMap<>();
+        regexes.forEach(entry -> patterns.put(words(entry.getKey()), entry.getValue()));
+        return patterns;
+    }
+
+    private static Counter questions(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("bi.fastpath.questions")
+                .description("Questions the fast path translated, or left to the LLM")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,20 @@
+package com.bi.assistant.schema;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Distinct values of a table's low-cardinality columns, for {@link SchemaLinker} to index
+ * alongside table and column names.
+ */
+@FunctionalInterface
+public interface ColumnValueSampler {
+
+    /** Samples nothing, for fixed catalogs. */
+    ColumnValueSampler NONE = table -> Map.of();
+
+    /**
+     * Column name to its distinct values, for the columns worth indexing; empty if none are.
+     */
+    Map<String, List<String>> sample(TableInfo table);
+}
@@ -0,0 +1,86 @@
+package com.bi.assistant.schema;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Renders relations as one line each, the way the model reads them best per prompt token:
+ * <pre>
+ * sales(id int PK, product_id int -&gt; products.id, sale_date date, revenue numeric, ...)
+ * </pre>
+ * Columns keep their catalog order; comments are appended in {@code /* *&#47;} and carry
+ * what the names don't, such as the values a column takes.
+ */
+public final class CompactSchemaRenderer {
+
+    private static final Map<String, String> TYPE_NAMES = Map.of(
+            "int4", "int", "serial", "int", "int8", "bigint", "bigserial", "bigint", "int2", "smallint",
+            "float8", "double", "float4", "real", "bool", "boolean", "bpchar", "char");
+
+    private CompactSchemaRenderer() {
+    }
+
+    public static String render(Collection<TableInfo> tables) {
+        StringBuilder tablesText = new StringBuilder();
+        StringBuilder viewsText = new StringBuilder();
+        StringBuilder materializedText = new StringBuilder();
+        for (TableInfo table : tables) {
+            StringBuilder target = switch (table.kind()) {
+                case TABLE -> tablesText;
+                case VIEW -> viewsText;
+                case MATERIALIZED_VIEW -> materializedText;
+            };
+            appendTable(target, table);
+        }
+
+        StringBuilder text = new StringBuilder();
+        if (!tablesText.isEmpty()) {
+            text.append("Tables (PK = primary key, -> = foreign key):\n").append(tablesText);
+        }
+        if (!viewsText.isEmpty()) {
+            text.append("Views:\n").append(viewsText);
+        }
+        if (!materializedText.isEmpty()) {
+            text.append("Materialized views (precomputed, prefer them for matching aggregates):\n")
+                    .append(materializedText);
+        }
+        return text.toString();
+    }
+
+    private static void appendTable(StringBuilder text, TableInfo table) {
+        Map<String, TableInfo.ForeignKey> foreignKeys = new HashMap<>();
+        table.foreignKeys().forEach(foreignKey -> foreignKeys.putIfAbsent(foreignKey.column(), foreignKey));
+        List<String> primaryKey = table.primaryKey();
+
+        text.append(table.name()).append('(');
+        for (int i = 0; i < table.columns().size(); i++) {
+            TableInfo.Column column = table.columns().get(i);
+            if (i > 0) {
+                text.append(", ");
+            }
+            text.append(column.name());
+            if (column.type() != null) {
+                text.append(' ').append(TYPE_NAMES.getOrDefault(column.type(), column.type()));
+            }
+            if (primaryKey.contains(column.name())) {
+                text.append(" PK");
+            }
+            TableInfo.ForeignKey foreignKey = foreignKeys.get(column.name());
+            if (foreignKey != null) {
+                text.append(" -> ").append(foreignKey.referencedTable()).append('.').append(foreignKey.referencedColumn());
+            }
+            appendComment(text, column.comment());
+        }
+        text.append(')');
+        appendComment(text, table.comment());
+        text.append('\n');
+    }
+
+    private static void appendComment(StringBuilder text, String comment) {
+        if (comment != null && !comment.isBlank()) {
+            text.append(" /* ").append(comment.strip().replace("*/", "* /")).append(" */");
+        }
+    }
+}
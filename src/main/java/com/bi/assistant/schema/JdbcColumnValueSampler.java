@@ -0,0 +1,74 @@
+package com.bi.assistant.schema;
+
+import com.bi.assistant.config.AssistantProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads the distinct values of a table's text columns from a bounded sample of its rows:
+ * the first {@code sampleRows} rows, whatever their order, so a large table costs no
+ * more than a small one. Columns with more than {@code maxDistinctValues} distinct
+ * values in the sample (names, emails, free text) are not worth indexing and are skipped.
+ */
+@Component
+@Slf4j
+public class JdbcColumnValueSampler implements ColumnValueSampler {
+
+    private static final Set<String> TEXT_TYPES = Set.of("varchar", "text", "bpchar", "char", "citext");
+    private static final int MAX_VALUE_LENGTH = 64;
+    private static final int QUERY_TIMEOUT_SECONDS = 5;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SchemaCatalog schemaCatalog;
+    private final AssistantProperties.Schema config;
+
+    @Autowired
+    public JdbcColumnValueSampler(DataSource dataSource, SchemaCatalog schemaCatalog, AssistantProperties properties) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setQueryTimeout(QUERY_TIMEOUT_SECONDS);
+        this.schemaCatalog = schemaCatalog;
+        this.config = properties.getSchema();
+    }
+
+    @Override
+    public Map<String, List<String>> sample(TableInfo table) {
+        if (!config.isSampleValues() || table.kind() != TableInfo.Kind.TABLE) {
+            return Map.of();
+        }
+        Map<String, List<String>> values = new HashMap<>();
+        for (TableInfo.Column column : table.columns()) {
+            if (column.type() == null || !TEXT_TYPES.contains(column.type())
+                    || table.primaryKey().contains(column.name())) {
+                continue;
+            }
+            String name = quote(column.name());
+            String sql = "SELECT DISTINCT " + name
+                    + " FROM (SELECT " + name + " FROM " + quote(schemaCatalog.schema()) + "." + quote(table.name())
+                    + " LIMIT " + config.getSampleRows() + ") sample"
+                    + " WHERE " + name + " IS NOT NULL AND length(" + name + ") <= " + MAX_VALUE_LENGTH
+                    + " LIMIT " + (config.getMaxDistinctValues() + 1);
+            try {
+                List<String> distinct = jdbcTemplate.queryForList(sql, String.class);
+                if (!distinct.isEmpty() && distinct.size() <= config.getMaxDistinctValues()) {
+                    values.put(column.name(), distinct);
+                }
+            } catch (DataAccessException e) {
+                log.debug("Could not sample {}.{}: {}", table.name(), column.name(), e.getMessage());
+            }
+        }
+        return values;
+    }
+
+    private static String quote(String identifier) {
+        return '"' + identifier.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,410 @@
+package com.bi.assistant.schema;
+
+import com.bi.assistant.exception.QueryExecutionException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Tables, views and materialized views of the connected schema with their columns, keys
+ * and indexes, read from {@link DatabaseMetaData} and the catalogs and kept in memory.
+ * This is the allowlist generated SQL is validated against and the source of the schema
+ * text in the prompt, so both reflect the real database.
+ * <p>
+ * The catalog is read at startup and refreshed every
+ * {@code bi.assistant.schema.refresh-interval}, or on demand through {@link #refresh()}.
+ * A refresh first reads one fingerprint per relation and then re-reads only the
+ * relations whose fingerprint changed; when none did, the snapshot and its
+ * {@link #version()} stay as they are, so nothing derived from it is rebuilt.
+ * <p>
+ * Names are lowercased, matching how PostgreSQL folds unquoted identifiers.
+ */
+@Component
+@Slf4j
+public class SchemaCatalog {
+
+    /**
+     * One row per relation, with a hash of everything the catalog keeps about it: its
+     * columns with their types and comments, the ids of its indexes and constraints, and
+     * its own comment.
+     */
+    private static final String FINGERPRINT_QUERY = """
+            SELECT c.relname, c.relkind,
+                   md5(concat_ws('|',
+                       (SELECT string_agg(concat_ws(':', a.attname, a.atttypid, a.attnotnull,
+                                                    col_description(c.oid, a.attnum)), ',' ORDER BY a.attnum)
+                          FROM pg_attribute a WHERE a.attrelid = c.oid AND a.attnum > 0 AND NOT a.attisdropped),
+                       (SELECT string_agg(i.indexrelid::text, ',' ORDER BY i.indexrelid)
+                          FROM pg_index i WHERE i.indrelid = c.oid),
+                       (SELECT string_agg(k.oid::text, ',' ORDER BY k.oid)
+                          FROM pg_constraint k WHERE k.conrelid = c.oid),
+                       obj_description(c.oid, 'pg_class'))) AS fingerprint
+              FROM pg_class c
+              JOIN pg_namespace n ON n.oid = c.relnamespace
+             WHERE n.nspname = ? AND c.relkind IN ('r', 'p', 'v', 'm')
+            """;
+
+    private static final String PRIMARY_KEY_QUERY = """
+            SELECT tc.table_name, kcu.column_name
+              FROM information_schema.table_constraints tc
+              JOIN information_schema.key_column_usage kcu
+                ON kcu.constraint_schema = tc.constraint_schema AND kcu.constraint_name = tc.constraint_name
+             WHERE tc.constraint_type = 'PRIMARY KEY' AND tc.table_schema = ? AND tc.table_name::text = ANY (?)
+             ORDER BY tc.table_name, kcu.ordinal_position
+            """;
+
+    private static final String FOREIGN_KEY_QUERY = """
+            SELECT kcu.table_name, kcu.column_name,
+                   ref.table_name AS referenced_table, ref.column_name AS referenced_column
+              FROM information_schema.referential_constraints rc
+              JOIN information_schema.key_column_usage kcu
+                ON kcu.constraint_schema = rc.constraint_schema AND kcu.constraint_name = rc.constraint_name
+              JOIN information_schema.key_column_usage ref
+                ON ref.constraint_schema = rc.unique_constraint_schema
+               AND ref.constraint_name = rc.unique_constraint_name
+               AND ref.ordinal_position = kcu.position_in_unique_constraint
+             WHERE kcu.table_schema = ? AND kcu.table_name::text = ANY (?)
+             ORDER BY kcu.table_name, kcu.constraint_name, kcu.ordinal_position
+            """;
+
+    private static final String INDEX_QUERY = """
+            SELECT t.relname AS table_name, i.relname AS index_name, x.indisunique, a.attname AS column_name
+              FROM pg_index x
+              JOIN pg_class t ON t.oid = x.indrelid
+              JOIN pg_class i ON i.oid = x.indexrelid
+              JOIN pg_namespace n ON n.oid = t.relnamespace
+              JOIN LATERAL unnest(x.indkey) WITH ORDINALITY AS k(attnum, position) ON true
+              JOIN pg_attribute a ON a.attrelid = t.oid AND a.attnum = k.attnum
+             WHERE n.nspname = ? AND t.relname::text = ANY (?)
+             ORDER BY t.relname, i.relname, k.position
+            """;
+
+    private final DataSource dataSource;
+    private final ReentrantLock loadLock = new ReentrantLock();
+    private final AtomicLong loads = new AtomicLong();
+    private volatile Snapshot snapshot;
+
+    @Autowired
+    public SchemaCatalog(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    private SchemaCatalog(Snapshot snapshot) {
+        this.dataSource = null;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * A fixed catalog that never touches a database, for tests and benchmarks.
+     */
+    public static SchemaCatalog of(String schema, Map<String, ? extends Collection<String>> columnsByTable) {
+        List<TableInfo> tables = new ArrayList<>();
+        columnsByTable.forEach((table, columns) -> tables.add(TableInfo.of(table, columns)));
+        return of(schema, tables);
+    }
+
+    /**
+     * A fixed catalog of fully described tables, for tests and benchmarks.
+     */
+    public static SchemaCatalog of(String schema, Collection<TableInfo> tables) {
+        Map<String, TableInfo> byName = new HashMap<>();
+        tables.forEach(table -> byName.put(normalize(table.name()), normalized(table)));
+        return new SchemaCatalog(Snapshot.of(normalize(schema), byName, Map.of(), 1));
+    }
+
+    public String schema() {
+        return snapshot().schema();
+    }
+
+    public boolean hasTable(String table) {
+        return snapshot().tables().containsKey(normalize(table));
+    }
+
+    /**
+     * Columns of the table or view, empty if there is no such relation.
+     */
+    public Set<String> columns(String table) {
+        return snapshot().columnsByTable().getOrDefault(normalize(table), Set.of());
+    }
+
+    public Set<String> tables() {
+        return snapshot().tables().keySet();
+    }
+
+    /**
+     * The table or view with its columns, keys and indexes, or null if there is no such relation.
+     */
+    public TableInfo table(String table) {
+        return snapshot().tables().get(normalize(table));
+    }
+
+    /**
+     * All relations, ordered by name.
+     */
+    public List<TableInfo> tableInfos() {
+        return snapshot().sorted();
+    }
+
+    /**
+     * Goes up every time the schema is found to have changed, so callers can tell when
+     * anything they derived from it is stale.
+     */
+    public long version() {
+        return snapshot().version();
+    }
+
+    /**
+     * Re-reads whatever changed since the last read, e.g. after a migration added a table.
+     */
+    public void refresh() {
+        if (dataSource == null) {
+            return;
+        }
+        loadLock.lock();
+        try {
+            snapshot = load(snapshot);
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    /**
+     * Runs once at startup, then every {@code bi.assistant.schema.refresh-interval}.
+     */
+    @Scheduled(fixedDelayString = "${bi.assistant.schema.refresh-interval:PT10M}")
+    void scheduledRefresh() {
+        try {
+            refresh();
+        } catch (QueryExecutionException e) {
+            log.warn("Schema catalog refresh failed, keeping the previous snapshot: {}", e.getMessage());
+        }
+    }
+
+    private Snapshot snapshot() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            // A lock rather than synchronized: loading does JDBC I/O, which would pin a virtual thread's carrier
+            loadLock.lock();
+            try {
+                if (snapshot == null) {
+                    snapshot = load(null);
+                }
+                current = snapshot;
+            } finally {
+                loadLock.unlock();
+            }
+        }
+        return current;
+    }
+
+    private Snapshot load(Snapshot previous) {
+        try (Connection connection = dataSource.getConnection()) {
+            String schema = connection.getSchema();
+            Map<String, Relation> relations = readRelations(connection, schema);
+            boolean sameSchema = previous != null && previous.schema().equals(normalize(schema));
+
+            Map<String, TableInfo> tables = new HashMap<>();
+            Map<String, String> fingerprints = new HashMap<>();
+            Map<String, Relation> changed = new HashMap<>();
+            relations.forEach((name, relation) -> {
+                fingerprints.put(name, relation.fingerprint());
+                TableInfo known = sameSchema ? previous.tables().get(name) : null;
+                if (known != null && relation.fingerprint().equals(previous.fingerprints().get(name))) {
+                    tables.put(name, known);
+                } else {
+                    changed.put(name, relation);
+                }
+            });
+
+            if (sameSchema && changed.isEmpty() && tables.size() == previous.tables().size()) {
+                log.debug("Schema catalog for '{}' is unchanged", schema);
+                return previous;
+            }
+            tables.putAll(readTables(connection, schema, changed));
+
+            log.info("Loaded schema catalog for '{}': {} tables and views, {} re-read",
+                    schema, tables.size(), changed.size());
+            return Snapshot.of(normalize(schema), tables, fingerprints, loads.incrementAndGet());
+        } catch (SQLException e) {
+            throw new QueryExecutionException("Could not read the database schema: " + e.getMessage(), e);
+        }
+    }
+
+    private static Map<String, Relation> readRelations(Connection connection, String schema) throws SQLException {
+        Map<String, Relation> relations = new HashMap<>();
+        try (PreparedStatement statement = connection.prepareStatement(FINGERPRINT_QUERY)) {
+            statement.setString(1, schema);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    String name = resultSet.getString("relname");
+                    relations.put(normalize(name), new Relation(name, kind(resultSet.getString("relkind")),
+                            resultSet.getString("fingerprint")));
+                }
+            }
+        }
+        return relations;
+    }
+
+    /**
+     * Reads columns, comments, keys and indexes of the given relations: one metadata or
+     * catalog query per kind of information, whether that is one relation or all of them.
+     */
+    private static Map<String, TableInfo> readTables(Connection connection, String schema,
+                                                     Map<String, Relation> relations)
+            throws SQLException {
+        if (relations.isEmpty()) {
+            return Map.of();
+        }
+        DatabaseMetaData metaData = connection.getMetaData();
+        Map<String, List<TableInfo.Column>> columns = new HashMap<>();
+        Map<String, String> comments = new HashMap<>();
+        Map<String, List<String>> primaryKeys = new HashMap<>();
+        Map<String, List<TableInfo.ForeignKey>> foreignKeys = new HashMap<>();
+        Map<String, Map<String, IndexColumns>> indexes = new HashMap<>();
+
+        // The metadata calls take LIKE patterns, which per-table reads would need to escape; read the
+        // whole schema instead and keep the relations asked for
+        try (ResultSet resultSet = metaData.getColumns(connection.getCatalog(), schema, "%", "%")) {
+            List<ColumnRow> rows = new ArrayList<>();
+            while (resultSet.next()) {
+                String table = normalize(resultSet.getString("TABLE_NAME"));
+                if (relations.containsKey(table)) {
+                    rows.add(new ColumnRow(table, resultSet.getInt("ORDINAL_POSITION"), new TableInfo.Column(
+                            normalize(resultSet.getString("COLUMN_NAME")),
+                            resultSet.getString("TYPE_NAME"),
+                            !"NO".equals(resultSet.getString("IS_NULLABLE")),
+                            resultSet.getString("REMARKS"))));
+                }
+            }
+            rows.sort(Comparator.comparing(ColumnRow::table).thenComparingInt(ColumnRow::position));
+            rows.forEach(row -> columns.computeIfAbsent(row.table(), table -> new ArrayList<>()).add(row.column()));
+        }
+        try (ResultSet resultSet = metaData.getTables(connection.getCatalog(), schema, "%", null)) {
+            while (resultSet.next()) {
+                String table = normalize(resultSet.getString("TABLE_NAME"));
+                if (relations.containsKey(table) && resultSet.getString("REMARKS") != null) {
+                    comments.put(table, resultSet.getString("REMARKS"));
+                }
+            }
+        }
+
+        Object[] names = relations.values().stream().map(Relation::name).toArray();
+        query(connection, PRIMARY_KEY_QUERY, schema, names, resultSet -> primaryKeys
+                .computeIfAbsent(normalize(resultSet.getString("table_name")), table -> new ArrayList<>())
+                .add(normalize(resultSet.getString("column_name"))));
+        query(connection, FOREIGN_KEY_QUERY, schema, names, resultSet -> foreignKeys
+                .computeIfAbsent(normalize(resultSet.getString("table_name")), table -> new ArrayList<>())
+                .add(new TableInfo.ForeignKey(
+                        normalize(resultSet.getString("column_name")),
+                        normalize(resultSet.getString("referenced_table")),
+                        normalize(resultSet.getString("referenced_column")))));
+        query(connection, INDEX_QUERY, schema, names, resultSet -> {
+            boolean unique = resultSet.getBoolean("indisunique");
+            indexes.computeIfAbsent(normalize(resultSet.getString("table_name")), table -> new LinkedHashMap<>())
+                    .computeIfAbsent(normalize(resultSet.getString("index_name")),
+                            index -> new IndexColumns(new ArrayList<>(), unique))
+                    .columns().add(normalize(resultSet.getString("column_name")));
+        });
+
+        Map<String, TableInfo> tables = new HashMap<>();
+        relations.forEach((name, relation) -> {
+            List<TableInfo.Index> tableIndexes = new ArrayList<>();
+            indexes.getOrDefault(name, Map.of()).forEach((index, indexColumns) ->
+                    tableIndexes.add(new TableInfo.Index(index, indexColumns.columns(), indexColumns.unique())));
+            tables.put(name, new TableInfo(name, relation.kind(),
+                    columns.getOrDefault(name, List.of()),
+                    primaryKeys.getOrDefault(name, List.of()),
+                    foreignKeys.getOrDefault(name, List.of()),
+                    tableIndexes,
+                    comments.get(name)));
+        });
+        return tables;
+    }
+
+    private static void query(Connection connection, String sql, String schema, Object[] tables,
+                              RowHandler handler) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, schema);
+            statement.setArray(2, connection.createArrayOf("text", tables));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    handler.handle(resultSet);
+                }
+            }
+        }
+    }
+
+    private static TableInfo.Kind kind(String relkind) {
+        return switch (relkind) {
+            case "v" -> TableInfo.Kind.VIEW;
+            case "m" -> TableInfo.Kind.MATERIALIZED_VIEW;
+            default -> TableInfo.Kind.TABLE;
+        };
+    }
+
+    private static TableInfo normalized(TableInfo table) {
+        return new TableInfo(normalize(table.name()), table.kind(),
+                table.columns().stream()
+                        .map(column -> new TableInfo.Column(normalize(column.name()), column.type(),
+                                column.nullable(), column.comment()))
+                        .toList(),
+                table.primaryKey().stream().map(SchemaCatalog::normalize).toList(),
+                table.foreignKeys().stream()
+                        .map(foreignKey -> new TableInfo.ForeignKey(normalize(foreignKey.column()),
+                                normalize(foreignKey.referencedTable()), normalize(foreignKey.referencedColumn())))
+                        .toList(),
+                table.indexes(),
+                table.comment());
+    }
+
+    private static String normalize(String name) {
+        return name == null ? null : name.toLowerCase(Locale.ROOT);
+    }
+
+    @FunctionalInterface
+    private interface RowHandler {
+        void handle(ResultSet resultSet) throws SQLException;
+    }
+
+    private record Relation(String name, TableInfo.Kind kind, String fingerprint) {
+    }
+
+    private record ColumnRow(String table, int position, TableInfo.Column column) {
+    }
+
+    private record IndexColumns(List<String> columns, boolean unique) {
+    }
+
+    private record Snapshot(String schema, Map<String, TableInfo> tables, Map<String, Set<String>> columnsByTable,
+                            Map<String, String> fingerprints, List<TableInfo> sorted, long version) {
+
+        static Snapshot of(String schema, Map<String, TableInfo> tables, Map<String, String> fingerprints,
+                           long version) {
+            Map<String, Set<String>> columns = new HashMap<>();
+            tables.forEach((name, table) -> columns.put(name, Set.copyOf(table.columnNames())));
+            List<TableInfo> sorted = List.copyOf(new TreeMap<>(tables).values());
+            return new Snapshot(schema, Map.copyOf(tables), Map.copyOf(columns), Map.copyOf(fingerprints),
+                    sorted, version);
+        }
+    }
+}
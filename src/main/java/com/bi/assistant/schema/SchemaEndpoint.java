@@ -0,0 +1,49 @@
+package com.bi.assistant.schema;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@code /actuator/schema}: what the catalog currently knows, and a {@code POST} to
+ * re-read the database right away instead of waiting for the next scheduled refresh.
+ */
+@Component
+@Endpoint(id = "schema")
+public class SchemaEndpoint {
+
+    private final SchemaCatalog schemaCatalog;
+
+    @Autowired
+    public SchemaEndpoint(SchemaCatalog schemaCatalog) {
+        this.schemaCatalog = schemaCatalog;
+    }
+
+    @ReadOperation
+    public Map<String, Object> schema() {
+        Map<String, Object> relations = new LinkedHashMap<>();
+        for (TableInfo table : schemaCatalog.tableInfos()) {
+            relations.put(table.name(), Map.of(
+                    "kind", table.kind(),
+                    "columns", table.columnNames(),
+                    "foreignKeys", table.foreignKeys(),
+                    "indexes", table.indexes()));
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("schema", schemaCatalog.schema());
+        body.put("version", schemaCatalog.version());
+        body.put("relations", relations);
+        return body;
+    }
+
+    @WriteOperation
+    public Map<String, Object> refresh() {
+        schemaCatalog.refresh();
+        return schema();
+    }
+}
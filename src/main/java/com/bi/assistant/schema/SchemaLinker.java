@@ -0,0 +1,318 @@
+package com.bi.assistant.schema;
+
+import com.bi.assistant.config.AssistantProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Schema linking: finds the relations and columns a question is about, so a schema too
+ * large for every prompt can still be described to the model.
+ * <p>
+ * An inverted index maps words to the relations and columns they occur in: words of
+ * relation names, of column names, of comments, and of the distinct values sampled from
+ * low-cardinality columns (so "Electronics" points at {@code products.category}). Each
+ * posting is weighted by where the word came from and by how rare it is across the
+ * schema, so a word found in every table ({@code id}, {@code created}) counts for little.
+ * A question's words, singularized and expanded with the configured synonyms, are looked
+ * up and each adds its best posting to a relation's score; the {@code topTables} best relations go into
+ * the prompt together with their foreign key neighbours, so the joins between them stay
+ * possible.
+ * <p>
+ * The index is built once per catalog version. Sampled values are kept per relation and
+ * only re-read for relations the catalog re-read.
+ */
+@Component
+@Slf4j
+public class SchemaLinker {
+
+    static final double TABLE_WEIGHT = 3.0;
+    static final double VALUE_WEIGHT = 2.0;
+    static final double COLUMN_WEIGHT = 1.0;
+    static final double COMMENT_WEIGHT = 0.5;
+    static final double SYNONYM_FACTOR = 0.8;
+
+    /** Singularized like the words they are compared with. */
+    private static final Set<String> STOP_WORDS = words("a an and are as at be by do each for from give has have"
+            + " how in is it list me many most much of on or per show than that the their them this to top was were"
+            + " what which who with");
+
+    private final SchemaCatalog schemaCatalog;
+    private final ColumnValueSampler valueSampler;
+    private final int topTables;
+    private final int maxColumnsPerTable;
+    private final int maxPromptTables;
+    private final Map<String, Set<String>> synonyms = new HashMap<>();
+    private final ReentrantLock buildLock = new ReentrantLock();
+    private final Map<String, SampledValues> sampledValues = new HashMap<>();
+    private volatile Index index;
+
+    @Autowired
+    public SchemaLinker(SchemaCatalog schemaCatalog, ColumnValueSampler valueSampler, AssistantProperties properties) {
+        this.schemaCatalog = schemaCatalog;
+        this.valueSampler = valueSampler;
+        this.topTables = properties.getSchema().getTopTables();
+        this.maxColumnsPerTable = properties.getSchema().getMaxColumnsPerTable();
+        this.maxPromptTables = properties.getSchema().getMaxPromptTables();
+        properties.getSchema().getSynonyms().forEach((word, meanings) -> words(word).forEach(stem -> {
+            Set<String> expanded = synonyms.computeIfAbsent(stem, key -> new HashSet<>());
+            meanings.forEach(meaning -> expanded.addAll(words(meaning)));
+        }));
+    }
+
+    /**
+     * Builds the index before the first question needs it, sampling included, if the
+     * schema is large enough for questions to need it at all.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (schemaCatalog.tables().size() > maxPromptTables) {
+            index();
+        }
+    }
+
+    /**
+     * The relations to describe for the question, ordered by name, with wide ones cut
+     * down to their key columns, the matched columns and then the first columns in
+     * catalog order. The first {@code topTables} relations by name when nothing matches.
+     */
+    public List<TableInfo> link(String question) {
+        List<TableScore> ranked = rank(question);
+        List<TableInfo> all = schemaCatalog.tableInfos();
+        if (ranked.isEmpty()) {
+            return all.subList(0, Math.min(topTables, all.size()));
+        }
+
+        Map<String, TableScore> scores = new HashMap<>();
+        ranked.forEach(score -> scores.put(score.table(), score));
+        Set<String> selected = new LinkedHashSet<>();
+        ranked.stream().limit(topTables).forEach(score -> selected.add(score.table()));
+        selected.addAll(neighbours(index(), selected, scores));
+
+        List<TableInfo> tables = new ArrayList<>();
+        for (String name : selected) {
+            TableInfo table = schemaCatalog.table(name);
+            if (table != null) {
+                TableScore score = scores.get(name);
+                tables.add(prune(table, score == null ? Set.of() : score.columns()));
+            }
+        }
+        tables.sort(Comparator.comparing(TableInfo::name));
+        return tables;
+    }
+
+    /**
+     * Every relation matching the question, best first, with the columns that matched.
+     */
+    public List<TableScore> rank(String question) {
+        Index current = index();
+        Map<String, Double> termWeights = new HashMap<>();
+        for (String word : words(question)) {
+            if (STOP_WORDS.contains(word)) {
+                continue;
+            }
+            termWeights.merge(word, 1.0, Math::max);
+            for (String synonym : synonyms.getOrDefault(word, Set.of())) {
+                termWeights.merge(synonym, SYNONYM_FACTOR, Math::max);
+            }
+        }
+
+        Map<String, Double> tableScores = new HashMap<>();
+        Map<String, Set<String>> matchedColumns = new HashMap<>();
+        termWeights.forEach((term, termWeight) -> {
+            // A word counts once per relation, where it weighs most, however many of its columns it is in
+            Map<String, Double> termScores = new HashMap<>();
+            for (Posting posting : current.postings().getOrDefault(term, List.of())) {
+                termScores.merge(posting.table(), posting.weight() * termWeight, Math::max);
+                if (posting.column() != null) {
+                    matchedColumns.computeIfAbsent(posting.table(), table -> new LinkedHashSet<>())
+                            .add(posting.column());
+                }
+            }
+            termScores.forEach((table, score) -> tableScores.merge(table, score, Double::sum));
+        });
+
+        List<TableScore> ranked = new ArrayList<>();
+        tableScores.forEach((table, score) ->
+                ranked.add(new TableScore(table, score, matchedColumns.getOrDefault(table, Set.of()))));
+        ranked.sort(Comparator.comparingDouble(TableScore::score).reversed().thenComparing(TableScore::table));
+        return ranked;
+    }
+
+    /**
+     * Tables the selected ones reference, then tables referencing them, best scoring
+     * first; at most {@code topTables} in all, so a dimension table referenced from
+     * hundreds of fact tables doesn't pull them all in.
+     */
+    private List<String> neighbours(Index current, Set<String> selected, Map<String, TableScore> scores) {
+        Set<String> referenced = new LinkedHashSet<>();
+        List<String> referencing = new ArrayList<>();
+        for (String name : selected) {
+            TableInfo table = schemaCatalog.table(name);
+            if (table != null) {
+                referenced.addAll(table.referencedTables());
+            }
+            referencing.addAll(current.referencedBy().getOrDefault(name, List.of()));
+        }
+        referencing.sort(Comparator.comparingDouble((String name) ->
+                scores.containsKey(name) ? scores.get(name).score() : 0.0).reversed());
+
+        Set<String> neighbours = new LinkedHashSet<>(referenced);
+        neighbours.addAll(referencing);
+        neighbours.removeAll(selected);
+        return neighbours.stream().limit(topTables).toList();
+    }
+
+    private TableInfo prune(TableInfo table, Set<String> matched) {
+        if (table.columns().size() <= maxColumnsPerTable) {
+            return table;
+        }
+        Set<String> keep = new LinkedHashSet<>(table.primaryKey());
+        table.foreignKeys().forEach(foreignKey -> keep.add(foreignKey.column()));
+        keep.addAll(matched);
+        for (TableInfo.Column column : table.columns()) {
+            if (keep.size() >= maxColumnsPerTable) {
+                break;
+            }
+            keep.add(column.name());
+        }
+        List<TableInfo.Column> columns = table.columns().stream()
+                .filter(column -> keep.contains(column.name()))
+                .toList();
+        List<TableInfo.Index> indexes = table.indexes().stream()
+                .filter(index -> keep.containsAll(index.columns()))
+                .toList();
+        return new TableInfo(table.name(), table.kind(), columns, table.primaryKey(), table.foreignKeys(),
+                indexes, table.comment());
+    }
+
+    private Index index() {
+        long version = schemaCatalog.version();
+        Index current = index;
+        if (current != null && current.version() == version) {
+            return current;
+        }
+        // A lock rather than synchronized: sampling does JDBC I/O, which would pin a virtual thread's carrier
+        buildLock.lock();
+        try {
+            current = index;
+            if (current == null || current.version() != version) {
+                current = build(version);
+                index = current;
+            }
+            return current;
+        } finally {
+            buildLock.unlock();
+        }
+    }
+
+    private Index build(long version) {
+        long start = System.nanoTime();
+        List<TableInfo> tables = schemaCatalog.tableInfos();
+        // (term, table, column) -> weight, keeping the best source when a word occurs twice
+        Map<String, Map<String, Double>> weights = new HashMap<>();
+        Set<String> current = new HashSet<>();
+        Map<String, List<String>> referencedBy = new HashMap<>();
+        for (TableInfo table : tables) {
+            current.add(table.name());
+            table.referencedTables().forEach(referenced ->
+                    referencedBy.computeIfAbsent(referenced, key -> new ArrayList<>()).add(table.name()));
+            // Split between the words of the name: "customer" says more about customers
+            // than about customer_analytics
+            addWords(weights, table.name(), null, table.name(), TABLE_WEIGHT / words(table.name()).size());
+            addWords(weights, table.name(), null, table.comment(), COMMENT_WEIGHT);
+            for (TableInfo.Column column : table.columns()) {
+                addWords(weights, table.name(), column.name(), column.name(), COLUMN_WEIGHT);
+                addWords(weights, table.name(), column.name(), column.comment(), COMMENT_WEIGHT);
+            }
+            sampledValues(table).forEach((column, values) ->
+                    values.forEach(value -> addWords(weights, table.name(), column, value, VALUE_WEIGHT)));
+        }
+        sampledValues.keySet().retainAll(current);
+
+        Map<String, List<Posting>> postings = new HashMap<>();
+        weights.forEach((term, byTarget) -> {
+            Set<String> documentTables = new HashSet<>();
+            byTarget.keySet().forEach(target -> documentTables.add(target.substring(0, target.indexOf('\u0000'))));
+            double idf = Math.log(1.0 + (double) tables.size() / documentTables.size());
+            List<Posting> termPostings = new ArrayList<>();
+            byTarget.forEach((target, weight) -> {
+                int separator = target.indexOf('\u0000');
+                String column = target.substring(separator + 1);
+                termPostings.add(new Posting(target.substring(0, separator), column.isEmpty() ? null : column,
+                        weight * idf));
+            });
+            postings.put(term, List.copyOf(termPostings));
+        });
+
+        log.info("Built schema linking index over {} relations: {} terms in {} ms",
+                tables.size(), postings.size(), (System.nanoTime() - start) / 1_000_000);
+        return new Index(version, Map.copyOf(postings), Map.copyOf(referencedBy));
+    }
+
+    private Map<String, List<String>> sampledValues(TableInfo table) {
+        SampledValues sampled = sampledValues.get(table.name());
+        if (sampled == null || !sampled.table().equals(table)) {
+            sampled = new SampledValues(table, valueSampler.sample(table));
+            sampledValues.put(table.name(), sampled);
+        }
+        return sampled.values();
+    }
+
+    private static void addWords(Map<String, Map<String, Double>> weights, String table, String column,
+                                 String text, double weight) {
+        if (text == null) {
+            return;
+        }
+        String target = table + '\u0000' + (column == null ? "" : column);
+        for (String word : words(text)) {
+            weights.computeIfAbsent(word, key -> new LinkedHashMap<>()).merge(target, weight, Math::max);
+        }
+    }
+
+    /**
+     * Lowercase words of a question, identifier or value, each reduced to a naive singular
+     * so that "categories" finds {@code category} and "sales" finds {@code sale_date}.
+     */
+    static Set<String> words(String text) {
+        Set<String> words = new HashSet<>();
+        for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            if (word.endsWith("ies") && word.length() > 4) {
+                word = word.substring(0, word.length() - 3) + "y";
+            } else if (word.endsWith("s") && !word.endsWith("ss") && word.length() > 3) {
+                word = word.substring(0, word.length() - 1);
+            }
+            words.add(word);
+        }
+        return words;
+    }
+
+    public record TableScore(String table, double score, Set<String> columns) {
+    }
+
+    private record Posting(String table, String column, double weight) {
+    }
+
+    private record SampledValues(TableInfo table, Map<String, List<String>> values) {
+    }
+
+    private record Index(long version, Map<String, List<Posting>> postings, Map<String, List<String>> referencedBy) {
+    }
+}
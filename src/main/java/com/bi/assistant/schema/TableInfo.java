@@ -0,0 +1,67 @@
+package com.bi.assistant.schema;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * One table, view or materialized view of the catalog, as read from the database.
+ * Names are lowercased like everywhere in {@link SchemaCatalog}; types are PostgreSQL
+ * type names ({@code int4}, {@code varchar}, ...) and null where unknown.
+ */
+public record TableInfo(String name, Kind kind, List<Column> columns, List<String> primaryKey,
+                        List<ForeignKey> foreignKeys, List<Index> indexes, String comment) {
+
+    public enum Kind {
+        TABLE, VIEW, MATERIALIZED_VIEW
+    }
+
+    public record Column(String name, String type, boolean nullable, String comment) {
+    }
+
+    /**
+     * {@code column} references {@code referencedTable.referencedColumn}; a composite key
+     * is one entry per column pair.
+     */
+    public record ForeignKey(String column, String referencedTable, String referencedColumn) {
+    }
+
+    public record Index(String name, List<String> columns, boolean unique) {
+        public Index {
+            columns = List.copyOf(columns);
+        }
+    }
+
+    public TableInfo {
+        columns = List.copyOf(columns);
+        primaryKey = List.copyOf(primaryKey);
+        foreignKeys = List.copyOf(foreignKeys);
+        indexes = List.copyOf(indexes);
+    }
+
+    /**
+     * A table known only by its column names, for fixed catalogs.
+     */
+    public static TableInfo of(String name, Collection<String> columnNames) {
+        List<Column> columns = new ArrayList<>();
+        columnNames.forEach(column -> columns.add(new Column(column, null, true, null)));
+        return new TableInfo(name, Kind.TABLE, columns, List.of(), List.of(), List.of(), null);
+    }
+
+    public Set<String> columnNames() {
+        Set<String> names = new LinkedHashSet<>();
+        columns.forEach(column -> names.add(column.name()));
+        return names;
+    }
+
+    /**
+     * Tables this one references through its foreign keys.
+     */
+    public Set<String> referencedTables() {
+        Set<String> tables = new LinkedHashSet<>();
+        foreignKeys.forEach(foreignKey -> tables.add(foreignKey.referencedTable()));
+        return tables;
+    }
+}
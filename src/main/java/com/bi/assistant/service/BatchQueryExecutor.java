@@ -0,0 +1,144 @@
+package com.bi.assistant.service;
+
+import com.bi.assistant.cache.SqlTranslationCache;
+import com.bi.assistant.concurrency.ConcurrencyLimits;
+import com.bi.assistant.config.AssistantProperties;
+import com.bi.assistant.dto.BatchQueryResult;
+import com.bi.assistant.dto.QueryRequest;
+import com.bi.assistant.dto.QueryResponse;
+import com.bi.assistant.exception.QueryTimeoutException;
+import com.bi.assistant.exception.ServiceBusyException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Answers a dashboard's questions together and streams each answer as an NDJSON line of
+ * {@link BatchQueryResult} as soon as it is ready, so the page waits about as long as its
+ * slowest question instead of the sum of them. Lines come in completion order and carry
+ * the question's {@code index} in the request. Questions that are the same apart from
+ * whitespace and case, with the same limit and format, are answered once and reported at
+ * each of their positions.
+ * <p>
+ * Every distinct question runs on its own virtual thread through {@link QueryService}, at
+ * most {@code bi.assistant.batch.parallelism} of them per batch. Translation still waits
+ * for a {@link ConcurrencyLimits#llm()} permit and execution for a database one, so a
+ * batch takes its turn with single questions rather than crowding them out. A question
+ * that fails, times out or can't get a permit is an unsuccessful line; the rest of the
+ * batch carries on.
+ * <p>
+ * Published as {@code bi.batch.questions} (questions per batch) and
+ * {@code bi.batch.duplicates} (questions answered by another in the same batch).
+ */
+@Component
+@Slf4j
+public class BatchQueryExecutor {
+
+    private final QueryService queryService;
+    private final ObjectMapper objectMapper;
+    private final int parallelism;
+    private final DistributionSummary questions;
+    private final Counter duplicates;
+
+    @Autowired
+    public BatchQueryExecutor(QueryService queryService, ObjectMapper objectMapper, AssistantProperties properties,
+                              MeterRegistry meterRegistry) {
+        this.queryService = queryService;
+        this.objectMapper = objectMapper;
+        this.parallelism = properties.getBatch().getParallelism();
+        this.questions = DistributionSummary.builder("bi.batch.questions")
+                .description("Questions per batch request")
+                .register(meterRegistry);
+        this.duplicates = Counter.builder("bi.batch.duplicates")
+                .description("Batched questions answered by an identical one in the same batch")
+                .register(meterRegistry);
+    }
+
+    public void stream(List<QueryRequest> requests, OutputStream out) throws IOException {
+        Map<Key, List<Integer>> positions = new LinkedHashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            positions.computeIfAbsent(Key.of(requests.get(i)), key -> new ArrayList<>()).add(i);
+        }
+        questions.record(requests.size());
+        duplicates.increment(requests.size() - positions.size());
+
+        BlockingQueue<Answer> answers = new LinkedBlockingQueue<>();
+        Semaphore slots = new Semaphore(parallelism);
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            for (List<Integer> indexes : positions.values()) {
+                QueryRequest request = requests.get(indexes.get(0));
+                executor.execute(() -> answers.add(new Answer(indexes, answer(request, slots))));
+            }
+            // Only this thread writes, in the order answers arrive
+            for (int pending = positions.size(); pending > 0; pending--) {
+                Answer answer = answers.take();
+                for (int index : answer.indexes()) {
+                    out.write(objectMapper.writeValueAsBytes(
+                            new BatchQueryResult(index, requests.get(index).getQuery(), answer.response())));
+                    out.write('\n');
+                }
+                out.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // A no-op once every answer is in; after a failed write, interrupts the questions still waiting
+            executor.shutdownNow();
+        }
+    }
+
+    private QueryResponse answer(QueryRequest request, Semaphore slots) {
+        try {
+            slots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return failure("Batch cancelled");
+        }
+        try {
+            return queryService.executeNaturalLanguageQuery(request);
+        } catch (QueryTimeoutException e) {
+            return failure("Query timed out: " + e.getMessage());
+        } catch (ServiceBusyException e) {
+            return failure("Service busy: " + e.getMessage());
+        } catch (RuntimeException e) {
+            log.error("Batched query failed: {}", request.getQuery(), e);
+            return failure("Query failed: " + e.getMessage());
+        } finally {
+            slots.release();
+        }
+    }
+
+    private static QueryResponse failure(String message) {
+        QueryResponse response = new QueryResponse();
+        response.setSuccess(false);
+        response.setMessage(message);
+        return response;
+    }
+
+    private record Key(String query, Integer limit, boolean columnar) {
+
+        static Key of(QueryRequest request) {
+            return new Key(SqlTranslationCache.normalize(request.getQuery()), request.getLimit(), request.isColumnar());
+        }
+    }
+
+    private record Answer(List<Integer> indexes, QueryResponse response) {
+    }
+}
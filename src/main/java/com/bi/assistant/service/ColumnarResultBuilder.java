@@ -0,0 +1,223 @@
+package com.bi.assistant.service;
+
+import com.bi.assistant.dto.ColumnarResult;
+import com.bi.assistant.dto.ColumnarResult.ColumnType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Accumulates rows into a {@link ColumnarResult} one value at a time, growing primitive
+ * arrays per column. Column types are either declared up front (from JDBC metadata) or
+ * inferred from the first non-null value; a column that turns out to hold mixed values
+ * falls back to {@link ColumnType#OBJECT}.
+ */
+public class ColumnarResultBuilder {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final String[] columnNames;
+    private final ColumnBuffer[] buffers;
+    private int rowCount;
+
+    public ColumnarResultBuilder(String[] columnNames, ColumnType[] declaredTypes) {
+        this.columnNames = columnNames;
+        this.buffers = new ColumnBuffer[columnNames.length];
+        for (int i = 0; i < columnNames.length; i++) {
+            buffers[i] = new ColumnBuffer(declaredTypes != null ? declaredTypes[i] : null);
+        }
+    }
+
+    public static ColumnarResult fromRows(List<Map<String, Object>> rows) {
+        String[] columnNames = rows.isEmpty()
+                ? new String[0]
+                : rows.get(0).keySet().toArray(new String[0]);
+        ColumnarResultBuilder builder = new ColumnarResultBuilder(columnNames, null);
+        for (Map<String, Object> row : rows) {
+            for (int i = 0; i < columnNames.length; i++) {
+                builder.set(i, row.get(columnNames[i]));
+            }
+            builder.endRow();
+        }
+        return builder.build();
+    }
+
+    public void set(int column, Object value) {
+        buffers[column].add(rowCount, value);
+    }
+
+    public void endRow() {
+        rowCount++;
+    }
+
+    public int rowCount() {
+        return rowCount;
+    }
+
+    public ColumnarResult build() {
+        List<ColumnarResult.Column> columns = new ArrayList<>(buffers.length);
+        for (ColumnBuffer buffer : buffers) {
+            columns.add(buffer.build(rowCount));
+        }
+        return new ColumnarResult(rowCount, columnNames, columns, false);
+    }
+
+    private static final class ColumnBuffer {
+
+        private ColumnType type;
+        private long[] longs;
+        private double[] doubles;
+        private Object[] objects;
+        private int[] nullRows = new int[0];
+        private int nullCount;
+
+        ColumnBuffer(ColumnType declaredType) {
+            this.type = declaredType;
+        }
+
+        void add(int row, Object value) {
+            if (value == null) {
+                if (nullCount == nullRows.length) {
+                    nullRows = Arrays.copyOf(nullRows, Math.max(INITIAL_CAPACITY, nullCount * 2));
+                }
+                nullRows[nullCount++] = row;
+                return;
+            }
+            if (type == null) {
+                type = inferType(value);
+            }
+            if (!fits(value)) {
+                widenToObject(row);
+            }
+            switch (type) {
+                case LONG -> {
+                    longs = ensureCapacity(longs, row);
+                    longs[row] = ((Number) value).longValue();
+                }
+                case DOUBLE -> {
+                    doubles = ensureCapacity(doubles, row);
+                    doubles[row] = ((Number) value).doubleValue();
+                }
+                default -> {
+                    objects = ensureCapacity(objects, row);
+                    objects[row] = value;
+                }
+            }
+        }
+
+        private boolean fits(Object value) {
+            return switch (type) {
+                case LONG -> value instanceof Long || value instanceof Integer
+                        || value instanceof Short || value instanceof Byte;
+                case DOUBLE -> value instanceof Number;
+                case STRING, DICTIONARY -> value instanceof String;
+                case OBJECT -> true;
+            };
+        }
+
+        private void widenToObject(int row) {
+            Object[] boxed = new Object[Math.max(INITIAL_CAPACITY, row + 1)];
+            for (int i = 0; i < row; i++) {
+                boxed[i] = isNull(i) ? null : switch (type) {
+                    case LONG -> longs != null && i < longs.length ? longs[i] : null;
+                    case DOUBLE -> doubles != null && i < doubles.length ? doubles[i] : null;
+                    default -> objects != null && i < objects.length ? objects[i] : null;
+                };
+            }
+            type = ColumnType.OBJECT;
+            objects = boxed;
+            longs = null;
+            doubles = null;
+        }
+
+        private boolean isNull(int row) {
+            return Arrays.binarySearch(nullRows, 0, nullCount, row) >= 0;
+        }
+
+        ColumnarResult.Column build(int rowCount) {
+            ColumnarResult.Column column = new ColumnarResult.Column();
+            ColumnType effectiveType = type != null ? type : ColumnType.OBJECT;
+            switch (effectiveType) {
+                case LONG -> {
+                    column.setLongs(Arrays.copyOf(longs != null ? longs : new long[0], rowCount));
+                    column.setNullRows(nullCount > 0 ? Arrays.copyOf(nullRows, nullCount) : null);
+                }
+                case DOUBLE -> {
+                    column.setDoubles(Arrays.copyOf(doubles != null ? doubles : new double[0], rowCount));
+                    column.setNullRows(nullCount > 0 ? Arrays.copyOf(nullRows, nullCount) : null);
+                }
+                case STRING, DICTIONARY -> effectiveType = buildStrings(column, rowCount);
+                case OBJECT -> column.setValues(Arrays.copyOf(objects != null ? objects : new Object[0], rowCount));
+            }
+            column.setType(effectiveType);
+            return column;
+        }
+
+        /**
+         * Dictionary-encodes the column when at most half of its values are distinct.
+         */
+        private ColumnType buildStrings(ColumnarResult.Column column, int rowCount) {
+            Object[] values = Arrays.copyOf(objects != null ? objects : new Object[0], rowCount);
+            Map<Object, Integer> codesByValue = new HashMap<>();
+            int[] codes = new int[rowCount];
+            for (int row = 0; row < rowCount; row++) {
+                codes[row] = values[row] == null
+                        ? -1
+                        : codesByValue.computeIfAbsent(values[row], v -> codesByValue.size());
+            }
+
+            if (rowCount > 0 && codesByValue.size() * 2 <= rowCount) {
+                String[] dictionary = new String[codesByValue.size()];
+                codesByValue.forEach((value, code) -> dictionary[code] = (String) value);
+                column.setDictionary(dictionary);
+                column.setCodes(codes);
+                return ColumnType.DICTIONARY;
+            }
+
+            String[] strings = new String[rowCount];
+            for (int row = 0; row < rowCount; row++) {
+                strings[row] = (String) values[row];
+            }
+            column.setStrings(strings);
+            return ColumnType.STRING;
+        }
+
+        private static ColumnType inferType(Object value) {
+            if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                return ColumnType.LONG;
+            }
+            // BigDecimal and BigInteger keep their precision as objects
+            if (value instanceof Double || value instanceof Float) {
+                return ColumnType.DOUBLE;
+            }
+            if (value instanceof String) {
+                return ColumnType.STRING;
+            }
+            return ColumnType.OBJECT;
+        }
+
+        private static long[] ensureCapacity(long[] array, int row) {
+            if (array == null) {
+                return new long[Math.max(INITIAL_CAPACITY, row + 1)];
+            }
+            return row < array.length ? array : Arrays.copyOf(array, Math.max(row + 1, array.length * 2));
+        }
+
+        private static double[] ensureCapacity(double[] array, int row) {
+            if (array == null) {
+                return new double[Math.max(INITIAL_CAPACITY, row + 1)];
+            }
+            return row < array.length ? array : Arrays.copyOf(array, Math.max(row + 1, array.length * 2));
+        }
+
+        private static Object[] ensureCapacity(Object[] array, int row) {
+            if (array == null) {
+                return new Object[Math.max(INITIAL_CAPACITY, row + 1)];
+            }
+            return row < array.length ? array : Arrays.copyOf(array, Math.max(row + 1, array.length * 2));
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.bi.assistant.service;
+
+import com.bi.assistant.dto.ColumnarResult;
+import com.bi.assistant.dto.ColumnarResult.ColumnType;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * Reads a result set straight into a {@link ColumnarResult}, taking column names and
+ * types from {@link ResultSetMetaData} rather than from the first row, so that empty
+ * results still report their columns and no per-row map is ever built.
+ * <p>
+ * Stops after {@code maxRows} rows and marks the result truncated if another row exists.
+ */
+public class ColumnarResultExtractor implements ResultSetExtractor<ColumnarResult> {
+
+    private final int maxRows;
+
+    public ColumnarResultExtractor(int maxRows) {
+        this.maxRows = maxRows;
+    }
+
+    @Override
+    public ColumnarResult extractData(ResultSet resultSet) throws SQLException {
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        int columnCount = metaData.getColumnCount();
+        String[] columnNames = new String[columnCount];
+        ColumnType[] columnTypes = new ColumnType[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            columnNames[i] = JdbcUtils.lookupColumnName(metaData, i + 1);
+            columnTypes[i] = columnType(metaData.getColumnType(i + 1));
+        }
+
+        ColumnarResultBuilder builder = new ColumnarResultBuilder(columnNames, columnTypes);
+        while (builder.rowCount() < maxRows && resultSet.next()) {
+            for (int i = 0; i < columnCount; i++) {
+                builder.set(i, JdbcUtils.getResultSetValue(resultSet, i + 1));
+            }
+            builder.endRow();
+        }
+
+        ColumnarResult result = builder.build();
+        result.setTruncated(builder.rowCount() == maxRows && resultSet.next());
+        return result;
+    }
+
+    /**
+     * The column type for a JDBC type. NUMERIC and DECIMAL stay {@link ColumnType#OBJECT},
+     * holding the driver's {@code BigDecimal}: a money column as {@code double} would lose
+     * its scale, and rows read back from the cache would differ from rows read directly.
+     */
+    public static ColumnType columnType(int sqlType) {
+        return switch (sqlType) {
+            case Types.BIGINT, Types.INTEGER, Types.SMALLINT, Types.TINYINT -> ColumnType.LONG;
+            case Types.DOUBLE, Types.FLOAT, Types.REAL -> ColumnType.DOUBLE;
+            case Types.CHAR, Types.VARCHAR, Types.LONGVARCHAR, Types.NCHAR, Types.NVARCHAR -> ColumnType.STRING;
+            default -> ColumnType.OBJECT;
+        };
+    }
+}
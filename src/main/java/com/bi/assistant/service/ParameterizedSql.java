@@ -0,0 +1,34 @@
+package com.bi.assistant.service;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
+
+/**
+ * SQL with its literals lifted out by {@link SqlParameterizer}: a template with one
+ * {@code ?} per literal, and the values in template order. Questions that differ only in
+ * their literals ("top 5 ... last quarter", "top 10 ... this year") share one template,
+ * and so one server-side prepared statement and plan per connection.
+ */
+public record ParameterizedSql(String template, List<Object> parameters) {
+
+    public ParameterizedSql {
+        parameters = List.copyOf(parameters);
+    }
+
+    /**
+     * Sets every parameter on a statement prepared from {@link #template()}.
+     */
+    public void bind(PreparedStatement statement) throws SQLException {
+        for (int i = 0; i < parameters.size(); i++) {
+            Object value = parameters.get(i);
+            if (value instanceof String) {
+                // Untyped, like the quoted literal it replaced: the server infers text, date or numeric from context
+                statement.setObject(i + 1, value, Types.OTHER);
+            } else {
+                statement.setObject(i + 1, value);
+            }
+        }
+    }
+}
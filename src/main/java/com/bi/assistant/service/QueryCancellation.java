@@ -0,0 +1,45 @@
+package com.bi.assistant.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Lets another thread cancel the statement a request is running, e.g. when the client
+ * has gone away. {@link #cancel()} before the statement starts makes it fail as soon as
+ * it is registered.
+ */
+@Slf4j
+public class QueryCancellation {
+
+    private volatile Statement statement;
+    private volatile boolean cancelled;
+
+    public void cancel() {
+        cancelled = true;
+        Statement running = statement;
+        if (running != null) {
+            try {
+                running.cancel();
+            } catch (SQLException e) {
+                log.warn("Could not cancel running statement: {}", e.getMessage());
+            }
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    void register(Statement running) throws SQLException {
+        statement = running;
+        if (cancelled) {
+            throw new SQLException("Query was cancelled before it started", "57014");
+        }
+    }
+
+    void unregister() {
+        statement = null;
+    }
+}
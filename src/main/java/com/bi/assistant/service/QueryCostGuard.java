@@ -0,0 +1,219 @@
+package com.bi.assistant.service;
+
+import com.bi.assistant.concurrency.ConcurrencyLimit;
+import com.bi.assistant.concurrency.ConcurrencyLimits;
+import com.bi.assistant.config.AssistantProperties;
+import com.bi.assistant.dto.QueryPlan;
+import com.bi.assistant.exception.QueryExecutionException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Looks at the plan before a query runs. {@code EXPLAIN (FORMAT JSON)} only plans the
+ * statement, so a cross join the LLM forgot to constrain is caught in milliseconds rather
+ * than after it has held a connection for the whole statement timeout. A plan over
+ * {@code bi.assistant.cost-guard.max-cost} or {@code max-rows} is rejected; one over
+ * {@code expensive-cost} is let through, but {@link QueryExecutor} runs it under the
+ * {@link ConcurrencyLimits#expensive()} limit.
+ * <p>
+ * Plans are cached by the SQL, whitespace collapsed, for {@code plan-ttl}: long enough
+ * that dashboards don't EXPLAIN on every refresh, short enough to follow the table
+ * statistics as data grows. Outcomes are published as {@code bi.query.cost.checks} (tag
+ * {@code outcome=allowed|expensive|rejected}).
+ */
+@Component
+@Slf4j
+public class QueryCostGuard {
+
+    public static final String CACHE_NAME = "queryPlans";
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final ConcurrencyLimit databaseLimit;
+    private final AssistantProperties.CostGuard config;
+    private final Cache<String, QueryPlan> plans;
+    private final Counter allowed;
+    private final Counter expensive;
+    private final Counter rejected;
+
+    @Autowired
+    public QueryCostGuard(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper, ConcurrencyLimits concurrencyLimits,
+                          AssistantProperties properties, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.databaseLimit = concurrencyLimits.database();
+        this.config = properties.getCostGuard();
+
+        this.plans = Caffeine.newBuilder()
+                .maximumSize(config.getMaxEntries())
+                .expireAfterWrite(config.getPlanTtl())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, plans, CACHE_NAME);
+
+        this.allowed = outcome(meterRegistry, "allowed", "Queries whose plan was within every threshold");
+        this.expensive = outcome(meterRegistry, "expensive", "Queries run under the expensive concurrency limit");
+        this.rejected = outcome(meterRegistry, "rejected", "Queries rejected for their estimated cost or rows");
+    }
+
+    /**
+     * The plan {@code sql} will run with, or null if the guard is off or EXPLAIN gave
+     * nothing readable. Waits at most {@code maxWait} for a database permit to EXPLAIN.
+     * Database errors are not caught: running the SQL would fail the same way.
+     *
+     * @throws QueryExecutionException if the plan is over {@code max-cost} or {@code max-rows}
+     */
+    public QueryPlan check(String sql, Duration maxWait) {
+        if (!config.isEnabled()) {
+            return null;
+        }
+        String key = normalize(sql);
+        QueryPlan plan = plans.getIfPresent(key);
+        if (plan == null) {
+            plan = explain(sql, maxWait);
+            if (plan == null) {
+                return null;
+            }
+            plans.put(key, plan);
+        }
+
+        if (plan.estimatedCost() > config.getMaxCost()) {
+            rejected.increment();
+            log.warn("Rejected query with estimated cost {}: {}", plan.estimatedCost(), sql);
+            throw new QueryExecutionException(String.format(
+                    "Query rejected: the database estimates a cost of %.0f, over the limit of %.0f. "
+                            + "Try narrowing the question, e.g. to a date range.",
+                    plan.estimatedCost(), config.getMaxCost()));
+        }
+        if (plan.estimatedRows() > config.getMaxRows()) {
+            rejected.increment();
+            log.warn("Rejected query with {} estimated rows: {}", plan.estimatedRows(), sql);
+            throw new QueryExecutionException(String.format(
+                    "Query rejected: the database estimates %d result rows, over the limit of %d. "
+                            + "Try narrowing the question or asking for totals.",
+                    plan.estimatedRows(), config.getMaxRows()));
+        }
+        (isExpensive(plan) ? expensive : allowed).increment();
+        return plan;
+    }
+
+    public boolean isExpensive(QueryPlan plan) {
+        return plan != null && plan.estimatedCost() > config.getExpensiveCost();
+    }
+
+    /**
+     * The plan last checked for {@code sql}, if it is still cached; never runs EXPLAIN.
+     */
+    public QueryPlan cachedPlan(String sql) {
+        return config.isEnabled() ? plans.getIfPresent(normalize(sql)) : null;
+    }
+
+    /**
+     * The plan for {@code sql} without judging it: the one {@link #check} cached, or with
+     * the guard off, an EXPLAIN cached in turn. With the guard on, a plan missing here is
+     * one EXPLAIN gave nothing readable for, and isn't asked for again. Null rather than
+     * an exception if EXPLAIN fails: an estimate is never worth failing a query over.
+     */
+    public QueryPlan estimate(String sql, Duration maxWait) {
+        String key = normalize(sql);
+        QueryPlan plan = plans.getIfPresent(key);
+        if (plan != null || config.isEnabled()) {
+            return plan;
+        }
+        try {
+            plan = explain(sql, maxWait);
+        } catch (RuntimeException e) {
+            log.debug("Could not estimate rows: {}", e.getMessage());
+            return null;
+        }
+        if (plan != null) {
+            plans.put(key, plan);
+        }
+        return plan;
+    }
+
+    public void invalidateAll() {
+        plans.invalidateAll();
+    }
+
+    private QueryPlan explain(String sql, Duration maxWait) {
+        List<String> output = databaseLimit.call(maxWait,
+                () -> jdbcTemplate.queryForList("EXPLAIN (FORMAT JSON) " + sql, String.class));
+        if (output.isEmpty()) {
+            return null;
+        }
+        try {
+            return summarize(objectMapper.readTree(output.get(0)));
+        } catch (JsonProcessingException e) {
+            log.debug("Could not read plan, running the query unchecked: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Reads {@code [{"Plan": {"Node Type": "Limit", "Total Cost": ..., "Plans": [...]}}]}.
+     * The top node's cost and rows are what running the query costs and returns, LIMIT
+     * included, and are what {@link #check} judges; the rows of the node under an outer
+     * Limit, what the query would return without it, are kept for reporting only.
+     */
+    QueryPlan summarize(JsonNode explain) {
+        JsonNode top = explain.path(0).path("Plan");
+        if (top.isMissingNode()) {
+            return null;
+        }
+        JsonNode unlimited = "Limit".equals(top.path("Node Type").asText()) && top.path("Plans").size() > 0
+                ? top.path("Plans").get(0)
+                : top;
+        List<String> largeSeqScans = new ArrayList<>();
+        List<String> indexesUsed = new ArrayList<>();
+        collectScans(top, largeSeqScans, indexesUsed);
+        return new QueryPlan(top.path("Total Cost").asDouble(), top.path("Plan Rows").asLong(),
+                unlimited.path("Plan Rows").asLong(), largeSeqScans, indexesUsed);
+    }
+
+    private void collectScans(JsonNode node, List<String> largeSeqScans, List<String> indexesUsed) {
+        // "Seq Scan" and "Parallel Seq Scan"
+        if (node.path("Node Type").asText().endsWith("Seq Scan")
+                && node.path("Total Cost").asDouble() >= config.getLargeScanCost()) {
+            addOnce(largeSeqScans, node.path("Relation Name").asText(null));
+        }
+        addOnce(indexesUsed, node.path("Index Name").asText(null));
+        for (JsonNode child : node.path("Plans")) {
+            collectScans(child, largeSeqScans, indexesUsed);
+        }
+    }
+
+    private static void addOnce(List<String> names, String name) {
+        if (name != null && !names.contains(name)) {
+            names.add(name);
+        }
+    }
+
+    private static String normalize(String sql) {
+        return WHITESPACE.matcher(sql.strip()).replaceAll(" ");
+    }
+
+    private static Counter outcome(MeterRegistry meterRegistry, String outcome, String description) {
+        return Counter.builder("bi.query.cost.checks")
+                .description(description)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,168 @@
+package com.bi.assistant.service;
+
+import com.bi.assistant.config.AssistantProperties;
+import com.bi.assistant.dto.QueryRequest;
+import com.bi.assistant.exception.QueryExecutionException;
+import com.bi.assistant.exception.QueryTimeoutException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs a question end to end as Server-Sent Events, so the client sees progress from the
+ * first generated token instead of waiting for the whole response. Events, in order:
+ * <ol>
+ *     <li>{@code sql}: {@code {"text"}}, one per token while the LLM generates the SQL
+ *     (none on a translation cache hit). Generation stops at the first complete statement.</li>
+ *     <li>{@code validation}: {@code {"valid", "sql", "queryType"}} with the SQL that will run,
+ *     or {@code {"valid": false, "message"}}, which ends the stream.</li>
+ *     <li>{@code columns}: {@code {"columns": [{"name", "type"}]}}.</li>
+ *     <li>{@code rows}: {@code {"rows": [[values in column order]]}}, one per row batch.</li>
+ *     <li>{@code end}: {@code {"rowCount", "truncated", "executionTimeMs"}}.</li>
+ * </ol>
+ * Any other failure is an {@code error} event ({@code {"message"}}) in place of the rest.
+ * Rows are capped like {@code /api/query}, and the whole stream is bound by the request timeout.
+ */
+@Component
+@Slf4j
+public class QueryEventStreamer {
+
+    private final QueryService queryService;
+    private final RowLimiter rowLimiter;
+    private final QueryExecutor queryExecutor;
+    private final ObjectMapper objectMapper;
+    private final int fetchSize;
+    private final int rowBatchSize;
+    private final Duration requestTimeout;
+
+    @Autowired
+    public QueryEventStreamer(QueryService queryService, RowLimiter rowLimiter, QueryExecutor queryExecutor,
+                              ObjectMapper objectMapper, AssistantProperties properties) {
+        this.queryService = queryService;
+        this.rowLimiter = rowLimiter;
+        this.queryExecutor = queryExecutor;
+        this.objectMapper = objectMapper;
+        this.fetchSize = properties.getStreaming().getFetchSize();
+        this.rowBatchSize = properties.getStreaming().getRowBatchSize();
+        this.requestTimeout = properties.getExecution().getRequestTimeout();
+    }
+
+    public void stream(QueryRequest request, OutputStream out, QueryCancellation cancellation) throws IOException {
+        long startTime = System.currentTimeMillis();
+        try {
+            ValidatedSql validatedSql = translate(request, out);
+            if (validatedSql == null) {
+                return;
+            }
+
+            RowLimiter.LimitedQuery limitedQuery = rowLimiter.limit(validatedSql, request.getLimit());
+            Map<String, Object> validation = new LinkedHashMap<>();
+            validation.put("valid", true);
+            validation.put("sql", limitedQuery.sql());
+            validation.put("queryType", validatedSql.queryType());
+            send(out, "validation", validation);
+
+            Duration remaining = requestTimeout.minusMillis(System.currentTimeMillis() - startTime);
+            RowCount rowCount = queryExecutor.query(limitedQuery.sql(), fetchSize, remaining, cancellation,
+                    resultSet -> {
+                        try {
+                            return sendRows(resultSet, limitedQuery.maxRows(), out);
+                        } catch (IOException e) {
+                            // Client went away; abandon the cursor rather than reading the rest of it
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+
+            Map<String, Object> end = new LinkedHashMap<>();
+            end.put("rowCount", rowCount.rows());
+            end.put("truncated", rowCount.truncated());
+            end.put("executionTimeMs", System.currentTimeMillis() - startTime);
+            send(out, "end", end);
+
+        } catch (UncheckedIOException e) {
+            log.info("Client disconnected from event stream for query: {}", request.getQuery());
+            throw e.getCause();
+        } catch (RuntimeException e) {
+            log.error("Event stream failed for query: {}", request.getQuery(), e);
+            send(out, "error", Map.of("message", (e instanceof QueryTimeoutException
+                    ? "Query timed out: " : "Query failed: ") + e.getMessage()));
+        }
+    }
+
+    /**
+     * Returns the validated SQL, or null after sending a failed {@code validation} event.
+     */
+    private ValidatedSql translate(QueryRequest request, OutputStream out) throws IOException {
+        try {
+            return queryService.translateStreaming(request, token -> {
+                try {
+                    send(out, "sql", Map.of("text", token));
+                } catch (IOException e) {
+                    // Surfaces through the token stream, which cancels generation
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (QueryExecutionException e) {
+            Map<String, Object> validation = new LinkedHashMap<>();
+            validation.put("valid", false);
+            validation.put("message", e.getMessage());
+            send(out, "validation", validation);
+            return null;
+        }
+    }
+
+    private RowCount sendRows(ResultSet resultSet, int maxRows, OutputStream out) throws SQLException, IOException {
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        int columnCount = metaData.getColumnCount();
+
+        List<Map<String, String>> columns = new ArrayList<>(columnCount);
+        for (int i = 1; i <= columnCount; i++) {
+            columns.add(Map.of("name", JdbcUtils.lookupColumnName(metaData, i), "type", metaData.getColumnTypeName(i)));
+        }
+        send(out, "columns", Map.of("columns", columns));
+
+        int rowCount = 0;
+        List<Object[]> batch = new ArrayList<>(rowBatchSize);
+        while (rowCount < maxRows && resultSet.next()) {
+            Object[] values = new Object[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                values[i] = JdbcUtils.getResultSetValue(resultSet, i + 1);
+            }
+            batch.add(values);
+            rowCount++;
+            if (batch.size() == rowBatchSize) {
+                send(out, "rows", Map.of("rows", batch));
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            send(out, "rows", Map.of("rows", batch));
+        }
+        return new RowCount(rowCount, rowCount == maxRows && resultSet.next());
+    }
+
+    private void send(OutputStream out, String event, Object data) throws IOException {
+        // Jackson's compact output has no line breaks, so one data line per event is enough
+        String frame = "event: " + event + "\ndata: " + objectMapper.writeValueAsString(data) + "\n\n";
+        out.write(frame.getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private record RowCount(int rows, boolean truncated) {
+    }
+}
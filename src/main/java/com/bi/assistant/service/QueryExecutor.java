@@ -0,0 +1,200 @@
+package com.bi.assistant.service;
+
+import com.bi.assistant.concurrency.ConcurrencyLimit;
+import com.bi.assistant.concurrency.ConcurrencyLimits;
+import com.bi.assistant.concurrency.SingleFlight;
+import com.bi.assistant.config.AssistantProperties;
+import com.bi.assistant.dto.ColumnarResult;
+import com.bi.assistant.dto.QueryPlan;
+import com.bi.assistant.exception.QueryExecutionException;
+import com.bi.assistant.exception.QueryTimeoutException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Runs validated SQL in a read-only transaction with a hard time limit, enforced twice:
+ * by the server ({@code SET LOCAL statement_timeout}, which also covers every cursor
+ * fetch) and by the driver ({@code setQueryTimeout}, which still fires if the server
+ * setting is lost, e.g. behind a transaction-mode pooler). Either way PostgreSQL
+ * cancels the statement and frees the backend.
+ * <p>
+ * Literals are bound as parameters of a {@link SqlParameterizer} template, so questions
+ * that differ only in dates, names or limits reuse the driver's server-side prepared
+ * statement, and its plan, instead of each being parsed and planned again.
+ * <p>
+ * Before it runs, every query is checked by the {@link QueryCostGuard}: a plan over its
+ * limits is rejected, and an expensive one waits for a {@link ConcurrencyLimits#expensive()}
+ * permit before it takes a database permit.
+ * <p>
+ * Timeouts become {@link QueryTimeoutException} and are counted as
+ * {@code bi.query.timeouts}; cancellations through a {@link QueryCancellation} are
+ * counted as {@code bi.query.cancellations}. Every query holds a
+ * {@link ConcurrencyLimits#database()} permit for as long as it has a connection.
+ */
+@Component
+@Slf4j
+public class QueryExecutor {
+
+    // query_canceled: raised for statement_timeout, setQueryTimeout and Statement.cancel() alike
+    private static final String QUERY_CANCELED = "57014";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final QueryCostGuard costGuard;
+    private final ConcurrencyLimit databaseLimit;
+    private final ConcurrencyLimit expensiveLimit;
+    private final Duration statementTimeout;
+    private final Counter timeouts;
+    private final Counter cancellations;
+    private final SingleFlight<String, ColumnarResult> columnarQueries;
+
+    @Autowired
+    public QueryExecutor(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                         QueryCostGuard costGuard, ConcurrencyLimits concurrencyLimits,
+                         AssistantProperties properties, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionManager = transactionManager;
+        this.costGuard = costGuard;
+        this.databaseLimit = concurrencyLimits.database();
+        this.expensiveLimit = concurrencyLimits.expensive();
+        this.statementTimeout = properties.getExecution().getStatementTimeout();
+        this.timeouts = Counter.builder("bi.query.timeouts")
+                .description("Queries stopped by the statement timeout or request deadline")
+                .register(meterRegistry);
+        this.cancellations = Counter.builder("bi.query.cancellations")
+                .description("Queries cancelled because the client went away")
+                .register(meterRegistry);
+        this.columnarQueries = new SingleFlight<>("sql", meterRegistry);
+    }
+
+    public Duration statementTimeout() {
+        return statementTimeout;
+    }
+
+    /**
+     * The plan {@code sql} was last checked against, if the cost guard still has it.
+     */
+    public QueryPlan cachedPlan(String sql) {
+        return costGuard.cachedPlan(sql);
+    }
+
+    /**
+     * The planner's view of {@code sql}, from the cost guard's plan cache where it can be;
+     * null if there is none.
+     */
+    public QueryPlan estimate(String sql) {
+        return costGuard.estimate(sql, statementTimeout);
+    }
+
+    /**
+     * Runs the query into a {@link ColumnarResult} of at most {@code maxRows} rows. Identical
+     * SQL already running for another caller isn't started again: this call waits for that
+     * execution and shares its result, timeout and all.
+     */
+    public ColumnarResult queryColumnar(String sql, int maxRows, Duration timeout) {
+        return columnarQueries.execute(maxRows + ":" + sql,
+                () -> query(sql, timeout, new ColumnarResultExtractor(maxRows)));
+    }
+
+    public <T> T query(String sql, Duration timeout, ResultSetExtractor<T> extractor) {
+        return query(sql, 0, timeout, new QueryCancellation(), extractor);
+    }
+
+    /**
+     * Runs the query and hands its result set to {@code extractor}. A {@code fetchSize}
+     * above zero reads through a server-side cursor. The timeout is the smaller of the
+     * statement timeout and what is left of the caller's deadline; time spent queueing
+     * for a database permit comes out of it, and if nothing is left, the query isn't
+     * started at all.
+     */
+    public <T> T query(String sql, int fetchSize, Duration timeout, QueryCancellation cancellation,
+                       ResultSetExtractor<T> extractor) {
+        long budgetMillis = Math.min(timeout.toMillis(), statementTimeout.toMillis());
+        if (budgetMillis <= 0) {
+            timeouts.increment();
+            throw new QueryTimeoutException("Request deadline passed before the query could run");
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+        QueryPlan plan = costGuard.check(sql, Duration.ofMillis(budgetMillis));
+        ParameterizedSql statementSql = SqlParameterizer.parameterize(sql);
+        Supplier<T> execution = () -> databaseLimit.call(untilDeadline(deadline), () -> {
+            long timeoutMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (timeoutMillis <= 0) {
+                timeouts.increment();
+                throw new QueryTimeoutException("Request deadline passed while waiting for a database connection");
+            }
+            return execute(sql, statementSql, fetchSize, timeoutMillis, cancellation, extractor);
+        });
+        if (costGuard.isExpensive(plan)) {
+            log.info("Running expensive plan (cost {}) under the expensive limit: {}", plan.estimatedCost(), sql);
+            return expensiveLimit.call(untilDeadline(deadline), execution);
+        }
+        return execution.get();
+    }
+
+    private static Duration untilDeadline(long deadline) {
+        return Duration.ofNanos(Math.max(0, deadline - System.nanoTime()));
+    }
+
+    private <T> T execute(String sql, ParameterizedSql statementSql, int fetchSize, long timeoutMillis,
+                          QueryCancellation cancellation, ResultSetExtractor<T> extractor) {
+        TransactionTemplate readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+        try {
+            return readOnlyTransaction.execute(status -> {
+                jdbcTemplate.execute("SET LOCAL statement_timeout = " + timeoutMillis);
+                return jdbcTemplate.query(connection -> {
+                    PreparedStatement statement = connection.prepareStatement(
+                            statementSql.template(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                    statementSql.bind(statement);
+                    if (fetchSize > 0) {
+                        statement.setFetchSize(fetchSize);
+                    }
+                    // Whole seconds only; the server-side timeout is the precise one
+                    statement.setQueryTimeout((int) Math.max(1, (timeoutMillis + 999) / 1000));
+                    cancellation.register(statement);
+                    return statement;
+                }, extractor);
+            });
+        } catch (RuntimeException e) {
+            if (!isCancelled(e)) {
+                throw e;
+            }
+            if (cancellation.isCancelled()) {
+                cancellations.increment();
+                log.info("Query cancelled: {}", sql);
+                throw new QueryExecutionException("Query was cancelled", e);
+            }
+            timeouts.increment();
+            log.warn("Query exceeded its {} ms timeout: {}", timeoutMillis, sql);
+            throw new QueryTimeoutException("Query did not finish within " + timeoutMillis + " ms", e);
+        } finally {
+            cancellation.unregister();
+        }
+    }
+
+    private static boolean isCancelled(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof org.springframework.dao.QueryTimeoutException
+                    || (cause instanceof SQLException sqlException && QUERY_CANCELED.equals(sqlException.getSQLState()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
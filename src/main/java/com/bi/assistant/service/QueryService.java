@@ -1,71 +1,184 @@
 package com.bi.assistant.service;
 
+import com.bi.assistant.aggregate.AggregateRouter;
+import com.bi.assistant.aggregate.IncrementalAggregateCache;
+import com.bi.assistant.cache.QueryResultCache;
+import com.bi.assistant.cache.SemanticTranslationCache;
+import com.bi.assistant.cache.SqlTranslationCache;
+import com.bi.assistant.concurrency.ConcurrencyLimit;
+import com.bi.assistant.concurrency.ConcurrencyLimits;
+import com.bi.assistant.concurrency.SingleFlight;
+import com.bi.assistant.config.AssistantProperties;
+import com.bi.assistant.dto.ColumnarResult;
+import com.bi.assistant.dto.QueryPlan;
 import com.bi.assistant.dto.QueryRequest;
 import com.bi.assistant.dto.QueryResponse;
 import com.bi.assistant.exception.QueryExecutionException;
 import com.bi.assistant.exception.QueryGenerationException;
+import com.bi.assistant.exception.QueryTimeoutException;
+import com.bi.assistant.exception.ServiceBusyException;
+import com.bi.assistant.fastpath.FastPathTranslator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
-import org.springframework.ai.chat.prompt.PromptTemplate;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.ollama.api.OllamaOptions;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.Cacheable;
-import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Service;
 
-import java.time.LocalDate;
+import java.io.UncheckedIOException;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Pattern;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
 
 @Service
 @Slf4j
 public class QueryService {
 
-    private final ChatClient chatClient;
-    private final JdbcTemplate jdbcTemplate;
+    // "Limit  (cost=0.00..0.52 rows=10 width=64)": the top plan node's estimate
 
-    private static final Pattern DANGEROUS_PATTERNS = Pattern.compile(
-            "\\b(INSERT|UPDATE|DELETE|DROP|CREATE|ALTER|TRUNCATE|EXEC|EXECUTE)\\b",
-            Pattern.CASE_INSENSITIVE
-    );
+    private final ChatClient chatClient;
+    private final SqlTranslationCache translationCache;
+    private final QueryResultCache resultCache;
+    private final SemanticTranslationCache semanticCache;
+    private final FastPathTranslator fastPathTranslator;
+    private final SqlPostProcessor sqlPostProcessor;
+    private final SqlValidator sqlValidator;
+    private final SqlPromptBuilder promptBuilder;
+    private final AggregateRouter aggregateRouter;
+    private final RowLimiter rowLimiter;
+    private final QueryExecutor queryExecutor;
+    private final IncrementalAggregateCache incrementalAggregates;
+    private final SqlRepairer sqlRepairer;
+    private final ConcurrencyLimit llmLimit;
+    private final SingleFlight<String, ValidatedSql> translations;
+    private final Counter generationsStoppedEarly;
+    private final AssistantProperties.Generation generation;
+    private final boolean estimateTruncatedTotal;
+    private final Duration requestTimeout;
 
     @Autowired
-    public QueryService(ChatClient.Builder chatClientBuilder, JdbcTemplate jdbcTemplate) {
+    public QueryService(ChatClient.Builder chatClientBuilder, SqlTranslationCache translationCache, QueryResultCache resultCache,
+                        SemanticTranslationCache semanticCache, FastPathTranslator fastPathTranslator,
+                        SqlPostProcessor sqlPostProcessor, SqlValidator sqlValidator, SqlPromptBuilder promptBuilder,
+                        AggregateRouter aggregateRouter, RowLimiter rowLimiter, QueryExecutor queryExecutor,
+                        IncrementalAggregateCache incrementalAggregates, SqlRepairer sqlRepairer,
+                        ConcurrencyLimits concurrencyLimits,
+                        AssistantProperties properties, MeterRegistry meterRegistry) {
         this.chatClient = chatClientBuilder.build();
-        this.jdbcTemplate = jdbcTemplate;
+        this.translationCache = translationCache;
+        this.resultCache = resultCache;
+        this.semanticCache = semanticCache;
+        this.fastPathTranslator = fastPathTranslator;
+        this.sqlPostProcessor = sqlPostProcessor;
+        this.sqlValidator = sqlValidator;
+        this.promptBuilder = promptBuilder;
+        this.aggregateRouter = aggregateRouter;
+        this.rowLimiter = rowLimiter;
+        this.queryExecutor = queryExecutor;
+        this.incrementalAggregates = incrementalAggregates;
+        this.sqlRepairer = sqlRepairer;
+        this.llmLimit = concurrencyLimits.llm();
+        this.translations = new SingleFlight<>("translation", meterRegistry);
+        this.generationsStoppedEarly = Counter.builder("bi.llm.stream.stopped.early")
+                .description("Streamed generations cancelled once the first SQL statement was complete")
+                .register(meterRegistry);
+        this.estimateTruncatedTotal = properties.getResults().isEstimateTotal();
+        this.requestTimeout = properties.getExecution().getRequestTimeout();
+        this.generation = properties.getGeneration();
     }
 
     public QueryResponse executeNaturalLanguageQuery(QueryRequest request) {
-        return executeNaturalLanguageQuery(request.getQuery());
-    }
-
-    @Cacheable(value = "queryCache", key = "#naturalQuery")
-    public QueryResponse executeNaturalLanguageQuery(String naturalQuery) {
         long startTime = System.currentTimeMillis();
+        String naturalQuery = request.getQuery();
 
         try {
             log.info("Processing natural language query: {}", naturalQuery);
 
-            String generatedSql = generateSqlQuery(naturalQuery);
-            log.info("Generated SQL: {}", generatedSql);
-
-            validateSqlQuery(generatedSql);
-
-            List<Map<String, Object>> results = executeSqlQuery(generatedSql);
+            ValidatedSql validatedSql = translate(request);
+            RowLimiter.LimitedQuery limitedQuery = rowLimiter.limit(validatedSql, request.getLimit());
+
+            ColumnarResult results = resultCache.get(limitedQuery.cacheKey());
+            if (results == null) {
+                // Taken before the query runs, so a table change during it keeps the result out of the cache
+                long stamp = resultCache.stamp();
+                try {
+                    results = resultCache.put(limitedQuery.cacheKey(), validatedSql.tables(), stamp,
+                            executeSqlQuery(validatedSql, limitedQuery, startTime));
+                } catch (DataAccessException e) {
+                    log.error("SQL execution failed for query: {}", limitedQuery.sql(), e);
+                    validatedSql = repair(naturalQuery, limitedQuery.sql(), e, startTime);
+                    limitedQuery = rowLimiter.limit(validatedSql, request.getLimit());
+                    results = resultCache.put(limitedQuery.cacheKey(), validatedSql.tables(), stamp,
+                            executeRepairedSqlQuery(validatedSql, limitedQuery, startTime));
+                }
+            } else {
+                log.debug("Result cache hit for SQL: {}", limitedQuery.sql());
+            }
 
             long executionTime = System.currentTimeMillis() - startTime;
 
-            return createSuccessResponse(generatedSql, results, executionTime);
+            return createSuccessResponse(request, validatedSql, limitedQuery, results, executionTime);
 
+        } catch (QueryTimeoutException | ServiceBusyException e) {
+            // Not a failed translation: let GlobalExceptionHandler report it as a timeout or overload
+            throw e;
         } catch (Exception e) {
             log.error("Error processing query: {}", e.getMessage(), e);
             return createErrorResponse(e.getMessage());
         }
     }
 
+    /**
+     * Translates the request to validated SQL without executing it, for callers
+     * that run the query themselves (e.g. streaming).
+     */
+    public String translateToSql(QueryRequest request) {
+        return translate(request).sql();
+    }
+
+    /**
+     * Concurrent misses for the same question (a dashboard refresh) share one translation.
+     * The cache is checked again inside the flight, and written before the flight ends,
+     * so a caller arriving just after the leader finishes gets a hit rather than a second LLM call.
+     * <p>
+     * The cache holds the translation against the base tables; it is routed to a rollup
+     * on every call, so it goes back to the base tables while the rollup is stale.
+     */
+    public ValidatedSql translate(QueryRequest request) {
+        String naturalQuery = request.getQuery();
+        ValidatedSql cachedSql = translationCache.get(naturalQuery);
+        if (cachedSql != null) {
+            log.debug("Translation cache hit for query: {}", naturalQuery);
+            return aggregateRouter.route(cachedSql);
+        }
+        return aggregateRouter.route(translations.execute(SqlTranslationCache.normalize(naturalQuery),
+                () -> translationCache.getOrTranslate(naturalQuery, this::generateValidatedSql)));
+    }
+
+    /**
+     * Like {@link #translate}, but streams the LLM's output to {@code onSqlToken} as it is
+     * generated and stops generation once the first statement is complete. Cache hits
+     * produce no tokens. Not coalesced: every caller needs its own tokens.
+     */
+    public ValidatedSql translateStreaming(QueryRequest request, Consumer<String> onSqlToken) {
+        return aggregateRouter.route(translationCache.getOrTranslate(request.getQuery(),
+                naturalQuery -> generateValidatedSql(naturalQuery, query -> streamSqlQuery(query, onSqlToken))));
+    }
+
+    public QueryResponse executeNaturalLanguageQuery(String naturalQuery) {
+        QueryRequest request = new QueryRequest();
+        request.setQuery(naturalQuery);
+        return executeNaturalLanguageQuery(request);
+    }
+
     // Legacy method for backward compatibility
-    public List<Map<String, Object>> executeNaturalLanguageQuery_Legacy(String naturalQuery) {
-        QueryResponse response = executeNaturalLanguageQuery(naturalQuery);
+    public List<Map<String, Object>> executeNaturalLanguageQuery_Legacy(QueryRequest request) {
+        QueryResponse response = executeNaturalLanguageQuery(request);
         if (response.isSuccess()) {
             return response.getData();
         } else {
@@ -73,6 +186,58 @@ public class QueryService {
         }
     }
 
+    private ValidatedSql generateValidatedSql(String naturalQuery) {
+        return generateValidatedSql(naturalQuery, this::generateSqlQuery);
+    }
+
+    private ValidatedSql generateValidatedSql(String naturalQuery, UnaryOperator<String> sqlGenerator) {
+        // The common question shapes need neither the LLM nor an embedding
+        ValidatedSql fastPathSql = fastPathTranslator.translate(naturalQuery);
+        if (fastPathSql != null) {
+            return fastPathSql;
+        }
+
+        // Nor does a question that differs from a translated one only in its numbers
+        String sameShapeSql = translationCache.lookupShape(naturalQuery);
+        if (sameShapeSql != null) {
+            return sqlValidator.validate(sameShapeSql);
+        }
+
+        // A paraphrase of a question we've already translated doesn't need the LLM;
+        // it is re-parsed rather than trusted, in case the schema changed since
+        String similarSql = semanticCache.lookup(naturalQuery);
+        if (similarSql != null) {
+            return sqlValidator.validate(similarSql);
+        }
+
+        String generatedSql = sqlGenerator.apply(naturalQuery);
+        log.info("Generated SQL: {}", generatedSql);
+
+        // Only SQL that passed validation is worth remembering
+        ValidatedSql validatedSql = validateOrRepair(naturalQuery, generatedSql);
+        semanticCache.put(naturalQuery, validatedSql.sql());
+        translationCache.putShape(naturalQuery, validatedSql.sql());
+        return validatedSql;
+    }
+
+    /**
+     * SQL that fails validation, e.g. with a column of a table it didn't join, goes to the
+     * {@link SqlRepairer} with the validator's message as its feedback, like SQL the
+     * database rejected goes with PostgreSQL's error.
+     */
+    private ValidatedSql validateOrRepair(String naturalQuery, String sql) {
+        try {
+            return sqlValidator.validate(sql);
+        } catch (QueryExecutionException e) {
+            // Nothing has run yet, so the whole request timeout is left
+            ValidatedSql repairedSql = sqlRepairer.repair(naturalQuery, sql, e, requestTimeout);
+            if (repairedSql == null) {
+                throw e;
+            }
+            return repairedSql;
+        }
+    }
+
     private String preprocessQuery(String naturalQuery) {
         String lower = naturalQuery.toLowerCase();
         
@@ -94,335 +259,187 @@ public class QueryService {
     }
 
     private String generateSqlQuery(String naturalQuery) {
-        // Preprocess query for common patterns that need specific handling
-        naturalQuery = preprocessQuery(naturalQuery);
-        
-        String enhancedSchemaDescription = """
-                Database Schema:
-                
-                Tables:
-                1. products: 
-                   - id (INTEGER, Primary Key)
-                   - product_name (VARCHAR) - Name of the product
-                   - category (VARCHAR) - Product category (Electronics, Appliances, Accessories, Furniture)
-                   - price (DECIMAL) - Product price
-                   - description (TEXT) - Product description
-                   - manufacturer (VARCHAR) - Product manufacturer
-                
-                2. sales: 
-                   - id (INTEGER, Primary Key)
-                   - product_id (INTEGER, Foreign Key to products.id)
-                   - sale_date (DATE) - Date of sale
-                   - revenue (DECIMAL) - Revenue from the sale
-                   - quantity (INTEGER) - Quantity sold
-                   - customer_id (INTEGER, Foreign Key to customers.id)
-                   - region (VARCHAR) - Sales region
-                   - sales_person (VARCHAR) - Name of sales person
-                
-                3. customers:
-                   - id (INTEGER, Primary Key)
-                   - customer_name (VARCHAR) - Customer name
-                   - email (VARCHAR) - Customer email
-                   - phone (VARCHAR) - Customer phone
-                   - address (TEXT) - Customer address
-                   - city (VARCHAR) - Customer city
-                   - country (VARCHAR) - Customer country
-                   - customer_segment (VARCHAR) - Customer segment (Premium, Standard, Basic)
-                
-                Important Notes:
-                - Use 'product_name' column for products table
-                - Always join tables properly using foreign keys
-                - Use appropriate date filtering for time-based queries
-                """;
-
-        LocalDate today = LocalDate.now();
-        LocalDate quarterStart = today.minusMonths(3).withDayOfMonth(1);
-        LocalDate quarterEnd = today.withDayOfMonth(1);
-        LocalDate yearStart = today.withDayOfYear(1);
-
-        PromptTemplate promptTemplate = new PromptTemplate("""
-                    You are a PostgreSQL expert. Translate the following natural language query to SQL.
-                
-                    Schema: {schema}
-                
-                    Natural Language Query: {query}
-                
-                    Date Context:
-                    - Today: {today}
-                    - Last quarter: {quarter_start} to {quarter_end}
-                    - This year: {year_start} to {today}
-                
-                    CRITICAL RULES:
-                    1. Return ONLY ONE executable SQL statement
-                    2. NO explanations, NO comments, NO alternative queries
-                    3. NO "OR" statements, NO multiple options
-                    4. ALWAYS use JOINs when accessing data from multiple tables
-                    5. For "list all customers" queries, use: SELECT * FROM customers;
-                    6. Use table aliases: p for products, s for sales, c for customers
-                    7. For nested aggregation, use subqueries or CTEs
-                
-                    CORRECT Examples:
-                    - "top 5 products by revenue":
-                      SELECT p.product_name, SUM(s.revenue) AS total_revenue FROM products p JOIN sales s ON p.id = s.product_id GROUP BY p.product_name ORDER BY total_revenue DESC LIMIT 5;
-                
-                    - "list all customers":
-                      SELECT * FROM customers;
-                
-                    - "revenue by category":
-                      SELECT p.category, SUM(s.revenue) AS total_revenue FROM products p JOIN sales s ON p.id = s.product_id GROUP BY p.category ORDER BY total_revenue DESC;
-                
-                    - "average order value by customer segment":
-                      SELECT c.customer_segment, AVG(order_total) AS avg_order_value FROM customers c JOIN (SELECT customer_id, SUM(p.price * s.quantity) AS order_total FROM sales s JOIN products p ON s.product_id = p.id GROUP BY customer_id) AS orders ON c.id = orders.customer_id GROUP BY c.customer_segment;
-                
-                    - "monthly sales trends":
-                      SELECT EXTRACT(YEAR FROM sale_date) AS year, EXTRACT(MONTH FROM sale_date) AS month, SUM(revenue) AS monthly_revenue FROM sales GROUP BY EXTRACT(YEAR FROM sale_date), EXTRACT(MONTH FROM sale_date) ORDER BY year, month;
-                
-                    Return only the SQL query without any explanations:
-                """);
-
-        promptTemplate.add("schema", enhancedSchemaDescription);
-        promptTemplate.add("query", naturalQuery);
-        promptTemplate.add("today", today.toString());
-        promptTemplate.add("quarter_start", quarterStart.toString());
-        promptTemplate.add("quarter_end", quarterEnd.toString());
-        promptTemplate.add("year_start", yearStart.toString());
-
         try {
-            String generatedSql = chatClient
-                    .prompt(promptTemplate.create())
-                    .call()
-                    .content();
-
-            // Clean up the SQL by removing markdown code blocks if present
-            generatedSql = generatedSql.replaceAll("```sql\\s*", "")
-                    .replaceAll("```\\s*", "")
-                    .trim();
-
-            // Extract only the first valid SQL statement
-            generatedSql = extractFirstSqlStatement(generatedSql);
-
-            // Remove any trailing semicolon and normalize whitespace
-            generatedSql = generatedSql.replaceAll(";\\s*$", "").trim();
-
-            if (generatedSql.isEmpty()) {
-                throw new QueryGenerationException("Generated SQL query is empty");
+            String generatedSql = complete(createPrompt(naturalQuery, generation.getStopSequences()));
+            try {
+                return sqlPostProcessor.extractSql(generatedSql);
+            } catch (QueryGenerationException e) {
+                if (generation.getStopSequences().isEmpty()) {
+                    throw e;
+                }
+                // A stop sequence in the prose before the SQL ("...per segment; first we total
+                // each order") ends the response before there is any; once more without them
+                log.debug("No SQL before a stop sequence, generating again without: {}", generatedSql);
+                return sqlPostProcessor.extractSql(complete(createPrompt(naturalQuery, List.of())));
             }
 
-            return generatedSql;
-
+        } catch (ServiceBusyException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Failed to generate SQL query for: {}", naturalQuery, e);
             throw new QueryGenerationException("Failed to generate SQL query: " + e.getMessage(), e);
         }
     }
 
-    private String extractFirstSqlStatement(String response) {
-        if (response == null || response.trim().isEmpty()) {
-            throw new QueryGenerationException("Empty response from AI model");
-        }
-
-        // Split the response into lines
-        String[] lines = response.split("\n");
-        StringBuilder sqlBuilder = new StringBuilder();
-        boolean foundSql = false;
-
-        for (String line : lines) {
-            line = line.trim();
-
-            // Skip empty lines and obvious explanatory text
-            if (line.isEmpty()) continue;
-
-            // Skip explanatory text patterns
-            if (line.toLowerCase().startsWith("to ") ||
-                    line.toLowerCase().startsWith("if you") ||
-                    line.toLowerCase().startsWith("note:") ||
-                    line.toLowerCase().startsWith("explanation:") ||
-                    line.toLowerCase().contains("you can add") ||
-                    line.toLowerCase().contains("filter results") ||
-                    line.toLowerCase().startsWith("for ")) {
-                continue;
-            }
-
-            // Stop at "OR" which indicates alternative queries
-            if (line.toUpperCase().equals("OR")) {
-                break;
-            }
-
-            // Check if this looks like start of SQL
-            if (line.toUpperCase().startsWith("SELECT") ||
-                    line.toUpperCase().startsWith("WITH") ||
-                    line.toUpperCase().startsWith("INSERT") ||
-                    line.toUpperCase().startsWith("UPDATE") ||
-                    line.toUpperCase().startsWith("DELETE")) {
-                foundSql = true;
-            }
-
-            // If we found SQL, keep adding lines until we hit a semicolon
-            if (foundSql) {
-                sqlBuilder.append(line).append(" ");
-
-                // Stop at semicolon (end of SQL statement)
-                if (line.endsWith(";")) {
-                    break;
-                }
-            }
-        }
+    private String complete(Prompt prompt) {
+        // Held only for the round trip itself; waiting here costs a virtual thread, not a worker
+        return llmLimit.call(() -> chatClient
+                .prompt(prompt)
+                .call()
+                .content());
+    }
 
-        String finalSql = sqlBuilder.toString().trim();
-
-        // If no SQL found, try to find it in the original response
-        if (!foundSql || finalSql.isEmpty()) {
-            // Look for SQL patterns in the entire response
-            if (response.toUpperCase().contains("SELECT")) {
-                int selectIndex = response.toUpperCase().indexOf("SELECT");
-                String fromSelect = response.substring(selectIndex);
-
-                // Find the end of the statement (semicolon or end of line)
-                int semicolonIndex = fromSelect.indexOf(";");
-                int newlineIndex = fromSelect.indexOf("\n");
-
-                if (semicolonIndex > 0) {
-                    finalSql = fromSelect.substring(0, semicolonIndex + 1).trim();
-                } else if (newlineIndex > 0) {
-                    finalSql = fromSelect.substring(0, newlineIndex).trim();
-                } else {
-                    finalSql = fromSelect.trim();
+    /**
+     * Streams the response token by token and cancels it, which closes the connection to
+     * Ollama and stops generation, as soon as the scanner has a complete statement: the
+     * alternatives and explanations models like to add after it are never generated.
+     * Stop sequences aren't sent: the scanner knows a {@code ;} or fence in the prose
+     * before the SQL from the end of the statement, and Ollama doesn't.
+     */
+    private String streamSqlQuery(String naturalQuery, Consumer<String> onSqlToken) {
+        Prompt prompt = createPrompt(naturalQuery, List.of());
+        try {
+            return llmLimit.call(() -> {
+                SqlStatementScanner scanner = new SqlStatementScanner();
+                StringBuilder generatedSql = new StringBuilder();
+                chatClient.prompt(prompt)
+                        .stream()
+                        .content()
+                        .takeUntil(token -> {
+                            generatedSql.append(token);
+                            onSqlToken.accept(token);
+                            return scanner.append(token);
+                        })
+                        .blockLast(requestTimeout);
+                if (scanner.isDone()) {
+                    generationsStoppedEarly.increment();
                 }
-            }
-        }
-
-        // Clean up extra whitespace
-        finalSql = finalSql.replaceAll("\\s+", " ").trim();
-
-        if (finalSql.isEmpty()) {
-            throw new QueryGenerationException("Could not extract valid SQL from AI response: " + response);
+                return sqlPostProcessor.extractSql(generatedSql.toString());
+            });
+        } catch (ServiceBusyException | UncheckedIOException e) {
+            // Overloaded, or the client went away mid-stream; neither is a generation failure
+            throw e;
+        } catch (Exception e) {
+            log.error("Failed to generate SQL query for: {}", naturalQuery, e);
+            throw new QueryGenerationException("Failed to generate SQL query: " + e.getMessage(), e);
         }
-
-        return finalSql;
     }
 
-    private void validateSqlQuery(String sql) {
-        String sqlUpper = sql.toUpperCase().trim();
+    private Prompt createPrompt(String naturalQuery, List<String> stopSequences) {
+        // Preprocess query for common patterns that need specific handling
+        return promptBuilder.build(preprocessQuery(naturalQuery), generationOptions(generation, stopSequences));
+    }
 
-        // Check if it's a SELECT query
-        if (!sqlUpper.startsWith("SELECT") && !sqlUpper.startsWith("WITH")) {
-            throw new QueryExecutionException("Only SELECT queries are allowed");
-        }
+    static OllamaOptions generationOptions(AssistantProperties.Generation generation) {
+        return generationOptions(generation, generation.getStopSequences());
+    }
 
-        // Check for dangerous patterns
-        if (DANGEROUS_PATTERNS.matcher(sqlUpper).find()) {
-            throw new QueryExecutionException("Query contains potentially dangerous SQL operations");
-        }
+    private static OllamaOptions generationOptions(AssistantProperties.Generation generation,
+                                                   List<String> stopSequences) {
+        return OllamaOptions.builder()
+                .temperature(generation.getTemperature())
+                .numPredict(generation.getMaxTokens())
+                .stop(List.copyOf(stopSequences))
+                .build();
+    }
 
-        // Additional validation for common SQL injection patterns
-        if (sql.contains("--") || sql.contains("/*") || sql.contains("*/")) {
-            log.warn("Query contains comment patterns, reviewing: {}", sql);
+    /**
+     * Aggregates over append-only tables come from their incrementally refreshed state;
+     * everything else, and whatever that can't answer, runs as limited.
+     */
+    private ColumnarResult executeSqlQuery(ValidatedSql validatedSql, RowLimiter.LimitedQuery limitedQuery,
+                                           long startTime) {
+        ColumnarResult incremental = incrementalAggregates.query(validatedSql, limitedQuery.maxRows(),
+                remaining(startTime));
+        if (incremental != null) {
+            return incremental;
         }
+        return queryExecutor.queryColumnar(limitedQuery.sql(), limitedQuery.maxRows(), remaining(startTime));
     }
 
-    private List<Map<String, Object>> executeSqlQuery(String sql) {
+    private ColumnarResult executeRepairedSqlQuery(ValidatedSql validatedSql, RowLimiter.LimitedQuery limitedQuery,
+                                                   long startTime) {
         try {
-            return jdbcTemplate.queryForList(sql);
-        } catch (Exception e) {
-            log.error("SQL execution failed for query: {}", sql, e);
-
-            String errorMessage = e.getMessage();
-
-            // Check for specific column not found errors and try to fix them
-            if (errorMessage.contains("column \"product_name\" does not exist") ||
-                    errorMessage.contains("column \"category\" does not exist")) {
-
-                log.info("Attempting to fix missing JOIN for products table");
-                String fixedSql = attemptToFixProductJoin(sql);
-                if (!fixedSql.equals(sql)) {
-                    try {
-                        log.info("Retrying with fixed SQL: {}", fixedSql);
-                        return jdbcTemplate.queryForList(fixedSql);
-                    } catch (Exception retryException) {
-                        log.warn("Fixed SQL also failed: {}", retryException.getMessage());
-                    }
-                }
-
-                throw new QueryExecutionException(
-                        "Column not found in sales table. Product information (product_name, category) requires JOIN with products table. " +
-                                "Query attempted: " + sql
-                );
-            } else if (errorMessage.contains("column \"customer_name\" does not exist")) {
-
-                log.info("Attempting to fix missing JOIN for customers table");
-                String fixedSql = attemptToFixCustomerJoin(sql);
-                if (!fixedSql.equals(sql)) {
-                    try {
-                        log.info("Retrying with fixed SQL: {}", fixedSql);
-                        return jdbcTemplate.queryForList(fixedSql);
-                    } catch (Exception retryException) {
-                        log.warn("Fixed SQL also failed: {}", retryException.getMessage());
-                    }
-                }
-
-                throw new QueryExecutionException(
-                        "Column 'customer_name' not found in sales table. Customer information requires JOIN with customers table. " +
-                                "Query attempted: " + sql
-                );
-            } else if (errorMessage.contains("relation") && errorMessage.contains("does not exist")) {
-                throw new QueryExecutionException("Referenced table or column does not exist in the database");
-            } else if (errorMessage.contains("syntax error")) {
-                throw new QueryExecutionException("Generated SQL query has syntax errors: " + sql);
-            } else if (errorMessage.contains("column") && errorMessage.contains("must appear")) {
-                throw new QueryExecutionException("Query grouping error - all selected columns must be in GROUP BY clause");
-            } else {
-                throw new QueryExecutionException("SQL execution failed: " + errorMessage);
-            }
+            return executeSqlQuery(validatedSql, limitedQuery, startTime);
+        } catch (DataAccessException e) {
+            // EXPLAIN accepted it, so this failed at run time; nothing more to ask the LLM
+            log.error("Repaired SQL failed for query: {}", limitedQuery.sql(), e);
+            throw describeFailure(limitedQuery.sql(), e);
         }
     }
 
-    private String attemptToFixProductJoin(String sql) {
-        // Simple pattern matching to add products JOIN if missing
-        if (!sql.toUpperCase().contains("JOIN") && !sql.toUpperCase().contains("FROM PRODUCTS")) {
-            if (sql.toUpperCase().contains("FROM SALES") &&
-                    (sql.contains("product_name") || sql.contains("category"))) {
-
-                sql = sql.replace("FROM sales", "FROM products p JOIN sales s ON p.id = s.product_id");
-                sql = sql.replace("sales.", "s.");
-                sql = sql.replace("product_name", "p.product_name");
-                sql = sql.replace("category", "p.category");
-            }
+    /**
+     * Replaces SQL the database rejected with the {@link SqlRepairer}'s fix, which from now
+     * on is the question's translation, or throws the error the failure maps to.
+     */
+    private ValidatedSql repair(String naturalQuery, String failedSql, DataAccessException failure, long startTime) {
+        ValidatedSql repairedSql = sqlRepairer.repair(naturalQuery, failedSql, failure, remaining(startTime));
+        if (repairedSql == null) {
+            throw describeFailure(failedSql, failure);
         }
-        return sql;
+        translationCache.put(naturalQuery, repairedSql);
+        return repairedSql;
     }
 
-    private String attemptToFixCustomerJoin(String sql) {
-        // Simple pattern matching to add customers JOIN if missing
-        if (!sql.toUpperCase().contains("JOIN") && !sql.toUpperCase().contains("FROM CUSTOMERS")) {
-            if (sql.toUpperCase().contains("FROM SALES") && sql.contains("customer_name")) {
-                sql = sql.replace("FROM sales", "FROM customers c JOIN sales s ON c.id = s.customer_id");
-                sql = sql.replace("sales.", "s.");
-                sql = sql.replace("customer_name", "c.customer_name");
-            }
+    private Duration remaining(long startTime) {
+        return requestTimeout.minusMillis(System.currentTimeMillis() - startTime);
+    }
+
+    private QueryExecutionException describeFailure(String sql, Exception e) {
+        String errorMessage = String.valueOf(e.getMessage());
+
+        if (errorMessage.contains("column \"product_name\" does not exist") ||
+                errorMessage.contains("column \"category\" does not exist")) {
+            return new QueryExecutionException(
+                    "Column not found in sales table. Product information (product_name, category) requires JOIN with products table. " +
+                            "Query attempted: " + sql
+            );
+        } else if (errorMessage.contains("column \"customer_name\" does not exist")) {
+            return new QueryExecutionException(
+                    "Column 'customer_name' not found in sales table. Customer information requires JOIN with customers table. " +
+                            "Query attempted: " + sql
+            );
+        } else if (errorMessage.contains("relation") && errorMessage.contains("does not exist")) {
+            return new QueryExecutionException("Referenced table or column does not exist in the database");
+        } else if (errorMessage.contains("syntax error")) {
+            return new QueryExecutionException("Generated SQL query has syntax errors: " + sql);
+        } else if (errorMessage.contains("column") && errorMessage.contains("must appear")) {
+            return new QueryExecutionException("Query grouping error - all selected columns must be in GROUP BY clause");
+        } else {
+            return new QueryExecutionException("SQL execution failed: " + errorMessage);
         }
-        return sql;
     }
 
-    private QueryResponse createSuccessResponse(String sql, List<Map<String, Object>> results, long executionTime) {
+    private QueryResponse createSuccessResponse(QueryRequest request, ValidatedSql validatedSql,
+                                               RowLimiter.LimitedQuery limitedQuery, ColumnarResult results,
+                                               long executionTime) {
         QueryResponse response = new QueryResponse();
         response.setSuccess(true);
         response.setMessage("Query executed successfully");
-        response.setGeneratedSql(sql);
-        response.setData(results);
+        response.setGeneratedSql(limitedQuery.sql());
+
+        // Clients that opted in get the compact form; everyone else gets a map per row
+        if (request.isColumnar()) {
+            response.setColumnarData(results);
+        } else {
+            response.setData(results.toRows());
+        }
 
         // Create metadata
         QueryResponse.QueryMetadata metadata = new QueryResponse.QueryMetadata();
-        metadata.setRowCount(results.size());
+        metadata.setRowCount(results.getRowCount());
         metadata.setExecutionTimeMs(executionTime);
-
-        if (!results.isEmpty()) {
-            String[] columnNames = results.get(0).keySet().toArray(new String[0]);
-            metadata.setColumnNames(columnNames);
-        } else {
-            metadata.setColumnNames(new String[0]);
+        metadata.setColumnNames(results.getColumnNames());
+
+        metadata.setQueryType(validatedSql.queryType());
+        metadata.setTruncated(results.isTruncated());
+        QueryPlan plan = queryExecutor.cachedPlan(limitedQuery.sql());
+        metadata.setPlan(plan);
+        if (results.isTruncated() && estimateTruncatedTotal) {
+            // The cost guard's plan, or with the guard off, one it EXPLAINs and caches
+            QueryPlan estimate = plan != null ? plan : queryExecutor.estimate(limitedQuery.sql());
+            metadata.setEstimatedTotalRows(estimate != null ? estimate.estimatedTotalRows() : null);
         }
-
-        metadata.setQueryType(determineQueryType(sql));
         response.setMetadata(metadata);
 
         return response;
@@ -435,16 +452,5 @@ public class QueryService {
         return response;
     }
 
-    private String determineQueryType(String sql) {
-        String upperSql = sql.toUpperCase().trim();
-        if (upperSql.contains("GROUP BY")) {
-            return "AGGREGATION";
-        } else if (upperSql.contains("ORDER BY")) {
-            return "SORTED_LIST";
-        } else if (upperSql.contains("JOIN")) {
-            return "RELATIONSHIP";
-        } else {
-            return "SIMPLE_SELECT";
-        }
-    }
+
 }
@@ -0,0 +1,92 @@
+package com.bi.assistant.service;
+
+import com.bi.assistant.config.AssistantProperties;
+import lombok.extern.slf4j.Slf4j;
+import net.sf.jsqlparser.expression.LongValue;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import net.sf.jsqlparser.statement.select.Limit;
+import net.sf.jsqlparser.statement.select.PlainSelect;
+import net.sf.jsqlparser.statement.select.Select;
+import net.sf.jsqlparser.statement.select.SetOperationList;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bounds how many rows a query can return to {@code min(request limit, server max)}.
+ * Where the outer query allows it, the bound is pushed into the SQL as a LIMIT of one
+ * more row than the cap, so the database stops early and the extra row tells the
+ * reader the result was cut short. Otherwise (FETCH FIRST, a parameterized LIMIT, ...)
+ * the SQL runs as generated and {@link ColumnarResultExtractor} stops reading at the cap.
+ */
+@Component
+@Slf4j
+public class RowLimiter {
+
+    private final int maxRows;
+
+    @Autowired
+    public RowLimiter(AssistantProperties properties) {
+        this.maxRows = properties.getResults().getMaxRows();
+    }
+
+    public int effectiveLimit(Integer requestedLimit) {
+        return requestedLimit == null || requestedLimit <= 0 ? maxRows : Math.min(requestedLimit, maxRows);
+    }
+
+    public LimitedQuery limit(ValidatedSql validatedSql, Integer requestedLimit) {
+        int rowCap = effectiveLimit(requestedLimit);
+        String sql = stripSemicolon(validatedSql.sql());
+        // Only the outer query decides how many rows come back
+        Select select = validatedSql.statement();
+        if (!canRewriteLimit(select)) {
+            return new LimitedQuery(sql, rowCap, false);
+        }
+
+        Limit limit = limitOf(select);
+        if (limit == null) {
+            return new LimitedQuery(sql + " LIMIT " + (rowCap + 1), rowCap, true);
+        }
+        if (limit.getRowCount() instanceof LongValue rowCount && limit.getOffset() == null) {
+            if (rowCount.getValue() <= rowCap) {
+                return new LimitedQuery(sql, rowCap, true);
+            }
+            // Never touch the cached tree; rewrite a fresh copy
+            try {
+                Select copy = (Select) CCJSqlParserUtil.newParser(sql).Statement();
+                limitOf(copy).setRowCount(new LongValue(rowCap + 1));
+                return new LimitedQuery(copy.toString(), rowCap, true);
+            } catch (Exception e) {
+                log.debug("Could not rewrite LIMIT, capping while reading instead: {}", e.getMessage());
+            }
+        }
+        return new LimitedQuery(sql, rowCap, false);
+    }
+
+    private static boolean canRewriteLimit(Select select) {
+        return (select instanceof PlainSelect plainSelect && plainSelect.getFetch() == null)
+                || (select instanceof SetOperationList setOperationList && setOperationList.getFetch() == null);
+    }
+
+    private static Limit limitOf(Select select) {
+        return select instanceof PlainSelect plainSelect
+                ? plainSelect.getLimit()
+                : ((SetOperationList) select).getLimit();
+    }
+
+    private static String stripSemicolon(String sql) {
+        String trimmed = sql.strip();
+        return trimmed.endsWith(";") ? trimmed.substring(0, trimmed.length() - 1).stripTrailing() : trimmed;
+    }
+
+    /**
+     * The SQL to run and the cap to read it with. {@code boundedInSql} means the SQL
+     * itself returns at most {@code maxRows + 1} rows, so it identifies the result on
+     * its own; otherwise the cap is part of the result's identity.
+     */
+    public record LimitedQuery(String sql, int maxRows, boolean boundedInSql) {
+
+        public String cacheKey() {
+            return boundedInSql ? sql : sql + " /* max rows " + maxRows + " */";
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.bi.assistant.service;
+
+import lombok.extern.slf4j.Slf4j;
+import net.sf.jsqlparser.expression.BinaryExpression;
+import net.sf.jsqlparser.expression.CastExpression;
+import net.sf.jsqlparser.expression.DateTimeLiteralExpression;
+import net.sf.jsqlparser.expression.DoubleValue;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.JdbcParameter;
+import net.sf.jsqlparser.expression.LongValue;
+import net.sf.jsqlparser.expression.NotExpression;
+import net.sf.jsqlparser.expression.StringValue;
+import net.sf.jsqlparser.expression.operators.relational.Between;
+import net.sf.jsqlparser.expression.operators.relational.ExpressionList;
+import net.sf.jsqlparser.expression.operators.relational.InExpression;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import net.sf.jsqlparser.statement.Statement;
+import net.sf.jsqlparser.statement.select.Join;
+import net.sf.jsqlparser.statement.select.Limit;
+import net.sf.jsqlparser.statement.select.PlainSelect;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns validated SQL into a {@link ParameterizedSql} template. Literals are lifted out of
+ * the outer query's join conditions, WHERE, HAVING, LIMIT and OFFSET, descending only
+ * through boolean logic, comparisons, arithmetic, IN lists, BETWEEN and casts:
+ * <pre>
+ * SELECT ... FROM sales s WHERE s.sale_date >= '2025-07-01' AND s.region IN ('North', 'East') LIMIT 5
+ * SELECT ... FROM sales s WHERE s.sale_date >= ? AND s.region IN (?, ?) LIMIT ?
+ * </pre>
+ * Literals anywhere else stay in the text: in the select list or GROUP BY a parameter
+ * has no type to infer, and {@code date_trunc(?, ...)} in both would no longer match;
+ * function arguments, CASE arms and subqueries are left alone for the same reasons.
+ * Anything but a plain SELECT runs unparameterized.
+ */
+@Slf4j
+public final class SqlParameterizer {
+
+    private SqlParameterizer() {
+    }
+
+    public static ParameterizedSql parameterize(String sql) {
+        PlainSelect select = parsePlainSelect(sql);
+        if (select == null) {
+            return new ParameterizedSql(sql, List.of());
+        }
+        List<Object> parameters = new ArrayList<>();
+        new LiteralWalker((index, literal) -> {
+            parameters.add(valueOf(literal));
+            return new JdbcParameter();
+        }).walkSelect(select);
+        return parameters.isEmpty()
+                ? new ParameterizedSql(sql, List.of())
+                : new ParameterizedSql(select.toString(), parameters);
+    }
+
+    /**
+     * The SQL with the literals that {@link #parameterize} would make parameters
+     * {@code index} replaced by the given numbers; the rest is unchanged.
+     */
+    public static String replaceNumbers(String sql, Map<Integer, Long> numbersByParameter) {
+        PlainSelect select = parsePlainSelect(sql);
+        if (select == null || numbersByParameter.isEmpty()) {
+            return sql;
+        }
+        new LiteralWalker((index, literal) -> numbersByParameter.containsKey(index)
+                ? new LongValue(numbersByParameter.get(index))
+                : literal).walkSelect(select);
+        return select.toString();
+    }
+
+    private static PlainSelect parsePlainSelect(String sql) {
+        try {
+            // A fresh tree: the validated one is shared between requests
+            Statement statement = CCJSqlParserUtil.newParser(sql).Statement();
+            return statement instanceof PlainSelect select ? select : null;
+        } catch (Exception e) {
+            log.debug("Could not parse SQL for parameters, running it as is: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * The value to bind for a literal {@link #isLiteral} accepted. Integers that fit are
+     * bound as {@code int4}, so {@code CURRENT_DATE - ?} still finds {@code date - integer}.
+     */
+    private static Object valueOf(Expression literal) {
+        if (literal instanceof StringValue value) {
+            return value.getValue().replace("''", "'");
+        }
+        if (literal instanceof LongValue value) {
+            long number = value.getValue();
+            return number == (int) number ? Integer.valueOf((int) number) : Long.valueOf(number);
+        }
+        if (literal instanceof DoubleValue value) {
+            return new BigDecimal(value.toString());
+        }
+        return dateOf((DateTimeLiteralExpression) literal);
+    }
+
+    private static boolean isLiteral(Expression expression) {
+        // E'...', N'...' and friends have their own escaping; leave them in the text
+        return (expression instanceof StringValue value && value.getPrefix() == null)
+                || expression instanceof LongValue
+                || expression instanceof DoubleValue
+                || (expression instanceof DateTimeLiteralExpression literal && dateOf(literal) != null);
+    }
+
+    private static LocalDate dateOf(DateTimeLiteralExpression literal) {
+        if (literal.getType() != DateTimeLiteralExpression.DateTime.DATE) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(literal.getValue().replace("'", "").strip());
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    @FunctionalInterface
+    private interface LiteralReplacement {
+        Expression replace(int index, Expression literal);
+    }
+
+    /**
+     * Visits the bindable literals of the outer query in the order they appear in its
+     * {@code toString()}, which is the order of the template's {@code ?}s.
+     */
+    private static final class LiteralWalker {
+
+        private final LiteralReplacement replacement;
+        private int index;
+
+        LiteralWalker(LiteralReplacement replacement) {
+            this.replacement = replacement;
+        }
+
+        void walkSelect(PlainSelect select) {
+            if (select.getJoins() != null) {
+                for (Join join : select.getJoins()) {
+                    if (join.getOnExpressions() != null && !join.getOnExpressions().isEmpty()) {
+                        List<Expression> on = new ArrayList<>();
+                        for (Expression expression : join.getOnExpressions()) {
+                            on.add(walk(expression));
+                        }
+                        join.setOnExpressions(on);
+                    }
+                }
+            }
+            select.setWhere(walk(select.getWhere()));
+            select.setHaving(walk(select.getHaving()));
+
+            Limit limit = select.getLimit();
+            // LIMIT a, b would put the offset first; not worth a template
+            if (limit != null && limit.getOffset() == null && isLiteral(limit.getRowCount())) {
+                limit.setRowCount(walk(limit.getRowCount()));
+            }
+            if (select.getOffset() != null && isLiteral(select.getOffset().getOffset())) {
+                select.getOffset().setOffset(walk(select.getOffset().getOffset()));
+            }
+        }
+
+        private Expression walk(Expression expression) {
+            if (expression == null) {
+                return null;
+            }
+            if (isLiteral(expression)) {
+                return replacement.replace(index++, expression);
+            }
+            if (expression instanceof BinaryExpression binary) {
+                binary.setLeftExpression(walk(binary.getLeftExpression()));
+                binary.setRightExpression(walk(binary.getRightExpression()));
+            } else if (expression instanceof Between between) {
+                between.setLeftExpression(walk(between.getLeftExpression()));
+                between.setBetweenExpressionStart(walk(between.getBetweenExpressionStart()));
+                between.setBetweenExpressionEnd(walk(between.getBetweenExpressionEnd()));
+            } else if (expression instanceof InExpression in) {
+                in.setLeftExpression(walk(in.getLeftExpression()));
+                if (in.getRightExpression() instanceof ExpressionList<?> values) {
+                    walkList(values);
+                }
+            } else if (expression instanceof ExpressionList<?> parenthesised) {
+                walkList(parenthesised);
+            } else if (expression instanceof NotExpression not) {
+                not.setExpression(walk(not.getExpression()));
+            } else if (expression instanceof CastExpression cast) {
+                cast.setLeftExpression(walk(cast.getLeftExpression()));
+            }
+            return expression;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void walkList(ExpressionList<?> list) {
+            ExpressionList<Expression> expressions = (ExpressionList<Expression>) list;
+            for (int i = 0; i < expressions.size(); i++) {
+                expressions.set(i, walk(expressions.get(i)));
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.bi.assistant.service;
+
+import com.bi.assistant.exception.QueryGenerationException;
+import com.bi.assistant.service.SqlStatementScanner.Statement;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+/**
+ * Turns a raw LLM response into a single SQL statement with one {@link SqlStatementScanner}
+ * pass. Runs on every translated request, so it does no I/O; see
+ * {@code SqlPostProcessingBenchmark} in the jmh source set. Validation and
+ * classification happen on the parse tree in {@link SqlValidator}.
+ */
+@Component
+@Slf4j
+public class SqlPostProcessor {
+
+    /**
+     * Strips markdown fences, explanations and alternatives from an LLM response and
+     * returns the first SQL statement, whitespace-normalized and without its semicolon.
+     */
+    public String extractSql(String response) {
+        return scan(response).sql();
+    }
+
+    public Statement scan(String response) {
+        if (response == null || response.isBlank()) {
+            throw new QueryGenerationException("Empty response from AI model");
+        }
+
+        Statement statement = SqlStatementScanner.scan(response);
+        if (statement.sql().isEmpty()) {
+            throw new QueryGenerationException("Could not extract valid SQL from AI response: " + response);
+        }
+
+        // Comments are stripped from the extracted SQL, but worth knowing about
+        if (statement.hasComment()) {
+            log.warn("AI response contained comments, stripped from: {}", statement.sql());
+        }
+        return statement;
+    }
+}
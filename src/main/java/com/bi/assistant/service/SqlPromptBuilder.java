@@ -0,0 +1,172 @@
+package com.bi.assistant.service;
+
+import com.bi.assistant.config.AssistantProperties;
+import com.bi.assistant.schema.ColumnValueSampler;
+import com.bi.assistant.schema.CompactSchemaRenderer;
+import com.bi.assistant.schema.SchemaCatalog;
+import com.bi.assistant.schema.SchemaLinker;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Assembles the SQL generation prompt as a system message that is byte-identical from
+ * one request to the next (role, schema, rules and examples) followed by a short user
+ * message (date context and question). Ollama keeps the KV cache of the previous prompt
+ * and only evaluates what comes after the longest shared prefix, so with everything that
+ * varies at the end, a new question costs a few dozen prompt tokens instead of the
+ * whole prompt.
+ * <p>
+ * Nothing is templated per request: the prefix is rendered once per schema version and
+ * the date context once per day, and the suffix is plain concatenation.
+ * <p>
+ * The schema is rendered from the {@link SchemaCatalog}, one compact line per relation.
+ * A schema with more than {@code bi.assistant.schema.max-prompt-tables} relations is too
+ * large for every prompt: it is left out of the prefix, and the suffix carries only the
+ * relations the {@link SchemaLinker} finds relevant to the question.
+ */
+@Component
+public class SqlPromptBuilder {
+
+    private static final String INSTRUCTIONS = """
+            CRITICAL RULES:
+            1. Return ONLY ONE executable SQL statement
+            2. NO explanations, NO comments, NO alternative queries
+            3. NO "OR" statements, NO multiple options
+            4. ALWAYS use JOINs when accessing data from multiple tables
+            5. For "list all customers" queries, use: SELECT * FROM customers;
+            6. Use table aliases: p for products, s for sales, c for customers
+            7. For nested aggregation, use subqueries or CTEs
+            8. Resolve relative dates ("last quarter", "this year") with the Date Context given with the question
+            9. Use only the tables, views and columns of the schema, and join tables along their foreign keys
+
+            CORRECT Examples:
+            - "top 5 products by revenue":
+              SELECT p.product_name, SUM(s.revenue) AS total_revenue FROM products p JOIN sales s ON p.id = s.product_id GROUP BY p.product_name ORDER BY total_revenue DESC LIMIT 5;
+
+            - "list all customers":
+              SELECT * FROM customers;
+
+            - "revenue by category":
+              SELECT p.category, SUM(s.revenue) AS total_revenue FROM products p JOIN sales s ON p.id = s.product_id GROUP BY p.category ORDER BY total_revenue DESC;
+
+            - "average order value by customer segment":
+              SELECT c.customer_segment, AVG(order_total) AS avg_order_value FROM customers c JOIN (SELECT customer_id, SUM(p.price * s.quantity) AS order_total FROM sales s JOIN products p ON s.product_id = p.id GROUP BY customer_id) AS orders ON c.id = orders.customer_id GROUP BY c.customer_segment;
+
+            - "monthly sales trends":
+              SELECT EXTRACT(YEAR FROM sale_date) AS year, EXTRACT(MONTH FROM sale_date) AS month, SUM(revenue) AS monthly_revenue FROM sales GROUP BY EXTRACT(YEAR FROM sale_date), EXTRACT(MONTH FROM sale_date) ORDER BY year, month;
+
+            Return only the SQL query without any explanations.
+            """;
+
+    private final SchemaCatalog schemaCatalog;
+    private final SchemaLinker schemaLinker;
+    private final int maxPromptTables;
+    private final Clock clock;
+
+    private volatile Prefix prefix;
+    private volatile DateContext dateContext;
+
+    @Autowired
+    public SqlPromptBuilder(SchemaCatalog schemaCatalog, SchemaLinker schemaLinker, AssistantProperties properties) {
+        this(schemaCatalog, schemaLinker, properties, Clock.systemDefaultZone());
+    }
+
+    /**
+     * Links without sampled values, for fixed catalogs.
+     */
+    public SqlPromptBuilder(SchemaCatalog schemaCatalog, AssistantProperties properties) {
+        this(schemaCatalog, new SchemaLinker(schemaCatalog, ColumnValueSampler.NONE, properties), properties,
+                Clock.systemDefaultZone());
+    }
+
+    public SqlPromptBuilder(SchemaCatalog schemaCatalog, SchemaLinker schemaLinker, AssistantProperties properties,
+                            Clock clock) {
+        this.schemaCatalog = schemaCatalog;
+        this.schemaLinker = schemaLinker;
+        this.maxPromptTables = properties.getSchema().getMaxPromptTables();
+        this.clock = clock;
+    }
+
+    public Prompt build(String naturalQuery, ChatOptions options) {
+        return new Prompt(List.of(new SystemMessage(systemPrefix()), new UserMessage(suffix(naturalQuery))), options);
+    }
+
+    /**
+     * The prompt for another try at a question whose SQL the database rejected: the same
+     * prefix, so it is still cached, and the question followed by the failed SQL and the error.
+     */
+    public Prompt buildRepair(String naturalQuery, String failedSql, String error, ChatOptions options) {
+        String suffix = suffix(naturalQuery)
+                + "\n\nThis SQL failed:\n" + failedSql
+                + "\nPostgreSQL error: " + error
+                + "\nReturn only the corrected SQL query.";
+        return new Prompt(List.of(new SystemMessage(systemPrefix()), new UserMessage(suffix)), options);
+    }
+
+    /**
+     * The stable part of the prompt, re-rendered only after the schema catalog is refreshed.
+     */
+    public String systemPrefix() {
+        long version = schemaCatalog.version();
+        Prefix current = prefix;
+        if (current == null || current.schemaVersion() != version) {
+            current = new Prefix(version, renderPrefix(schemaInPrefix() ? schemaCatalog : null));
+            prefix = current;
+        }
+        return current.text();
+    }
+
+    private String suffix(String naturalQuery) {
+        String suffix = dateContext() + "\nNatural Language Query: " + naturalQuery;
+        if (!schemaInPrefix()) {
+            suffix = "Schema:\n" + CompactSchemaRenderer.render(schemaLinker.link(naturalQuery)) + "\n" + suffix;
+        }
+        return suffix;
+    }
+
+    private String dateContext() {
+        LocalDate today = LocalDate.now(clock);
+        DateContext current = dateContext;
+        if (current == null || !current.date().equals(today)) {
+            current = new DateContext(today, renderDateContext(today));
+            dateContext = current;
+        }
+        return current.text();
+    }
+
+    private boolean schemaInPrefix() {
+        return schemaCatalog.tables().size() <= maxPromptTables;
+    }
+
+    private static String renderPrefix(SchemaCatalog schema) {
+        String role = "You are a PostgreSQL expert. Translate natural language queries to SQL.\n\n";
+        if (schema == null) {
+            return role + "The relevant part of the schema is given with each question.\n\n" + INSTRUCTIONS;
+        }
+        return role + "Schema:\n" + CompactSchemaRenderer.render(schema.tableInfos()) + "\n" + INSTRUCTIONS;
+    }
+
+    private static String renderDateContext(LocalDate today) {
+        LocalDate quarterStart = today.minusMonths(3).withDayOfMonth(1);
+        LocalDate quarterEnd = today.withDayOfMonth(1);
+        LocalDate yearStart = today.withDayOfYear(1);
+        return "Date Context:\n"
+                + "- Today: " + today + "\n"
+                + "- Last quarter: " + quarterStart + " to " + quarterEnd + "\n"
+                + "- This year: " + yearStart + " to " + today + "\n";
+    }
+
+    private record Prefix(long schemaVersion, String text) {
+    }
+
+    private record DateContext(LocalDate date, String text) {
+    }
+}
@@ -0,0 +1,245 @@
+package com.bi.assistant.service;
+
+import com.bi.assistant.concurrency.ConcurrencyLimit;
+import com.bi.assistant.concurrency.ConcurrencyLimits;
+import com.bi.assistant.config.AssistantProperties;
+import com.bi.assistant.exception.QueryExecutionException;
+import com.bi.assistant.exception.QueryGenerationException;
+import com.bi.assistant.exception.ServiceBusyException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A second chance for generated SQL that {@link SqlValidator} or the database rejected.
+ * The LLM is shown the question, the failed SQL and the error (the validator's message,
+ * or PostgreSQL's SQLSTATE, message, hint and the position it points at) and asked for a
+ * corrected statement. A candidate has to pass
+ * {@link SqlValidator} and then {@code EXPLAIN}, which plans the query without running
+ * it; whatever it fails on is the feedback for the next attempt. At most
+ * {@code bi.assistant.repair.max-attempts} attempts are made, and none is started once
+ * {@code bi.assistant.repair.budget}, or the request's own deadline, has passed.
+ * <p>
+ * Repairs are cached by the SQL they replace, so a paraphrase that translates to the
+ * same broken SQL is fixed without the LLM. Published as {@code bi.sql.repairs} (tag
+ * {@code outcome=repaired|cached|failed}), {@code bi.sql.repair.attempts},
+ * {@code bi.sql.repair.rate} and {@code bi.sql.repair.latency}, the time repairing added.
+ */
+@Component
+@Slf4j
+public class SqlRepairer {
+
+    public static final String CACHE_NAME = "sqlRepairs";
+
+    // pgJDBC appends the server's detail fields to the message: "...\n  Hint: ...\n  Position: 8"
+    private static final Pattern HINT = Pattern.compile("Hint: (.+)");
+    private static final Pattern POSITION = Pattern.compile("Position: (\\d+)");
+    private static final int NEAR_LENGTH = 30;
+
+    private final ChatClient chatClient;
+    private final JdbcTemplate jdbcTemplate;
+    private final SqlPromptBuilder promptBuilder;
+    private final SqlPostProcessor sqlPostProcessor;
+    private final SqlValidator sqlValidator;
+    private final ConcurrencyLimit llmLimit;
+    private final ConcurrencyLimit databaseLimit;
+    private final AssistantProperties.Generation generation;
+    private final AssistantProperties.Repair config;
+    private final Cache<String, ValidatedSql> repairs;
+    private final Counter repaired;
+    private final Counter cached;
+    private final Counter failed;
+    private final Counter attempts;
+    private final Timer latency;
+
+    @Autowired
+    public SqlRepairer(ChatClient.Builder chatClientBuilder, JdbcTemplate jdbcTemplate,
+                       SqlPromptBuilder promptBuilder, SqlPostProcessor sqlPostProcessor, SqlValidator sqlValidator,
+                       ConcurrencyLimits concurrencyLimits, AssistantProperties properties,
+                       MeterRegistry meterRegistry) {
+        this.chatClient = chatClientBuilder.build();
+        this.jdbcTemplate = jdbcTemplate;
+        this.promptBuilder = promptBuilder;
+        this.sqlPostProcessor = sqlPostProcessor;
+        this.sqlValidator = sqlValidator;
+        this.llmLimit = concurrencyLimits.llm();
+        this.databaseLimit = concurrencyLimits.database();
+        this.generation = properties.getGeneration();
+        this.config = properties.getRepair();
+
+        this.repairs = Caffeine.newBuilder()
+                .maximumSize(config.getMaxEntries())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, repairs, CACHE_NAME);
+
+        this.repaired = outcome(meterRegistry, "repaired", "Failed queries the LLM repaired");
+        this.cached = outcome(meterRegistry, "cached", "Failed queries answered by an earlier repair");
+        this.failed = outcome(meterRegistry, "failed", "Failed queries that could not be repaired");
+        this.attempts = Counter.builder("bi.sql.repair.attempts")
+                .description("LLM calls made to repair failed queries")
+                .register(meterRegistry);
+        this.latency = Timer.builder("bi.sql.repair.latency")
+                .description("Time spent repairing a failed query, LLM calls and EXPLAIN included")
+                .register(meterRegistry);
+        Gauge.builder("bi.sql.repair.rate", this, SqlRepairer::repairRate)
+                .description("Share of failed queries that were repaired")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns validated SQL to run instead of {@code failedSql}, which EXPLAIN has accepted,
+     * or null if none was found within the attempts and time allowed.
+     */
+    public ValidatedSql repair(String naturalQuery, String failedSql, Throwable failure, Duration remaining) {
+        ValidatedSql cachedRepair = repairs.getIfPresent(failedSql);
+        if (cachedRepair != null) {
+            cached.increment();
+            log.debug("Repair cache hit for SQL: {}", failedSql);
+            return cachedRepair;
+        }
+        if (!config.isEnabled()) {
+            return null;
+        }
+
+        long start = System.nanoTime();
+        long deadline = start + Math.min(config.getBudget().toNanos(), remaining.toNanos());
+        String sql = failedSql;
+        String error = describe(failure, failedSql);
+        try {
+            for (int attempt = 1; attempt <= config.getMaxAttempts() && System.nanoTime() < deadline; attempt++) {
+                attempts.increment();
+                log.info("Repair attempt {} for SQL: {} ({})", attempt, sql, error);
+                String candidate = generate(naturalQuery, sql, error);
+                try {
+                    ValidatedSql validatedSql = sqlValidator.validate(candidate);
+                    error = explain(candidate);
+                    if (error == null) {
+                        repairs.put(failedSql, validatedSql);
+                        repaired.increment();
+                        log.info("Repaired SQL: {}", candidate);
+                        return validatedSql;
+                    }
+                } catch (QueryExecutionException e) {
+                    error = e.getMessage();
+                }
+                sql = candidate;
+            }
+        } catch (QueryGenerationException | ServiceBusyException e) {
+            // Report the original failure rather than the repair's
+            log.warn("Gave up repairing SQL: {}", e.getMessage());
+        } finally {
+            latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        failed.increment();
+        return null;
+    }
+
+    public double repairRate() {
+        double total = repaired.count() + cached.count() + failed.count();
+        return total == 0 ? 0 : (repaired.count() + cached.count()) / total;
+    }
+
+    public void invalidateAll() {
+        repairs.invalidateAll();
+    }
+
+    private String generate(String naturalQuery, String failedSql, String error) {
+        Prompt prompt = promptBuilder.buildRepair(naturalQuery, failedSql, error,
+                QueryService.generationOptions(generation));
+        try {
+            String response = llmLimit.call(() -> chatClient
+                    .prompt(prompt)
+                    .call()
+                    .content());
+            return sqlPostProcessor.extractSql(response);
+        } catch (ServiceBusyException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new QueryGenerationException("Failed to repair SQL query: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * PostgreSQL's error for the query's plan, or null if it plans. Nothing is executed.
+     */
+    private String explain(String sql) {
+        String explain = "EXPLAIN " + sql;
+        try {
+            databaseLimit.call(() -> jdbcTemplate.queryForList(explain, String.class));
+            return null;
+        } catch (DataAccessException e) {
+            // Positions count from the start of what was sent, EXPLAIN included
+            return describe(e, explain);
+        }
+    }
+
+    /**
+     * The error as the LLM is shown it, e.g.
+     * {@code SQLSTATE 42703 at position 8 near "category FROM sales": column "category" does not exist}
+     * followed by the server's hint, if any.
+     */
+    static String describe(Throwable failure, String sql) {
+        SQLException sqlException = null;
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException e) {
+                sqlException = e;
+            }
+        }
+        if (sqlException == null || sqlException.getMessage() == null) {
+            return String.valueOf(failure.getMessage());
+        }
+
+        String message = sqlException.getMessage();
+        StringBuilder description = new StringBuilder();
+        if (sqlException.getSQLState() != null) {
+            description.append("SQLSTATE ").append(sqlException.getSQLState()).append(' ');
+        }
+        Matcher position = POSITION.matcher(message);
+        if (position.find()) {
+            int offset = Integer.parseInt(position.group(1)) - 1;
+            description.append("at position ").append(offset + 1).append(' ');
+            if (offset >= 0 && offset < sql.length()) {
+                description.append("near \"")
+                        .append(sql, offset, Math.min(sql.length(), offset + NEAR_LENGTH))
+                        .append("\" ");
+            }
+        }
+        String firstLine = message.lines().findFirst().orElse("").replaceFirst("^ERROR:\\s*", "");
+        if (description.isEmpty()) {
+            description.append(firstLine);
+        } else {
+            description.setLength(description.length() - 1);
+            description.append(": ").append(firstLine);
+        }
+        Matcher hint = HINT.matcher(message);
+        if (hint.find()) {
+            description.append(" (hint: ").append(hint.group(1).strip()).append(')');
+        }
+        return description.toString();
+    }
+
+    private static Counter outcome(MeterRegistry meterRegistry, String outcome, String description) {
+        return Counter.builder("bi.sql.repairs")
+                .description(description)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+}
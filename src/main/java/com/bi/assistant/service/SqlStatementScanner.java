@@ -0,0 +1,433 @@
+package com.bi.assistant.service;
+
+/**
+ * Single-pass, character-level scanner that pulls the first SQL statement out of an LLM
+ * response. In one scan it drops markdown fences and prose lines, stops at an "OR"
+ * alternative or at the first top-level {@code ;}, collapses whitespace and strips
+ * comments, without splitting lines or building intermediate Strings. Deciding what the
+ * statement does is left to {@link SqlValidator}, which works on its parse tree. String literals, quoted identifiers and dollar quotes are copied verbatim,
+ * so a {@code ;} or keyword inside them is never mistaken for structure.
+ * <p>
+ * Text can be fed incrementally with {@link #append} (e.g. while the LLM is still
+ * streaming tokens); a line is scanned as soon as its newline arrives, so
+ * {@link #isDone()} turns true on the line that completes the statement.
+ * For a whole response use {@link #scan(CharSequence)}.
+ */
+public final class SqlStatementScanner {
+
+    /**
+     * The extracted statement. {@code end} is the input offset just past the statement
+     * (past its {@code ;} if it had one), for callers that need to know what follows.
+     */
+    public record Statement(String sql, boolean complete, int end, boolean hasComment) {
+    }
+
+    private enum State {
+        CODE, SINGLE_QUOTE, ESCAPE_STRING, DOUBLE_QUOTE, DOLLAR_QUOTE, BLOCK_COMMENT, LINE_COMMENT
+    }
+
+    private static final String[] PROSE_PREFIXES = {"to ", "if you", "note:", "explanation:", "for "};
+    private static final String[] PROSE_FRAGMENTS = {"you can add", "filter results"};
+    private static final String[] STATEMENT_STARTS = {"SELECT", "WITH", "INSERT", "UPDATE", "DELETE"};
+
+    private final CharSequence text;
+    private final StringBuilder sql = new StringBuilder(128);
+
+    private int lineStart;
+    private int end;
+    private boolean inStatement;
+    private boolean complete;
+    private boolean stopped;
+    private boolean pendingSpace;
+    private State state = State.CODE;
+    private int dollarTagStart;
+    private int dollarTagLength;
+    private int blockDepth;
+    private int wordStart = -1;
+    private boolean hasComment;
+
+    /**
+     * Creates a scanner to be fed with {@link #append}.
+     */
+    public SqlStatementScanner() {
+        this(new StringBuilder(256));
+    }
+
+    private SqlStatementScanner(CharSequence text) {
+        this.text = text;
+    }
+
+    public static Statement scan(CharSequence response) {
+        SqlStatementScanner scanner = new SqlStatementScanner(response);
+        scanner.scanLines(response.length(), true);
+        return scanner.finish();
+    }
+
+    /**
+     * Feeds the next chunk and scans every line it completes. Returns {@link #isDone()}.
+     */
+    public boolean append(CharSequence chunk) {
+        if (isDone()) {
+            return true;
+        }
+        ((StringBuilder) text).append(chunk);
+        scanLines(text.length(), false);
+        return isDone();
+    }
+
+    /**
+     * True once the first statement is complete or an "OR" alternative was reached;
+     * anything after that is ignored.
+     */
+    public boolean isDone() {
+        return complete || stopped;
+    }
+
+    /**
+     * Scans whatever is left (a last line without newline) and returns the statement.
+     * The SQL is empty if the response didn't contain any.
+     */
+    public Statement finish() {
+        if (!isDone()) {
+            scanLines(text.length(), true);
+        }
+        if (sql.isEmpty()) {
+            scanFallback();
+        }
+        return new Statement(sql.toString(), complete, end, hasComment);
+    }
+
+    private void scanLines(int limit, boolean lastLineComplete) {
+        while (lineStart < limit && !isDone()) {
+            int lineEnd = indexOf('\n', lineStart, limit);
+            if (lineEnd < 0) {
+                if (!lastLineComplete) {
+                    return;
+                }
+                lineEnd = limit;
+            }
+            scanLine(lineStart, lineEnd);
+            lineStart = lineEnd + 1;
+            if (!isDone()) {
+                end = Math.min(lineStart, limit);
+            }
+        }
+    }
+
+    private void scanLine(int from, int to) {
+        if (state != State.CODE && state != State.LINE_COMMENT) {
+            // Inside a literal or block comment that spans lines: no line rules apply
+            scanCode(from, to);
+            endOfLine();
+            return;
+        }
+        state = State.CODE;
+
+        int start = skipWhitespace(from, to);
+        int stop = trimEnd(start, to);
+        while (regionMatches(start, stop, "```", false)) {
+            start += 3;
+            if (regionMatches(start, stop, "sql", false)) {
+                start += 3;
+            }
+            start = skipWhitespace(start, stop);
+        }
+
+        if (start >= stop || isProse(start, stop)) {
+            return;
+        }
+        if (stop - start == 2 && regionMatches(start, stop, "OR", true)) {
+            // The model is offering an alternative query; the first one is the answer
+            stopped = true;
+            return;
+        }
+        if (!inStatement) {
+            if (!startsWithAny(start, stop, STATEMENT_STARTS)) {
+                return;
+            }
+            inStatement = true;
+        }
+
+        // Up to the raw line end, so trailing whitespace inside a multi-line literal survives
+        scanCode(start, to);
+        endOfLine();
+    }
+
+    private void endOfLine() {
+        switch (state) {
+            case SINGLE_QUOTE, ESCAPE_STRING, DOUBLE_QUOTE, DOLLAR_QUOTE -> sql.append('\n');
+            case LINE_COMMENT -> {
+                state = State.CODE;
+                pendingSpace = true;
+            }
+            case CODE -> {
+                endWord();
+                pendingSpace = true;
+            }
+            default -> {
+                // Block comments carry over to the next line
+            }
+        }
+    }
+
+    /**
+     * Falls back to the first "SELECT" anywhere in the response, up to the first
+     * {@code ;} if there is one, otherwise to the end of that line.
+     */
+    private void scanFallback() {
+        int select = indexOfIgnoreCase("SELECT", 0, text.length());
+        if (select < 0) {
+            return;
+        }
+        state = State.CODE;
+        inStatement = true;
+        pendingSpace = false;
+        int stop = indexOf(';', select, text.length()) >= 0
+                ? text.length()
+                : Math.max(indexOf('\n', select, text.length()), select);
+        if (stop == select) {
+            stop = text.length();
+        }
+        scanCode(select, stop);
+        endWord();
+    }
+
+    private void scanCode(int from, int to) {
+        for (int i = from; i < to && !complete; i++) {
+            char c = text.charAt(i);
+            switch (state) {
+                case CODE -> i = scanCodeChar(c, i, to);
+                case SINGLE_QUOTE, ESCAPE_STRING -> {
+                    sql.append(c);
+                    if (c == '\\' && state == State.ESCAPE_STRING && i + 1 < to) {
+                        sql.append(text.charAt(++i));
+                    } else if (c == '\'') {
+                        if (i + 1 < to && text.charAt(i + 1) == '\'') {
+                            sql.append(text.charAt(++i));
+                        } else {
+                            state = State.CODE;
+                        }
+                    }
+                }
+                case DOUBLE_QUOTE -> {
+                    sql.append(c);
+                    if (c == '"') {
+                        if (i + 1 < to && text.charAt(i + 1) == '"') {
+                            sql.append(text.charAt(++i));
+                        } else {
+                            state = State.CODE;
+                        }
+                    }
+                }
+                case DOLLAR_QUOTE -> {
+                    if (c == '$' && i + dollarTagLength <= to && sameDollarTag(i)) {
+                        sql.append(text, i, i + dollarTagLength);
+                        i += dollarTagLength - 1;
+                        state = State.CODE;
+                    } else {
+                        sql.append(c);
+                    }
+                }
+                case BLOCK_COMMENT -> {
+                    if (c == '*' && i + 1 < to && text.charAt(i + 1) == '/') {
+                        i++;
+                        if (--blockDepth == 0) {
+                            state = State.CODE;
+                        }
+                    } else if (c == '/' && i + 1 < to && text.charAt(i + 1) == '*') {
+                        // PostgreSQL block comments nest
+                        i++;
+                        blockDepth++;
+                    }
+                }
+                case LINE_COMMENT -> i = to;
+            }
+        }
+    }
+
+    private int scanCodeChar(char c, int i, int to) {
+        if (Character.isWhitespace(c)) {
+            endWord();
+            pendingSpace = true;
+            return i;
+        }
+        if (c == ';') {
+            endWord();
+            complete = true;
+            end = i + 1;
+            return i;
+        }
+        char next = i + 1 < to ? text.charAt(i + 1) : 0;
+        if (c == '`' && next == '`' && i + 2 < to && text.charAt(i + 2) == '`') {
+            endWord();
+            pendingSpace = true;
+            int after = i + 3;
+            return regionMatches(after, to, "sql", false) ? after + 2 : after - 1;
+        }
+        if ((c == '-' && next == '-') || (c == '/' && next == '*')) {
+            endWord();
+            hasComment = true;
+            pendingSpace = true;
+            if (c == '-') {
+                state = State.LINE_COMMENT;
+                return to;
+            }
+            state = State.BLOCK_COMMENT;
+            blockDepth = 1;
+            return i + 1;
+        }
+        if (c == '\'') {
+            boolean escapeString = wordStart >= 0 && i - wordStart == 1
+                    && (text.charAt(wordStart) == 'E' || text.charAt(wordStart) == 'e');
+            endWord();
+            appendCode(c);
+            state = escapeString ? State.ESCAPE_STRING : State.SINGLE_QUOTE;
+            return i;
+        }
+        if (c == '"') {
+            endWord();
+            appendCode(c);
+            state = State.DOUBLE_QUOTE;
+            return i;
+        }
+        if (c == '$' && wordStart < 0) {
+            int tagEnd = dollarTagEnd(i + 1, to);
+            if (tagEnd >= 0) {
+                appendCode(c);
+                sql.append(text, i + 1, tagEnd + 1);
+                dollarTagStart = i;
+                dollarTagLength = tagEnd - i + 1;
+                state = State.DOLLAR_QUOTE;
+                return tagEnd;
+            }
+        }
+        if (isWordChar(c)) {
+            if (wordStart < 0) {
+                wordStart = i;
+            }
+            appendCode(c);
+            return i;
+        }
+        endWord();
+        appendCode(c);
+        return i;
+    }
+
+    private void appendCode(char c) {
+        if (pendingSpace && !sql.isEmpty()) {
+            sql.append(' ');
+        }
+        pendingSpace = false;
+        sql.append(c);
+    }
+
+    /**
+     * Ends the identifier or keyword being read, if any; {@code wordStart} is what tells
+     * an {@code E'...'} escape string or a {@code $tag$} quote from a word that ends in them.
+     */
+    private void endWord() {
+        wordStart = -1;
+    }
+
+    private boolean isProse(int start, int stop) {
+        for (String prefix : PROSE_PREFIXES) {
+            if (regionMatches(start, stop, prefix, true)) {
+                return true;
+            }
+        }
+        for (String fragment : PROSE_FRAGMENTS) {
+            if (indexOfIgnoreCase(fragment, start, stop) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean startsWithAny(int start, int stop, String[] prefixes) {
+        for (String prefix : prefixes) {
+            if (regionMatches(start, stop, prefix, true)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int dollarTagEnd(int from, int to) {
+        if (from < to && text.charAt(from) == '$') {
+            return from;
+        }
+        if (from >= to || !(Character.isLetter(text.charAt(from)) || text.charAt(from) == '_')) {
+            return -1;
+        }
+        for (int i = from + 1; i < to; i++) {
+            char c = text.charAt(i);
+            if (c == '$') {
+                return i;
+            }
+            if (!isWordChar(c)) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private boolean sameDollarTag(int at) {
+        for (int k = 0; k < dollarTagLength; k++) {
+            if (text.charAt(at + k) != text.charAt(dollarTagStart + k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean regionMatches(int start, int stop, String expected, boolean ignoreCase) {
+        if (stop - start < expected.length()) {
+            return false;
+        }
+        for (int k = 0; k < expected.length(); k++) {
+            char actual = text.charAt(start + k);
+            char wanted = expected.charAt(k);
+            if (actual != wanted
+                    && (!ignoreCase || Character.toUpperCase(actual) != Character.toUpperCase(wanted))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int indexOfIgnoreCase(String needle, int from, int to) {
+        for (int i = from; i <= to - needle.length(); i++) {
+            if (regionMatches(i, to, needle, true)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int indexOf(char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int skipWhitespace(int from, int to) {
+        while (from < to && Character.isWhitespace(text.charAt(from))) {
+            from++;
+        }
+        return from;
+    }
+
+    private int trimEnd(int from, int to) {
+        while (to > from && Character.isWhitespace(text.charAt(to - 1))) {
+            to--;
+        }
+        return to;
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+}
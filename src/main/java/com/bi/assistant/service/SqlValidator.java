@@ -0,0 +1,291 @@
+package com.bi.assistant.service;
+
+import com.bi.assistant.exception.QueryExecutionException;
+import com.bi.assistant.schema.SchemaCatalog;
+import lombok.extern.slf4j.Slf4j;
+import net.sf.jsqlparser.expression.Alias;
+import net.sf.jsqlparser.expression.AnalyticExpression;
+import net.sf.jsqlparser.expression.Function;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import net.sf.jsqlparser.schema.Column;
+import net.sf.jsqlparser.schema.Table;
+import net.sf.jsqlparser.statement.Statement;
+import net.sf.jsqlparser.statement.select.*;
+import net.sf.jsqlparser.util.TablesNamesFinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Validates generated SQL on its parse tree rather than its text. A query passes when it
+ * is exactly one read-only SELECT, every table and column it names exists in the
+ * {@link SchemaCatalog}, and it calls none of the server functions that can sleep, reach
+ * other servers or change server state. Keywords inside literals or names such as
+ * {@code last_update} are therefore never mistaken for statements.
+ * <p>
+ * Runs on every translation that misses the cache; see {@code SqlValidationBenchmark}
+ * in the jmh source set.
+ */
+@Component
+@Slf4j
+public class SqlValidator {
+
+    /**
+     * Longer SQL is rejected before parsing; the parser has no timeout of its own here.
+     */
+    static final int MAX_SQL_LENGTH = 10_000;
+
+    private static final Set<String> DENIED_FUNCTIONS = Set.of(
+            "set_config", "current_setting", "nextval", "setval", "txid_current", "version"
+    );
+    /**
+     * Families rather than names, so a variant missing from a list can't slip through:
+     * pg_sleep, pg_read_file, dblink_exec, lo_import, ...; the XML exports, which read whole
+     * tables, schemas or databases past the table check ({@code table_to_xmlschema},
+     * {@code database_to_xml_and_xmlschema}, ...); and everything that runs SQL given as
+     * text ({@code query_to_xml}, {@code cursor_to_xml}, {@code ts_stat}, {@code ts_rewrite}).
+     */
+    private static final Pattern DENIED_FUNCTION_PATTERN = Pattern.compile(
+            "(pg_|dblink|lo_).*|.*_to_xml.*|(query|cursor)_to_.*|ts_stat|ts_rewrite");
+
+    // Keywords the parser may hand back as bare column references
+    private static final Set<String> PSEUDO_COLUMNS = Set.of(
+            "true", "false", "current_date", "current_time", "current_timestamp", "localtime", "localtimestamp"
+    );
+
+    private final SchemaCatalog schemaCatalog;
+
+    @Autowired
+    public SqlValidator(SchemaCatalog schemaCatalog) {
+        this.schemaCatalog = schemaCatalog;
+    }
+
+    public ValidatedSql validate(String sql) {
+        if (!(parse(sql) instanceof Select select)) {
+            throw new QueryExecutionException("Only SELECT queries are allowed");
+        }
+
+        ReferenceCollector references = new ReferenceCollector();
+        Set<String> readTables = new HashSet<>();
+        for (String table : references.getTableList(select)) {
+            readTables.add(normalize(table));
+        }
+
+        Set<String> tables = checkTables(references, readTables);
+        checkColumns(references, tables);
+        return new ValidatedSql(sql, select, Set.copyOf(tables), references.queryType());
+    }
+
+    private Statement parse(String sql) {
+        if (sql == null || sql.isBlank()) {
+            throw new QueryExecutionException("Generated SQL query is empty");
+        }
+        if (sql.length() > MAX_SQL_LENGTH) {
+            throw new QueryExecutionException("Generated SQL query is too long");
+        }
+        // Caught before parsing only to give the clearer error; the parser rejects it too
+        SqlStatementScanner.Statement first = SqlStatementScanner.scan(sql);
+        if (first.complete() && !sql.substring(first.end()).isBlank()) {
+            throw new QueryExecutionException("Only a single SQL statement is allowed");
+        }
+        try {
+            // The parser itself rather than CCJSqlParserUtil.parse, which starts a new
+            // thread per call to enforce its timeout. Statement() requires end of input
+            // after the first statement and its optional ';'.
+            return CCJSqlParserUtil.newParser(sql).Statement();
+        } catch (Exception e) {
+            throw new QueryExecutionException("Generated SQL query has syntax errors: " + sql, e);
+        }
+    }
+
+    /**
+     * Returns the lowercased names of the catalog tables the query reads. References
+     * that the finder didn't report as tables are CTE names and need no check.
+     */
+    private Set<String> checkTables(ReferenceCollector references, Set<String> readTables) {
+        Set<String> tables = new HashSet<>();
+        for (Table table : references.tables) {
+            String wholeName = normalize(table.getFullyQualifiedName());
+            if (!readTables.contains(wholeName)) {
+                continue;
+            }
+            String schema = normalize(table.getSchemaName());
+            String name = normalize(table.getName());
+            if ((schema != null && !schema.equals(schemaCatalog.schema())) || !schemaCatalog.hasTable(name)) {
+                throw new QueryExecutionException("Query references a table that does not exist: " + wholeName);
+            }
+            tables.add(name);
+        }
+        return tables;
+    }
+
+    private void checkColumns(ReferenceCollector references, Set<String> tables) {
+        Map<String, Set<String>> tablesByQualifier = new HashMap<>();
+        for (Table table : references.tables) {
+            String name = normalize(table.getName());
+            if (tables.contains(name)) {
+                tablesByQualifier.computeIfAbsent(name, qualifier -> new HashSet<>()).add(name);
+                if (table.getAlias() != null) {
+                    tablesByQualifier.computeIfAbsent(normalize(table.getAlias().getName()), qualifier -> new HashSet<>())
+                            .add(name);
+                }
+            }
+        }
+
+        for (Column column : references.columns) {
+            String name = normalize(column.getColumnName());
+            Table qualifier = column.getTable();
+            Set<String> qualifiedTables = qualifier == null || qualifier.getName() == null
+                    ? null
+                    : tablesByQualifier.get(normalize(qualifier.getName()));
+
+            boolean known;
+            if (qualifiedTables != null) {
+                known = qualifiedTables.stream().anyMatch(table -> schemaCatalog.columns(table).contains(name));
+            } else {
+                // Unqualified, or qualified by a subquery or CTE: any column the query can see
+                known = PSEUDO_COLUMNS.contains(name)
+                        || references.derivedNames.contains(name)
+                        || tables.stream().anyMatch(table -> schemaCatalog.columns(table).contains(name));
+            }
+            if (!known) {
+                throw new QueryExecutionException("Column '" + name + "' does not exist in " + (qualifiedTables != null
+                        ? String.join(", ", qualifiedTables)
+                        : "the referenced tables " + new TreeSet<>(tables)));
+            }
+        }
+    }
+
+    private static void checkFunction(String functionName) {
+        if (functionName == null) {
+            return;
+        }
+        String name = normalize(functionName.substring(functionName.lastIndexOf('.') + 1));
+        if (DENIED_FUNCTIONS.contains(name) || DENIED_FUNCTION_PATTERN.matcher(name).matches()) {
+            throw new QueryExecutionException("Function not allowed in queries: " + name);
+        }
+    }
+
+    private static String normalize(String name) {
+        if (name == null) {
+            return null;
+        }
+        if (name.length() > 1 && name.startsWith("\"") && name.endsWith("\"")) {
+            name = name.substring(1, name.length() - 1);
+        }
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Walks the whole tree once, recording table and column references, names introduced
+     * by the query itself (select aliases, subquery and function aliases) and the shape
+     * the query type is derived from. Functions are checked as they are found.
+     */
+    private static final class ReferenceCollector extends TablesNamesFinder {
+
+        private final List<Table> tables = new ArrayList<>();
+        private final List<Column> columns = new ArrayList<>();
+        private final Set<String> derivedNames = new HashSet<>();
+
+        private boolean hasGroupBy;
+        private boolean hasOrderBy;
+        private boolean hasJoin;
+
+        @Override
+        public void visit(Table table) {
+            tables.add(table);
+            super.visit(table);
+        }
+
+        @Override
+        public void visit(Column column) {
+            columns.add(column);
+        }
+
+        @Override
+        public void visit(Function function) {
+            checkFunction(function.getName());
+            super.visit(function);
+        }
+
+        @Override
+        public void visit(AnalyticExpression analytic) {
+            checkFunction(analytic.getName());
+            super.visit(analytic);
+        }
+
+        @Override
+        public void visit(TableFunction tableFunction) {
+            addDerived(tableFunction.getAlias());
+            visit(tableFunction.getFunction());
+        }
+
+        @Override
+        public void visit(ParenthesedSelect select) {
+            addDerived(select.getAlias());
+            super.visit(select);
+        }
+
+        @Override
+        public void visit(PlainSelect plainSelect) {
+            if (plainSelect.getIntoTables() != null) {
+                throw new QueryExecutionException("Only SELECT queries are allowed");
+            }
+            super.visit(plainSelect);
+
+            for (SelectItem<?> item : plainSelect.getSelectItems()) {
+                addDerived(item.getAlias());
+            }
+            // Not every version of the finder descends into these clauses
+            if (plainSelect.getGroupBy() != null) {
+                hasGroupBy = true;
+                plainSelect.getGroupBy().getGroupByExpressionList().accept(this);
+            }
+            visitOrderBy(plainSelect.getOrderByElements());
+            if (plainSelect.getLimit() != null && plainSelect.getLimit().getRowCount() != null) {
+                plainSelect.getLimit().getRowCount().accept(this);
+            }
+            if (plainSelect.getOffset() != null && plainSelect.getOffset().getOffset() != null) {
+                plainSelect.getOffset().getOffset().accept(this);
+            }
+            hasJoin |= plainSelect.getJoins() != null && !plainSelect.getJoins().isEmpty();
+        }
+
+        @Override
+        public void visit(SetOperationList setOperationList) {
+            super.visit(setOperationList);
+            visitOrderBy(setOperationList.getOrderByElements());
+        }
+
+        private void visitOrderBy(List<OrderByElement> orderByElements) {
+            if (orderByElements != null && !orderByElements.isEmpty()) {
+                hasOrderBy = true;
+                orderByElements.forEach(element -> element.getExpression().accept(this));
+            }
+        }
+
+        private void addDerived(Alias alias) {
+            if (alias == null) {
+                return;
+            }
+            derivedNames.add(normalize(alias.getName()));
+            if (alias.getAliasColumns() != null) {
+                alias.getAliasColumns().forEach(aliasColumn -> derivedNames.add(normalize(aliasColumn.name)));
+            }
+        }
+
+        String queryType() {
+            if (hasGroupBy) {
+                return "AGGREGATION";
+            } else if (hasOrderBy) {
+                return "SORTED_LIST";
+            } else if (hasJoin) {
+                return "RELATIONSHIP";
+            } else {
+                return "SIMPLE_SELECT";
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.bi.assistant.service;
+
+import com.bi.assistant.config.AssistantProperties;
+import com.bi.assistant.exception.QueryTimeoutException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * Writes query results as NDJSON straight from a forward-only cursor, so memory use
+ * stays constant regardless of row count. The stream is one {@code columns} line built
+ * from {@link ResultSetMetaData}, one {@code row} line per row (values only, in column
+ * order) and a closing {@code end} line, or an {@code error} line if the query fails
+ * part-way through.
+ * <p>
+ * Each fetch is bound by the statement timeout; the stream as a whole is bound by the
+ * async request timeout, at which point the caller cancels it through its
+ * {@link QueryCancellation}.
+ */
+@Component
+@Slf4j
+public class StreamingQueryExecutor {
+
+    private final QueryExecutor queryExecutor;
+    private final ObjectMapper objectMapper;
+    private final int fetchSize;
+
+    @Autowired
+    public StreamingQueryExecutor(QueryExecutor queryExecutor, ObjectMapper objectMapper,
+                                  AssistantProperties properties) {
+        this.queryExecutor = queryExecutor;
+        this.objectMapper = objectMapper;
+        this.fetchSize = properties.getStreaming().getFetchSize();
+    }
+
+    /**
+     * Streams the rows of an already validated SQL query to {@code out} and returns the row count.
+     */
+    public long stream(String sql, OutputStream out, QueryCancellation cancellation) throws IOException {
+        long startTime = System.currentTimeMillis();
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+        generator.setRootValueSeparator(null);
+
+        try {
+            // The executor's read-only transaction is what lets PostgreSQL use a cursor here
+            Long rowCount = queryExecutor.query(sql, fetchSize, queryExecutor.statementTimeout(), cancellation,
+                    resultSet -> {
+                        try {
+                            return writeRows(sql, resultSet, generator);
+                        } catch (IOException e) {
+                            // Client went away; abandon the cursor rather than reading the rest of it
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+
+            long count = rowCount != null ? rowCount : 0;
+            generator.writeStartObject();
+            generator.writeStringField("type", "end");
+            generator.writeNumberField("rowCount", count);
+            generator.writeNumberField("executionTimeMs", System.currentTimeMillis() - startTime);
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+            generator.flush();
+            return count;
+
+        } catch (UncheckedIOException e) {
+            log.info("Client disconnected while streaming results for query: {}", sql);
+            throw e.getCause();
+        } catch (RuntimeException e) {
+            log.error("Streaming query failed for query: {}", sql, e);
+            generator.writeStartObject();
+            generator.writeStringField("type", "error");
+            generator.writeStringField("message", (e instanceof QueryTimeoutException
+                    ? "Query timed out: " : "SQL execution failed: ") + e.getMessage());
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+            generator.flush();
+            return -1;
+        }
+    }
+
+    private long writeRows(String sql, ResultSet resultSet, JsonGenerator generator)
+            throws SQLException, IOException {
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        int columnCount = metaData.getColumnCount();
+
+        generator.writeStartObject();
+        generator.writeStringField("type", "columns");
+        generator.writeStringField("sql", sql);
+        generator.writeArrayFieldStart("columns");
+        for (int i = 1; i <= columnCount; i++) {
+            generator.writeStartObject();
+            generator.writeStringField("name", JdbcUtils.lookupColumnName(metaData, i));
+            generator.writeStringField("type", metaData.getColumnTypeName(i));
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+        generator.flush();
+
+        long rowCount = 0;
+        while (resultSet.next()) {
+            generator.writeStartObject();
+            generator.writeStringField("type", "row");
+            generator.writeArrayFieldStart("values");
+            for (int i = 1; i <= columnCount; i++) {
+                generator.writeObject(JdbcUtils.getResultSetValue(resultSet, i));
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+
+            // Flush once per fetched batch so the client sees rows as the cursor advances
+            if (++rowCount % fetchSize == 0) {
+                generator.flush();
+            }
+        }
+        return rowCount;
+    }
+}
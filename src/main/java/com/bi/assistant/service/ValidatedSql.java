@@ -0,0 +1,15 @@
+package com.bi.assistant.service;
+
+import net.sf.jsqlparser.statement.select.Select;
+
+import java.util.Set;
+
+/**
+ * SQL that passed {@link SqlValidator}, together with the tree it was parsed into, the
+ * tables it reads and its query type. It is cached per question, so later stages can
+ * work on the tree instead of re-parsing or pattern-matching the text.
+ * <p>
+ * The tree is shared between requests: treat it as read-only and copy it before rewriting.
+ */
+public record ValidatedSql(String sql, Select statement, Set<String> tables, String queryType) {
+}
@@ -38,6 +38,11 @@ CREATE TABLE sales (
     sales_person VARCHAR(255)
 );
 
+-- Describe what the column names don't; the schema catalog puts these comments in the prompt
+COMMENT ON COLUMN products.category IS 'Electronics, Appliances, Accessories or Furniture';
+COMMENT ON COLUMN customers.customer_segment IS 'Premium, Standard or Basic';
+COMMENT ON COLUMN sales.revenue IS 'Total amount of the sale';
+
 -- Insert sample customers
 INSERT INTO customers (customer_name, email, phone, address, city, country, customer_segment) VALUES
 ('Tech Solutions Inc', 'contact@techsolutions.com', '+1-555-0101', '123 Tech Street', 'San Francisco', 'USA', 'Premium'),
@@ -181,4 +186,37 @@ SELECT
 FROM customers c
 LEFT JOIN sales s ON c.id = s.customer_id
 GROUP BY c.id, c.customer_name, c.customer_segment, c.city, c.country
-ORDER BY total_spent DESC NULLS LAST;
\ No newline at end of file
+ORDER BY total_spent DESC NULLS LAST;
+
+-- Materialized rollups of sales, refreshed concurrently on a schedule; aggregate queries
+-- they can answer are routed to them instead of scanning sales
+CREATE MATERIALIZED VIEW sales_monthly_rollup AS
+SELECT
+    DATE_TRUNC('month', s.sale_date)::date as sale_month,
+    p.category,
+    s.region,
+    SUM(s.revenue) as revenue,
+    SUM(s.quantity) as quantity,
+    COUNT(*) as orders
+FROM sales s
+LEFT JOIN products p ON p.id = s.product_id
+GROUP BY 1, 2, 3;
+
+CREATE UNIQUE INDEX idx_sales_monthly_rollup ON sales_monthly_rollup(sale_month, category, region) NULLS NOT DISTINCT;
+
+CREATE MATERIALIZED VIEW sales_daily_rollup AS
+SELECT
+    s.sale_date as sale_day,
+    p.category,
+    s.region,
+    SUM(s.revenue) as revenue,
+    SUM(s.quantity) as quantity,
+    COUNT(*) as orders
+FROM sales s
+LEFT JOIN products p ON p.id = s.product_id
+GROUP BY 1, 2, 3;
+
+CREATE UNIQUE INDEX idx_sales_daily_rollup ON sales_daily_rollup(sale_day, category, region) NULLS NOT DISTINCT;
+
+COMMENT ON MATERIALIZED VIEW sales_monthly_rollup IS 'Sales per month, product category and region';
+COMMENT ON MATERIALIZED VIEW sales_daily_rollup IS 'Sales per day, product category and region';
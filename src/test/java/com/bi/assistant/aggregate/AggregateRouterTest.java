@@ -0,0 +1,103 @@
+package com.bi.assistant.aggregate;
+
+import com.bi.assistant.config.AggregateConfig;
+import com.bi.assistant.config.AssistantProperties;
+import com.bi.assistant.schema.DemoSchema;
+import com.bi.assistant.service.SqlValidator;
+import com.bi.assistant.service.ValidatedSql;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AggregateRouterTest {
+
+    private final SqlValidator sqlValidator = new SqlValidator(DemoSchema.catalog());
+    private final AssistantProperties properties = new AssistantProperties();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void shouldAnswerCategoryRevenueFromTheMonthlyRollup() {
+        ValidatedSql routed = freshRouter().route(sqlValidator.validate(
+                "SELECT p.category, SUM(s.revenue) AS total_revenue FROM sales s "
+                        + "JOIN products p ON s.product_id = p.id GROUP BY p.category ORDER BY total_revenue DESC"));
+
+        // The rollup LEFT JOINs products, so the inner join becomes a filter on its category
+        assertEquals("SELECT category, SUM(revenue) AS total_revenue FROM sales_monthly_rollup "
+                + "WHERE category IS NOT NULL GROUP BY category ORDER BY total_revenue DESC", routed.sql());
+        assertEquals(Set.of("sales_monthly_rollup"), routed.tables());
+        assertEquals(1.0, meterRegistry.get("bi.aggregates.queries").tag("view", "sales_monthly_rollup")
+                .counter().count());
+    }
+
+    @Test
+    void shouldMapCountsAveragesAndMonthAlignedDateFilters() {
+        ValidatedSql routed = freshRouter().route(sqlValidator.validate(
+                "SELECT EXTRACT(YEAR FROM sale_date) AS sale_year, COUNT(*) AS order_count, "
+                        + "AVG(revenue) AS avg_revenue FROM sales WHERE sale_date >= '2025-01-01' AND sale_date <= '2025-06-30' "
+                        + "GROUP BY EXTRACT(YEAR FROM sale_date)"));
+
+        assertEquals("SELECT EXTRACT(YEAR FROM sale_month) AS sale_year, SUM(orders) AS order_count, "
+                + "(SUM(revenue)::numeric / NULLIF(SUM(orders), 0)) AS avg_revenue FROM sales_monthly_rollup "
+                + "WHERE (sale_month >= '2025-01-01' AND sale_month <= '2025-06-01') "
+                + "GROUP BY EXTRACT(YEAR FROM sale_month)", routed.sql());
+    }
+
+    @Test
+    void shouldUseTheDailyRollupBelowMonthGranularity() {
+        ValidatedSql routed = freshRouter().route(sqlValidator.validate(
+                "SELECT region, SUM(quantity) AS units FROM sales WHERE sale_date >= '2025-08-15' "
+                        + "GROUP BY region LIMIT 10"));
+
+        assertEquals("SELECT region, SUM(quantity) AS units FROM sales_daily_rollup "
+                + "WHERE (sale_day >= '2025-08-15') GROUP BY region LIMIT 10", routed.sql());
+    }
+
+    @Test
+    void shouldLeaveQueriesTheRollupsCannotAnswer() {
+        AggregateRouter router = freshRouter();
+
+        for (String sql : List.of(
+                "SELECT sales_person, SUM(revenue) AS total FROM sales GROUP BY sales_person",
+                "SELECT c.customer_segment, SUM(s.revenue) AS total FROM sales s "
+                        + "JOIN customers c ON s.customer_id = c.id GROUP BY c.customer_segment",
+                "SELECT region, COUNT(DISTINCT customer_id) AS buyers FROM sales GROUP BY region",
+                "SELECT region, MAX(revenue) AS largest FROM sales GROUP BY region",
+                "SELECT region, SUM(revenue) AS total, RANK() OVER (ORDER BY SUM(revenue) DESC) AS position "
+                        + "FROM sales GROUP BY region",
+                "SELECT region, revenue FROM sales WHERE revenue > 100",
+                "SELECT region, SUM(revenue) AS total FROM sales "
+                        + "WHERE product_id IN (SELECT id FROM products WHERE price > 500) GROUP BY region")) {
+            ValidatedSql validatedSql = sqlValidator.validate(sql);
+            assertSame(validatedSql, router.route(validatedSql), sql);
+        }
+        assertEquals(7.0, meterRegistry.get("bi.aggregates.queries").tag("view", "none").counter().count());
+    }
+
+    @Test
+    void shouldNotUseRollupsThatAreStaleOrDisabled() {
+        ValidatedSql validatedSql =
+                sqlValidator.validate("SELECT region, SUM(revenue) AS total FROM sales GROUP BY region");
+
+        // Never refreshed
+        assertSame(validatedSql, router().route(validatedSql));
+
+        properties.getAggregates().setEnabled(false);
+        assertSame(validatedSql, freshRouter().route(validatedSql));
+    }
+
+    private AggregateRouter router() {
+        AggregateConfig config = new AggregateConfig();
+        return new AggregateRouter(List.of(config.salesMonthlyRollup(), config.salesDailyRollup()), sqlValidator,
+                DemoSchema.catalog(), properties, meterRegistry);
+    }
+
+    private AggregateRouter freshRouter() {
+        AggregateRouter router = router();
+        router.preAggregations().forEach(preAggregation -> router.markRefreshed(preAggregation.view()));
+        return router;
+    }
+}
@@ -0,0 +1,293 @@
+package com.bi.assistant.aggregate;
+
+import com.bi.assistant.config.AssistantProperties;
+import com.bi.assistant.dto.ColumnarResult;
+import com.bi.assistant.schema.DemoSchema;
+import com.bi.assistant.service.QueryExecutor;
+import com.bi.assistant.service.SqlValidator;
+import com.bi.assistant.service.ValidatedSql;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.quality.Strictness;
+import org.springframework.jdbc.core.ResultSetExtractor;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class IncrementalAggregateCacheTest {
+
+    private static final String REVENUE_BY_REGION = "SELECT s.region, SUM(s.revenue) AS total_revenue, "
+            + "COUNT(*) AS orders, AVG(s.revenue) AS avg_revenue, MAX(s.sale_date) AS last_sale FROM sales s "
+            + "GROUP BY s.region ORDER BY total_revenue DESC";
+    private static final List<String> REVENUE_COLUMNS =
+            List.of("region", "total_revenue", "orders", "avg_revenue", "incremental_count_3", "last_sale");
+    private static final int[] REVENUE_TYPES =
+            {Types.VARCHAR, Types.NUMERIC, Types.BIGINT, Types.NUMERIC, Types.BIGINT, Types.DATE};
+
+    @Mock
+    private QueryExecutor queryExecutor;
+
+    private final SqlValidator sqlValidator = new SqlValidator(DemoSchema.catalog());
+    private final AssistantProperties properties = new AssistantProperties();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<String> executed = new ArrayList<>();
+    private final Deque<Long> highWaterMarks = new ArrayDeque<>();
+    private final Deque<ResultSet> stateRows = new ArrayDeque<>();
+    private Runnable duringStateQuery = () -> { };
+
+    @Test
+    void shouldMergeOnlyRowsAboveTheHighWaterMark() throws SQLException {
+        stubExecutor();
+        highWaterMarks.addAll(List.of(100L, 102L, 102L));
+        stateRows.add(resultSet(REVENUE_COLUMNS, REVENUE_TYPES, List.of(
+                row("North", "1000.00", 10, "1000.00", 10, "2025-06-01"),
+                row("South", "500.00", 5, "500.00", 5, "2025-06-03"))));
+        stateRows.add(resultSet(REVENUE_COLUMNS, REVENUE_TYPES, List.of(
+                row("South", "700.00", 2, "700.00", 2, "2025-07-02"),
+                row("West", "50.00", 1, "50.00", 1, "2025-07-02"))));
+        IncrementalAggregateCache cache = createCache();
+        ValidatedSql query = sqlValidator.validate(REVENUE_BY_REGION);
+
+        cache.query(query, 100, Duration.ofSeconds(5));
+        ColumnarResult merged = cache.query(query, 100, Duration.ofSeconds(5));
+        ColumnarResult unchanged = cache.query(query, 100, Duration.ofSeconds(5));
+
+        // AVG is kept as SUM and COUNT; ordering is done on the merged state
+        List<String> stateQueries = executed.stream().filter(sql -> sql.contains("GROUP BY")).toList();
+        assertEquals(2, stateQueries.size());
+        assertTrue(stateQueries.get(0).contains("SUM(s.revenue) AS avg_revenue, COUNT(s.revenue) AS incremental_count_3"));
+        assertTrue(stateQueries.get(0).contains("WHERE s.id <= 100"));
+        assertTrue(stateQueries.get(1).contains("WHERE s.id > 100 AND s.id <= 102"));
+        assertFalse(stateQueries.get(1).contains("ORDER BY"));
+
+        assertArrayEquals(new String[]{"region", "total_revenue", "orders", "avg_revenue", "last_sale"},
+                merged.getColumnNames());
+        assertEquals(3, merged.getRowCount());
+        assertEquals("South", merged.value(0, 0));
+        // Sums of numeric columns stay exact
+        assertEquals(new BigDecimal("1200.00"), merged.value(0, 1));
+        assertEquals(7L, merged.value(0, 2));
+        assertEquals(new BigDecimal("171.4285714285714286"), merged.value(0, 3));
+        assertEquals(LocalDate.parse("2025-07-02"), merged.value(0, 4));
+        assertEquals("North", merged.value(1, 0));
+        assertEquals("West", merged.value(2, 0));
+        assertEquals(3, unchanged.getRowCount());
+        assertEquals(1.0, refreshes("full"));
+        assertEquals(1.0, refreshes("delta"));
+        assertEquals(1.0, refreshes("unchanged"));
+    }
+
+    @Test
+    void shouldAverageToWhatPostgresReturnsForTheDirectQuery() throws SQLException {
+        stubExecutor();
+        highWaterMarks.addAll(List.of(100L, 102L));
+        List<String> columns = List.of("region", "avg_quantity", "incremental_count_1");
+        int[] types = {Types.VARCHAR, Types.BIGINT, Types.BIGINT};
+        // Quantities 1 and 2, then another 2
+        stateRows.add(resultSet(columns, types, List.of(row("North", 3, 2))));
+        stateRows.add(resultSet(columns, types, List.of(row("North", 2, 1))));
+        IncrementalAggregateCache cache = createCache();
+        ValidatedSql query = sqlValidator.validate(
+                "SELECT s.region, AVG(s.quantity) AS avg_quantity FROM sales s GROUP BY s.region");
+
+        ColumnarResult full = cache.query(query, 100, Duration.ofSeconds(5));
+        ColumnarResult merged = cache.query(query, 100, Duration.ofSeconds(5));
+
+        // As returned by running the query directly: avg over (1, 2), then over (1, 2, 2)
+        assertEquals(new BigDecimal("1.5000000000000000"), full.value(0, 1));
+        assertEquals(new BigDecimal("1.6666666666666667"), merged.value(0, 1));
+        // Small and large averages keep 16 significant digits, as numeric division does
+        assertEquals(new BigDecimal("0.00333333333333333333"),
+                IncrementalAggregateCache.divide(new BigDecimal("0.01"), 3));
+        assertEquals(new BigDecimal("41152.260000000000"),
+                IncrementalAggregateCache.divide(new BigDecimal("123456.78"), 3));
+    }
+
+    @Test
+    void shouldApplyTheLimitAfterMerging() throws SQLException {
+        stubExecutor();
+        highWaterMarks.add(10L);
+        stateRows.add(resultSet(List.of("region", "total"), new int[]{Types.VARCHAR, Types.NUMERIC}, List.of(
+                row("North", "10.00"), row("South", "30.00"), row("West", "20.00"))));
+
+        ColumnarResult top = createCache().query(sqlValidator.validate(
+                "SELECT region, SUM(revenue) AS total FROM sales GROUP BY region ORDER BY 2 DESC LIMIT 2"),
+                1, Duration.ofSeconds(5));
+
+        assertEquals(1, top.getRowCount());
+        assertEquals("South", top.value(0, 0));
+        assertTrue(top.isTruncated());
+    }
+
+    @Test
+    void shouldRebuildWhenAnotherTableTheQueryReadsChanges() throws SQLException {
+        stubExecutor();
+        highWaterMarks.addAll(List.of(100L, 100L, 100L));
+        List<String> columns = List.of("category", "revenue");
+        int[] types = {Types.VARCHAR, Types.NUMERIC};
+        stateRows.add(resultSet(columns, types, List.of(row("Electronics", "900.00"))));
+        stateRows.add(resultSet(columns, types, List.of(row("Gadgets", "900.00"))));
+        IncrementalAggregateCache cache = createCache();
+        ValidatedSql query = sqlValidator.validate("SELECT p.category, SUM(s.revenue) AS revenue FROM sales s "
+                + "JOIN products p ON s.product_id = p.id GROUP BY p.category");
+
+        cache.query(query, 100, Duration.ofSeconds(5));
+        // New sales rows are what the high-water mark is for
+        cache.invalidateTables(Set.of("sales"));
+        cache.query(query, 100, Duration.ofSeconds(5));
+        cache.invalidateTables(Set.of("products"));
+        ColumnarResult rebuilt = cache.query(query, 100, Duration.ofSeconds(5));
+
+        assertEquals("Gadgets", rebuilt.value(0, 0));
+        assertEquals(2.0, refreshes("full"));
+        assertEquals(1.0, refreshes("unchanged"));
+    }
+
+    @Test
+    void shouldKeepAStateBuiltWhileNewSalesRowsArrive() throws SQLException {
+        stubExecutor();
+        highWaterMarks.addAll(List.of(100L, 100L));
+        stateRows.add(resultSet(List.of("region", "total"), new int[]{Types.VARCHAR, Types.NUMERIC},
+                List.of(row("North", "10.00"))));
+        IncrementalAggregateCache cache = createCache();
+        ValidatedSql query = sqlValidator.validate("SELECT region, SUM(revenue) AS total FROM sales GROUP BY region");
+        // The change poll reports inserts while the full build runs
+        duringStateQuery = () -> cache.invalidateTables(Set.of("sales"));
+
+        cache.query(query, 100, Duration.ofSeconds(5));
+        cache.query(query, 100, Duration.ofSeconds(5));
+
+        assertEquals(1.0, refreshes("full"));
+        assertEquals(1.0, refreshes("unchanged"));
+    }
+
+    @Test
+    void shouldNotKeepAStateBuiltWhileAJoinedTableChanged() throws SQLException {
+        stubExecutor();
+        highWaterMarks.addAll(List.of(100L, 100L));
+        List<String> columns = List.of("category", "revenue");
+        int[] types = {Types.VARCHAR, Types.NUMERIC};
+        stateRows.add(resultSet(columns, types, List.of(row("Electronics", "900.00"))));
+        stateRows.add(resultSet(columns, types, List.of(row("Gadgets", "900.00"))));
+        IncrementalAggregateCache cache = createCache();
+        ValidatedSql query = sqlValidator.validate("SELECT p.category, SUM(s.revenue) AS revenue FROM sales s "
+                + "JOIN products p ON s.product_id = p.id GROUP BY p.category");
+        duringStateQuery = () -> cache.invalidateTables(Set.of("products"));
+
+        cache.query(query, 100, Duration.ofSeconds(5));
+        duringStateQuery = () -> { };
+        ColumnarResult rebuilt = cache.query(query, 100, Duration.ofSeconds(5));
+
+        assertEquals("Gadgets", rebuilt.value(0, 0));
+        assertEquals(2.0, refreshes("full"));
+    }
+
+    @Test
+    void shouldLeaveQueriesThatDoNotDecompose() {
+        IncrementalAggregateCache cache = createCache();
+
+        for (String sql : List.of(
+                "SELECT region, COUNT(DISTINCT customer_id) FROM sales GROUP BY region",
+                "SELECT region, SUM(revenue) FROM sales GROUP BY region HAVING SUM(revenue) > 1000",
+                "SELECT SUM(revenue) FROM sales GROUP BY region",
+                "SELECT region, revenue FROM sales",
+                "SELECT city, COUNT(*) FROM customers GROUP BY city",
+                "SELECT c.city, COUNT(*) FROM customers c LEFT JOIN sales s ON s.customer_id = c.id GROUP BY c.city",
+                "SELECT region, SUM(revenue) FROM sales WHERE product_id IN (SELECT id FROM products) GROUP BY region")) {
+            assertNull(cache.query(sqlValidator.validate(sql), 100, Duration.ofSeconds(5)), sql);
+        }
+        verifyNoInteractions(queryExecutor);
+    }
+
+    @Test
+    void shouldLeaveRollingWindows() {
+        IncrementalAggregateCache cache = createCache();
+
+        // Rows leave these windows as time passes, and would stay in a merged state
+        for (String sql : List.of(
+                "SELECT region, SUM(revenue) FROM sales WHERE sale_date = CURRENT_DATE GROUP BY region",
+                "SELECT region, SUM(revenue) FROM sales WHERE sale_date >= CURRENT_DATE - 30 GROUP BY region",
+                "SELECT region, SUM(revenue) FROM sales WHERE sale_date > now() - INTERVAL '7 days' GROUP BY region",
+                "SELECT region, COUNT(*) FROM sales WHERE sale_date >= LOCALTIMESTAMP - INTERVAL '1 hour' "
+                        + "GROUP BY region",
+                "SELECT region, COUNT(*) FROM sales WHERE age(sale_date) < INTERVAL '1 year' GROUP BY region")) {
+            assertNull(cache.query(sqlValidator.validate(sql), 100, Duration.ofSeconds(5)), sql);
+        }
+        verifyNoInteractions(queryExecutor);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void stubExecutor() {
+        when(queryExecutor.query(anyString(), any(Duration.class), any(ResultSetExtractor.class)))
+                .thenAnswer(invocation -> {
+                    String sql = invocation.getArgument(0);
+                    executed.add(sql);
+                    if (sql.startsWith("SELECT coalesce(max(")) {
+                        return highWaterMarks.pop();
+                    }
+                    duringStateQuery.run();
+                    return ((ResultSetExtractor<?>) invocation.getArgument(2)).extractData(stateRows.pop());
+                });
+    }
+
+    private IncrementalAggregateCache createCache() {
+        return new IncrementalAggregateCache(queryExecutor, properties, meterRegistry);
+    }
+
+    private double refreshes(String refresh) {
+        return meterRegistry.counter("bi.aggregates.incremental", "refresh", refresh).count();
+    }
+
+    /**
+     * Text is a string, numbers in quotes are numerics, other numbers bigints, and dates dates.
+     */
+    private static Object[] row(Object... values) {
+        Object[] row = new Object[values.length];
+        for (int i = 0; i < values.length; i++) {
+            Object value = values[i];
+            if (value instanceof Integer count) {
+                row[i] = count.longValue();
+            } else if (value instanceof String text && text.matches("\\d+\\.\\d+")) {
+                row[i] = new BigDecimal(text);
+            } else if (value instanceof String text && text.matches("\\d{4}-\\d{2}-\\d{2}")) {
+                row[i] = LocalDate.parse(text);
+            } else {
+                row[i] = value;
+            }
+        }
+        return row;
+    }
+
+    private static ResultSet resultSet(List<String> columns, int[] types, List<Object[]> rows) throws SQLException {
+        ResultSetMetaData metaData = mock(ResultSetMetaData.class, withSettings().strictness(Strictness.LENIENT));
+        when(metaData.getColumnCount()).thenReturn(columns.size());
+        when(metaData.getColumnLabel(anyInt())).thenAnswer(invocation -> columns.get((int) invocation.getArgument(0) - 1));
+        when(metaData.getColumnType(anyInt())).thenAnswer(invocation -> types[(int) invocation.getArgument(0) - 1]);
+
+        ResultSet resultSet = mock(ResultSet.class, withSettings().strictness(Strictness.LENIENT));
+        int[] current = {-1};
+        when(resultSet.getMetaData()).thenReturn(metaData);
+        when(resultSet.next()).thenAnswer(invocation -> ++current[0] < rows.size());
+        when(resultSet.getObject(anyInt()))
+                .thenAnswer(invocation -> rows.get(current[0])[(int) invocation.getArgument(0) - 1]);
+        return resultSet;
+    }
+}
@@ -0,0 +1,44 @@
+package com.bi.assistant.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HashingQuestionEmbedderTest {
+
+    private final HashingQuestionEmbedder embedder = new HashingQuestionEmbedder(256);
+
+    @Test
+    void shouldEmbedToUnitLength() {
+        float[] vector = embedder.embed("revenue by product category");
+
+        assertEquals(256, vector.length);
+        assertEquals(1.0, dot(vector, vector), 1e-5);
+        assertArrayEquals(vector, embedder.embed("revenue by product category"));
+    }
+
+    @Test
+    void shouldIgnoreRequestVerbsFillerWordsAndPlurals() {
+        float[] customers = embedder.embed("list all customers");
+
+        assertArrayEquals(customers, embedder.embed("show me the customers"));
+        assertArrayEquals(customers, embedder.embed("display customer"));
+    }
+
+    @Test
+    void shouldKeepWordOrderThroughBigrams() {
+        float[] byRegion = embedder.embed("revenue by region");
+        float[] byRevenue = embedder.embed("region by revenue");
+
+        double similarity = dot(byRegion, byRevenue);
+        assertTrue(similarity > 0.5 && similarity < 0.92, "similarity " + similarity);
+    }
+
+    private static double dot(float[] left, float[] right) {
+        double sum = 0;
+        for (int i = 0; i < left.length; i++) {
+            sum += left[i] * right[i];
+        }
+        return sum;
+    }
+}
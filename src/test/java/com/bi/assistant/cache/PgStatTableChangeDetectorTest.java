@@ -0,0 +1,103 @@
+package com.bi.assistant.cache;
+
+import com.bi.assistant.concurrency.ConcurrencyLimits;
+import com.bi.assistant.config.AssistantProperties;
+import com.bi.assistant.schema.DemoSchema;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PgStatTableChangeDetectorTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void shouldReportTablesWhoseCountersMovedAndTheViewsReadingThem() throws SQLException {
+        stubCounters(
+                List.of(counters("sales", 1_000, 1_000), counters("products", 10, 10)),
+                List.of(counters("sales", 1_001, 1_001), counters("products", 10, 10)));
+        ResultSet salesView = mock(ResultSet.class);
+        when(salesView.getString("source")).thenReturn("sales");
+        when(salesView.getString("dependent")).thenReturn("monthly_revenue");
+        ResultSet viewOfView = mock(ResultSet.class);
+        when(viewOfView.getString("source")).thenReturn("monthly_revenue");
+        when(viewOfView.getString("dependent")).thenReturn("revenue_summary");
+        stubViewDependencies(List.of(salesView, viewOfView));
+
+        PgStatTableChangeDetector detector = createDetector();
+
+        assertEquals(Set.of(), detector.changedTables());
+        assertEquals(Set.of("sales", "monthly_revenue", "revenue_summary"), detector.changedTables());
+    }
+
+    @Test
+    void shouldReportTruncatedTables() throws SQLException {
+        stubCounters(
+                List.of(counters("sales", 1_000, 1_000)),
+                List.of(counters("sales", 1_000, 0)));
+        stubViewDependencies(List.of());
+
+        PgStatTableChangeDetector detector = createDetector();
+        detector.changedTables();
+
+        assertEquals(Set.of("sales"), detector.changedTables());
+    }
+
+    @Test
+    void shouldSkipViewLookupWhenNothingChanged() throws SQLException {
+        stubCounters(List.of(counters("products", 10, 10)), List.of(counters("products", 10, 10)));
+
+        PgStatTableChangeDetector detector = createDetector();
+        detector.changedTables();
+
+        assertEquals(Set.of(), detector.changedTables());
+        verify(jdbcTemplate, never()).query(contains("pg_depend"), any(RowCallbackHandler.class), anyString());
+    }
+
+    private PgStatTableChangeDetector createDetector() {
+        AssistantProperties properties = new AssistantProperties();
+        return new PgStatTableChangeDetector(jdbcTemplate, DemoSchema.catalog(),
+                new ConcurrencyLimits(properties, new SimpleMeterRegistry()));
+    }
+
+    private void stubCounters(List<ResultSet> firstPoll, List<ResultSet> secondPoll) {
+        doAnswer(invocation -> replay(invocation.getArgument(1), firstPoll))
+                .doAnswer(invocation -> replay(invocation.getArgument(1), secondPoll))
+                .when(jdbcTemplate).query(contains("pg_stat_user_tables"), any(RowCallbackHandler.class), anyString());
+    }
+
+    private void stubViewDependencies(List<ResultSet> rows) {
+        doAnswer(invocation -> replay(invocation.getArgument(1), rows))
+                .when(jdbcTemplate).query(contains("pg_depend"), any(RowCallbackHandler.class), anyString());
+    }
+
+    private static Object replay(RowCallbackHandler handler, List<ResultSet> rows) throws SQLException {
+        for (ResultSet row : rows) {
+            handler.processRow(row);
+        }
+        return null;
+    }
+
+    private static ResultSet counters(String table, long changes, long liveRows) throws SQLException {
+        ResultSet row = mock(ResultSet.class);
+        when(row.getString("relname")).thenReturn(table);
+        when(row.getLong("changes")).thenReturn(changes);
+        when(row.getLong("n_live_tup")).thenReturn(liveRows);
+        return row;
+    }
+}
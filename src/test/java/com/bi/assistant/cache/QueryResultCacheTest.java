@@ -0,0 +1,86 @@
+package com.bi.assistant.cache;
+
+import com.bi.assistant.config.AssistantProperties;
+import com.bi.assistant.dto.ColumnarResult;
+import com.bi.assistant.service.ColumnarResultBuilder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryResultCacheTest {
+
+    private static final String PRODUCTS_SQL = "SELECT product_name FROM products LIMIT 1001";
+    private static final String REVENUE_SQL = "SELECT p.product_name, SUM(s.revenue) FROM products p "
+            + "JOIN sales s ON p.id = s.product_id GROUP BY p.product_name LIMIT 1001";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final QueryResultCache cache = new QueryResultCache(new AssistantProperties(), meterRegistry);
+
+    @Test
+    void shouldKeepResultsOfUnchangedTablesWhileAnotherTableChanges() {
+        ColumnarResult products = result("Laptop Pro");
+        cache.put(PRODUCTS_SQL, Set.of("products"), cache.stamp(), products);
+        cache.put(REVENUE_SQL, Set.of("products", "sales"), cache.stamp(), result("Gaming Laptop"));
+
+        assertEquals(1, cache.invalidateTables(Set.of("sales")));
+
+        assertSame(products, cache.get(PRODUCTS_SQL));
+        assertNull(cache.get(REVENUE_SQL));
+        assertEquals(1.0, meterRegistry.counter("bi.cache.results.invalidated").count());
+    }
+
+    @Test
+    void shouldNotCacheResultReadWhileOneOfItsTablesChanged() {
+        long stamp = cache.stamp();
+        cache.invalidateTables(Set.of("sales"));
+
+        cache.put(REVENUE_SQL, Set.of("products", "sales"), stamp, result("Gaming Laptop"));
+        cache.put(PRODUCTS_SQL, Set.of("products"), stamp, result("Laptop Pro"));
+
+        assertNull(cache.get(REVENUE_SQL));
+        assertNotNull(cache.get(PRODUCTS_SQL));
+    }
+
+    @Test
+    void shouldCacheAgainOnceReadAfterTheChange() {
+        cache.put(REVENUE_SQL, Set.of("products", "sales"), cache.stamp(), result("Gaming Laptop"));
+        cache.invalidateTables(Set.of("sales"));
+
+        ColumnarResult fresh = result("Laptop Pro");
+        cache.put(REVENUE_SQL, Set.of("products", "sales"), cache.stamp(), fresh);
+
+        assertSame(fresh, cache.get(REVENUE_SQL));
+        assertEquals(1, cache.invalidateTables(Set.of("products")));
+    }
+
+    @Test
+    void shouldUnindexInvalidatedResultsFromEveryTableTheyRead() {
+        cache.put(REVENUE_SQL, Set.of("products", "sales"), cache.stamp(), result("Gaming Laptop"));
+        assertEquals(2, cache.indexSize());
+
+        assertEquals(1, cache.invalidateTables(Set.of("sales")));
+
+        assertEquals(0, cache.indexSize());
+        // Nothing left under products to drop
+        assertEquals(0, cache.invalidateTables(Set.of("products")));
+    }
+
+    @Test
+    void shouldUnindexResultsDroppedForAChangeDuringPut() {
+        long stamp = cache.stamp();
+        cache.invalidateTables(Set.of("sales"));
+
+        cache.put(REVENUE_SQL, Set.of("products", "sales"), stamp, result("Gaming Laptop"));
+
+        assertEquals(0, cache.indexSize());
+    }
+
+    private static ColumnarResult result(String productName) {
+        return ColumnarResultBuilder.fromRows(List.of(Map.of("product_name", productName)));
+    }
+}
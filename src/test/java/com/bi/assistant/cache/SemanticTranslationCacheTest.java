@@ -0,0 +1,76 @@
+package com.bi.assistant.cache;
+
+import com.bi.assistant.config.AssistantProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SemanticTranslationCacheTest {
+
+    private static final String CUSTOMERS_SQL = "SELECT * FROM customers";
+
+    private final AssistantProperties properties = new AssistantProperties();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final HashingQuestionEmbedder hashing = new HashingQuestionEmbedder(256);
+
+    @Test
+    void shouldReuseTheSqlOfAParaphrase() {
+        SemanticTranslationCache cache = new SemanticTranslationCache(hashing, properties, meterRegistry);
+        cache.put("List all customers", CUSTOMERS_SQL);
+
+        assertEquals(CUSTOMERS_SQL, cache.lookup("Show all customers"));
+        assertEquals(CUSTOMERS_SQL, cache.lookup("display customers"));
+        assertEquals(2.0, meterRegistry.get("bi.semantic.cache.lookups").tag("result", "hit").counter().count());
+    }
+
+    @Test
+    void shouldMissBelowTheSimilarityThreshold() {
+        SemanticTranslationCache cache = new SemanticTranslationCache(hashing, properties, meterRegistry);
+        cache.put("Revenue by region", "SELECT region, SUM(revenue) FROM sales GROUP BY region");
+
+        assertNull(cache.lookup("Revenue by product category"));
+        assertNull(cache.lookup("Average order value by customer segment"));
+        assertEquals(2.0, meterRegistry.get("bi.semantic.cache.lookups").tag("result", "miss").counter().count());
+
+        // The same question, with a bar it can't clear
+        properties.getSemanticCache().setSimilarityThreshold(1.01);
+        assertNull(cache.lookup("Revenue by region"));
+    }
+
+    @Test
+    void shouldNotShareSqlBetweenQuestionsWithDifferentNumbersOrEntities() {
+        // Like a real model, embeds "top 5" and "top 10" (nearly) alike
+        QuestionEmbedder ignoringNumbers = question -> hashing.embed(question.replaceAll("\\d+", ""));
+        SemanticTranslationCache cache = new SemanticTranslationCache(ignoringNumbers, properties, meterRegistry);
+        cache.put("Top 5 products by revenue", "SELECT product_name FROM products LIMIT 5");
+        cache.put("Revenue in Electronics", "SELECT SUM(revenue) FROM sales WHERE category = 'Electronics'");
+
+        assertNull(cache.lookup("Top 10 products by revenue"));
+        assertEquals("SELECT product_name FROM products LIMIT 5", cache.lookup("Show top 5 products by revenue"));
+        assertNull(cache.lookup("Revenue in Furniture"));
+    }
+
+    @Test
+    void shouldForgetTheOldestTranslationWhenFull() {
+        properties.getSemanticCache().setMaxEntries(2);
+        SemanticTranslationCache cache = new SemanticTranslationCache(hashing, properties, meterRegistry);
+        cache.put("List all customers", CUSTOMERS_SQL);
+        cache.put("List all products", "SELECT * FROM products");
+        cache.put("List all sales", "SELECT * FROM sales");
+
+        assertNull(cache.lookup("Show all customers"));
+        assertEquals("SELECT * FROM products", cache.lookup("Show all products"));
+        assertEquals("SELECT * FROM sales", cache.lookup("Show all sales"));
+    }
+
+    @Test
+    void shouldMissWhenTheEmbedderFails() {
+        SemanticTranslationCache cache = new SemanticTranslationCache(question -> {
+            throw new IllegalStateException("Embedding model unavailable");
+        }, properties, meterRegistry);
+
+        cache.put("List all customers", CUSTOMERS_SQL);
+        assertNull(cache.lookup("List all customers"));
+    }
+}
@@ -0,0 +1,88 @@
+package com.bi.assistant.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VectorIndexTest {
+
+    @Test
+    void shouldFindTheMostSimilarEntry() {
+        VectorIndex<String> index = new VectorIndex<>(4, 10, 4);
+        index.add(unit(0), "x");
+        index.add(unit(1), "y");
+        index.add(normalize(new float[]{0.9f, 0.1f, 0f, 0f}), "mostly x");
+
+        VectorIndex.Match<String> match = index.nearest(unit(1));
+
+        assertEquals("y", match.payload());
+        assertEquals(1.0f, match.similarity(), 1e-6f);
+        assertNull(new VectorIndex<String>(4, 10, 4).nearest(unit(0)));
+    }
+
+    @Test
+    void shouldOverwriteTheOldestEntryWhenFull() {
+        VectorIndex<String> index = new VectorIndex<>(4, 3, 3);
+        for (int i = 0; i < 4; i++) {
+            index.add(unit(i), "entry " + i);
+        }
+
+        assertEquals(3, index.size());
+        // Entry 0 is gone; what is left is orthogonal to it
+        VectorIndex.Match<String> match = index.nearest(unit(0));
+        assertNotEquals("entry 0", match.payload());
+        assertEquals(0.0f, match.similarity(), 1e-6f);
+        assertEquals("entry 3", index.nearest(unit(3)).payload());
+    }
+
+    @Test
+    void shouldFindEntriesPastTheFirstChunk() {
+        SplittableRandom random = new SplittableRandom(42);
+        VectorIndex<Integer> index = new VectorIndex<>(32, 5000, 64);
+        float[][] vectors = new float[2100][];
+        for (int i = 0; i < vectors.length; i++) {
+            vectors[i] = randomUnit(random, 32);
+            index.add(vectors[i], i);
+        }
+
+        assertEquals(2100, index.size());
+        for (int i : new int[]{0, 1023, 1024, 2099}) {
+            assertEquals(i, index.nearest(vectors[i]).payload());
+        }
+    }
+
+    @Test
+    void shouldRejectWrongDimensionsAndSizesThatOverflow() {
+        VectorIndex<String> index = new VectorIndex<>(4, 10, 4);
+
+        assertThrows(IllegalArgumentException.class, () -> index.add(new float[3], "short"));
+        assertThrows(ArithmeticException.class, () -> new VectorIndex<String>(Integer.MAX_VALUE, 10_000, 4));
+    }
+
+    private static float[] unit(int axis) {
+        float[] vector = new float[4];
+        vector[axis] = 1f;
+        return vector;
+    }
+
+    private static float[] randomUnit(SplittableRandom random, int dimensions) {
+        float[] vector = new float[dimensions];
+        for (int d = 0; d < dimensions; d++) {
+            vector[d] = (float) random.nextGaussian();
+        }
+        return normalize(vector);
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        for (int d = 0; d < vector.length; d++) {
+            vector[d] /= (float) Math.sqrt(norm);
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,110 @@
+package com.bi.assistant.concurrency;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    private static final int CALLERS = 20;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final SingleFlight<String, String> flight = new SingleFlight<>("test", meterRegistry);
+
+    @Test
+    void concurrentCallersShareOneExecution() throws Exception {
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<Future<String>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < CALLERS; i++) {
+                results.add(executor.submit(() -> flight.execute("top products", () -> {
+                    executions.incrementAndGet();
+                    await(release);
+                    return "SELECT 1";
+                })));
+            }
+            // Hold the leader until everyone else has joined its flight
+            waitForFollowers(CALLERS - 1);
+            release.countDown();
+
+            for (Future<String> result : results) {
+                assertEquals("SELECT 1", result.get(10, TimeUnit.SECONDS));
+            }
+        }
+
+        assertEquals(1, executions.get());
+        assertEquals((CALLERS - 1) / (double) CALLERS, flight.coalescingRatio(), 1e-9);
+        assertEquals(flight.coalescingRatio(),
+                meterRegistry.get("bi.singleflight.coalescing.ratio").tag("flight", "test").gauge().value(), 1e-9);
+    }
+
+    @Test
+    void followersSeeTheLeadersException() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<String> leader = executor.submit(() -> flight.execute("bad question", () -> {
+                await(release);
+                throw new IllegalStateException("LLM unavailable");
+            }));
+            waitForLeader();
+            Future<String> follower = executor.submit(() -> flight.execute("bad question", () -> "never run"));
+            waitForFollowers(1);
+            release.countDown();
+
+            for (Future<String> result : List.of(leader, follower)) {
+                Exception e = assertThrows(Exception.class, () -> result.get(10, TimeUnit.SECONDS));
+                assertInstanceOf(IllegalStateException.class, e.getCause());
+                assertEquals("LLM unavailable", e.getCause().getMessage());
+            }
+        }
+    }
+
+    @Test
+    void completedFlightsAreNotRemembered() {
+        AtomicInteger executions = new AtomicInteger();
+
+        flight.execute("revenue by region", () -> "SELECT " + executions.incrementAndGet());
+        String second = flight.execute("revenue by region", () -> "SELECT " + executions.incrementAndGet());
+
+        assertEquals("SELECT 2", second);
+        assertEquals(0, flight.coalescingRatio());
+    }
+
+    private void waitForLeader() throws InterruptedException {
+        waitFor("leader", 1);
+    }
+
+    private void waitForFollowers(int followers) throws InterruptedException {
+        waitFor("follower", followers);
+    }
+
+    private void waitFor(String role, int calls) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (meterRegistry.get("bi.singleflight.calls").tag("role", role).counter().count() < calls) {
+            assertTrue(System.nanoTime() < deadline, "Timed out waiting for " + calls + " " + role + " calls");
+            Thread.sleep(1);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
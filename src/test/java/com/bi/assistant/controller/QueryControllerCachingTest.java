@@ -0,0 +1,155 @@
+package com.bi.assistant.controller;
+
+import com.bi.assistant.aggregate.AggregateRouter;
+import com.bi.assistant.aggregate.IncrementalAggregateCache;
+import com.bi.assistant.cache.HashingQuestionEmbedder;
+import com.bi.assistant.cache.QueryResultCache;
+import com.bi.assistant.cache.SemanticTranslationCache;
+import com.bi.assistant.cache.SqlTranslationCache;
+import com.bi.assistant.concurrency.ConcurrencyLimits;
+import com.bi.assistant.config.AssistantProperties;
+import com.bi.assistant.fastpath.FastPathTranslator;
+import com.bi.assistant.schema.ColumnValueSampler;
+import com.bi.assistant.schema.DemoSchema;
+import com.bi.assistant.service.BatchQueryExecutor;
+import com.bi.assistant.service.ColumnarResultBuilder;
+import com.bi.assistant.service.QueryCostGuard;
+import com.bi.assistant.service.QueryEventStreamer;
+import com.bi.assistant.service.QueryExecutor;
+import com.bi.assistant.service.QueryService;
+import com.bi.assistant.service.RowLimiter;
+import com.bi.assistant.service.SqlPostProcessor;
+import com.bi.assistant.service.SqlPromptBuilder;
+import com.bi.assistant.service.SqlRepairer;
+import com.bi.assistant.service.SqlValidator;
+import com.bi.assistant.service.StreamingQueryExecutor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Counts LLM invocations across repeated identical questions on every entry point,
+ * using the real {@link QueryService} and caches behind the controller.
+ */
+class QueryControllerCachingTest {
+
+    private static final String QUESTION = "List all customers";
+
+    private ChatClient.CallResponseSpec callResponse;
+    private JdbcTemplate jdbcTemplate;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        ChatClient chatClient = mock(ChatClient.class, RETURNS_DEEP_STUBS);
+        ChatClient.Builder chatClientBuilder = mock(ChatClient.Builder.class);
+        when(chatClientBuilder.build()).thenReturn(chatClient);
+
+        callResponse = mock(ChatClient.CallResponseSpec.class);
+        when(chatClient.prompt(any(Prompt.class)).call()).thenReturn(callResponse);
+        when(callResponse.content()).thenReturn("SELECT * FROM customers;");
+
+        jdbcTemplate = mock(JdbcTemplate.class);
+        when(jdbcTemplate.query(any(PreparedStatementCreator.class), any(ResultSetExtractor.class)))
+                .thenReturn(ColumnarResultBuilder.fromRows(List.of(Map.of("customer_name", "Tech Solutions Inc"))));
+
+        AssistantProperties properties = new AssistantProperties();
+        // The fast path would answer the question without the LLM these tests count calls to
+        properties.getFastPath().setEnabled(false);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ConcurrencyLimits concurrencyLimits = new ConcurrencyLimits(properties, meterRegistry);
+        QueryExecutor queryExecutor = new QueryExecutor(jdbcTemplate, mock(PlatformTransactionManager.class),
+                new QueryCostGuard(jdbcTemplate, new ObjectMapper(), concurrencyLimits, properties, meterRegistry),
+                concurrencyLimits, properties, meterRegistry);
+        QueryService queryService = new QueryService(chatClientBuilder,
+                new SqlTranslationCache(properties, meterRegistry),
+                new QueryResultCache(properties, meterRegistry),
+                new SemanticTranslationCache(new HashingQuestionEmbedder(256), properties, meterRegistry),
+                new FastPathTranslator(DemoSchema.catalog(), ColumnValueSampler.NONE,
+                        new SqlValidator(DemoSchema.catalog()), properties, meterRegistry),
+                new SqlPostProcessor(),
+                new SqlValidator(DemoSchema.catalog()),
+                new SqlPromptBuilder(DemoSchema.catalog(), properties),
+                new AggregateRouter(List.of(), new SqlValidator(DemoSchema.catalog()), DemoSchema.catalog(), properties,
+                        meterRegistry),
+                new RowLimiter(properties),
+                queryExecutor,
+                new IncrementalAggregateCache(queryExecutor, properties, meterRegistry),
+                new SqlRepairer(chatClientBuilder, jdbcTemplate, new SqlPromptBuilder(DemoSchema.catalog(), properties),
+                        new SqlPostProcessor(), new SqlValidator(DemoSchema.catalog()), concurrencyLimits, properties,
+                        meterRegistry),
+                concurrencyLimits,
+                properties,
+                meterRegistry);
+
+        mockMvc = MockMvcBuilders.standaloneSetup(
+                new QueryController(queryService, mock(StreamingQueryExecutor.class), mock(QueryEventStreamer.class),
+                        mock(BatchQueryExecutor.class))).build();
+    }
+
+    @Test
+    void restEndpointCallsLlmOnceForRepeatedQuestion() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            mockMvc.perform(post("/api/query")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"query\": \"" + QUESTION + "\"}"))
+                    .andExpect(status().isOk());
+        }
+
+        verify(callResponse, times(1)).content();
+    }
+
+    @Test
+    void legacyEndpointCallsLlmOnceForRepeatedQuestion() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            mockMvc.perform(get("/query").param("q", QUESTION))
+                    .andExpect(status().isOk());
+        }
+
+        verify(callResponse, times(1)).content();
+    }
+
+    @Test
+    void webUiEndpointCallsLlmOnceForRepeatedQuestion() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            mockMvc.perform(post("/").param("query", QUESTION))
+                    .andExpect(status().isOk());
+        }
+
+        verify(callResponse, times(1)).content();
+    }
+
+    @Test
+    void entryPointsShareTranslations() throws Exception {
+        mockMvc.perform(post("/api/query")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"query\": \"" + QUESTION + "\"}"))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/query").param("q", QUESTION))
+                .andExpect(status().isOk());
+        mockMvc.perform(post("/").param("query", QUESTION))
+                .andExpect(status().isOk());
+
+        verify(callResponse, times(1)).content();
+        verify(jdbcTemplate, times(1)).query(any(PreparedStatementCreator.class), any(ResultSetExtractor.class));
+    }
+}
@@ -1,7 +1,11 @@
 package com.bi.assistant.controller;
 
+import com.bi.assistant.dto.BatchQueryRequest;
 import com.bi.assistant.dto.QueryRequest;
+import com.bi.assistant.service.BatchQueryExecutor;
+import com.bi.assistant.service.QueryEventStreamer;
 import com.bi.assistant.service.QueryService;
+import com.bi.assistant.service.StreamingQueryExecutor;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -10,6 +14,8 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.util.List;
+
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -23,6 +29,15 @@ class QueryControllerTest {
     @MockBean
     private QueryService queryService;
 
+    @MockBean
+    private StreamingQueryExecutor streamingQueryExecutor;
+
+    @MockBean
+    private QueryEventStreamer queryEventStreamer;
+
+    @MockBean
+    private BatchQueryExecutor batchQueryExecutor;
+
     @Autowired
     private ObjectMapper objectMapper;
 
@@ -55,4 +70,21 @@ class QueryControllerTest {
                 .content(objectMapper.writeValueAsString(request)))
                 .andExpect(status().isBadRequest());
     }
+
+    @Test
+    void shouldValidateEveryQueryInABatch() throws Exception {
+        QueryRequest valid = new QueryRequest();
+        valid.setQuery("Show me sales trends by region");
+        QueryRequest tooShort = new QueryRequest();
+        tooShort.setQuery("ab");
+
+        mockMvc.perform(post("/api/query/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(new BatchQueryRequest(List.of(valid, tooShort)))))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(post("/api/query/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(new BatchQueryRequest(List.of()))))
+                .andExpect(status().isBadRequest());
+    }
 }
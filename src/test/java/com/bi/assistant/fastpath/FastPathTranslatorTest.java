@@ -0,0 +1,136 @@
+package com.bi.assistant.fastpath;
+
+import com.bi.assistant.config.AssistantProperties;
+import com.bi.assistant.schema.ColumnValueSampler;
+import com.bi.assistant.schema.DemoSchema;
+import com.bi.assistant.service.SqlValidator;
+import com.bi.assistant.service.ValidatedSql;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FastPathTranslatorTest {
+
+    private static final ColumnValueSampler SAMPLER = table -> switch (table.name()) {
+        case "products" -> Map.of("category", List.of("Electronics", "Appliances", "Accessories", "Furniture"));
+        case "sales" -> Map.of("region", List.of("North", "South", "East", "West"));
+        case "customers" -> Map.of("customer_segment", List.of("Premium", "Standard", "Basic"),
+                "city", List.of("New York", "London"));
+        default -> Map.of();
+    };
+
+    private final AssistantProperties properties = new AssistantProperties();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void shouldFillTopNMetricDimensionAndTimeWindow() {
+        FastPathTranslator.Match match = translator().match("Show me the top 5 products by revenue last quarter");
+
+        assertEquals(FastPathTranslator.Intent.AGGREGATE, match.intent());
+        assertEquals(1.0, match.confidence());
+        // Last quarter as in the prompt's date context: the three months before this one
+        assertEquals("SELECT p.product_name, SUM(s.revenue) AS total_revenue FROM sales s "
+                + "JOIN products p ON s.product_id = p.id "
+                + "WHERE s.sale_date >= DATE_TRUNC('month', CURRENT_DATE) - INTERVAL '3 months' "
+                + "AND s.sale_date < DATE_TRUNC('month', CURRENT_DATE) "
+                + "GROUP BY p.product_name ORDER BY total_revenue DESC LIMIT 5", match.sql());
+    }
+
+    @Test
+    void shouldLeaveRelativeWindowsToTheDatabase() {
+        FastPathTranslator translator = translator();
+
+        // Cached SQL is reused for days; a literal date would keep answering for the day it was made
+        assertEquals("SELECT SUM(s.revenue) AS total_revenue FROM sales s "
+                + "WHERE s.sale_date >= DATE_TRUNC('month', CURRENT_DATE) "
+                + "AND s.sale_date < DATE_TRUNC('month', CURRENT_DATE) + INTERVAL '1 month'",
+                translator.match("Revenue this month").sql());
+        assertEquals("SELECT COUNT(*) AS total_orders FROM sales s "
+                + "WHERE s.sale_date >= CURRENT_DATE - 30 AND s.sale_date < CURRENT_DATE + 1",
+                translator.match("Number of orders in the last 30 days").sql());
+        assertEquals("SELECT SUM(s.revenue) AS total_revenue FROM sales s "
+                + "WHERE s.sale_date >= '2024-01-01' AND s.sale_date < '2025-01-01'",
+                translator.match("Revenue in 2024").sql());
+        for (String question : List.of("Revenue by region this year", "Orders by month last year",
+                "Revenue by category this quarter", "Revenue by region last month")) {
+            ValidatedSql validatedSql = translator.translate(question);
+            assertNotNull(validatedSql, question);
+            assertFalse(validatedSql.sql().matches(".*'\\d{4}-\\d{2}-\\d{2}'.*"), validatedSql.sql());
+        }
+    }
+
+    @Test
+    void shouldFilterOnSampledValues() {
+        FastPathTranslator.Match match =
+                translator().match("What are the best selling products in Electronics category?");
+
+        assertEquals("SELECT p.product_name, SUM(s.quantity) AS total_quantity FROM sales s "
+                + "JOIN products p ON s.product_id = p.id WHERE p.category = 'Electronics' "
+                + "GROUP BY p.product_name ORDER BY total_quantity DESC", match.sql());
+        assertEquals("SELECT * FROM products p WHERE p.category = 'Appliances'",
+                translator().match("Show appliances").sql());
+    }
+
+    @Test
+    void shouldAskForOneRowWhenTheQuestionIsSingular() {
+        assertEquals("SELECT s.sales_person, SUM(s.revenue) AS total_revenue FROM sales s "
+                        + "GROUP BY s.sales_person ORDER BY total_revenue DESC LIMIT 1",
+                translator().match("Which sales person has the highest revenue?").sql());
+        assertEquals("SELECT DATE_TRUNC('month', s.sale_date)::date AS month, SUM(s.revenue) AS total_revenue "
+                        + "FROM sales s GROUP BY DATE_TRUNC('month', s.sale_date)::date ORDER BY month",
+                translator().match("Monthly revenue trends").sql());
+    }
+
+    @Test
+    void shouldListOrdersRatherThanCountThem() {
+        FastPathTranslator translator = translator();
+
+        for (String question : List.of("Show all orders", "List all transactions", "Show all sales")) {
+            FastPathTranslator.Match match = translator.match(question);
+            assertEquals(FastPathTranslator.Intent.LIST, match.intent(), question);
+            assertEquals("SELECT * FROM sales s ORDER BY s.sale_date DESC", match.sql(), question);
+        }
+        assertEquals("SELECT COUNT(*) AS total_orders FROM sales s", translator.match("Number of orders").sql());
+        // A metric with no rows to list
+        assertNull(translator.match("List all revenue"));
+    }
+
+    @Test
+    void shouldLeaveUnderstoodPartsOfHarderQuestionsToTheLlm() {
+        FastPathTranslator translator = translator();
+
+        assertTrue(translator.match("Compare revenue by region").confidence() < 0.8);
+        assertTrue(translator.match("Show cheapest products").confidence() < 0.8);
+        assertTrue(translator.match("Show sales above $1000").confidence() < 0.8);
+        // Two dimensions, or a dimension without a metric, have no template
+        assertNull(translator.match("Show customers by segment"));
+        assertNull(translator.match("Show me top products"));
+        assertNull(translator.match("Revenue and orders by region last year in 2024"));
+        assertNull(translator.translate("Compare revenue by region"));
+        assertEquals(1.0, meterRegistry.get("bi.fastpath.questions").tag("outcome", "fallback").counter().count());
+    }
+
+    @Test
+    void shouldReturnValidatedSql() {
+        ValidatedSql validatedSql = translator().translate("What is the average order value by customer segment?");
+
+        assertEquals(Set.of("sales", "customers"), validatedSql.tables());
+        assertEquals("SELECT c.customer_segment, AVG(s.revenue) AS avg_order_value FROM sales s "
+                + "JOIN customers c ON s.customer_id = c.id GROUP BY c.customer_segment "
+                + "ORDER BY avg_order_value DESC", validatedSql.sql());
+        assertEquals(1.0, meterRegistry.get("bi.fastpath.questions").tag("outcome", "answered").counter().count());
+
+        properties.getFastPath().setEnabled(false);
+        assertNull(translator().translate("What is the average order value by customer segment?"));
+    }
+
+    private FastPathTranslator translator() {
+        return new FastPathTranslator(DemoSchema.catalog(), SAMPLER, new SqlValidator(DemoSchema.catalog()),
+                properties, meterRegistry);
+    }
+}
@@ -0,0 +1,258 @@
+package com.bi.assistant.load;
+
+import com.bi.assistant.aggregate.AggregateRouter;
+import com.bi.assistant.aggregate.IncrementalAggregateCache;
+import com.bi.assistant.cache.HashingQuestionEmbedder;
+import com.bi.assistant.cache.QueryResultCache;
+import com.bi.assistant.cache.SemanticTranslationCache;
+import com.bi.assistant.cache.SqlTranslationCache;
+import com.bi.assistant.concurrency.ConcurrencyLimits;
+import com.bi.assistant.config.AssistantProperties;
+import com.bi.assistant.dto.QueryResponse;
+import com.bi.assistant.fastpath.FastPathTranslator;
+import com.bi.assistant.schema.ColumnValueSampler;
+import com.bi.assistant.schema.DemoSchema;
+import com.bi.assistant.service.ColumnarResultBuilder;
+import com.bi.assistant.service.QueryExecutor;
+import com.bi.assistant.service.QueryCostGuard;
+import com.bi.assistant.service.QueryService;
+import com.bi.assistant.service.RowLimiter;
+import com.bi.assistant.service.SqlPostProcessor;
+import com.bi.assistant.service.SqlPromptBuilder;
+import com.bi.assistant.service.SqlRepairer;
+import com.bi.assistant.service.SqlValidator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * 1,000 concurrent clients against {@link QueryService} with a stub LLM and a stub
+ * database that only sleep, comparing Tomcat's default 200-thread pool with a
+ * virtual thread per request. Most questions are translation cache hits; the rest
+ * need the LLM, and each of those is asked by several clients at once, as on a
+ * dashboard refresh. Run with {@code ./gradlew loadTest}.
+ * <p>
+ * Both runs are held to the same LLM and database permits, so total throughput is set
+ * by the stub LLM either way. What changes is what the hits wait for: with a fixed pool
+ * they queue behind workers parked on the LLM limit, with virtual threads they don't.
+ */
+@Tag("load")
+class ConcurrencyLoadTest {
+
+    private static final int CLIENTS = 1_000;
+    private static final int WARM_QUESTIONS = 20;
+    private static final int MISS_EVERY = 5;
+    private static final int NEW_QUESTIONS = 50;
+    private static final int PLATFORM_THREADS = 200;
+    private static final int LLM_PERMITS = 8;
+    private static final int DATABASE_PERMITS = 10;
+    private static final long LLM_LATENCY_MILLIS = 100;
+    private static final long DATABASE_LATENCY_MILLIS = 5;
+
+    @Test
+    void platformThreadPool() throws Exception {
+        run("platform (" + PLATFORM_THREADS + " threads)", Executors.newFixedThreadPool(PLATFORM_THREADS));
+    }
+
+    @Test
+    void virtualThreadPerRequest() throws Exception {
+        run("virtual threads", Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    private void run(String mode, ExecutorService executor) throws Exception {
+        Stub llm = new Stub(LLM_LATENCY_MILLIS);
+        Stub database = new Stub(DATABASE_LATENCY_MILLIS);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        QueryService queryService = createService(llm, database, meterRegistry);
+
+        for (int i = 0; i < WARM_QUESTIONS; i++) {
+            assertTrue(queryService.executeNaturalLanguageQuery(warmQuestion(i)).isSuccess());
+        }
+        llm.reset();
+        database.reset();
+
+        long[] hitNanos = new long[CLIENTS];
+        long[] missNanos = new long[CLIENTS];
+        Arrays.fill(hitNanos, -1);
+        Arrays.fill(missNanos, -1);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<QueryResponse>> responses = new ArrayList<>();
+
+        try (executor) {
+            for (int i = 0; i < CLIENTS; i++) {
+                int client = i;
+                boolean miss = client % MISS_EVERY == 0;
+                String question = miss
+                        ? "Show customer number " + (client / MISS_EVERY) % NEW_QUESTIONS
+                        : warmQuestion(client % WARM_QUESTIONS);
+                responses.add(executor.submit(() -> {
+                    start.await();
+                    long begin = System.nanoTime();
+                    QueryResponse response = queryService.executeNaturalLanguageQuery(question);
+                    (miss ? missNanos : hitNanos)[client] = System.nanoTime() - begin;
+                    return response;
+                }));
+            }
+
+            long begin = System.nanoTime();
+            start.countDown();
+            for (Future<QueryResponse> response : responses) {
+                assertTrue(response.get(5, TimeUnit.MINUTES).isSuccess());
+            }
+            long elapsedNanos = System.nanoTime() - begin;
+
+            System.out.printf("%-26s %4d requests in %5d ms = %6.0f req/s | cache hit p50 %5d ms, p99 %5d ms"
+                            + " | LLM miss p50 %5d ms, p99 %5d ms | peak LLM %d/%d, peak DB %d/%d"
+                            + " | coalesced: translations %.2f, SQL %.2f%n",
+                    mode, CLIENTS, TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                    CLIENTS / (elapsedNanos / 1e9),
+                    percentile(hitNanos, 50), percentile(hitNanos, 99),
+                    percentile(missNanos, 50), percentile(missNanos, 99),
+                    llm.peak(), LLM_PERMITS, database.peak(), DATABASE_PERMITS,
+                    coalescingRatio(meterRegistry, "translation"), coalescingRatio(meterRegistry, "sql"));
+        }
+
+        // One LLM call per new question however many clients asked it at once
+        assertEquals(NEW_QUESTIONS, llm.calls());
+        assertTrue(llm.peak() <= LLM_PERMITS, "LLM concurrency " + llm.peak() + " exceeded its limit");
+        assertTrue(database.peak() <= DATABASE_PERMITS, "Database concurrency " + database.peak() + " exceeded its limit");
+    }
+
+    private QueryService createService(Stub llm, Stub database, SimpleMeterRegistry meterRegistry) {
+        ChatClient chatClient = mock(ChatClient.class, withSettings().stubOnly());
+        ChatClient.ChatClientRequestSpec requestSpec = mock(ChatClient.ChatClientRequestSpec.class, withSettings().stubOnly());
+        ChatClient.CallResponseSpec callResponse = mock(ChatClient.CallResponseSpec.class, withSettings().stubOnly());
+        when(chatClient.prompt(any(Prompt.class))).thenReturn(requestSpec);
+        when(requestSpec.call()).thenReturn(callResponse);
+        when(callResponse.content()).thenAnswer(invocation -> llm.call("SELECT * FROM customers WHERE id = 1;"));
+        ChatClient.Builder chatClientBuilder = mock(ChatClient.Builder.class, withSettings().stubOnly());
+        when(chatClientBuilder.build()).thenReturn(chatClient);
+
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class, withSettings().stubOnly());
+        when(jdbcTemplate.query(any(PreparedStatementCreator.class), any(ResultSetExtractor.class)))
+                .thenAnswer(invocation -> database.call(
+                        ColumnarResultBuilder.fromRows(List.of(Map.of("customer_name", "Tech Solutions Inc")))));
+
+        AssistantProperties properties = new AssistantProperties();
+        properties.getConcurrency().setLlmPermits(LLM_PERMITS);
+        properties.getConcurrency().setDatabasePermits(DATABASE_PERMITS);
+        properties.getConcurrency().setAcquireTimeout(Duration.ofMinutes(2));
+        properties.getExecution().setRequestTimeout(Duration.ofMinutes(2));
+        // Every request reaches the executor, so only in-flight coalescing stands between it and the database
+        properties.getResultCache().setTimeToLive(Duration.ZERO);
+        properties.getSemanticCache().setEnabled(false);
+        properties.getFastPath().setEnabled(false);
+
+        ConcurrencyLimits concurrencyLimits = new ConcurrencyLimits(properties, meterRegistry);
+        QueryExecutor queryExecutor = new QueryExecutor(jdbcTemplate,
+                mock(PlatformTransactionManager.class, withSettings().stubOnly()),
+                new QueryCostGuard(jdbcTemplate, new ObjectMapper(), concurrencyLimits, properties, meterRegistry),
+                concurrencyLimits, properties, meterRegistry);
+        return new QueryService(chatClientBuilder,
+                new SqlTranslationCache(properties, meterRegistry),
+                new QueryResultCache(properties, meterRegistry),
+                new SemanticTranslationCache(new HashingQuestionEmbedder(256), properties, meterRegistry),
+                new FastPathTranslator(DemoSchema.catalog(), ColumnValueSampler.NONE,
+                        new SqlValidator(DemoSchema.catalog()), properties, meterRegistry),
+                new SqlPostProcessor(),
+                new SqlValidator(DemoSchema.catalog()),
+                new SqlPromptBuilder(DemoSchema.catalog(), properties),
+                new AggregateRouter(List.of(), new SqlValidator(DemoSchema.catalog()), DemoSchema.catalog(), properties,
+                        meterRegistry),
+                new RowLimiter(properties),
+                queryExecutor,
+                new IncrementalAggregateCache(queryExecutor, properties, meterRegistry),
+                new SqlRepairer(chatClientBuilder, jdbcTemplate, new SqlPromptBuilder(DemoSchema.catalog(), properties),
+                        new SqlPostProcessor(), new SqlValidator(DemoSchema.catalog()), concurrencyLimits, properties,
+                        meterRegistry),
+                concurrencyLimits,
+                properties,
+                meterRegistry);
+    }
+
+    private static double coalescingRatio(SimpleMeterRegistry meterRegistry, String flight) {
+        return meterRegistry.get("bi.singleflight.coalescing.ratio").tag("flight", flight).gauge().value();
+    }
+
+    private static String warmQuestion(int i) {
+        return "List customer " + (char) ('a' + i);
+    }
+
+    private static long percentile(long[] nanos, int percentile) {
+        List<Long> samples = new ArrayList<>();
+        for (long sample : nanos) {
+            if (sample >= 0) {
+                samples.add(sample);
+            }
+        }
+        Collections.sort(samples);
+        int index = Math.min(samples.size() - 1, (int) Math.ceil(percentile / 100.0 * samples.size()) - 1);
+        return TimeUnit.NANOSECONDS.toMillis(samples.get(Math.max(0, index)));
+    }
+
+    /**
+     * A downstream that answers after a fixed delay and records how many calls overlapped.
+     */
+    private static final class Stub {
+
+        private final long latencyMillis;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger peak = new AtomicInteger();
+        private final AtomicInteger calls = new AtomicInteger();
+
+        Stub(long latencyMillis) {
+            this.latencyMillis = latencyMillis;
+        }
+
+        <T> T call(T result) throws InterruptedException {
+            calls.incrementAndGet();
+            peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(latencyMillis);
+                return result;
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+
+        int peak() {
+            return peak.get();
+        }
+
+        int calls() {
+            return calls.get();
+        }
+
+        void reset() {
+            peak.set(0);
+            calls.set(0);
+        }
+    }
+}
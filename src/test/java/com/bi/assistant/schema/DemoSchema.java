@@ -0,0 +1,73 @@
+package com.bi.assistant.schema;
+
+import com.bi.assistant.schema.TableInfo.Column;
+import com.bi.assistant.schema.TableInfo.ForeignKey;
+import com.bi.assistant.schema.TableInfo.Index;
+import com.bi.assistant.schema.TableInfo.Kind;
+
+import java.util.List;
+
+/**
+ * The tables, views and materialized views created by data.sql, as a fixed catalog.
+ */
+public final class DemoSchema {
+
+    private DemoSchema() {
+    }
+
+    public static SchemaCatalog catalog() {
+        return SchemaCatalog.of("public", List.of(
+                new TableInfo("customers", Kind.TABLE, List.of(
+                        column("id", "serial"), column("customer_name", "varchar"), column("email", "varchar"),
+                        column("phone", "varchar"), column("address", "text"), column("city", "varchar"),
+                        column("country", "varchar"),
+                        new Column("customer_segment", "varchar", true, "Premium, Standard or Basic")),
+                        List.of("id"), List.of(),
+                        List.of(new Index("idx_customers_segment", List.of("customer_segment"), false)), null),
+                new TableInfo("products", Kind.TABLE, List.of(
+                        column("id", "serial"), column("product_name", "varchar"),
+                        new Column("category", "varchar", false, "Electronics, Appliances, Accessories or Furniture"),
+                        column("price", "numeric"), column("description", "text"), column("manufacturer", "varchar")),
+                        List.of("id"), List.of(),
+                        List.of(new Index("idx_products_category", List.of("category"), false)), null),
+                new TableInfo("sales", Kind.TABLE, List.of(
+                        column("id", "serial"), column("product_id", "int4"), column("customer_id", "int4"),
+                        column("sale_date", "date"), column("revenue", "numeric"), column("quantity", "int4"),
+                        column("region", "varchar"), column("sales_person", "varchar")),
+                        List.of("id"),
+                        List.of(new ForeignKey("product_id", "products", "id"),
+                                new ForeignKey("customer_id", "customers", "id")),
+                        List.of(new Index("idx_sales_date", List.of("sale_date"), false),
+                                new Index("idx_sales_product", List.of("product_id"), false),
+                                new Index("idx_sales_customer", List.of("customer_id"), false),
+                                new Index("idx_sales_region", List.of("region"), false)), null),
+                view("monthly_revenue", column("month", "timestamp"), column("total_revenue", "numeric"),
+                        column("total_orders", "int8"), column("avg_order_value", "numeric")),
+                view("product_performance", column("product_name", "varchar"), column("category", "varchar"),
+                        column("price", "numeric"), column("total_orders", "int8"),
+                        column("total_quantity_sold", "int8"), column("total_revenue", "numeric"),
+                        column("avg_revenue_per_sale", "numeric")),
+                view("customer_analytics", column("customer_name", "varchar"),
+                        column("customer_segment", "varchar"), column("city", "varchar"), column("country", "varchar"),
+                        column("total_orders", "int8"), column("total_spent", "numeric"),
+                        column("avg_order_value", "numeric"), column("last_purchase_date", "date")),
+                materializedView("sales_monthly_rollup", column("sale_month", "date"), column("category", "varchar"),
+                        column("region", "varchar"), column("revenue", "numeric"), column("quantity", "int8"),
+                        column("orders", "int8")),
+                materializedView("sales_daily_rollup", column("sale_day", "date"), column("category", "varchar"),
+                        column("region", "varchar"), column("revenue", "numeric"), column("quantity", "int8"),
+                        column("orders", "int8"))));
+    }
+
+    private static Column column(String name, String type) {
+        return new Column(name, type, true, null);
+    }
+
+    private static TableInfo view(String name, Column... columns) {
+        return new TableInfo(name, Kind.VIEW, List.of(columns), List.of(), List.of(), List.of(), null);
+    }
+
+    private static TableInfo materializedView(String name, Column... columns) {
+        return new TableInfo(name, Kind.MATERIALIZED_VIEW, List.of(columns), List.of(), List.of(), List.of(), null);
+    }
+}
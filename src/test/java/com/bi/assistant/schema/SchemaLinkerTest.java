@@ -0,0 +1,81 @@
+package com.bi.assistant.schema;
+
+import com.bi.assistant.config.AssistantProperties;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SchemaLinkerTest {
+
+    private static final ColumnValueSampler SAMPLER = table -> switch (table.name()) {
+        case "products" -> Map.of("category", List.of("Electronics", "Appliances", "Accessories", "Furniture"));
+        case "sales" -> Map.of("region", List.of("North", "South", "East", "West"));
+        case "customers" -> Map.of("city", List.of("London", "Paris", "New York"));
+        default -> Map.of();
+    };
+
+    private final AssistantProperties properties = new AssistantProperties();
+
+    @Test
+    void shouldRankRelationsByNamesColumnsAndSampledValues() {
+        List<SchemaLinker.TableScore> ranked = linker().rank("Revenue from Electronics in the North");
+
+        assertEquals(Set.of("products", "sales"),
+                ranked.stream().limit(2).map(SchemaLinker.TableScore::table).collect(Collectors.toSet()));
+        SchemaLinker.TableScore products = ranked.stream()
+                .filter(score -> score.table().equals("products")).findFirst().orElseThrow();
+        assertTrue(products.columns().contains("category"));
+        SchemaLinker.TableScore sales = ranked.stream()
+                .filter(score -> score.table().equals("sales")).findFirst().orElseThrow();
+        assertTrue(sales.columns().containsAll(List.of("region", "revenue")));
+    }
+
+    @Test
+    void shouldExpandConfiguredSynonyms() {
+        properties.getSchema().getSynonyms().put("client", List.of("customer"));
+
+        List<SchemaLinker.TableScore> ranked = linker().rank("Which clients bought the most?");
+
+        assertEquals("customers", ranked.get(0).table());
+    }
+
+    @Test
+    void shouldBringForeignKeyNeighboursOfTheTopTables() {
+        properties.getSchema().setTopTables(1);
+
+        List<String> linked = linker().link("Best selling Furniture").stream().map(TableInfo::name).toList();
+
+        // products matches on its sampled category; sales references it and comes along for the join
+        assertEquals(List.of("products", "sales"), linked);
+    }
+
+    @Test
+    void shouldCutWideTablesDownToKeysAndMatchedColumns() {
+        properties.getSchema().setMaxColumnsPerTable(3);
+
+        TableInfo sales = linker().link("Orders by region").stream()
+                .filter(table -> table.name().equals("sales")).findFirst().orElseThrow();
+
+        assertEquals(List.of("id", "product_id", "customer_id", "region"), List.copyOf(sales.columnNames()));
+        assertEquals(List.of("idx_sales_product", "idx_sales_customer", "idx_sales_region"),
+                sales.indexes().stream().map(TableInfo.Index::name).toList());
+    }
+
+    @Test
+    void shouldFallBackToTheFirstRelationsWhenNothingMatches() {
+        properties.getSchema().setTopTables(2);
+
+        List<String> linked = linker().link("Hello there").stream().map(TableInfo::name).toList();
+
+        assertEquals(List.of("customer_analytics", "customers"), linked);
+    }
+
+    private SchemaLinker linker() {
+        return new SchemaLinker(DemoSchema.catalog(), SAMPLER, properties);
+    }
+}
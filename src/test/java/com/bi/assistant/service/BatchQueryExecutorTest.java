@@ -0,0 +1,117 @@
+package com.bi.assistant.service;
+
+import com.bi.assistant.config.AssistantProperties;
+import com.bi.assistant.dto.BatchQueryResult;
+import com.bi.assistant.dto.QueryRequest;
+import com.bi.assistant.dto.QueryResponse;
+import com.bi.assistant.exception.ServiceBusyException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BatchQueryExecutorTest {
+
+    @Mock
+    private QueryService queryService;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AssistantProperties properties = new AssistantProperties();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void shouldAnswerRepeatedQuestionsOnceAndReportEveryPosition() throws Exception {
+        when(queryService.executeNaturalLanguageQuery(any(QueryRequest.class)))
+                .thenAnswer(invocation -> success(((QueryRequest) invocation.getArgument(0)).getQuery()));
+
+        List<BatchQueryResult> results = run(List.of(
+                request("Show me sales trends by region"),
+                request("Which sales person has the highest revenue?"),
+                request("  show me SALES trends  by region")));
+
+        assertEquals(List.of(0, 1, 2), results.stream().map(BatchQueryResult::getIndex).toList());
+        assertEquals("  show me SALES trends  by region", results.get(2).getQuery());
+        assertEquals("Show me sales trends by region", results.get(2).getResponse().getMessage());
+        verify(queryService, times(2)).executeNaturalLanguageQuery(any(QueryRequest.class));
+        assertEquals(1.0, meterRegistry.get("bi.batch.duplicates").counter().count());
+    }
+
+    @Test
+    void shouldReportFailuresPerQuestion() throws Exception {
+        when(queryService.executeNaturalLanguageQuery(any(QueryRequest.class))).thenAnswer(invocation -> {
+            String query = ((QueryRequest) invocation.getArgument(0)).getQuery();
+            if (query.startsWith("Which")) {
+                throw new ServiceBusyException("No LLM permit within 30s");
+            }
+            return success(query);
+        });
+
+        List<BatchQueryResult> results = run(List.of(
+                request("Show me sales trends by region"),
+                request("Which sales person has the highest revenue?")));
+
+        assertTrue(results.get(0).getResponse().isSuccess());
+        assertFalse(results.get(1).getResponse().isSuccess());
+        assertEquals("Service busy: No LLM permit within 30s", results.get(1).getResponse().getMessage());
+    }
+
+    @Test
+    void shouldAnswerQuestionsConcurrently() throws Exception {
+        // Each question waits for all the others to start, which only works if they run at once
+        CountDownLatch started = new CountDownLatch(3);
+        when(queryService.executeNaturalLanguageQuery(any(QueryRequest.class))).thenAnswer(invocation -> {
+            started.countDown();
+            return started.await(5, TimeUnit.SECONDS)
+                    ? success("done")
+                    : new QueryResponse();
+        });
+
+        List<BatchQueryResult> results = run(List.of(
+                request("Show me sales trends by region"),
+                request("Which sales person has the highest revenue?"),
+                request("Show me monthly revenue for this year")));
+
+        assertTrue(results.stream().allMatch(result -> result.getResponse().isSuccess()));
+    }
+
+    private List<BatchQueryResult> run(List<QueryRequest> requests) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new BatchQueryExecutor(queryService, objectMapper, properties, meterRegistry).stream(requests, out);
+
+        List<BatchQueryResult> results = new ArrayList<>();
+        for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+            results.add(objectMapper.readValue(line, BatchQueryResult.class));
+        }
+        // Lines arrive as answers complete
+        results.sort(Comparator.comparingInt(BatchQueryResult::getIndex));
+        return results;
+    }
+
+    private static QueryRequest request(String query) {
+        QueryRequest request = new QueryRequest();
+        request.setQuery(query);
+        return request;
+    }
+
+    private static QueryResponse success(String message) {
+        QueryResponse response = new QueryResponse();
+        response.setSuccess(true);
+        response.setMessage(message);
+        return response;
+    }
+}
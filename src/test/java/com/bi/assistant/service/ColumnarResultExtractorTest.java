@@ -0,0 +1,55 @@
+package com.bi.assistant.service;
+
+import com.bi.assistant.dto.ColumnarResult;
+import com.bi.assistant.dto.ColumnarResult.ColumnType;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Types;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ColumnarResultExtractorTest {
+
+    @Test
+    void shouldKeepNumericColumnsAsBigDecimal() throws Exception {
+        ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+        when(metaData.getColumnCount()).thenReturn(3);
+        when(metaData.getColumnLabel(1)).thenReturn("product_name");
+        when(metaData.getColumnLabel(2)).thenReturn("price");
+        when(metaData.getColumnLabel(3)).thenReturn("discount");
+        when(metaData.getColumnType(1)).thenReturn(Types.VARCHAR);
+        when(metaData.getColumnType(2)).thenReturn(Types.NUMERIC);
+        when(metaData.getColumnType(3)).thenReturn(Types.DOUBLE);
+        ResultSet resultSet = mock(ResultSet.class);
+        when(resultSet.getMetaData()).thenReturn(metaData);
+        when(resultSet.next()).thenReturn(true, false);
+        when(resultSet.getObject(1)).thenReturn("Laptop Pro");
+        when(resultSet.getObject(2)).thenReturn(new BigDecimal("19.90"));
+        when(resultSet.getObject(3)).thenReturn(0.1);
+
+        ColumnarResult result = new ColumnarResultExtractor(100).extractData(resultSet);
+
+        assertEquals(ColumnType.OBJECT, result.getColumns().get(1).getType());
+        assertEquals(ColumnType.DOUBLE, result.getColumns().get(2).getType());
+        assertEquals(new BigDecimal("19.90"), result.value(0, 1));
+        assertEquals(Map.of("product_name", "Laptop Pro", "price", new BigDecimal("19.90"), "discount", 0.1),
+                result.toRows().get(0));
+    }
+
+    @Test
+    void shouldKeepBigDecimalsWhenBuildingFromRows() {
+        ColumnarResult result = ColumnarResultBuilder.fromRows(List.of(
+                Map.of("total", new BigDecimal("1200.00")),
+                Map.of("total", new BigDecimal("0.10"))));
+
+        assertEquals(ColumnType.OBJECT, result.getColumns().get(0).getType());
+        assertEquals(new BigDecimal("1200.00"), result.value(0, 0));
+        assertEquals(new BigDecimal("0.10"), result.value(1, 0));
+    }
+}
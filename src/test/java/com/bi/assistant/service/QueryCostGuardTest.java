@@ -0,0 +1,164 @@
+package com.bi.assistant.service;
+
+import com.bi.assistant.concurrency.ConcurrencyLimits;
+import com.bi.assistant.config.AssistantProperties;
+import com.bi.assistant.dto.QueryPlan;
+import com.bi.assistant.exception.QueryExecutionException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class QueryCostGuardTest {
+
+    private static final String TOP_REGIONS_PLAN = """
+            [{"Plan": {"Node Type": "Limit", "Total Cost": 2150.4, "Plan Rows": 5,
+              "Plans": [{"Node Type": "Sort", "Total Cost": 2150.9, "Plan Rows": 120,
+                "Plans": [{"Node Type": "Hash Join", "Total Cost": 2140.0, "Plan Rows": 120,
+                  "Plans": [
+                    {"Node Type": "Seq Scan", "Relation Name": "sales", "Total Cost": 2000.0, "Plan Rows": 100000},
+                    {"Node Type": "Index Scan", "Relation Name": "customers", "Index Name": "customers_pkey",
+                     "Total Cost": 8.3, "Plan Rows": 1}
+                  ]}]}]}}]""";
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private AssistantProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        properties = new AssistantProperties();
+        properties.getCostGuard().setLargeScanCost(1_000);
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void shouldSummarizeRowsScansAndIndexes() {
+        when(jdbcTemplate.queryForList(startsWith("EXPLAIN (FORMAT JSON) "), eq(String.class)))
+                .thenReturn(List.of(TOP_REGIONS_PLAN));
+
+        QueryPlan plan = createGuard().check("SELECT ... LIMIT 5", Duration.ofSeconds(1));
+
+        assertEquals(2150.4, plan.estimatedCost());
+        assertEquals(5, plan.estimatedRows());
+        assertEquals(120, plan.estimatedTotalRows());
+        assertEquals(List.of("sales"), plan.largeSeqScans());
+        assertEquals(List.of("customers_pkey"), plan.indexesUsed());
+    }
+
+    @Test
+    void shouldRejectPlansOverTheCostLimit() {
+        properties.getCostGuard().setMaxCost(1_000);
+        when(jdbcTemplate.queryForList(startsWith("EXPLAIN (FORMAT JSON) "), eq(String.class)))
+                .thenReturn(List.of(TOP_REGIONS_PLAN));
+
+        QueryCostGuard guard = createGuard();
+
+        assertThrows(QueryExecutionException.class, () -> guard.check("SELECT ... LIMIT 5", Duration.ofSeconds(1)));
+        assertEquals(1.0, meterRegistry.counter("bi.query.cost.checks", "outcome", "rejected").count());
+    }
+
+    @Test
+    void shouldRejectPlansOverTheRowLimit() {
+        properties.getCostGuard().setMaxRows(100);
+        when(jdbcTemplate.queryForList(startsWith("EXPLAIN (FORMAT JSON) "), eq(String.class)))
+                .thenReturn(List.of("""
+                        [{"Plan": {"Node Type": "Seq Scan", "Relation Name": "sales", "Total Cost": 1900.0,
+                          "Plan Rows": 120}}]"""));
+
+        QueryCostGuard guard = createGuard();
+
+        assertThrows(QueryExecutionException.class, () -> guard.check("SELECT ...", Duration.ofSeconds(1)));
+    }
+
+    @Test
+    void shouldJudgeRowsByWhatTheLimitReturns() {
+        // The join under the LIMIT estimates 120 rows, but only 5 come back
+        properties.getCostGuard().setMaxRows(100);
+        when(jdbcTemplate.queryForList(startsWith("EXPLAIN (FORMAT JSON) "), eq(String.class)))
+                .thenReturn(List.of(TOP_REGIONS_PLAN));
+
+        QueryPlan plan = createGuard().check("SELECT ... LIMIT 5", Duration.ofSeconds(1));
+
+        assertEquals(5, plan.estimatedRows());
+        assertEquals(1.0, meterRegistry.counter("bi.query.cost.checks", "outcome", "allowed").count());
+    }
+
+    @Test
+    void shouldMarkPlansOverTheExpensiveCost() {
+        properties.getCostGuard().setExpensiveCost(2_000);
+        when(jdbcTemplate.queryForList(startsWith("EXPLAIN (FORMAT JSON) "), eq(String.class)))
+                .thenReturn(List.of(TOP_REGIONS_PLAN));
+
+        QueryCostGuard guard = createGuard();
+
+        assertTrue(guard.isExpensive(guard.check("SELECT ... LIMIT 5", Duration.ofSeconds(1))));
+        assertEquals(1.0, meterRegistry.counter("bi.query.cost.checks", "outcome", "expensive").count());
+    }
+
+    @Test
+    void shouldExplainEachSqlOnce() {
+        when(jdbcTemplate.queryForList(startsWith("EXPLAIN (FORMAT JSON) "), eq(String.class)))
+                .thenReturn(List.of(TOP_REGIONS_PLAN));
+
+        QueryCostGuard guard = createGuard();
+        QueryPlan first = guard.check("SELECT region FROM sales LIMIT 5", Duration.ofSeconds(1));
+        QueryPlan second = guard.check("SELECT region\n  FROM sales  LIMIT 5", Duration.ofSeconds(1));
+
+        assertSame(first, second);
+        assertSame(first, guard.cachedPlan("SELECT region FROM sales LIMIT 5"));
+        verify(jdbcTemplate, times(1)).queryForList(anyString(), eq(String.class));
+    }
+
+    @Test
+    void shouldLetQueriesThroughWhenThePlanCannotBeRead() {
+        when(jdbcTemplate.queryForList(startsWith("EXPLAIN (FORMAT JSON) "), eq(String.class)))
+                .thenReturn(List.of("Seq Scan on sales  (cost=0.00..1.10 rows=10 width=516)"));
+
+        assertNull(createGuard().check("SELECT * FROM sales", Duration.ofSeconds(1)));
+    }
+
+    @Test
+    void shouldEstimateFromTheCheckedPlanWithoutExplainingAgain() {
+        when(jdbcTemplate.queryForList(startsWith("EXPLAIN (FORMAT JSON) "), eq(String.class)))
+                .thenReturn(List.of("Seq Scan on sales  (cost=0.00..1.10 rows=10 width=516)"));
+        QueryCostGuard guard = createGuard();
+
+        assertNull(guard.check("SELECT * FROM sales", Duration.ofSeconds(1)));
+        assertNull(guard.estimate("SELECT * FROM sales", Duration.ofSeconds(1)));
+
+        verify(jdbcTemplate, times(1)).queryForList(anyString(), eq(String.class));
+    }
+
+    @Test
+    void shouldExplainOnceForEstimatesWhenTheGuardIsOff() {
+        properties.getCostGuard().setEnabled(false);
+        when(jdbcTemplate.queryForList(startsWith("EXPLAIN (FORMAT JSON) "), eq(String.class)))
+                .thenReturn(List.of(TOP_REGIONS_PLAN));
+        QueryCostGuard guard = createGuard();
+
+        assertEquals(120, guard.estimate("SELECT ... LIMIT 5", Duration.ofSeconds(1)).estimatedTotalRows());
+        assertEquals(120, guard.estimate("SELECT ... LIMIT 5", Duration.ofSeconds(1)).estimatedTotalRows());
+
+        verify(jdbcTemplate, times(1)).queryForList(anyString(), eq(String.class));
+    }
+
+    private QueryCostGuard createGuard() {
+        return new QueryCostGuard(jdbcTemplate, new ObjectMapper(),
+                new ConcurrencyLimits(properties, meterRegistry), properties, meterRegistry);
+    }
+}
@@ -0,0 +1,156 @@
+package com.bi.assistant.service;
+
+import com.bi.assistant.config.AssistantProperties;
+import com.bi.assistant.dto.QueryRequest;
+import com.bi.assistant.exception.QueryExecutionException;
+import com.bi.assistant.exception.QueryTimeoutException;
+import com.bi.assistant.schema.DemoSchema;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.ResultSetExtractor;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class QueryEventStreamerTest {
+
+    private static final String SQL = "SELECT product_name FROM products";
+
+    @Mock
+    private QueryService queryService;
+
+    @Mock
+    private QueryExecutor queryExecutor;
+
+    @Mock
+    private ResultSet resultSet;
+
+    @Mock
+    private ResultSetMetaData metaData;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SqlValidator sqlValidator = new SqlValidator(DemoSchema.catalog());
+    private QueryEventStreamer streamer;
+
+    @BeforeEach
+    void setUp() {
+        AssistantProperties properties = new AssistantProperties();
+        properties.getResults().setMaxRows(2);
+        properties.getStreaming().setRowBatchSize(1);
+        streamer = new QueryEventStreamer(queryService, new RowLimiter(properties), queryExecutor,
+                objectMapper, properties);
+    }
+
+    @Test
+    void shouldSendEventsInOrderAndMarkCappedResultsTruncated() throws Exception {
+        stubTranslation();
+        when(resultSet.getMetaData()).thenReturn(metaData);
+        when(metaData.getColumnCount()).thenReturn(1);
+        when(metaData.getColumnLabel(1)).thenReturn("product_name");
+        when(metaData.getColumnTypeName(1)).thenReturn("varchar");
+        // A third row exists beyond the cap of two
+        when(resultSet.next()).thenReturn(true, true, true);
+        when(resultSet.getObject(1)).thenReturn("Laptop Pro", "Desk Chair");
+        when(queryExecutor.query(eq(SQL + " LIMIT 3"), anyInt(), any(), any(), any())).thenAnswer(invocation -> {
+            ResultSetExtractor<?> extractor = invocation.getArgument(4);
+            return extractor.extractData(resultSet);
+        });
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        streamer.stream(request(), out, new QueryCancellation());
+
+        String body = out.toString(StandardCharsets.UTF_8);
+        assertTrue(body.startsWith("event: sql\ndata: {\"text\":\"SELECT product_name\"}\n\n"), body);
+        assertTrue(body.endsWith("\n\n"), body);
+        List<Event> events = events(body);
+        assertEquals(List.of("sql", "sql", "validation", "columns", "rows", "rows", "end"),
+                events.stream().map(Event::name).toList());
+        assertEquals(" FROM products", events.get(1).data().get("text").asText());
+        assertTrue(events.get(2).data().get("valid").asBoolean());
+        assertEquals(SQL + " LIMIT 3", events.get(2).data().get("sql").asText());
+        assertEquals(objectMapper.readTree("""
+                {"columns":[{"name":"product_name","type":"varchar"}]}"""), events.get(3).data());
+        assertEquals(objectMapper.readTree("""
+                {"rows":[["Laptop Pro"]]}"""), events.get(4).data());
+        assertEquals(objectMapper.readTree("""
+                {"rows":[["Desk Chair"]]}"""), events.get(5).data());
+        assertEquals(2, events.get(6).data().get("rowCount").asInt());
+        assertTrue(events.get(6).data().get("truncated").asBoolean());
+    }
+
+    @Test
+    void shouldEndWithAFailedValidationEvent() throws Exception {
+        when(queryService.translateStreaming(any(QueryRequest.class), any()))
+                .thenThrow(new QueryExecutionException("Generated SQL is not a SELECT"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        streamer.stream(request(), out, new QueryCancellation());
+
+        List<Event> events = events(out.toString(StandardCharsets.UTF_8));
+        assertEquals(1, events.size());
+        assertEquals("validation", events.get(0).name());
+        assertFalse(events.get(0).data().get("valid").asBoolean());
+        assertEquals("Generated SQL is not a SELECT", events.get(0).data().get("message").asText());
+        verifyNoInteractions(queryExecutor);
+    }
+
+    @Test
+    void shouldSendAnErrorEventWhenTheQueryFails() throws Exception {
+        stubTranslation();
+        when(queryExecutor.query(anyString(), anyInt(), any(), any(), any()))
+                .thenThrow(new QueryTimeoutException("canceling statement due to statement timeout"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        streamer.stream(request(), out, new QueryCancellation());
+
+        List<Event> events = events(out.toString(StandardCharsets.UTF_8));
+        assertEquals(List.of("sql", "sql", "validation", "error"), events.stream().map(Event::name).toList());
+        assertEquals("Query timed out: canceling statement due to statement timeout",
+                events.get(3).data().get("message").asText());
+    }
+
+    private void stubTranslation() {
+        when(queryService.translateStreaming(any(QueryRequest.class), any())).thenAnswer(invocation -> {
+            Consumer<String> onSqlToken = invocation.getArgument(1);
+            onSqlToken.accept("SELECT product_name");
+            onSqlToken.accept(" FROM products");
+            return sqlValidator.validate(SQL);
+        });
+    }
+
+    private List<Event> events(String body) throws Exception {
+        List<Event> events = new ArrayList<>();
+        for (String frame : body.split("\n\n")) {
+            String[] lines = frame.split("\n");
+            assertEquals(2, lines.length, frame);
+            assertTrue(lines[0].startsWith("event: ") && lines[1].startsWith("data: "), frame);
+            events.add(new Event(lines[0].substring("event: ".length()),
+                    objectMapper.readTree(lines[1].substring("data: ".length()))));
+        }
+        return events;
+    }
+
+    private static QueryRequest request() {
+        QueryRequest request = new QueryRequest();
+        request.setQuery("List product names");
+        return request;
+    }
+
+    private record Event(String name, JsonNode data) {
+    }
+}
@@ -1,18 +1,48 @@
 package com.bi.assistant.service;
 
+import com.bi.assistant.aggregate.AggregateRouter;
+import com.bi.assistant.aggregate.IncrementalAggregateCache;
+import com.bi.assistant.cache.HashingQuestionEmbedder;
+import com.bi.assistant.cache.QueryResultCache;
+import com.bi.assistant.cache.SemanticTranslationCache;
+import com.bi.assistant.cache.SqlTranslationCache;
+import com.bi.assistant.concurrency.ConcurrencyLimits;
+import com.bi.assistant.config.AssistantProperties;
 import com.bi.assistant.dto.QueryRequest;
 import com.bi.assistant.dto.QueryResponse;
+import com.bi.assistant.exception.QueryTimeoutException;
+import com.bi.assistant.fastpath.FastPathTranslator;
+import com.bi.assistant.schema.ColumnValueSampler;
+import com.bi.assistant.schema.DemoSchema;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Answers;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.ollama.api.OllamaOptions;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.UncategorizedSQLException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.transaction.PlatformTransactionManager;
+import reactor.core.publisher.Flux;
 
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -24,7 +54,7 @@ class QueryServiceTest {
     @Mock
     private ChatClient.Builder chatClientBuilder;
     
-    @Mock
+    @Mock(answer = Answers.RETURNS_DEEP_STUBS)
     private ChatClient chatClient;
     
     @Mock
@@ -33,13 +63,10 @@ class QueryServiceTest {
     @Test
     void shouldProcessValidQuery() {
         // Create service instance
-        when(chatClientBuilder.build()).thenReturn(chatClient);
-        QueryService queryService = new QueryService(chatClientBuilder, jdbcTemplate);
+        QueryService queryService = createService();
         
         // Mock AI response for SQL generation
-        when(chatClient.prompt(anyString())).thenReturn(mock(ChatClient.ChatClientRequestSpec.class));
-        when(chatClient.prompt(anyString()).call()).thenReturn(mock(ChatClient.ChatClientRequest.CallResponseSpec.class));
-        when(chatClient.prompt(anyString()).call().content()).thenReturn("SELECT product_name FROM products LIMIT 5");
+        when(chatClient.prompt(any(Prompt.class)).call().content()).thenReturn("SELECT product_name FROM products LIMIT 5");
         
         // Mock successful query execution
         List<Map<String, Object>> mockResults = Arrays.asList(
@@ -47,14 +74,15 @@ class QueryServiceTest {
             createRow("Gaming Laptop", null)
         );
         
-        when(jdbcTemplate.queryForList(anyString())).thenReturn(mockResults);
+        when(jdbcTemplate.query(any(PreparedStatementCreator.class), any(ResultSetExtractor.class)))
+                .thenReturn(ColumnarResultBuilder.fromRows(mockResults));
         
         // Create request
         QueryRequest request = new QueryRequest();
         request.setQuery("Show me top products");
         
         // Execute the query
-        QueryResponse response = queryService.processNaturalLanguageQuery(request);
+        QueryResponse response = queryService.executeNaturalLanguageQuery(request);
         
         assertNotNull(response);
         assertTrue(response.isSuccess());
@@ -62,8 +90,322 @@ class QueryServiceTest {
         assertEquals(2, response.getData().size());
     }
 
-    private Map<String, Object> createRow(String productName, double revenue) {
-        Map<String, Object> row = new HashMap<>();
+    @Test
+    void shouldServeRepeatedQueryFromCaches() {
+        QueryService queryService = createService();
+
+        ChatClient.CallResponseSpec callResponse = mock(ChatClient.CallResponseSpec.class);
+        when(chatClient.prompt(any(Prompt.class)).call()).thenReturn(callResponse);
+        when(callResponse.content()).thenReturn("SELECT product_name FROM products LIMIT 5");
+        when(jdbcTemplate.query(any(PreparedStatementCreator.class), any(ResultSetExtractor.class)))
+                .thenReturn(ColumnarResultBuilder.fromRows(List.of(createRow("Laptop Pro", 10.0))));
+
+        QueryResponse first = queryService.executeNaturalLanguageQuery("Show me top products");
+        QueryResponse second = queryService.executeNaturalLanguageQuery("  show me   TOP products ");
+
+        assertTrue(first.isSuccess());
+        assertTrue(second.isSuccess());
+        assertEquals(first.getGeneratedSql(), second.getGeneratedSql());
+        verify(callResponse, times(1)).content();
+        verify(jdbcTemplate, times(1)).query(any(PreparedStatementCreator.class), any(ResultSetExtractor.class));
+    }
+
+    @Test
+    void shouldReuseTranslationForQuestionDifferingOnlyInNumbers() {
+        QueryService queryService = createService();
+
+        ChatClient.CallResponseSpec callResponse = mock(ChatClient.CallResponseSpec.class);
+        when(chatClient.prompt(any(Prompt.class)).call()).thenReturn(callResponse);
+        when(callResponse.content()).thenReturn("SELECT customer_name FROM customers ORDER BY customer_name LIMIT 5");
+        when(jdbcTemplate.query(any(PreparedStatementCreator.class), any(ResultSetExtractor.class)))
+                .thenReturn(ColumnarResultBuilder.fromRows(List.of(createRow("Laptop Pro", 10.0))));
+
+        QueryResponse topFive = queryService.executeNaturalLanguageQuery("List the first 5 customer names");
+        QueryResponse topTen = queryService.executeNaturalLanguageQuery("List the first 10 customer names");
+
+        assertTrue(topFive.isSuccess());
+        assertTrue(topTen.isSuccess());
+        assertEquals("SELECT customer_name FROM customers ORDER BY customer_name LIMIT 10", topTen.getGeneratedSql());
+        verify(callResponse, times(1)).content();
+    }
+
+    @Test
+    void shouldAnswerKnownQuestionShapesWithoutTheLlm() {
+        QueryService queryService = createService(true);
+        when(jdbcTemplate.query(any(PreparedStatementCreator.class), any(ResultSetExtractor.class)))
+                .thenReturn(ColumnarResultBuilder.fromRows(List.of(createRow("Laptop Pro", 10.0))));
+
+        QueryResponse response = queryService.executeNaturalLanguageQuery("Show me the top 5 products by revenue");
+
+        assertTrue(response.isSuccess());
+        assertTrue(response.getGeneratedSql().startsWith("SELECT p.product_name, SUM(s.revenue) AS total_revenue"));
+        verifyNoInteractions(chatClient);
+    }
+
+    @Test
+    void shouldReturnColumnarDataWhenRequested() {
+        QueryService queryService = createService();
+
+        when(chatClient.prompt(any(Prompt.class)).call().content()).thenReturn(
+                "SELECT p.product_name, SUM(s.revenue) AS total_revenue FROM products p "
+                        + "JOIN sales s ON p.id = s.product_id GROUP BY p.product_name");
+        when(jdbcTemplate.query(any(PreparedStatementCreator.class), any(ResultSetExtractor.class)))
+                .thenReturn(ColumnarResultBuilder.fromRows(List.of(
+                        createRow("Laptop Pro", 10.0),
+                        createRow("Gaming Laptop", 20.0))));
+
+        QueryRequest request = new QueryRequest();
+        request.setQuery("Show me product revenue");
+        request.setColumnar(true);
+
+        QueryResponse response = queryService.executeNaturalLanguageQuery(request);
+
+        assertTrue(response.isSuccess());
+        assertNull(response.getData());
+        assertEquals(2, response.getColumnarData().getRowCount());
+        assertEquals("Gaming Laptop", response.getColumnarData().value(1, 0));
+        assertArrayEquals(new double[]{10.0, 20.0}, response.getColumnarData().getColumns().get(1).getDoubles());
+    }
+
+    @Test
+    void shouldRejectSqlOutsideSchemaWithoutExecutingIt() {
+        QueryService queryService = createService();
+
+        when(chatClient.prompt(any(Prompt.class)).call().content()).thenReturn("SELECT pg_sleep(30)");
+
+        QueryResponse response = queryService.executeNaturalLanguageQuery("Wait a while");
+
+        assertFalse(response.isSuccess());
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void shouldRepairMissingProductJoinBeforeExecution() {
+        QueryService queryService = createService();
+
+        ChatClient.CallResponseSpec callResponse = mock(ChatClient.CallResponseSpec.class);
+        when(chatClient.prompt(any(Prompt.class)).call()).thenReturn(callResponse);
+        when(callResponse.content()).thenReturn(
+                "SELECT product_name, SUM(revenue) FROM sales GROUP BY product_name",
+                "SELECT p.product_name, SUM(s.revenue) FROM sales s JOIN products p ON s.product_id = p.id "
+                        + "GROUP BY p.product_name");
+        when(jdbcTemplate.queryForList(startsWith("EXPLAIN"), eq(String.class)))
+                .thenReturn(List.of("HashAggregate  (cost=1.15..1.20 rows=5 width=40)"));
+        when(jdbcTemplate.query(any(PreparedStatementCreator.class), any(ResultSetExtractor.class)))
+                .thenReturn(ColumnarResultBuilder.fromRows(List.of(createRow("Laptop Pro", 10.0))));
+
+        QueryResponse response = queryService.executeNaturalLanguageQuery("Revenue per product");
+
+        assertTrue(response.isSuccess());
+        assertTrue(response.getGeneratedSql().contains("JOIN products p ON s.product_id = p.id"));
+        assertEquals("AGGREGATION", response.getMetadata().getQueryType());
+        // The validator's error is the feedback, as the database's would be
+        ArgumentCaptor<Prompt> prompts = ArgumentCaptor.forClass(Prompt.class);
+        verify(chatClient, atLeast(2)).prompt(prompts.capture());
+        assertTrue(prompts.getAllValues().stream().anyMatch(prompt ->
+                prompt.getContents().contains("Column 'product_name' does not exist in the referenced tables [sales]")));
+        verify(callResponse, times(2)).content();
+    }
+
+    @Test
+    void shouldRepairSqlTheDatabaseRejectsFromItsError() {
+        QueryService queryService = createService();
+
+        ChatClient.CallResponseSpec callResponse = mock(ChatClient.CallResponseSpec.class);
+        when(chatClient.prompt(any(Prompt.class)).call()).thenReturn(callResponse);
+        when(callResponse.content()).thenReturn(
+                "SELECT region, COUNT(*) FROM sales",
+                "SELECT region, COUNT(*) FROM sales GROUP BY region");
+        when(jdbcTemplate.query(any(PreparedStatementCreator.class), any(ResultSetExtractor.class)))
+                .thenThrow(new BadSqlGrammarException("query", "SELECT region, COUNT(*) FROM sales",
+                        new SQLException("ERROR: column \"sales.region\" must appear in the GROUP BY clause "
+                                + "or be used in an aggregate function\n  Position: 8", "42803")))
+                .thenReturn(ColumnarResultBuilder.fromRows(List.of(createRow("Laptop Pro", 10.0))));
+        when(jdbcTemplate.queryForList(startsWith("EXPLAIN"), eq(String.class)))
+                .thenReturn(List.of("HashAggregate  (cost=1.15..1.20 rows=5 width=40)"));
+
+        QueryResponse first = queryService.executeNaturalLanguageQuery("Number of sales per region");
+        QueryResponse second = queryService.executeNaturalLanguageQuery("Number of sales per region");
+
+        assertTrue(first.isSuccess());
+        assertTrue(first.getGeneratedSql().contains("GROUP BY region"));
+        assertEquals(first.getGeneratedSql(), second.getGeneratedSql());
+        verify(callResponse, times(2)).content();
+        ArgumentCaptor<Prompt> prompts = ArgumentCaptor.forClass(Prompt.class);
+        verify(chatClient, atLeast(2)).prompt(prompts.capture());
+        assertTrue(prompts.getAllValues().stream().anyMatch(prompt ->
+                prompt.getContents().contains("SQLSTATE 42803 at position 8 near \"region, COUNT(*) FROM sales")));
+    }
+
+    @Test
+    void shouldCapRowsAndReportTruncation() throws Exception {
+        QueryService queryService = createService();
+
+        when(chatClient.prompt(any(Prompt.class)).call().content()).thenReturn("SELECT customer_name FROM customers");
+
+        ResultSet resultSet = mock(ResultSet.class);
+        ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+        when(resultSet.getMetaData()).thenReturn(metaData);
+        when(metaData.getColumnCount()).thenReturn(1);
+        when(metaData.getColumnLabel(1)).thenReturn("customer_name");
+        when(metaData.getColumnType(1)).thenReturn(Types.VARCHAR);
+        when(resultSet.next()).thenReturn(true, true, true, false);
+        when(resultSet.getObject(1)).thenReturn("Tech Solutions Inc", "Global Corp");
+        when(jdbcTemplate.query(any(PreparedStatementCreator.class), any(ResultSetExtractor.class)))
+                .thenAnswer(invocation -> invocation.<ResultSetExtractor<?>>getArgument(1).extractData(resultSet));
+        when(jdbcTemplate.queryForList("EXPLAIN (FORMAT JSON) SELECT customer_name FROM customers LIMIT 3", String.class))
+                .thenReturn(List.of("[{\"Plan\": {\"Node Type\": \"Limit\", \"Total Cost\": 0.33, \"Plan Rows\": 3, "
+                        + "\"Plans\": [{\"Node Type\": \"Seq Scan\", \"Relation Name\": \"customers\", "
+                        + "\"Total Cost\": 1.10, \"Plan Rows\": 10}]}}]"));
+
+        QueryRequest request = new QueryRequest();
+        request.setQuery("List customer names");
+        request.setLimit(2);
+
+        QueryResponse response = queryService.executeNaturalLanguageQuery(request);
+
+        assertTrue(response.isSuccess());
+        assertEquals("SELECT customer_name FROM customers LIMIT 3", response.getGeneratedSql());
+        assertEquals(2, response.getData().size());
+        assertTrue(response.getMetadata().isTruncated());
+        assertEquals(10L, response.getMetadata().getEstimatedTotalRows());
+        assertEquals(0.33, response.getMetadata().getPlan().estimatedCost());
+    }
+
+    @Test
+    void shouldSurfaceStatementTimeoutAsItsOwnError() {
+        QueryService queryService = createService();
+
+        when(chatClient.prompt(any(Prompt.class)).call().content()).thenReturn("SELECT * FROM sales s, sales t");
+        when(jdbcTemplate.query(any(PreparedStatementCreator.class), any(ResultSetExtractor.class)))
+                .thenThrow(new UncategorizedSQLException("query", "SELECT * FROM sales s, sales t",
+                        new SQLException("canceling statement due to statement timeout", "57014")));
+
+        assertThrows(QueryTimeoutException.class,
+                () -> queryService.executeNaturalLanguageQuery("Every pair of sales"));
+        verify(jdbcTemplate).execute(startsWith("SET LOCAL statement_timeout = "));
+    }
+
+    @Test
+    void shouldStopStreamedGenerationAtFirstCompleteStatement() {
+        QueryService queryService = createService();
+        AtomicBoolean generationCancelled = new AtomicBoolean();
+        when(chatClient.prompt(any(Prompt.class)).stream().content()).thenReturn(
+                Flux.just("SELECT * ", "FROM customers", ";", "\n", "Or alternatively:\n", "SELECT * FROM sales;\n")
+                        .doOnCancel(() -> generationCancelled.set(true)));
+
+        QueryRequest request = new QueryRequest();
+        request.setQuery("List all customers");
+        List<String> tokens = new ArrayList<>();
+        ValidatedSql validatedSql = queryService.translateStreaming(request, tokens::add);
+
+        assertEquals("SELECT * FROM customers", validatedSql.sql());
+        assertEquals(List.of("SELECT * ", "FROM customers", ";", "\n"), tokens);
+        assertTrue(generationCancelled.get());
+        // Cached like any other translation
+        assertSame(validatedSql, queryService.translate(request));
+    }
+
+    @Test
+    void shouldSendGenerationLimitsWithEveryPrompt() {
+        QueryService queryService = createService();
+        when(chatClient.prompt(any(Prompt.class)).call().content()).thenReturn("SELECT * FROM customers");
+
+        QueryRequest request = new QueryRequest();
+        request.setQuery("List all customers");
+        queryService.translateToSql(request);
+
+        ArgumentCaptor<Prompt> prompt = ArgumentCaptor.forClass(Prompt.class);
+        verify(chatClient, atLeastOnce()).prompt(prompt.capture());
+        OllamaOptions options = (OllamaOptions) prompt.getAllValues().get(prompt.getAllValues().size() - 1).getOptions();
+        assertEquals(0.0, options.getTemperature());
+        assertEquals(512, options.getNumPredict());
+        assertEquals(List.of(";"), options.getStop());
+    }
+
+    @Test
+    void shouldExtractSqlFromAnExplainedResponse() {
+        QueryService queryService = createService();
+        // A fence after a line of prose starts with a newline; as a stop sequence it ended this before the SQL
+        when(chatClient.prompt(any(Prompt.class)).call().content()).thenReturn("""
+                To find the revenue of each customer segment, we join sales to customers:
+
+                ```sql
+                SELECT c.customer_segment, SUM(s.revenue) AS total_revenue
+                FROM sales s JOIN customers c ON s.customer_id = c.id
+                GROUP BY c.customer_segment
+                """);
+
+        QueryRequest request = new QueryRequest();
+        request.setQuery("Revenue per customer segment");
+
+        assertEquals("SELECT c.customer_segment, SUM(s.revenue) AS total_revenue FROM sales s "
+                + "JOIN customers c ON s.customer_id = c.id GROUP BY c.customer_segment",
+                queryService.translateToSql(request));
+    }
+
+    @Test
+    void shouldGenerateAgainWithoutStopSequencesWhenProseEndedTheResponse() {
+        QueryService queryService = createService();
+        ChatClient.CallResponseSpec callResponse = mock(ChatClient.CallResponseSpec.class);
+        when(chatClient.prompt(any(Prompt.class)).call()).thenReturn(callResponse);
+        // Cut at the ";" in "...per segment; first we total each order"
+        when(callResponse.content()).thenReturn("To find the revenue per segment",
+                "Revenue per segment; first we join sales to customers:\n\n```sql\n"
+                        + "SELECT c.customer_segment, SUM(s.revenue) AS total_revenue "
+                        + "FROM sales s JOIN customers c ON s.customer_id = c.id GROUP BY c.customer_segment;\n```");
+
+        QueryRequest request = new QueryRequest();
+        request.setQuery("Revenue per customer segment");
+
+        assertTrue(queryService.translateToSql(request).startsWith("SELECT c.customer_segment"));
+        ArgumentCaptor<Prompt> prompt = ArgumentCaptor.forClass(Prompt.class);
+        verify(chatClient, atLeastOnce()).prompt(prompt.capture());
+        OllamaOptions retry = (OllamaOptions) prompt.getAllValues().get(prompt.getAllValues().size() - 1).getOptions();
+        assertEquals(List.of(), retry.getStop());
+        verify(callResponse, times(2)).content();
+    }
+
+    private QueryService createService() {
+        // The LLM path; several of these questions have a shape the fast path answers
+        return createService(false);
+    }
+
+    private QueryService createService(boolean fastPath) {
+        when(chatClientBuilder.build()).thenReturn(chatClient);
+        AssistantProperties properties = new AssistantProperties();
+        properties.getFastPath().setEnabled(fastPath);
+        // These stub the executor with the whole result; incremental refresh has tests of its own
+        properties.getIncremental().setEnabled(false);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ConcurrencyLimits concurrencyLimits = new ConcurrencyLimits(properties, meterRegistry);
+        QueryExecutor queryExecutor = new QueryExecutor(jdbcTemplate, mock(PlatformTransactionManager.class),
+                new QueryCostGuard(jdbcTemplate, new ObjectMapper(), concurrencyLimits, properties, meterRegistry),
+                concurrencyLimits, properties, meterRegistry);
+        return new QueryService(chatClientBuilder,
+                new SqlTranslationCache(properties, meterRegistry),
+                new QueryResultCache(properties, meterRegistry),
+                new SemanticTranslationCache(new HashingQuestionEmbedder(256), properties, meterRegistry),
+                new FastPathTranslator(DemoSchema.catalog(), ColumnValueSampler.NONE,
+                        new SqlValidator(DemoSchema.catalog()), properties, meterRegistry),
+                new SqlPostProcessor(),
+                new SqlValidator(DemoSchema.catalog()),
+                new SqlPromptBuilder(DemoSchema.catalog(), properties),
+                new AggregateRouter(List.of(), new SqlValidator(DemoSchema.catalog()), DemoSchema.catalog(), properties,
+                        meterRegistry),
+                new RowLimiter(properties),
+                queryExecutor,
+                new IncrementalAggregateCache(queryExecutor, properties, meterRegistry),
+                new SqlRepairer(chatClientBuilder, jdbcTemplate, new SqlPromptBuilder(DemoSchema.catalog(), properties),
+                        new SqlPostProcessor(), new SqlValidator(DemoSchema.catalog()), concurrencyLimits, properties,
+                        meterRegistry),
+                concurrencyLimits,
+                properties,
+                meterRegistry);
+    }
+
+    private Map<String, Object> createRow(String productName, Double revenue) {
+        Map<String, Object> row = new LinkedHashMap<>();
         row.put("product_name", productName);
         row.put("total_revenue", revenue);
         return row;
@@ -0,0 +1,56 @@
+package com.bi.assistant.service;
+
+import com.bi.assistant.config.AssistantProperties;
+import com.bi.assistant.schema.DemoSchema;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RowLimiterTest {
+
+    private final SqlValidator sqlValidator = new SqlValidator(DemoSchema.catalog());
+    private final RowLimiter rowLimiter = createLimiter(100);
+
+    @Test
+    void shouldUseSmallerOfRequestAndServerLimit() {
+        assertEquals(100, rowLimiter.effectiveLimit(null));
+        assertEquals(20, rowLimiter.effectiveLimit(20));
+        assertEquals(100, rowLimiter.effectiveLimit(5_000));
+    }
+
+    @Test
+    void shouldAppendLimitToUnboundedQuery() {
+        RowLimiter.LimitedQuery limitedQuery = rowLimiter.limit(sqlValidator.validate("SELECT * FROM sales"), 20);
+
+        assertEquals("SELECT * FROM sales LIMIT 21", limitedQuery.sql());
+        assertEquals(20, limitedQuery.maxRows());
+        assertTrue(limitedQuery.boundedInSql());
+    }
+
+    @Test
+    void shouldKeepSmallerLimitAndLowerLargerOne() {
+        assertEquals("SELECT * FROM products ORDER BY price LIMIT 5",
+                rowLimiter.limit(sqlValidator.validate("SELECT * FROM products ORDER BY price LIMIT 5"), null).sql());
+
+        String lowered = rowLimiter.limit(
+                sqlValidator.validate("SELECT * FROM products ORDER BY price LIMIT 5000"), null).sql();
+        assertTrue(lowered.endsWith("LIMIT 101"), lowered);
+    }
+
+    @Test
+    void shouldCapWhileReadingWhenLimitCannotBeRewritten() {
+        ValidatedSql validatedSql = sqlValidator.validate("SELECT * FROM sales FETCH FIRST 500 ROWS ONLY");
+
+        RowLimiter.LimitedQuery limitedQuery = rowLimiter.limit(validatedSql, null);
+
+        assertEquals(validatedSql.sql(), limitedQuery.sql());
+        assertFalse(limitedQuery.boundedInSql());
+        assertNotEquals(limitedQuery.sql(), limitedQuery.cacheKey());
+    }
+
+    private static RowLimiter createLimiter(int maxRows) {
+        AssistantProperties properties = new AssistantProperties();
+        properties.getResults().setMaxRows(maxRows);
+        return new RowLimiter(properties);
+    }
+}
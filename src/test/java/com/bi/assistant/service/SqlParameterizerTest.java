@@ -0,0 +1,76 @@
+package com.bi.assistant.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SqlParameterizerTest {
+
+    @Test
+    void shouldLiftFilterAndLimitLiteralsInTextOrder() {
+        ParameterizedSql parameterized = SqlParameterizer.parameterize(
+                "SELECT p.product_name, SUM(s.revenue) AS total_revenue FROM products p "
+                        + "JOIN sales s ON p.id = s.product_id "
+                        + "WHERE s.sale_date >= '2025-07-01' AND s.region IN ('North', 'East') "
+                        + "GROUP BY p.product_name HAVING SUM(s.revenue) > 1000.5 "
+                        + "ORDER BY total_revenue DESC LIMIT 5");
+
+        assertEquals("SELECT p.product_name, SUM(s.revenue) AS total_revenue FROM products p "
+                + "JOIN sales s ON p.id = s.product_id "
+                + "WHERE s.sale_date >= ? AND s.region IN (?, ?) "
+                + "GROUP BY p.product_name HAVING SUM(s.revenue) > ? "
+                + "ORDER BY total_revenue DESC LIMIT ?", parameterized.template());
+        assertEquals(List.of("2025-07-01", "North", "East", new BigDecimal("1000.5"), 5), parameterized.parameters());
+    }
+
+    @Test
+    void shouldShareOneTemplateAcrossLiterals() {
+        ParameterizedSql topFive = SqlParameterizer.parameterize(
+                "SELECT * FROM sales WHERE sale_date BETWEEN '2025-04-01' AND '2025-06-30' LIMIT 5");
+        ParameterizedSql topTen = SqlParameterizer.parameterize(
+                "SELECT * FROM sales WHERE sale_date BETWEEN '2025-01-01' AND '2025-12-31' LIMIT 10");
+
+        assertEquals(topFive.template(), topTen.template());
+        assertEquals(List.of("2025-01-01", "2025-12-31", 10), topTen.parameters());
+    }
+
+    @Test
+    void shouldBindDateLiteralsAndUnescapeStrings() {
+        ParameterizedSql parameterized = SqlParameterizer.parameterize(
+                "SELECT * FROM customers WHERE customer_name = 'O''Brien' AND created_at >= DATE '2025-01-01'");
+
+        assertEquals(List.of("O'Brien", LocalDate.of(2025, 1, 1)), parameterized.parameters());
+    }
+
+    @Test
+    void shouldLeaveSelectListGroupByAndFunctionLiteralsInTheText() {
+        String sql = "SELECT date_trunc('month', sale_date) AS month, 'all' AS scope, SUM(revenue) FROM sales "
+                + "WHERE date_trunc('year', sale_date) = date_trunc('year', CURRENT_DATE) "
+                + "GROUP BY date_trunc('month', sale_date) ORDER BY 1";
+
+        ParameterizedSql parameterized = SqlParameterizer.parameterize(sql);
+
+        assertEquals(sql, parameterized.template());
+        assertTrue(parameterized.parameters().isEmpty());
+    }
+
+    @Test
+    void shouldRunSetOperationsAsTheyAre() {
+        String sql = "SELECT region FROM sales WHERE revenue > 100 UNION SELECT region FROM customers";
+
+        assertEquals(new ParameterizedSql(sql, List.of()), SqlParameterizer.parameterize(sql));
+    }
+
+    @Test
+    void shouldReplaceNumbersAtParameterPositions() {
+        String sql = "SELECT * FROM sales WHERE EXTRACT(YEAR FROM sale_date) = 2024 AND quantity > 2 LIMIT 5";
+
+        assertEquals("SELECT * FROM sales WHERE EXTRACT(YEAR FROM sale_date) = 2023 AND quantity > 2 LIMIT 10",
+                SqlParameterizer.replaceNumbers(sql, Map.of(0, 2023L, 2, 10L)));
+    }
+}
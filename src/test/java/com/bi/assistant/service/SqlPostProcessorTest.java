@@ -0,0 +1,73 @@
+package com.bi.assistant.service;
+
+import com.bi.assistant.exception.QueryGenerationException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SqlPostProcessorTest {
+
+    private final SqlPostProcessor sqlPostProcessor = new SqlPostProcessor();
+
+    @Test
+    void shouldExtractSqlFromMarkdownFence() {
+        String response = """
+                ```sql
+                SELECT p.product_name, SUM(s.revenue) AS total_revenue
+                FROM products p
+                JOIN sales s ON p.id = s.product_id
+                GROUP BY p.product_name
+                ORDER BY total_revenue DESC
+                LIMIT 5;
+                ```""";
+
+        assertEquals("SELECT p.product_name, SUM(s.revenue) AS total_revenue FROM products p "
+                        + "JOIN sales s ON p.id = s.product_id GROUP BY p.product_name ORDER BY total_revenue DESC LIMIT 5",
+                sqlPostProcessor.extractSql(response));
+    }
+
+    @Test
+    void shouldSkipExplanationsAndAlternatives() {
+        String response = """
+                To find revenue by region, group the sales:
+
+                SELECT s.region, SUM(s.revenue) AS total_revenue
+                FROM sales s
+                GROUP BY s.region;
+
+                OR
+
+                SELECT region, SUM(revenue) FROM sales GROUP BY region;
+
+                Note: the first query uses an alias.""";
+
+        assertEquals("SELECT s.region, SUM(s.revenue) AS total_revenue FROM sales s GROUP BY s.region",
+                sqlPostProcessor.extractSql(response));
+    }
+
+    @Test
+    void shouldStopAtFirstTopLevelSemicolon() {
+        assertEquals("SELECT 'a;b' AS x FROM t",
+                sqlPostProcessor.extractSql("SELECT 'a;b' AS x FROM t; SELECT 2;"));
+        assertEquals("SELECT $q$it's; fine$q$ AS v FROM t",
+                sqlPostProcessor.extractSql("SELECT $q$it's; fine$q$ AS v FROM t;"));
+    }
+
+    @Test
+    void shouldFindSqlInlineWithProse() {
+        assertEquals("SELECT * FROM products WHERE category = 'Electronics'",
+                sqlPostProcessor.extractSql("Here is the query: SELECT * FROM products WHERE category = 'Electronics';"));
+    }
+
+    @Test
+    void shouldStripComments() {
+        assertEquals("SELECT id FROM customers",
+                sqlPostProcessor.extractSql("SELECT id -- the id\nFROM customers /* all */;"));
+    }
+
+    @Test
+    void shouldRejectEmptyOrSqlFreeResponses() {
+        assertThrows(QueryGenerationException.class, () -> sqlPostProcessor.extractSql("   "));
+        assertThrows(QueryGenerationException.class, () -> sqlPostProcessor.extractSql("I cannot answer that."));
+    }
+}
@@ -0,0 +1,125 @@
+package com.bi.assistant.service;
+
+import com.bi.assistant.config.AssistantProperties;
+import com.bi.assistant.schema.ColumnValueSampler;
+import com.bi.assistant.schema.DemoSchema;
+import com.bi.assistant.schema.SchemaCatalog;
+import com.bi.assistant.schema.SchemaLinker;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.ollama.api.OllamaOptions;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SqlPromptBuilderTest {
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2025-08-14T10:00:00Z"));
+    private final SqlPromptBuilder promptBuilder = promptBuilder(new AssistantProperties());
+
+    @Test
+    void shouldKeepSystemPrefixIdenticalAcrossQuestionsAndDays() {
+        List<Message> first = promptBuilder.build("Top 5 products by revenue", null).getInstructions();
+        clock.instant = Instant.parse("2025-08-15T10:00:00Z");
+        List<Message> second = promptBuilder.build("Revenue by region last quarter", null).getInstructions();
+
+        assertInstanceOf(SystemMessage.class, first.get(0));
+        assertInstanceOf(UserMessage.class, first.get(1));
+        // The same rendered String, not just equal text: the prefix is rendered once
+        assertSame(first.get(0).getText(), second.get(0).getText());
+        assertFalse(first.get(0).getText().contains("2025-08"));
+    }
+
+    @Test
+    void shouldPutDateContextAndQuestionInTheSuffix() {
+        String suffix = promptBuilder.build("Revenue this year", null).getInstructions().get(1).getText();
+
+        assertTrue(suffix.contains("- Today: 2025-08-14"));
+        assertTrue(suffix.contains("- Last quarter: 2025-05-01 to 2025-08-01"));
+        assertTrue(suffix.contains("- This year: 2025-01-01 to 2025-08-14"));
+        assertTrue(suffix.endsWith("Natural Language Query: Revenue this year"));
+
+        clock.instant = Instant.parse("2025-08-15T10:00:00Z");
+        String nextDay = promptBuilder.build("Revenue this year", null).getInstructions().get(1).getText();
+        assertTrue(nextDay.contains("- Today: 2025-08-15"));
+    }
+
+    @Test
+    void shouldPassGenerationOptionsThrough() {
+        OllamaOptions options = OllamaOptions.builder().numPredict(64).build();
+
+        Prompt prompt = promptBuilder.build("List all customers", options);
+
+        assertSame(options, prompt.getOptions());
+    }
+
+    @Test
+    void shouldRenderSchemaFromCatalogWithKeysViewsAndComments() {
+        String prefix = promptBuilder.systemPrefix();
+
+        assertTrue(prefix.contains("sales(id int PK, product_id int -> products.id, customer_id int -> customers.id,"
+                + " sale_date date, revenue numeric,"));
+        assertTrue(prefix.contains("customer_segment varchar /* Premium, Standard or Basic */)"));
+        assertTrue(prefix.contains("Views:\n"));
+        assertTrue(prefix.contains("product_performance(product_name varchar,"));
+        assertTrue(prefix.contains("customer_analytics(customer_name varchar,"));
+    }
+
+    @Test
+    void shouldSendOnlyRelevantTablesWhenSchemaIsTooLargeForThePrefix() {
+        AssistantProperties properties = new AssistantProperties();
+        properties.getSchema().setMaxPromptTables(2);
+        SqlPromptBuilder largeSchemaBuilder = promptBuilder(properties);
+
+        List<Message> messages = largeSchemaBuilder.build("Sales by region", null).getInstructions();
+
+        String prefix = messages.get(0).getText();
+        String suffix = messages.get(1).getText();
+        assertFalse(prefix.contains("sales("));
+        assertTrue(suffix.startsWith("Schema:\n"));
+        // sales matches the question; products and customers come along as the tables it references
+        assertTrue(suffix.contains("sales(id int PK"));
+        assertTrue(suffix.contains("products(id int PK"));
+        assertTrue(suffix.contains("customers(id int PK"));
+        assertFalse(suffix.contains("customer_analytics("));
+        assertSame(prefix, largeSchemaBuilder.build("Revenue by category", null).getInstructions().get(0).getText());
+    }
+
+    private SqlPromptBuilder promptBuilder(AssistantProperties properties) {
+        SchemaCatalog catalog = DemoSchema.catalog();
+        return new SqlPromptBuilder(catalog, new SchemaLinker(catalog, ColumnValueSampler.NONE, properties),
+                properties, clock);
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private Instant instant;
+
+        MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.bi.assistant.service;
+
+import com.bi.assistant.concurrency.ConcurrencyLimits;
+import com.bi.assistant.config.AssistantProperties;
+import com.bi.assistant.exception.QueryExecutionException;
+import com.bi.assistant.schema.DemoSchema;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Answers;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SqlRepairerTest {
+
+    private static final String FAILED_SQL = "SELECT region, COUNT(*) FROM sales";
+    private static final String REPAIRED_SQL = "SELECT region, COUNT(*) FROM sales GROUP BY region";
+
+    @Mock
+    private ChatClient.Builder chatClientBuilder;
+
+    @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+    private ChatClient chatClient;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private final AssistantProperties properties = new AssistantProperties();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void shouldDescribeServerErrorsWithPositionAndHint() {
+        String sql = "SELECT category FROM sales";
+        SQLException error = new SQLException("ERROR: column \"category\" does not exist\n"
+                + "  Hint: Perhaps you meant to reference the column \"p.category\".\n  Position: 8", "42703");
+
+        assertEquals("SQLSTATE 42703 at position 8 near \"category FROM sales\": column \"category\" does not exist "
+                        + "(hint: Perhaps you meant to reference the column \"p.category\".)",
+                SqlRepairer.describe(new BadSqlGrammarException("query", sql, error), sql));
+    }
+
+    @Test
+    void shouldCountPositionsFromTheStartOfWhatWasSent() {
+        // EXPLAIN's own errors point past the "EXPLAIN " prefix
+        SQLException error = new SQLException("ERROR: column \"category\" does not exist\n  Position: 16", "42703");
+
+        assertEquals("SQLSTATE 42703 at position 16 near \"category FROM sales\": column \"category\" does not exist",
+                SqlRepairer.describe(error, "EXPLAIN SELECT category FROM sales"));
+        // A position past the end names no text
+        assertEquals("SQLSTATE 42703 at position 99: column \"category\" does not exist",
+                SqlRepairer.describe(new SQLException("ERROR: column \"category\" does not exist\n  Position: 99",
+                        "42703"), "SELECT category FROM sales"));
+    }
+
+    @Test
+    void shouldDescribeValidatorErrorsByTheirMessage() {
+        assertEquals("Column 'category' does not exist in the referenced tables [sales]",
+                SqlRepairer.describe(new QueryExecutionException(
+                        "Column 'category' does not exist in the referenced tables [sales]"), "SELECT category FROM sales"));
+    }
+
+    @Test
+    void shouldAskTheLlmAtMostMaxAttemptsTimes() {
+        properties.getRepair().setMaxAttempts(2);
+        SqlRepairer repairer = createRepairer();
+        ChatClient.CallResponseSpec callResponse = mock(ChatClient.CallResponseSpec.class);
+        when(chatClient.prompt(any(Prompt.class)).call()).thenReturn(callResponse);
+        // Never valid, so every attempt fails in the validator
+        when(callResponse.content()).thenReturn("SELECT category FROM sales");
+
+        assertNull(repairer.repair("Orders per region", FAILED_SQL, groupByError(), Duration.ofSeconds(30)));
+
+        verify(callResponse, times(2)).content();
+        verifyNoInteractions(jdbcTemplate);
+        assertEquals(2.0, meterRegistry.get("bi.sql.repair.attempts").counter().count());
+        assertEquals(1.0, meterRegistry.get("bi.sql.repairs").tag("outcome", "failed").counter().count());
+    }
+
+    @Test
+    void shouldReuseARepairWithoutTheLlm() {
+        SqlRepairer repairer = createRepairer();
+        ChatClient.CallResponseSpec callResponse = mock(ChatClient.CallResponseSpec.class);
+        when(chatClient.prompt(any(Prompt.class)).call()).thenReturn(callResponse);
+        when(callResponse.content()).thenReturn(REPAIRED_SQL);
+        when(jdbcTemplate.queryForList("EXPLAIN " + REPAIRED_SQL, String.class))
+                .thenReturn(List.of("HashAggregate  (cost=1.15..1.20 rows=4 width=40)"));
+
+        ValidatedSql first = repairer.repair("Orders per region", FAILED_SQL, groupByError(), Duration.ofSeconds(30));
+        ValidatedSql second = repairer.repair("How many orders per region?", FAILED_SQL, groupByError(),
+                Duration.ofSeconds(30));
+
+        assertEquals(REPAIRED_SQL, first.sql());
+        assertSame(first, second);
+        verify(callResponse, times(1)).content();
+        assertEquals(1.0, meterRegistry.get("bi.sql.repairs").tag("outcome", "cached").counter().count());
+        assertEquals(1.0, repairer.repairRate());
+    }
+
+    private static BadSqlGrammarException groupByError() {
+        return new BadSqlGrammarException("query", FAILED_SQL, new SQLException("ERROR: column \"sales.region\" "
+                + "must appear in the GROUP BY clause or be used in an aggregate function\n  Position: 8", "42803"));
+    }
+
+    private SqlRepairer createRepairer() {
+        when(chatClientBuilder.build()).thenReturn(chatClient);
+        return new SqlRepairer(chatClientBuilder, jdbcTemplate, new SqlPromptBuilder(DemoSchema.catalog(), properties),
+                new SqlPostProcessor(), new SqlValidator(DemoSchema.catalog()),
+                new ConcurrencyLimits(properties, meterRegistry), properties, meterRegistry);
+    }
+}
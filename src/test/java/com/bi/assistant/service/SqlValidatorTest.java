@@ -0,0 +1,108 @@
+package com.bi.assistant.service;
+
+import com.bi.assistant.exception.QueryExecutionException;
+import com.bi.assistant.schema.DemoSchema;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SqlValidatorTest {
+
+    private final SqlValidator sqlValidator = new SqlValidator(DemoSchema.catalog());
+
+    @Test
+    void shouldAcceptJoinedAggregation() {
+        ValidatedSql validatedSql = sqlValidator.validate(
+                "SELECT p.product_name, SUM(s.revenue) AS total_revenue FROM products p "
+                        + "JOIN sales s ON p.id = s.product_id GROUP BY p.product_name ORDER BY total_revenue DESC LIMIT 5");
+
+        assertEquals(Set.of("products", "sales"), validatedSql.tables());
+        assertEquals("AGGREGATION", validatedSql.queryType());
+        assertNotNull(validatedSql.statement());
+    }
+
+    @Test
+    void shouldResolveSubqueryAndCteNames() {
+        assertDoesNotThrow(() -> sqlValidator.validate(
+                "SELECT c.customer_segment, AVG(order_total) AS avg_order_value FROM customers c "
+                        + "JOIN (SELECT customer_id, SUM(p.price * s.quantity) AS order_total FROM sales s "
+                        + "JOIN products p ON s.product_id = p.id GROUP BY customer_id) AS orders "
+                        + "ON c.id = orders.customer_id GROUP BY c.customer_segment"));
+
+        ValidatedSql cte = sqlValidator.validate(
+                "WITH monthly AS (SELECT region, SUM(revenue) AS monthly_revenue FROM sales GROUP BY region) "
+                        + "SELECT region, monthly_revenue FROM monthly ORDER BY monthly_revenue");
+        assertEquals(Set.of("sales"), cte.tables());
+    }
+
+    @Test
+    void shouldRejectNonSelectStatements() {
+        assertThrows(QueryExecutionException.class, () -> sqlValidator.validate("DELETE FROM sales"));
+        assertThrows(QueryExecutionException.class, () -> sqlValidator.validate("UPDATE products SET price = 0"));
+        assertThrows(QueryExecutionException.class, () -> sqlValidator.validate("SELECT * INTO backup FROM sales"));
+        assertThrows(QueryExecutionException.class,
+                () -> sqlValidator.validate("WITH x AS (DELETE FROM sales RETURNING *) SELECT * FROM x"));
+    }
+
+    @Test
+    void shouldRejectMultipleStatements() {
+        QueryExecutionException exception = assertThrows(QueryExecutionException.class,
+                () -> sqlValidator.validate("SELECT * FROM sales; DROP TABLE sales"));
+        assertEquals("Only a single SQL statement is allowed", exception.getMessage());
+    }
+
+    @Test
+    void shouldAllowKeywordsInsideLiteralsAndNames() {
+        assertDoesNotThrow(() -> sqlValidator.validate(
+                "SELECT product_name AS last_update FROM products WHERE description = 'Update or create your setup'"));
+    }
+
+    @Test
+    void shouldRejectUnknownTablesAndColumns() {
+        assertThrows(QueryExecutionException.class, () -> sqlValidator.validate("SELECT * FROM pg_shadow"));
+        assertThrows(QueryExecutionException.class,
+                () -> sqlValidator.validate("SELECT * FROM information_schema.tables"));
+        assertThrows(QueryExecutionException.class, () -> sqlValidator.validate("SELECT product_name FROM sales"));
+        assertThrows(QueryExecutionException.class,
+                () -> sqlValidator.validate("SELECT s.customer_name FROM sales s JOIN customers c ON c.id = s.customer_id"));
+    }
+
+    @Test
+    void shouldRejectDangerousFunctions() {
+        assertThrows(QueryExecutionException.class, () -> sqlValidator.validate("SELECT pg_sleep(10)"));
+        assertThrows(QueryExecutionException.class,
+                () -> sqlValidator.validate("SELECT * FROM sales WHERE id = (SELECT 1 FROM pg_catalog.pg_sleep(10))"));
+        assertThrows(QueryExecutionException.class,
+                () -> sqlValidator.validate("SELECT * FROM dblink('host=evil', 'SELECT 1') AS t(x int)"));
+        assertThrows(QueryExecutionException.class,
+                () -> sqlValidator.validate("SELECT region FROM sales ORDER BY (SELECT pg_sleep(5))"));
+    }
+
+    @Test
+    void shouldRejectFunctionsThatReadPastTheTableCheck() {
+        for (String sql : List.of(
+                "SELECT database_to_xml_and_xmlschema(true, true, '')",
+                "SELECT database_to_xmlschema(true, true, '')",
+                "SELECT schema_to_xml_and_xmlschema('public', true, true, '')",
+                "SELECT schema_to_xmlschema('public', true, true, '')",
+                "SELECT table_to_xmlschema('customers', true, true, '')",
+                "SELECT query_to_xml('SELECT * FROM pg_authid', true, true, '')",
+                "SELECT cursor_to_xml('c', 10, true, true, '')",
+                "SELECT * FROM ts_stat('SELECT to_tsvector(rolpassword) FROM pg_authid')",
+                "SELECT * FROM pg_catalog.ts_stat('SELECT 1')")) {
+            assertThrows(QueryExecutionException.class, () -> sqlValidator.validate(sql), sql);
+        }
+    }
+
+    @Test
+    void shouldClassifyQueries() {
+        assertEquals("SORTED_LIST", sqlValidator.validate("SELECT * FROM products ORDER BY price").queryType());
+        assertEquals("RELATIONSHIP", sqlValidator.validate(
+                "SELECT * FROM sales s JOIN products p ON p.id = s.product_id").queryType());
+        assertEquals("SIMPLE_SELECT", sqlValidator.validate(
+                "SELECT * FROM products WHERE description = 'group by order'").queryType());
+    }
+}
@@ -0,0 +1,149 @@
+package com.bi.assistant.service;
+
+import com.bi.assistant.config.AssistantProperties;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.UncategorizedSQLException;
+import org.springframework.jdbc.core.ResultSetExtractor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StreamingQueryExecutorTest {
+
+    private static final String SQL = "SELECT product_name, quantity FROM sales";
+
+    @Mock
+    private QueryExecutor queryExecutor;
+
+    @Mock
+    private ResultSet resultSet;
+
+    @Mock
+    private ResultSetMetaData metaData;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private StreamingQueryExecutor executor;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        AssistantProperties properties = new AssistantProperties();
+        properties.getStreaming().setFetchSize(1);
+        executor = new StreamingQueryExecutor(queryExecutor, objectMapper, properties);
+
+        when(resultSet.getMetaData()).thenReturn(metaData);
+        when(metaData.getColumnCount()).thenReturn(2);
+        when(metaData.getColumnLabel(1)).thenReturn("product_name");
+        when(metaData.getColumnLabel(2)).thenReturn("quantity");
+        when(metaData.getColumnTypeName(1)).thenReturn("varchar");
+        when(metaData.getColumnTypeName(2)).thenReturn("int4");
+        when(queryExecutor.query(eq(SQL), eq(1), any(), any(), any())).thenAnswer(invocation -> {
+            ResultSetExtractor<?> extractor = invocation.getArgument(4);
+            try {
+                return extractor.extractData(resultSet);
+            } catch (SQLException e) {
+                // What JdbcTemplate would make of it
+                throw new UncategorizedSQLException("query", SQL, e);
+            }
+        });
+    }
+
+    @Test
+    void shouldWriteColumnsThenOneLinePerRowThenEnd() throws Exception {
+        when(resultSet.next()).thenReturn(true, true, false);
+        when(resultSet.getObject(1)).thenReturn("Laptop Pro", "Desk Chair");
+        when(resultSet.getObject(2)).thenReturn(3, 1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long rowCount = executor.stream(SQL, out, new QueryCancellation());
+
+        assertEquals(2, rowCount);
+        List<JsonNode> lines = lines(out);
+        assertEquals(4, lines.size());
+        assertEquals("columns", lines.get(0).get("type").asText());
+        assertEquals(SQL, lines.get(0).get("sql").asText());
+        assertEquals(objectMapper.readTree("""
+                [{"name":"product_name","type":"varchar"},{"name":"quantity","type":"int4"}]"""),
+                lines.get(0).get("columns"));
+        assertEquals(objectMapper.readTree("""
+                {"type":"row","values":["Laptop Pro",3]}"""), lines.get(1));
+        assertEquals(objectMapper.readTree("""
+                {"type":"row","values":["Desk Chair",1]}"""), lines.get(2));
+        assertEquals("end", lines.get(3).get("type").asText());
+        assertEquals(2, lines.get(3).get("rowCount").asLong());
+        assertTrue(lines.get(3).has("executionTimeMs"));
+    }
+
+    @Test
+    void shouldEndWithAnErrorLineWhenTheQueryFailsPartWay() throws Exception {
+        when(resultSet.next()).thenReturn(true).thenThrow(new SQLException("connection lost"));
+        when(resultSet.getObject(1)).thenReturn("Laptop Pro");
+        when(resultSet.getObject(2)).thenReturn(3);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long rowCount = executor.stream(SQL, out, new QueryCancellation());
+
+        assertEquals(-1, rowCount);
+        List<JsonNode> lines = lines(out);
+        assertEquals(List.of("columns", "row", "error"), lines.stream().map(line -> line.get("type").asText()).toList());
+        String message = lines.get(2).get("message").asText();
+        assertTrue(message.startsWith("SQL execution failed: ") && message.contains("connection lost"), message);
+    }
+
+    @Test
+    void shouldAbandonTheCursorWhenTheClientGoesAway() throws Exception {
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getObject(1)).thenReturn("Laptop Pro");
+        when(resultSet.getObject(2)).thenReturn(3);
+        // Takes the columns line, then fails like a closed socket
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        OutputStream out = new OutputStream() {
+            private int writes;
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                if (++writes > 1) {
+                    throw new IOException("Broken pipe");
+                }
+                received.write(bytes, offset, length);
+            }
+        };
+
+        assertThrows(IOException.class, () -> executor.stream(SQL, out, new QueryCancellation()));
+
+        verify(resultSet, times(1)).next();
+        List<JsonNode> lines = lines(received);
+        assertEquals(1, lines.size());
+        assertEquals("columns", lines.get(0).get("type").asText());
+    }
+
+    private List<JsonNode> lines(ByteArrayOutputStream out) throws IOException {
+        List<JsonNode> lines = new ArrayList<>();
+        for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+            lines.add(objectMapper.readTree(line));
+        }
+        return lines;
+    }
+}